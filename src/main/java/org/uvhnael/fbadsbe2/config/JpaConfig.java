@@ -0,0 +1,33 @@
+package org.uvhnael.fbadsbe2.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+
+/**
+ * Also ships the defaults in jpa-defaults.properties (open-in-view off), which every other
+ * property source overrides
+ */
+@Configuration
+@PropertySource("classpath:jpa-defaults.properties")
+public class JpaConfig {
+
+    @Value("${app.jpa.batch-size:50}")
+    private int batchSize;
+
+    /**
+     * JDBC batching for inserts/updates (needs table-generated IDs, IDENTITY disables it).
+     * Explicit spring.jpa.properties.hibernate.* settings still take precedence.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer jdbcBatchingCustomizer() {
+        return properties -> {
+            properties.putIfAbsent("hibernate.jdbc.batch_size", batchSize);
+            properties.putIfAbsent("hibernate.order_inserts", true);
+            properties.putIfAbsent("hibernate.order_updates", true);
+            properties.putIfAbsent("hibernate.jdbc.batch_versioned_data", true);
+        };
+    }
+}
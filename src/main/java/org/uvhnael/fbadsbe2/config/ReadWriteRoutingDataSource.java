@@ -0,0 +1,116 @@
+package org.uvhnael.fbadsbe2.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+/**
+ * Routes connections of read-only transactions to the replica and everything else to the primary.
+ * Must sit behind a LazyConnectionDataSourceProxy, so the target is only chosen once the
+ * transaction's read-only flag is known.
+ *
+ * Read-your-writes: after a read-write transaction commits, the current thread is pinned to the
+ * primary for readYourWritesMs, so reads right after a write do not hit a lagging replica.
+ * Reads also fall back to the primary whenever the replica is reported unusable (e.g. lagging).
+ * Every routing decision is counted as datasource.routing{route, reason}.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    public enum Route {
+        PRIMARY,
+        REPLICA
+    }
+
+    private static final ThreadLocal<Long> PINNED_UNTIL = new ThreadLocal<>();
+
+    private final long readYourWritesMs;
+    private final LongConsumer onPinned;
+    private final BooleanSupplier replicaUsable;
+
+    private final Counter writes;
+    private final Counter replicaReads;
+    private final Counter pinnedReads;
+    private final Counter fallbackReads;
+
+    /**
+     * @param readYourWritesMs how long to stay on the primary after a write (0 disables pinning)
+     * @param onPinned called with the pin expiry (epoch millis) after each write, e.g. to carry it to the client
+     * @param replicaUsable whether read-only work may currently go to the replica
+     */
+    public ReadWriteRoutingDataSource(DataSource primary, DataSource replica, long readYourWritesMs,
+                                      LongConsumer onPinned, BooleanSupplier replicaUsable, MeterRegistry meterRegistry) {
+        this.readYourWritesMs = readYourWritesMs;
+        this.onPinned = onPinned;
+        this.replicaUsable = replicaUsable;
+        this.writes = routingCounter(meterRegistry, Route.PRIMARY, "write");
+        this.replicaReads = routingCounter(meterRegistry, Route.REPLICA, "read-only");
+        this.pinnedReads = routingCounter(meterRegistry, Route.PRIMARY, "read-your-writes");
+        this.fallbackReads = routingCounter(meterRegistry, Route.PRIMARY, "replica-unusable");
+        setTargetDataSources(Map.of(Route.PRIMARY, primary, Route.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (isPinnedToPrimary()) {
+                pinnedReads.increment();
+                return Route.PRIMARY;
+            }
+            if (!replicaUsable.getAsBoolean()) {
+                fallbackReads.increment();
+                return Route.PRIMARY;
+            }
+            replicaReads.increment();
+            return Route.REPLICA;
+        }
+
+        if (readYourWritesMs > 0 && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    long pinnedUntil = System.currentTimeMillis() + readYourWritesMs;
+                    pinUntil(pinnedUntil);
+                    onPinned.accept(pinnedUntil);
+                }
+            });
+        }
+        writes.increment();
+        return Route.PRIMARY;
+    }
+
+    private static Counter routingCounter(MeterRegistry meterRegistry, Route route, String reason) {
+        return Counter.builder("datasource.routing")
+                .description("Connections handed out by the read/write routing DataSource")
+                .tag("route", route.name().toLowerCase())
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Send read-only work of the current thread to the primary until the given time (epoch millis)
+     */
+    public static void pinUntil(long pinnedUntil) {
+        Long current = PINNED_UNTIL.get();
+        if (current == null || current < pinnedUntil) {
+            PINNED_UNTIL.set(pinnedUntil);
+        }
+    }
+
+    public static boolean isPinnedToPrimary() {
+        Long pinnedUntil = PINNED_UNTIL.get();
+        return pinnedUntil != null && pinnedUntil > System.currentTimeMillis();
+    }
+
+    public static void clearPin() {
+        PINNED_UNTIL.remove();
+    }
+}
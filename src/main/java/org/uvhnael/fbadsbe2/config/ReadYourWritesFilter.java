@@ -0,0 +1,61 @@
+package org.uvhnael.fbadsbe2.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Carries the read-your-writes pin across requests: a write sets a short-lived cookie, and
+ * requests presenting it before it expires read from the primary too.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    static final String COOKIE_NAME = "rw_pinned_until";
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (request.getCookies() != null) {
+            for (Cookie cookie : request.getCookies()) {
+                if (COOKIE_NAME.equals(cookie.getName())) {
+                    try {
+                        ReadWriteRoutingDataSource.pinUntil(Long.parseLong(cookie.getValue()));
+                    } catch (NumberFormatException ignored) {
+                        // Not ours, read from the replica as usual
+                    }
+                }
+            }
+        }
+
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            // Request threads are pooled, never leak the pin into the next request
+            ReadWriteRoutingDataSource.clearPin();
+        }
+    }
+
+    /**
+     * Set the pin cookie on the current response, if there is one and it is not committed yet
+     */
+    static void rememberPin(long pinnedUntil) {
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+            HttpServletResponse response = attributes.getResponse();
+            if (response != null && !response.isCommitted()) {
+                long maxAgeSeconds = Math.max(1, (pinnedUntil - System.currentTimeMillis() + 999) / 1000);
+                Cookie cookie = new Cookie(COOKIE_NAME, Long.toString(pinnedUntil));
+                cookie.setPath("/");
+                cookie.setHttpOnly(true);
+                cookie.setMaxAge((int) maxAgeSeconds);
+                response.addCookie(cookie);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.uvhnael.fbadsbe2.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Samples replication lag on the replica in the background.
+ * The replica is only considered usable while replication is running and lag stays within
+ * maxLagSeconds; until the first successful sample (and whenever sampling fails) reads stay
+ * on the primary. Needs the REPLICATION CLIENT privilege and a direct replica connection.
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+
+    private final JdbcTemplate replicaJdbcTemplate;
+    private final long maxLagSeconds;
+
+    // -1 while unknown or replication is not running
+    private final AtomicLong lagSeconds = new AtomicLong(-1);
+    private volatile boolean replicaUsable;
+
+    public ReplicaLagMonitor(DataSource replicaDataSource, long maxLagSeconds, MeterRegistry meterRegistry) {
+        this.replicaJdbcTemplate = new JdbcTemplate(replicaDataSource);
+        this.maxLagSeconds = maxLagSeconds;
+
+        Gauge.builder("datasource.replica.lag", lagSeconds, AtomicLong::get)
+                .baseUnit("seconds")
+                .description("Replica lag behind the primary, -1 when unknown or replication is stopped")
+                .register(meterRegistry);
+        Gauge.builder("datasource.replica.usable", this, monitor -> monitor.replicaUsable ? 1 : 0)
+                .description("1 while read-only transactions may use the replica")
+                .register(meterRegistry);
+    }
+
+    public boolean isReplicaUsable() {
+        return replicaUsable;
+    }
+
+    @Scheduled(fixedDelayString = "${app.datasource.routing.lag-check-interval-ms:5000}")
+    public void sample() {
+        Long lag;
+        try {
+            lag = replicaJdbcTemplate.query("SHOW REPLICA STATUS", rs -> rs.next() ? secondsBehind(rs) : null);
+        } catch (Exception e) {
+            log.warn("Could not sample replica lag: {}", e.getMessage());
+            lag = null;
+        }
+
+        boolean usable = lag != null && lag <= maxLagSeconds;
+        lagSeconds.set(lag != null ? lag : -1);
+
+        if (usable != replicaUsable) {
+            if (usable) {
+                log.info("Replica lag {}s is within {}s, routing read-only transactions to the replica", lag, maxLagSeconds);
+            } else {
+                log.warn("Replica unusable (lag: {}), routing read-only transactions to the primary",
+                        lag != null ? lag + "s" : "unknown");
+            }
+        }
+        replicaUsable = usable;
+    }
+
+    /**
+     * Seconds_Behind_Source (MySQL 8.0.22+) or Seconds_Behind_Master; null when replication is not running
+     */
+    private static Long secondsBehind(ResultSet rs) throws SQLException {
+        Object value;
+        try {
+            value = rs.getObject("Seconds_Behind_Source");
+        } catch (SQLException e) {
+            value = rs.getObject("Seconds_Behind_Master");
+        }
+        return value != null ? ((Number) value).longValue() : null;
+    }
+}
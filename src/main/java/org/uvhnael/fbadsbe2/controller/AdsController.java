@@ -1,17 +1,30 @@
 package org.uvhnael.fbadsbe2.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.uvhnael.fbadsbe2.model.dto.AdDTO;
+import org.uvhnael.fbadsbe2.model.dto.AdPageDTO;
+import org.uvhnael.fbadsbe2.model.dto.AdSearchPageDTO;
+import org.uvhnael.fbadsbe2.model.dto.BulkIngestResult;
 import org.uvhnael.fbadsbe2.model.entity.Ad;
+import org.uvhnael.fbadsbe2.service.AdsExportService;
 import org.uvhnael.fbadsbe2.service.AdsService;
+import org.uvhnael.fbadsbe2.service.AdsStreamIngestService;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
@@ -24,14 +37,24 @@ import java.util.Map;
 public class AdsController {
 
     private final AdsService adsService;
+    private final AdsStreamIngestService adsStreamIngestService;
+    private final AdsExportService adsExportService;
+    private final ObjectMapper objectMapper;
 
     /**
      * Create new ad from n8n workflow
      */
     @PostMapping
-    @Operation(summary = "Create ad from n8n", description = "Receives ad data from n8n workflow and saves to database")
+    @Operation(summary = "Create ad from n8n", description = "Receives ad data from n8n workflow and saves to database (202 Accepted when write-behind mode is enabled)")
     public ResponseEntity<?> createAd(@RequestBody AdDTO adDTO) {
         try {
+            if (adsService.enqueueWriteBehind(adDTO)) {
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+                        "message", "Ad accepted for write-behind ingestion",
+                        "adArchiveId", adDTO.getAdArchiveId()
+                ));
+            }
+
             Ad ad = adsService.createAd(adDTO);
             return ResponseEntity.status(HttpStatus.CREATED).body(ad);
         } catch (Exception e) {
@@ -41,17 +64,23 @@ public class AdsController {
     }
 
     /**
-     * Get all ads with optional filters
+     * List ads (keyset paginated) with optional filters
      */
     @GetMapping
-    @Operation(summary = "List all ads", description = "Get all ads with optional filters by type, status, or page name")
-    public ResponseEntity<List<Ad>> getAllAds(
+    @Operation(summary = "List ads", description = "Keyset-paginated ad summaries, newest scrape first, with any combination of type, status and page name filters. Pass nextCursor as cursor for the next page")
+    public ResponseEntity<?> getAllAds(
             @RequestParam(required = false) String typeAds,
             @RequestParam(required = false) String status,
-            @RequestParam(required = false) String pageName) {
-
-        List<Ad> ads = adsService.getAllAds(typeAds, status, pageName);
-        return ResponseEntity.ok(ads);
+            @RequestParam(required = false) String pageName,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        try {
+            AdPageDTO page = adsService.getAdsPage(typeAds, status, pageName, cursor, limit);
+            return ResponseEntity.ok(page);
+        } catch (Exception e) {
+            log.error("Error listing ads: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
 
     /**
@@ -132,10 +161,18 @@ public class AdsController {
      * Search ads by keyword
      */
     @GetMapping("/search")
-    @Operation(summary = "Search ads", description = "Search ads by keyword in caption")
-    public ResponseEntity<List<Ad>> searchAds(@RequestParam String keyword) {
-        List<Ad> ads = adsService.searchAds(keyword);
-        return ResponseEntity.ok(ads);
+    @Operation(summary = "Search ads", description = "Ranked full-text search in captions, accent-insensitive (\"cham soc da\" matches \"chăm sóc da\"), paginated")
+    public ResponseEntity<?> searchAds(
+            @RequestParam String keyword,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            AdSearchPageDTO result = adsService.searchAds(keyword, page, size);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            log.error("Error searching ads: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
 
     /**
@@ -161,6 +198,37 @@ public class AdsController {
         return ResponseEntity.ok(stats);
     }
 
+    /**
+     * Export ads as a streamed file
+     */
+    @GetMapping("/export")
+    @Operation(summary = "Export ads", description = "Stream all ads matching the filters as CSV or NDJSON (optionally gzipped) straight from a database cursor, in no particular order")
+    public ResponseEntity<?> exportAds(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) String typeAds,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String pageName) {
+
+        AdsExportService.Format exportFormat;
+        try {
+            exportFormat = AdsExportService.Format.parse(format);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        String fileName = "ads-export." + exportFormat.getExtension() + (gzip ? ".gz" : "");
+
+        StreamingResponseBody body = output -> adsExportService.export(
+                exportFormat, gzip, startDate, endDate, typeAds, status, pageName, output);
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : exportFormat.getContentType()))
+                .body(body);
+    }
+
     /**
      * Get statistics by date range
      */
@@ -178,23 +246,38 @@ public class AdsController {
      * Bulk create ads from n8n
      */
     @PostMapping("/bulk")
-    @Operation(summary = "Bulk create ads", description = "Create multiple ads at once from n8n workflow")
+    @Operation(summary = "Bulk create ads", description = "Create or update multiple ads at once from n8n workflow using chunked upserts keyed on archive ID")
     public ResponseEntity<?> bulkCreateAds(@RequestBody List<AdDTO> adDTOs) {
         try {
-            List<Ad> createdAds = adDTOs.stream()
-                    .map(adsService::createAd)
-                    .toList();
-
-            return ResponseEntity.status(HttpStatus.CREATED).body(Map.of(
-                    "message", "Created " + createdAds.size() + " ads successfully",
-                    "ads", createdAds
-            ));
+            BulkIngestResult result = adsService.bulkUpsertAds(adDTOs);
+            return ResponseEntity.status(HttpStatus.CREATED).body(result);
         } catch (Exception e) {
             log.error("Error bulk creating ads: {}", e.getMessage());
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
 
+    /**
+     * Streaming bulk ingest from n8n (newline-delimited JSON)
+     */
+    @PostMapping(value = "/stream", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Stream ads (NDJSON)", description = "Ingest one AdDTO JSON object per line in fixed-size batches; per-record results and progress come back as NDJSON once the body is read, or after every batch with interleave=true (only for clients that read the response while still sending)")
+    public void streamIngestAds(HttpServletRequest request, HttpServletResponse response,
+                                @RequestParam(defaultValue = "false") boolean interleave) throws IOException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        try {
+            adsStreamIngestService.ingest(request.getInputStream(), response.getOutputStream(), interleave);
+        } catch (Exception e) {
+            log.error("Error streaming ads ingest: {}", e.getMessage());
+            String error = objectMapper.writeValueAsString(Map.of("type", "error", "error", String.valueOf(e.getMessage())));
+            response.getOutputStream().write((error + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        response.flushBuffer();
+    }
+
     /**
      * Update ad status
      */
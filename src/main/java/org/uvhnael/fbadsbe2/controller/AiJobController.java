@@ -0,0 +1,50 @@
+package org.uvhnael.fbadsbe2.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.uvhnael.fbadsbe2.model.dto.AiJobDTO;
+import org.uvhnael.fbadsbe2.service.AiJobService;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/jobs")
+@RequiredArgsConstructor
+@Slf4j
+@Tag(name = "AI Jobs", description = "APIs for tracking asynchronous insight and trend analysis jobs")
+public class AiJobController {
+
+    private final AiJobService aiJobService;
+
+    /**
+     * Get job status
+     */
+    @GetMapping("/{id}")
+    @Operation(summary = "Get job", description = "Current state of a job (QUEUED, RUNNING, DONE, FAILED) and its result ID once done")
+    public ResponseEntity<?> getJob(@PathVariable Long id) {
+        try {
+            AiJobDTO job = aiJobService.getJob(id);
+            return ResponseEntity.ok(job);
+        } catch (Exception e) {
+            log.error("Error getting job: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Stream job state changes
+     */
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Subscribe to job", description = "Server-sent events with the job state; the stream ends when the job is done or failed")
+    public SseEmitter subscribe(@PathVariable Long id) {
+        return aiJobService.subscribe(id);
+    }
+}
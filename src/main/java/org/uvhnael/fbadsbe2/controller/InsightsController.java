@@ -5,13 +5,20 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.uvhnael.fbadsbe2.exception.CustomExceptions.ServiceBusyException;
+import org.uvhnael.fbadsbe2.model.dto.AiJobDTO;
+import org.uvhnael.fbadsbe2.model.dto.InsightBackfillProgressDTO;
 import org.uvhnael.fbadsbe2.model.entity.Insight;
 import org.uvhnael.fbadsbe2.model.entity.Keyword;
+import org.uvhnael.fbadsbe2.service.AiJobService;
+import org.uvhnael.fbadsbe2.service.InsightBackfillService;
 import org.uvhnael.fbadsbe2.service.InsightsService;
 
+import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
@@ -24,18 +31,24 @@ import java.util.Map;
 public class InsightsController {
 
     private final InsightsService insightsService;
+    private final InsightBackfillService insightBackfillService;
+    private final AiJobService aiJobService;
 
     /**
      * Generate insight from ads data
      */
     @PostMapping("/generate")
-    @Operation(summary = "Generate insight", description = "Generate insights from ads data for a specific date range")
+    @Operation(summary = "Generate insight", description = "Queue insight generation for a specific date range; poll /api/jobs/{id} for the result")
     public ResponseEntity<?> generateInsight(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
         try {
-            Insight insight = insightsService.generateInsight(startDate, endDate);
-            return ResponseEntity.status(HttpStatus.CREATED).body(insight);
+            AiJobDTO job = aiJobService.submitInsight(startDate, endDate);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+        } catch (ServiceBusyException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "30")
+                .body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             log.error("Error generating insight: {}", e.getMessage());
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
@@ -46,11 +59,16 @@ public class InsightsController {
      * Generate insight for current week
      */
     @PostMapping("/generate/current-week")
-    @Operation(summary = "Generate current week insight", description = "Generate insights for the current week (Monday to Sunday)")
+    @Operation(summary = "Generate current week insight", description = "Queue insight generation for the current week (Monday to Sunday); poll /api/jobs/{id} for the result")
     public ResponseEntity<?> generateCurrentWeekInsight() {
         try {
-            Insight insight = insightsService.generateCurrentWeekInsight();
-            return ResponseEntity.status(HttpStatus.CREATED).body(insight);
+            LocalDate today = LocalDate.now();
+            AiJobDTO job = aiJobService.submitInsight(today.with(DayOfWeek.MONDAY), today.with(DayOfWeek.SUNDAY));
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+        } catch (ServiceBusyException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "30")
+                .body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             log.error("Error generating current week insight: {}", e.getMessage());
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
@@ -127,4 +145,51 @@ public class InsightsController {
         List<Insight> insights = insightsService.getInsightsByDateRange(startDate, endDate);
         return ResponseEntity.ok(insights);
     }
+
+    /**
+     * Start a historical backfill
+     */
+    @PostMapping("/backfill")
+    @Operation(summary = "Start insight backfill", description = "Regenerate insights for every ISO week in a date span, in the background")
+    public ResponseEntity<?> startBackfill(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        try {
+            InsightBackfillProgressDTO progress = insightBackfillService.start(startDate, endDate);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(progress);
+        } catch (Exception e) {
+            log.error("Error starting insight backfill: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Get backfill progress
+     */
+    @GetMapping("/backfill/{jobId}")
+    @Operation(summary = "Get backfill progress", description = "Per-week status of an insight backfill job")
+    public ResponseEntity<?> getBackfillProgress(@PathVariable Long jobId) {
+        try {
+            return ResponseEntity.ok(insightBackfillService.getProgress(jobId));
+        } catch (Exception e) {
+            log.error("Error getting backfill progress: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Resume a backfill from its checkpoint
+     */
+    @PostMapping("/backfill/{jobId}/resume")
+    @Operation(summary = "Resume insight backfill", description = "Re-run the pending and failed weeks of a backfill job")
+    public ResponseEntity<?> resumeBackfill(@PathVariable Long jobId) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(insightBackfillService.resume(jobId));
+        } catch (Exception e) {
+            log.error("Error resuming insight backfill: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(Map.of("error", e.getMessage()));
+        }
+    }
 }
@@ -4,10 +4,14 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.uvhnael.fbadsbe2.exception.CustomExceptions.ServiceBusyException;
+import org.uvhnael.fbadsbe2.model.dto.AiJobDTO;
 import org.uvhnael.fbadsbe2.model.entity.TrendAnalysis;
+import org.uvhnael.fbadsbe2.service.AiJobService;
 import org.uvhnael.fbadsbe2.service.TrendAnalysisService;
 
 import java.util.List;
@@ -21,6 +25,7 @@ import java.util.Map;
 public class TrendAnalysisController {
 
     private final TrendAnalysisService trendAnalysisService;
+    private final AiJobService aiJobService;
 
     /**
      * Get current trends
@@ -90,16 +95,16 @@ public class TrendAnalysisController {
      * Force analyze trends now
      */
     @PostMapping("/analyze")
-    @Operation(summary = "Analyze trends now", description = "Trigger immediate trend analysis (normally runs daily at 6 AM)")
+    @Operation(summary = "Analyze trends now", description = "Queue an immediate trend analysis (normally runs daily at 6 AM); poll /api/jobs/{id} for the result")
     public ResponseEntity<?> analyzeTrendsNow() {
         try {
             log.info("Manual trend analysis triggered");
-            TrendAnalysis result = trendAnalysisService.analyzeWeeklyTrends();
-            return ResponseEntity.ok(Map.of(
-                "message", "Trend analysis completed successfully",
-                "analysisId", result.getId(),
-                "analysisDate", result.getAnalysisDate()
-            ));
+            AiJobDTO job = aiJobService.submitTrendAnalysis();
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+        } catch (ServiceBusyException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "30")
+                .body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             log.error("Error analyzing trends: {}", e.getMessage());
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
@@ -8,4 +8,8 @@ public class CustomExceptions {
     public static class ValidationException extends RuntimeException {
         public ValidationException(String msg) { super(msg); }
     }
+
+    public static class ServiceBusyException extends RuntimeException {
+        public ServiceBusyException(String msg) { super(msg); }
+    }
 }
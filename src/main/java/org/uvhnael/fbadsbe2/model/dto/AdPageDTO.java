@@ -0,0 +1,21 @@
+package org.uvhnael.fbadsbe2.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One keyset page of ads; pass nextCursor back as the cursor parameter to get the next page
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AdPageDTO {
+    private List<AdSummaryDTO> items;
+    private String nextCursor;
+    private boolean hasMore;
+}
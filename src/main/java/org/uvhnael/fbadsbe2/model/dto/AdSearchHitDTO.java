@@ -0,0 +1,26 @@
+package org.uvhnael.fbadsbe2.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Caption search result with its FULLTEXT relevance score
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AdSearchHitDTO {
+    private Long id;
+    private String adArchiveId;
+    private String pageName;
+    private String caption;
+    private String typeAds;
+    private String status;
+    private LocalDateTime scrapedAt;
+    private double score;
+}
@@ -0,0 +1,22 @@
+package org.uvhnael.fbadsbe2.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of ranked caption search results
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AdSearchPageDTO {
+    private List<AdSearchHitDTO> items;
+    private int page;
+    private int size;
+    private boolean hasMore;
+}
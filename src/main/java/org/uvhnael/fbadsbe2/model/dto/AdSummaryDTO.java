@@ -0,0 +1,26 @@
+package org.uvhnael.fbadsbe2.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * List-view projection of an ad, without the TEXT columns (caption, AI analysis, URLs)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AdSummaryDTO {
+    private Long id;
+    private String adArchiveId;
+    private String pageName;
+    private String typeAds;
+    private String status;
+    private LocalDate timeCreated;
+    private LocalDateTime scrapedAt;
+}
@@ -0,0 +1,27 @@
+package org.uvhnael.fbadsbe2.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.uvhnael.fbadsbe2.model.enums.AiJobStatus;
+import org.uvhnael.fbadsbe2.model.enums.AiJobType;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AiJobDTO {
+    private Long id;
+    private AiJobType jobType;
+    private AiJobStatus status;
+    private String params;
+    // ID of the produced insight or trend analysis once DONE
+    private Long resultId;
+    private String error;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
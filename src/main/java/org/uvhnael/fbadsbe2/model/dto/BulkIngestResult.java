@@ -0,0 +1,38 @@
+package org.uvhnael.fbadsbe2.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkIngestResult {
+    private int total;
+    private int created;
+    private int updated;
+    private int unchanged;
+    private int failed;
+    private List<ItemResult> items;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ItemResult {
+        private int index;
+        private String adArchiveId;
+        private ItemStatus status;
+        private String error;
+    }
+
+    public enum ItemStatus {
+        CREATED,
+        UPDATED,
+        UNCHANGED,
+        FAILED
+    }
+}
@@ -13,4 +13,6 @@ public class ContentGenerateRequest {
     private String length;
     private Boolean includeHashtags;
     private Boolean includeCTA;
+    // Skip the Gemini response cache and get a new variant for an identical request
+    private Boolean fresh;
 }
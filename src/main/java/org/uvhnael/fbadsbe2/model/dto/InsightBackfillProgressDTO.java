@@ -0,0 +1,40 @@
+package org.uvhnael.fbadsbe2.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InsightBackfillProgressDTO {
+    private Long jobId;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private String status;
+    private int totalWeeks;
+    private int done;
+    private int skipped;
+    private int failed;
+    private int pending;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private List<WeekProgress> weeks;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class WeekProgress {
+        private LocalDate weekStart;
+        private LocalDate weekEnd;
+        private String status;
+        private Long insightId;
+        private String error;
+    }
+}
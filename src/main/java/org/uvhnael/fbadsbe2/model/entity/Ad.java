@@ -1,7 +1,9 @@
 package org.uvhnael.fbadsbe2.model.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.*;
+import org.uvhnael.fbadsbe2.utils.Util;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -13,8 +15,14 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @Builder
 public class Ad {
+
+    // IDs are handed out in blocks of this size from id_sequences (also used by the JDBC bulk upsert)
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "ads_id")
+    @TableGenerator(name = "ads_id", table = "id_sequences", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "ads", allocationSize = Ad.ID_ALLOCATION_SIZE)
     private Long id;
 
     @Column(name = "ad_archive_id")
@@ -34,4 +42,19 @@ public class Ad {
     private LocalDate timeCreated;
 
     private LocalDateTime scrapedAt;
+
+    // SHA-256 of the last ingested payload, used to skip no-op re-ingests
+    private String contentHash;
+
+    private LocalDateTime lastSeenAt;
+
+    // Caption folded by Util.foldVietnamese, backs the FULLTEXT caption search
+    @JsonIgnore
+    private String captionSearch;
+
+    @PrePersist
+    @PreUpdate
+    void foldCaption() {
+        captionSearch = Util.foldVietnamese(caption);
+    }
 }
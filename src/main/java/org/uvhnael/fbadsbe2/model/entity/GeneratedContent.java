@@ -13,7 +13,9 @@ import java.time.LocalDateTime;
 @Builder
 public class GeneratedContent {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "generated_content_id")
+    @TableGenerator(name = "generated_content_id", table = "id_sequences", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "generated_content", allocationSize = 50)
     private Long id;
 
     private String title;
@@ -14,7 +14,9 @@ import java.time.LocalDateTime;
 @Builder
 public class Insight {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "insights_id")
+    @TableGenerator(name = "insights_id", table = "id_sequences", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "insights", allocationSize = 50)
     private Long id;
 
     private LocalDate reportDate;
@@ -11,7 +11,9 @@ import lombok.*;
 @Builder
 public class Keyword {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "keywords_id")
+    @TableGenerator(name = "keywords_id", table = "id_sequences", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "keywords", allocationSize = 50)
     private Long id;
 
     private Long insightId;
@@ -13,7 +13,9 @@ import java.time.LocalDateTime;
 @Builder
 public class PublishHistory {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "publish_history_id")
+    @TableGenerator(name = "publish_history_id", table = "id_sequences", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "publish_history", allocationSize = 50)
     private Long id;
 
     private Long scheduledPostId;
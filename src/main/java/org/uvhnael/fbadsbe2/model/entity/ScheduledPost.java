@@ -13,7 +13,9 @@ import java.time.LocalDateTime;
 @Builder
 public class ScheduledPost {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "scheduled_posts_id")
+    @TableGenerator(name = "scheduled_posts_id", table = "id_sequences", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "scheduled_posts", allocationSize = 50)
     private Long id;
 
     private Long contentId;
@@ -15,7 +15,9 @@ import java.time.LocalDateTime;
 @Builder
 public class TrendAnalysis {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "trend_analysis_id")
+    @TableGenerator(name = "trend_analysis_id", table = "id_sequences", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "trend_analysis", allocationSize = 50)
     private Long id;
 
     private LocalDate analysisDate;
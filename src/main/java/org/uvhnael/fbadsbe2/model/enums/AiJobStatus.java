@@ -0,0 +1,8 @@
+package org.uvhnael.fbadsbe2.model.enums;
+
+public enum AiJobStatus {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED
+}
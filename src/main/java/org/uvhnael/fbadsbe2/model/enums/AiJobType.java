@@ -0,0 +1,6 @@
+package org.uvhnael.fbadsbe2.model.enums;
+
+public enum AiJobType {
+    INSIGHT,
+    TREND_ANALYSIS
+}
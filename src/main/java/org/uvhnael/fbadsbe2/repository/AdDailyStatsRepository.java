@@ -0,0 +1,153 @@
+package org.uvhnael.fbadsbe2.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JDBC access to the ad_daily_stats rollup (no entity: rows are only ever adjusted by deltas)
+ */
+@Repository
+@RequiredArgsConstructor
+public class AdDailyStatsRepository {
+
+    // Stored in place of a missing time_created, outside any real date range
+    public static final LocalDate NO_DATE = LocalDate.of(1000, 1, 1);
+
+    private static final int MAX_ROWS_PER_STATEMENT = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Rollup key; null dimensions are normalized to '' (and a null day to NO_DATE)
+     */
+    public record Key(LocalDate day, String typeAds, String status, String pageName) {
+        public static Key of(LocalDate day, String typeAds, String status, String pageName) {
+            return new Key(day != null ? day : NO_DATE, typeAds != null ? typeAds : "",
+                    status != null ? status : "", pageName != null ? pageName : "");
+        }
+    }
+
+    /**
+     * Add the deltas to their rows with multi-row upserts (500 rows per statement)
+     */
+    public void applyDeltas(Map<Key, Long> deltas) {
+        List<Map.Entry<Key, Long>> rows = deltas.entrySet().stream()
+                .filter(delta -> delta.getValue() != 0)
+                .toList();
+
+        for (int from = 0; from < rows.size(); from += MAX_ROWS_PER_STATEMENT) {
+            List<Map.Entry<Key, Long>> chunk = rows.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, rows.size()));
+
+            StringBuilder sql = new StringBuilder("INSERT INTO ad_daily_stats (stat_date, type_ads, status, page_name, ad_count) VALUES ");
+            List<Object> args = new ArrayList<>(chunk.size() * 5);
+            for (Map.Entry<Key, Long> delta : chunk) {
+                if (!args.isEmpty()) {
+                    sql.append(", ");
+                }
+                sql.append("(?, ?, ?, ?, ?)");
+                Key key = delta.getKey();
+                args.add(key.day());
+                args.add(key.typeAds());
+                args.add(key.status());
+                args.add(key.pageName());
+                args.add(delta.getValue());
+            }
+            sql.append(" ON DUPLICATE KEY UPDATE ad_count = ad_count + VALUES(ad_count)");
+            jdbcTemplate.update(sql.toString(), args.toArray());
+        }
+    }
+
+    /**
+     * Drop rows that went down to zero
+     */
+    public int deleteEmpty() {
+        return jdbcTemplate.update("DELETE FROM ad_daily_stats WHERE ad_count = 0");
+    }
+
+    /**
+     * Totals by type and status, with the part that falls within [recentFrom, recentTo]
+     * Each row: type_ads, status, total count, count in range
+     */
+    public List<Object[]> sumByTypeAndStatus(LocalDate recentFrom, LocalDate recentTo) {
+        String sql = """
+                SELECT type_ads, status, SUM(ad_count),
+                       SUM(CASE WHEN stat_date BETWEEN ? AND ? THEN ad_count ELSE 0 END)
+                FROM ad_daily_stats
+                GROUP BY type_ads, status
+                """;
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new Object[]{
+                rs.getString(1), rs.getString(2), rs.getLong(3), rs.getLong(4)}, recentFrom, recentTo);
+    }
+
+    /**
+     * Count by type for days within [startDate, endDate]
+     */
+    public Map<String, Long> sumByType(LocalDate startDate, LocalDate endDate) {
+        Map<String, Long> counts = new HashMap<>();
+        jdbcTemplate.query("SELECT type_ads, SUM(ad_count) FROM ad_daily_stats WHERE stat_date BETWEEN ? AND ? GROUP BY type_ads",
+                rs -> {
+                    counts.put(rs.getString(1), rs.getLong(2));
+                }, startDate, endDate);
+        return counts;
+    }
+
+    /**
+     * Count by type and weekday for days within [startDate, endDate]
+     */
+    public List<TypeDayCount> sumByTypeAndDayOfWeek(LocalDate startDate, LocalDate endDate) {
+        String sql = """
+                SELECT type_ads, DAYOFWEEK(stat_date) AS day_of_week, SUM(ad_count) AS ad_count
+                FROM ad_daily_stats
+                WHERE stat_date BETWEEN ? AND ?
+                GROUP BY type_ads, DAYOFWEEK(stat_date)
+                """;
+        // DAYOFWEEK is 1 = Sunday .. 7 = Saturday
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new TypeDayCount(
+                rs.getString("type_ads"),
+                DayOfWeek.of((rs.getInt("day_of_week") + 5) % 7 + 1),
+                rs.getLong("ad_count")), startDate, endDate);
+    }
+
+    /**
+     * How many ads of a type were created on a weekday
+     */
+    public record TypeDayCount(String typeAds, DayOfWeek dayOfWeek, long count) {
+    }
+
+    /**
+     * Keys whose rollup count differs from the count in the ads table, as actual - rolled up.
+     * Both tables are read by one statement, so they are compared as of the same moment.
+     */
+    public Map<Key, Long> findDrift() {
+        String sql = """
+                SELECT stat_date, type_ads, status, page_name, SUM(actual) - SUM(rolled_up)
+                FROM (
+                    SELECT COALESCE(time_created, '1000-01-01') AS stat_date, COALESCE(type_ads, '') AS type_ads,
+                           COALESCE(status, '') AS status, COALESCE(page_name, '') AS page_name,
+                           COUNT(*) AS actual, 0 AS rolled_up
+                    FROM ads
+                    GROUP BY COALESCE(time_created, '1000-01-01'), COALESCE(type_ads, ''),
+                             COALESCE(status, ''), COALESCE(page_name, '')
+                    UNION ALL
+                    SELECT stat_date, type_ads, status, page_name, 0, ad_count
+                    FROM ad_daily_stats
+                ) counts
+                GROUP BY stat_date, type_ads, status, page_name
+                HAVING SUM(actual) <> SUM(rolled_up)
+                """;
+        Map<Key, Long> drift = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            drift.put(new Key(rs.getObject(1, LocalDate.class), rs.getString(2), rs.getString(3), rs.getString(4)),
+                    rs.getLong(5));
+        });
+        return drift;
+    }
+}
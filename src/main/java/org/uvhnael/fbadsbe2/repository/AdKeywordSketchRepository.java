@@ -0,0 +1,121 @@
+package org.uvhnael.fbadsbe2.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * JDBC access to the ad_daily_keyword_sketch table (one row per day, replaced on rebuild).
+ * A day is dirty while its dirty_version is ahead of the version its stored sketch was built at.
+ */
+@Repository
+@RequiredArgsConstructor
+public class AdKeywordSketchRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * One stored day; keywords is the encoded KeywordSketch
+     */
+    public record DaySketch(LocalDate day, long captionCount, long ctaCount, long tokenTotal,
+                            long keywordFloor, String keywords) {
+    }
+
+    /**
+     * Store a rebuilt day; builtVersion is the dirty_version read before its captions were scanned
+     */
+    public void save(DaySketch sketch, long builtVersion) {
+        String sql = """
+                INSERT INTO ad_daily_keyword_sketch (stat_date, caption_count, cta_count, token_total, keyword_floor, keywords,
+                                                     built_at, built_version)
+                VALUES (?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP, ?)
+                ON DUPLICATE KEY UPDATE
+                    caption_count = VALUES(caption_count),
+                    cta_count = VALUES(cta_count),
+                    token_total = VALUES(token_total),
+                    keyword_floor = VALUES(keyword_floor),
+                    keywords = VALUES(keywords),
+                    built_at = VALUES(built_at),
+                    built_version = GREATEST(built_version, VALUES(built_version))
+                """;
+        jdbcTemplate.update(sql, sketch.day(), sketch.captionCount(), sketch.ctaCount(), sketch.tokenTotal(),
+                sketch.keywordFloor(), sketch.keywords(), builtVersion);
+    }
+
+    /**
+     * Mark days for a rebuild in the caller's transaction, creating an empty row for a day that
+     * has none. Days are locked in date order so concurrent writers cannot deadlock on them.
+     */
+    public void markDirty(Collection<LocalDate> days) {
+        String sql = """
+                INSERT INTO ad_daily_keyword_sketch (stat_date, keywords, dirty_version)
+                VALUES (?, '', 1)
+                ON DUPLICATE KEY UPDATE dirty_version = dirty_version + 1
+                """;
+        List<Object[]> args = days.stream().distinct().sorted().map(day -> new Object[] {day}).toList();
+        jdbcTemplate.batchUpdate(sql, args);
+    }
+
+    /**
+     * The day's current dirty_version, 0 if it has no row
+     */
+    public long findDirtyVersion(LocalDate day) {
+        List<Long> versions = jdbcTemplate.queryForList(
+                "SELECT dirty_version FROM ad_daily_keyword_sketch WHERE stat_date = ?", Long.class, day);
+        return versions.isEmpty() ? 0 : versions.get(0);
+    }
+
+    /**
+     * Days written to since their sketch was built
+     */
+    public List<LocalDate> findDirtyDays() {
+        return jdbcTemplate.queryForList("""
+                SELECT stat_date FROM ad_daily_keyword_sketch
+                WHERE dirty_version > built_version
+                ORDER BY stat_date
+                """, LocalDate.class);
+    }
+
+    /**
+     * Same, within [startDate, endDate]
+     */
+    public List<LocalDate> findDirtyDays(LocalDate startDate, LocalDate endDate) {
+        return jdbcTemplate.queryForList("""
+                SELECT stat_date FROM ad_daily_keyword_sketch
+                WHERE stat_date BETWEEN ? AND ? AND dirty_version > built_version
+                ORDER BY stat_date
+                """, LocalDate.class, startDate, endDate);
+    }
+
+    /**
+     * Stream the stored days within [startDate, endDate]
+     */
+    public void forEachBetween(LocalDate startDate, LocalDate endDate, Consumer<DaySketch> consumer) {
+        jdbcTemplate.query("""
+                SELECT stat_date, caption_count, cta_count, token_total, keyword_floor, keywords
+                FROM ad_daily_keyword_sketch
+                WHERE stat_date BETWEEN ? AND ?
+                """, rs -> {
+            consumer.accept(new DaySketch(rs.getObject(1, LocalDate.class), rs.getLong(2), rs.getLong(3),
+                    rs.getLong(4), rs.getLong(5), rs.getString(6)));
+        }, startDate, endDate);
+    }
+
+    /**
+     * Days that have ads but no sketch yet
+     */
+    public List<LocalDate> findMissingDays() {
+        return jdbcTemplate.queryForList("""
+                SELECT DISTINCT a.time_created
+                FROM ads a
+                LEFT JOIN ad_daily_keyword_sketch s ON s.stat_date = a.time_created
+                WHERE a.time_created IS NOT NULL AND s.stat_date IS NULL
+                ORDER BY a.time_created
+                """, LocalDate.class);
+    }
+}
@@ -9,7 +9,7 @@ import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 
-public interface AdsRepository extends JpaRepository<Ad, Long> {
+public interface AdsRepository extends JpaRepository<Ad, Long>, AdsRepositoryCustom {
 
     // Find by ad archive ID (unique identifier from Facebook)
     Optional<Ad> findByAdArchiveId(String adArchiveId);
@@ -0,0 +1,70 @@
+package org.uvhnael.fbadsbe2.repository;
+
+import org.uvhnael.fbadsbe2.model.dto.AdDTO;
+import org.uvhnael.fbadsbe2.model.dto.AdSearchHitDTO;
+import org.uvhnael.fbadsbe2.model.dto.AdSummaryDTO;
+import org.uvhnael.fbadsbe2.model.entity.Ad;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Set-based operations on the ads table that Spring Data cannot derive
+ */
+public interface AdsRepositoryCustom {
+
+    // Archive IDs from the given collection that already exist (single IN query)
+    Set<String> findExistingArchiveIds(Collection<String> adArchiveIds);
+
+    // Stored content hash and stats dimensions by archive ID for the IDs that exist (single IN query)
+    Map<String, IngestState> findIngestStates(Collection<String> adArchiveIds);
+
+    // Set last_seen_at for the given archive IDs (single UPDATE ... IN)
+    int touchLastSeen(Collection<String> adArchiveIds, LocalDateTime lastSeenAt);
+
+    // One keyset page of summaries ordered by (scraped_at, id) DESC; null filters and cursor are ignored
+    List<AdSummaryDTO> findSummaries(String typeAds, String status, String pageName,
+                                     LocalDateTime afterScrapedAt, Long afterId, int limit);
+
+    // Stream full rows matching the filters over a forward-only cursor, in no particular order
+    void forEachAd(LocalDate startDate, LocalDate endDate, String typeAds, String status, String pageName,
+                   Consumer<AdDTO> consumer);
+
+    // Stream the non-empty captions of ads created in the range over a forward-only cursor
+    void forEachCaption(LocalDate startDate, LocalDate endDate, Consumer<String> consumer);
+
+    // Same, with type and page, newest first (time_created, id DESC)
+    void forEachCaptionRow(LocalDate startDate, LocalDate endDate, Consumer<CaptionRow> consumer);
+
+    // Ranked FULLTEXT search over the folded caption (query in MySQL boolean mode syntax)
+    List<AdSearchHitDTO> searchCaptions(String booleanQuery, int offset, int limit);
+
+    // Fill caption_search for the next limit unfilled rows with id > afterId; returns the last id filled, or null when done
+    Long backfillCaptionSearch(long afterId, int limit);
+
+    // Stream every archive ID to the consumer without materializing the full list
+    void forEachArchiveId(Consumer<String> consumer);
+
+    // Same, for ads scraped at or after the given time (range over idx_ads_scraped_id)
+    void forEachArchiveIdScrapedSince(LocalDateTime since, Consumer<String> consumer);
+
+    // Multi-row INSERT ... ON DUPLICATE KEY UPDATE keyed on ad_archive_id (single statement)
+    int upsertAll(List<Ad> ads);
+
+    /**
+     * What ingestion needs to know about a stored ad: its fingerprint and rollup dimensions
+     */
+    record IngestState(String contentHash, LocalDate timeCreated, String typeAds, String status, String pageName) {
+    }
+
+    /**
+     * An ad's caption with the dimensions prompt sampling stratifies by
+     */
+    record CaptionRow(String typeAds, String pageName, String caption) {
+    }
+}
@@ -0,0 +1,348 @@
+package org.uvhnael.fbadsbe2.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.uvhnael.fbadsbe2.model.dto.AdDTO;
+import org.uvhnael.fbadsbe2.model.dto.AdSearchHitDTO;
+import org.uvhnael.fbadsbe2.model.dto.AdSummaryDTO;
+import org.uvhnael.fbadsbe2.model.entity.Ad;
+import org.uvhnael.fbadsbe2.utils.Util;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * JDBC implementation of {@link AdsRepositoryCustom}.
+ * Each method issues a fixed number of statements (one, or two for the upsert), so callers
+ * control the round-trips by chunking.
+ */
+@RequiredArgsConstructor
+public class AdsRepositoryImpl implements AdsRepositoryCustom {
+
+    private static final String INSERT_COLUMNS =
+            "id, ad_archive_id, page_name, caption, type_ads, url_ads_post, ai_analyze, img_url, video_url, status, time_created, scraped_at, content_hash, caption_search";
+
+    private static final String ROW_PLACEHOLDERS = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Reserve a block of IDs from the same id_sequences row Hibernate allocates from
+    private static final String RESERVE_IDS =
+            "UPDATE id_sequences SET next_val = LAST_INSERT_ID(next_val + ?) WHERE sequence_name = 'ads'";
+
+    // Null columns in the incoming row keep the stored value, same as AdsService.updateExistingAd.
+    // content_hash always takes the incoming fingerprint.
+    private static final String ON_DUPLICATE_KEY_UPDATE = """
+             ON DUPLICATE KEY UPDATE
+                page_name = COALESCE(VALUES(page_name), page_name),
+                caption = COALESCE(VALUES(caption), caption),
+                type_ads = COALESCE(VALUES(type_ads), type_ads),
+                url_ads_post = COALESCE(VALUES(url_ads_post), url_ads_post),
+                ai_analyze = COALESCE(VALUES(ai_analyze), ai_analyze),
+                img_url = COALESCE(VALUES(img_url), img_url),
+                video_url = COALESCE(VALUES(video_url), video_url),
+                status = COALESCE(VALUES(status), status),
+                time_created = COALESCE(VALUES(time_created), time_created),
+                scraped_at = VALUES(scraped_at),
+                content_hash = VALUES(content_hash),
+                caption_search = COALESCE(VALUES(caption_search), caption_search)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Integer.MIN_VALUE makes MySQL Connector/J stream rows one by one instead of buffering the result
+    @Value("${ads.jdbc.stream-fetch-size:-2147483648}")
+    private int streamFetchSize;
+
+    @Override
+    public Set<String> findExistingArchiveIds(Collection<String> adArchiveIds) {
+        if (adArchiveIds.isEmpty()) {
+            return new HashSet<>();
+        }
+
+        String sql = "SELECT ad_archive_id FROM ads WHERE ad_archive_id IN ("
+                + placeholders(adArchiveIds.size()) + ")";
+
+        return new HashSet<>(jdbcTemplate.queryForList(sql, String.class, adArchiveIds.toArray()));
+    }
+
+    @Override
+    public Map<String, IngestState> findIngestStates(Collection<String> adArchiveIds) {
+        Map<String, IngestState> states = new HashMap<>();
+        if (adArchiveIds.isEmpty()) {
+            return states;
+        }
+
+        String sql = "SELECT ad_archive_id, content_hash, time_created, type_ads, status, page_name FROM ads WHERE ad_archive_id IN ("
+                + placeholders(adArchiveIds.size()) + ")";
+
+        jdbcTemplate.query(sql, rs -> {
+            states.put(rs.getString(1), new IngestState(rs.getString(2), rs.getObject(3, LocalDate.class),
+                    rs.getString(4), rs.getString(5), rs.getString(6)));
+        }, adArchiveIds.toArray());
+        return states;
+    }
+
+    @Override
+    public int touchLastSeen(Collection<String> adArchiveIds, LocalDateTime lastSeenAt) {
+        if (adArchiveIds.isEmpty()) {
+            return 0;
+        }
+
+        String sql = "UPDATE ads SET last_seen_at = ? WHERE ad_archive_id IN ("
+                + placeholders(adArchiveIds.size()) + ")";
+
+        List<Object> args = new ArrayList<>(adArchiveIds.size() + 1);
+        args.add(lastSeenAt);
+        args.addAll(adArchiveIds);
+        return jdbcTemplate.update(sql, args.toArray());
+    }
+
+    @Override
+    public List<AdSummaryDTO> findSummaries(String typeAds, String status, String pageName,
+                                            LocalDateTime afterScrapedAt, Long afterId, int limit) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT id, ad_archive_id, page_name, type_ads, status, time_created, scraped_at FROM ads WHERE 1 = 1");
+        List<Object> args = new ArrayList<>();
+
+        appendFilters(sql, args, typeAds, status, pageName);
+        if (afterScrapedAt != null && afterId != null) {
+            // Expanded form of (scraped_at, id) < (?, ?) so MySQL can use it as an index range
+            sql.append(" AND (scraped_at < ? OR (scraped_at = ? AND id < ?))");
+            args.add(afterScrapedAt);
+            args.add(afterScrapedAt);
+            args.add(afterId);
+        }
+        sql.append(" ORDER BY scraped_at DESC, id DESC LIMIT ?");
+        args.add(limit);
+
+        return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> AdSummaryDTO.builder()
+                .id(rs.getLong("id"))
+                .adArchiveId(rs.getString("ad_archive_id"))
+                .pageName(rs.getString("page_name"))
+                .typeAds(rs.getString("type_ads"))
+                .status(rs.getString("status"))
+                .timeCreated(rs.getObject("time_created", LocalDate.class))
+                .scrapedAt(rs.getObject("scraped_at", LocalDateTime.class))
+                .build(), args.toArray());
+    }
+
+    @Override
+    public void forEachAd(LocalDate startDate, LocalDate endDate, String typeAds, String status, String pageName,
+                          Consumer<AdDTO> consumer) {
+        StringBuilder sql = new StringBuilder("SELECT id, ad_archive_id, page_name, caption, type_ads, url_ads_post, "
+                + "ai_analyze, img_url, video_url, status, time_created, scraped_at FROM ads WHERE 1 = 1");
+        List<Object> args = new ArrayList<>();
+
+        appendFilters(sql, args, typeAds, status, pageName);
+        if (startDate != null) {
+            sql.append(" AND time_created >= ?");
+            args.add(startDate);
+        }
+        if (endDate != null) {
+            sql.append(" AND time_created <= ?");
+            args.add(endDate);
+        }
+        // No ORDER BY: sorting the whole match would be a filesort that holds back the first row
+        // until every row is read; rows come in the order of whichever index serves the filters
+
+        streamingJdbcTemplate().query(sql.toString(), rs -> {
+            consumer.accept(AdDTO.builder()
+                    .id(rs.getLong("id"))
+                    .adArchiveId(rs.getString("ad_archive_id"))
+                    .pageName(rs.getString("page_name"))
+                    .caption(rs.getString("caption"))
+                    .typeAds(rs.getString("type_ads"))
+                    .urlAdsPost(rs.getString("url_ads_post"))
+                    .aiAnalyze(rs.getString("ai_analyze"))
+                    .imgUrl(rs.getString("img_url"))
+                    .videoUrl(rs.getString("video_url"))
+                    .status(rs.getString("status"))
+                    .timeCreated(rs.getObject("time_created", LocalDate.class))
+                    .scrapedAt(rs.getObject("scraped_at", LocalDateTime.class))
+                    .build());
+        }, args.toArray());
+    }
+
+    @Override
+    public void forEachCaption(LocalDate startDate, LocalDate endDate, Consumer<String> consumer) {
+        streamingJdbcTemplate().query(
+                "SELECT caption FROM ads WHERE time_created BETWEEN ? AND ? AND caption IS NOT NULL AND caption <> ''",
+                rs -> {
+                    consumer.accept(rs.getString(1));
+                }, startDate, endDate);
+    }
+
+    @Override
+    public void forEachCaptionRow(LocalDate startDate, LocalDate endDate, Consumer<CaptionRow> consumer) {
+        streamingJdbcTemplate().query("""
+                SELECT type_ads, page_name, caption
+                FROM ads
+                WHERE time_created BETWEEN ? AND ? AND caption IS NOT NULL AND caption <> ''
+                ORDER BY time_created DESC, id DESC
+                """, rs -> {
+            consumer.accept(new CaptionRow(rs.getString(1), rs.getString(2), rs.getString(3)));
+        }, startDate, endDate);
+    }
+
+    @Override
+    public List<AdSearchHitDTO> searchCaptions(String booleanQuery, int offset, int limit) {
+        String sql = """
+                SELECT id, ad_archive_id, page_name, caption, type_ads, status, scraped_at,
+                       MATCH(caption_search) AGAINST (? IN BOOLEAN MODE) AS score
+                FROM ads
+                WHERE MATCH(caption_search) AGAINST (? IN BOOLEAN MODE)
+                ORDER BY score DESC, id DESC
+                LIMIT ? OFFSET ?
+                """;
+
+        return jdbcTemplate.query(sql, (rs, rowNum) -> AdSearchHitDTO.builder()
+                .id(rs.getLong("id"))
+                .adArchiveId(rs.getString("ad_archive_id"))
+                .pageName(rs.getString("page_name"))
+                .caption(rs.getString("caption"))
+                .typeAds(rs.getString("type_ads"))
+                .status(rs.getString("status"))
+                .scrapedAt(rs.getObject("scraped_at", LocalDateTime.class))
+                .score(rs.getDouble("score"))
+                .build(), booleanQuery, booleanQuery, limit, offset);
+    }
+
+    @Override
+    public Long backfillCaptionSearch(long afterId, int limit) {
+        List<Object[]> updates = new ArrayList<>(limit);
+        long[] lastId = {afterId};
+
+        String sql = "SELECT id, caption FROM ads WHERE id > ? AND caption_search IS NULL AND caption IS NOT NULL "
+                + "ORDER BY id LIMIT ?";
+        jdbcTemplate.query(sql, rs -> {
+            lastId[0] = rs.getLong(1);
+            updates.add(new Object[]{Util.foldVietnamese(rs.getString(2)), lastId[0]});
+        }, afterId, limit);
+
+        if (lastId[0] == afterId) {
+            return null;
+        }
+        jdbcTemplate.batchUpdate("UPDATE ads SET caption_search = ? WHERE id = ? AND caption_search IS NULL", updates);
+        return lastId[0];
+    }
+
+    @Override
+    public void forEachArchiveId(Consumer<String> consumer) {
+        streamingJdbcTemplate().query("SELECT ad_archive_id FROM ads", rs -> {
+            consumer.accept(rs.getString(1));
+        });
+    }
+
+    @Override
+    public void forEachArchiveIdScrapedSince(LocalDateTime since, Consumer<String> consumer) {
+        streamingJdbcTemplate().query("SELECT ad_archive_id FROM ads WHERE scraped_at >= ?", rs -> {
+            consumer.accept(rs.getString(1));
+        }, since);
+    }
+
+    @Override
+    public int upsertAll(List<Ad> ads) {
+        if (ads.isEmpty()) {
+            return 0;
+        }
+
+        StringBuilder sql = new StringBuilder(128 + ads.size() * (ROW_PLACEHOLDERS.length() + 2) + ON_DUPLICATE_KEY_UPDATE.length());
+        sql.append("INSERT INTO ads (").append(INSERT_COLUMNS).append(") VALUES ");
+
+        // Rows that turn out to be updates keep their stored id; their reserved id is just skipped
+        long nextId = reserveIds(ads.size());
+
+        List<Object> args = new ArrayList<>(ads.size() * 14);
+        for (int i = 0; i < ads.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(ROW_PLACEHOLDERS);
+
+            Ad ad = ads.get(i);
+            args.add(nextId++);
+            args.add(ad.getAdArchiveId());
+            args.add(ad.getPageName());
+            args.add(ad.getCaption());
+            args.add(ad.getTypeAds());
+            args.add(ad.getUrlAdsPost());
+            args.add(ad.getAiAnalyze());
+            args.add(ad.getImgUrl());
+            args.add(ad.getVideoUrl());
+            args.add(ad.getStatus());
+            args.add(ad.getTimeCreated());
+            args.add(ad.getScrapedAt());
+            args.add(ad.getContentHash());
+            args.add(Util.foldVietnamese(ad.getCaption()));
+        }
+        sql.append(ON_DUPLICATE_KEY_UPDATE);
+
+        return jdbcTemplate.update(sql.toString(), args.toArray());
+    }
+
+    /**
+     * Reserve count IDs and return the first one.
+     * A stored next_val of N means Hibernate's pooled optimizer will next use (N - allocationSize, N],
+     * so the block taken here is the start of that range and the row moves up by count.
+     */
+    private long reserveIds(int count) {
+        return jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try (PreparedStatement update = connection.prepareStatement(RESERVE_IDS)) {
+                update.setInt(1, count);
+                if (update.executeUpdate() == 0) {
+                    throw new IllegalStateException("Missing 'ads' row in id_sequences");
+                }
+            }
+            try (Statement select = connection.createStatement();
+                 ResultSet rs = select.executeQuery("SELECT LAST_INSERT_ID()")) {
+                rs.next();
+                return rs.getLong(1) - count - Ad.ID_ALLOCATION_SIZE + 1;
+            }
+        });
+    }
+
+    private static void appendFilters(StringBuilder sql, List<Object> args,
+                                      String typeAds, String status, String pageName) {
+        if (typeAds != null) {
+            sql.append(" AND type_ads = ?");
+            args.add(typeAds);
+        }
+        if (status != null) {
+            sql.append(" AND status = ?");
+            args.add(status);
+        }
+        if (pageName != null) {
+            sql.append(" AND page_name = ?");
+            args.add(pageName);
+        }
+    }
+
+    private JdbcTemplate streamingJdbcTemplate() {
+        JdbcTemplate template = new JdbcTemplate(jdbcTemplate.getDataSource());
+        template.setFetchSize(streamFetchSize);
+        return template;
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder(count * 3);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('?');
+        }
+        return sb.toString();
+    }
+}
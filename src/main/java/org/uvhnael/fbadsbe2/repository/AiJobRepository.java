@@ -0,0 +1,134 @@
+package org.uvhnael.fbadsbe2.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+import org.uvhnael.fbadsbe2.model.dto.AiJobDTO;
+import org.uvhnael.fbadsbe2.model.enums.AiJobStatus;
+import org.uvhnael.fbadsbe2.model.enums.AiJobType;
+
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * JDBC access to the ai_jobs table
+ */
+@Repository
+@RequiredArgsConstructor
+public class AiJobRepository {
+
+    private static final RowMapper<AiJobDTO> ROW_MAPPER = (rs, rowNum) -> AiJobDTO.builder()
+            .id(rs.getLong("id"))
+            .jobType(AiJobType.valueOf(rs.getString("job_type")))
+            .status(AiJobStatus.valueOf(rs.getString("status")))
+            .params(rs.getString("params"))
+            .resultId(rs.getObject("result_id", Long.class))
+            .error(rs.getString("error"))
+            .createdAt(rs.getObject("created_at", LocalDateTime.class))
+            .startedAt(rs.getObject("started_at", LocalDateTime.class))
+            .finishedAt(rs.getObject("finished_at", LocalDateTime.class))
+            .build();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Insert a QUEUED job held by the given owner; returns its id
+     */
+    public long create(AiJobType jobType, String params, String owner) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement("""
+                    INSERT INTO ai_jobs (job_type, status, params, owner, heartbeat_at)
+                    VALUES (?, ?, ?, ?, CURRENT_TIMESTAMP)
+                    """, new String[] {"id"});
+            ps.setString(1, jobType.name());
+            ps.setString(2, AiJobStatus.QUEUED.name());
+            ps.setString(3, params);
+            ps.setString(4, owner);
+            return ps;
+        }, keyHolder);
+        return keyHolder.getKey().longValue();
+    }
+
+    public Optional<AiJobDTO> findById(long id) {
+        return jdbcTemplate.query("SELECT * FROM ai_jobs WHERE id = ?", ROW_MAPPER, id).stream().findFirst();
+    }
+
+    /**
+     * QUEUED -> RUNNING; false when the job is no longer queued (e.g. failed as orphaned)
+     */
+    public boolean markRunning(long id, String owner) {
+        return jdbcTemplate.update("""
+                UPDATE ai_jobs SET status = ?, started_at = CURRENT_TIMESTAMP, heartbeat_at = CURRENT_TIMESTAMP
+                WHERE id = ? AND owner = ? AND status = ?
+                """, AiJobStatus.RUNNING.name(), id, owner, AiJobStatus.QUEUED.name()) > 0;
+    }
+
+    /**
+     * RUNNING -> DONE; false when the job was failed in the meantime, which then stands
+     */
+    public boolean markDone(long id, String owner, Long resultId) {
+        return jdbcTemplate.update("""
+                UPDATE ai_jobs SET status = ?, result_id = ?, finished_at = CURRENT_TIMESTAMP
+                WHERE id = ? AND owner = ? AND status = ?
+                """, AiJobStatus.DONE.name(), resultId, id, owner, AiJobStatus.RUNNING.name()) > 0;
+    }
+
+    /**
+     * RUNNING -> FAILED; false when the job was already failed
+     */
+    public boolean markFailed(long id, String owner, String error) {
+        return jdbcTemplate.update("""
+                UPDATE ai_jobs SET status = ?, error = ?, finished_at = CURRENT_TIMESTAMP
+                WHERE id = ? AND owner = ? AND status = ?
+                """, AiJobStatus.FAILED.name(), error, id, owner, AiJobStatus.RUNNING.name()) > 0;
+    }
+
+    /**
+     * QUEUED -> FAILED for a job the executor would not take
+     */
+    public void markRejected(long id, String error) {
+        jdbcTemplate.update("""
+                UPDATE ai_jobs SET status = ?, error = ?, finished_at = CURRENT_TIMESTAMP
+                WHERE id = ? AND status = ?
+                """, AiJobStatus.FAILED.name(), error, id, AiJobStatus.QUEUED.name());
+    }
+
+    /**
+     * Refresh heartbeat_at of every unfinished job the owner holds; returns the number of rows
+     */
+    public int heartbeat(String owner) {
+        return jdbcTemplate.update("""
+                UPDATE ai_jobs SET heartbeat_at = CURRENT_TIMESTAMP
+                WHERE owner = ? AND status IN (?, ?)
+                """, owner, AiJobStatus.QUEUED.name(), AiJobStatus.RUNNING.name());
+    }
+
+    /**
+     * Fail jobs still QUEUED or RUNNING whose owner has not heartbeated for the given time (it
+     * is gone, e.g. the instance restarted); returns the number of rows
+     */
+    public int failOrphaned(long heartbeatTimeoutSeconds, String error) {
+        return jdbcTemplate.update("""
+                UPDATE ai_jobs SET status = ?, error = ?, finished_at = CURRENT_TIMESTAMP
+                WHERE status IN (?, ?)
+                  AND COALESCE(heartbeat_at, started_at, created_at) < TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP)
+                """, AiJobStatus.FAILED.name(), error, AiJobStatus.QUEUED.name(), AiJobStatus.RUNNING.name(),
+                -heartbeatTimeoutSeconds);
+    }
+
+    /**
+     * Fail jobs that have been RUNNING for longer than the given time, even though their owner
+     * is alive (e.g. stuck on a call); returns the number of rows
+     */
+    public int failOverdue(long maxRunSeconds, String error) {
+        return jdbcTemplate.update("""
+                UPDATE ai_jobs SET status = ?, error = ?, finished_at = CURRENT_TIMESTAMP
+                WHERE status = ? AND started_at < TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP)
+                """, AiJobStatus.FAILED.name(), error, AiJobStatus.RUNNING.name(), -maxRunSeconds);
+    }
+}
@@ -0,0 +1,148 @@
+package org.uvhnael.fbadsbe2.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * JDBC access to insight_backfill_jobs and their per-week checkpoint rows
+ */
+@Repository
+@RequiredArgsConstructor
+public class InsightBackfillRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public record Job(long id, LocalDate startDate, LocalDate endDate, String status,
+                      LocalDateTime createdAt, LocalDateTime updatedAt) {
+    }
+
+    public record Week(LocalDate weekStart, LocalDate weekEnd, String status, Long insightId, String error) {
+    }
+
+    /**
+     * Insert a job claimed by the owner and its weeks (all PENDING); returns the job id
+     */
+    public long createJob(LocalDate startDate, LocalDate endDate, String status,
+                          List<LocalDate[]> weeks, String weekStatus, String owner, long leaseSeconds) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement("""
+                    INSERT INTO insight_backfill_jobs (start_date, end_date, status, owner, lease_until)
+                    VALUES (?, ?, ?, ?, TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP))
+                    """, new String[] {"id"});
+            ps.setObject(1, startDate);
+            ps.setObject(2, endDate);
+            ps.setString(3, status);
+            ps.setString(4, owner);
+            ps.setLong(5, leaseSeconds);
+            return ps;
+        }, keyHolder);
+        long jobId = keyHolder.getKey().longValue();
+
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO insight_backfill_weeks (job_id, week_start, week_end, status) VALUES (?, ?, ?, ?)",
+                weeks, weeks.size(), (ps, week) -> {
+                    ps.setLong(1, jobId);
+                    ps.setObject(2, week[0]);
+                    ps.setObject(3, week[1]);
+                    ps.setString(4, weekStatus);
+                });
+        return jobId;
+    }
+
+    public Optional<Job> findJob(long jobId) {
+        return jdbcTemplate.query("""
+                SELECT id, start_date, end_date, status, created_at, updated_at
+                FROM insight_backfill_jobs
+                WHERE id = ?
+                """, (rs, rowNum) -> new Job(rs.getLong(1), rs.getObject(2, LocalDate.class),
+                rs.getObject(3, LocalDate.class), rs.getString(4),
+                rs.getObject(5, LocalDateTime.class), rs.getObject(6, LocalDateTime.class)), jobId)
+                .stream().findFirst();
+    }
+
+    public List<Long> findJobIdsByStatus(String status) {
+        return jdbcTemplate.queryForList("SELECT id FROM insight_backfill_jobs WHERE status = ? ORDER BY id",
+                Long.class, status);
+    }
+
+    public void updateJobStatus(long jobId, String status) {
+        jdbcTemplate.update("UPDATE insight_backfill_jobs SET status = ? WHERE id = ?", status, jobId);
+    }
+
+    /**
+     * Claim a job in the given status that has no live owner (or is already the owner's)
+     */
+    public boolean tryClaim(long jobId, String status, String owner, long leaseSeconds) {
+        return jdbcTemplate.update("""
+                UPDATE insight_backfill_jobs
+                SET owner = ?, lease_until = TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP)
+                WHERE id = ? AND status = ?
+                  AND (owner IS NULL OR owner = ? OR lease_until IS NULL OR lease_until < CURRENT_TIMESTAMP)
+                """, owner, leaseSeconds, jobId, status, owner) > 0;
+    }
+
+    /**
+     * Extend the owner's lease on a job; false if it has been taken over or finished
+     */
+    public boolean renewLease(long jobId, String owner, long leaseSeconds) {
+        return jdbcTemplate.update("""
+                UPDATE insight_backfill_jobs SET lease_until = TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP)
+                WHERE id = ? AND owner = ?
+                """, leaseSeconds, jobId, owner) > 0;
+    }
+
+    /**
+     * Give up the owner's claim on a job, so another instance can resume it right away
+     */
+    public void releaseLease(long jobId, String owner) {
+        jdbcTemplate.update("""
+                UPDATE insight_backfill_jobs SET owner = NULL, lease_until = NULL
+                WHERE id = ? AND owner = ?
+                """, jobId, owner);
+    }
+
+    /**
+     * Set the final status of a job the owner still holds and release it
+     */
+    public boolean finishJob(long jobId, String owner, String status) {
+        return jdbcTemplate.update("""
+                UPDATE insight_backfill_jobs SET status = ?, owner = NULL, lease_until = NULL
+                WHERE id = ? AND owner = ?
+                """, status, jobId, owner) > 0;
+    }
+
+    /**
+     * Weeks of a job in calendar order
+     */
+    public List<Week> findWeeks(long jobId) {
+        return jdbcTemplate.query("""
+                SELECT week_start, week_end, status, insight_id, error
+                FROM insight_backfill_weeks
+                WHERE job_id = ?
+                ORDER BY week_start
+                """, (rs, rowNum) -> new Week(rs.getObject(1, LocalDate.class), rs.getObject(2, LocalDate.class),
+                rs.getString(3), rs.getObject(4, Long.class), rs.getString(5)), jobId);
+    }
+
+    /**
+     * Record a week's outcome while the owner still holds the job; false if it does not
+     */
+    public boolean updateWeek(long jobId, String owner, LocalDate weekStart, String status, Long insightId, String error) {
+        return jdbcTemplate.update("""
+                UPDATE insight_backfill_weeks
+                SET status = ?, insight_id = ?, error = ?
+                WHERE job_id = ? AND week_start = ?
+                  AND EXISTS (SELECT 1 FROM insight_backfill_jobs WHERE id = ? AND owner = ?)
+                """, status, insightId, error, jobId, weekStart, jobId, owner) > 0;
+    }
+}
@@ -0,0 +1,82 @@
+package org.uvhnael.fbadsbe2.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * JDBC access to scheduled_job_runs. Claims are single statements (an INSERT, or an UPDATE
+ * guarded by the row's current state), so two instances can never both win the same slot.
+ * Lease times use the database clock.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ScheduledJobRunRepository {
+
+    public static final String RUNNING = "RUNNING";
+    public static final String SUCCEEDED = "SUCCEEDED";
+    public static final String FAILED = "FAILED";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Claim a slot nobody has touched yet; false if the row already exists
+     */
+    public boolean tryInsert(String jobName, LocalDateTime slot, String owner, long leaseSeconds) {
+        try {
+            jdbcTemplate.update("""
+                    INSERT INTO scheduled_job_runs (job_name, slot_time, status, owner, attempts, lease_until, started_at)
+                    VALUES (?, ?, ?, ?, 1, TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP), CURRENT_TIMESTAMP)
+                    """, jobName, slot, RUNNING, owner, leaseSeconds);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Claim a slot whose owner's lease expired, or that failed with attempts to spare
+     */
+    public boolean tryTakeOver(String jobName, LocalDateTime slot, String owner, long leaseSeconds, int maxAttempts) {
+        return jdbcTemplate.update("""
+                UPDATE scheduled_job_runs
+                SET status = ?, owner = ?, attempts = attempts + 1,
+                    lease_until = TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP),
+                    started_at = CURRENT_TIMESTAMP, finished_at = NULL, error = NULL
+                WHERE job_name = ? AND slot_time = ? AND attempts < ?
+                  AND ((status = ? AND lease_until < CURRENT_TIMESTAMP) OR status = ?)
+                """, RUNNING, owner, leaseSeconds, jobName, slot, maxAttempts, RUNNING, FAILED) > 0;
+    }
+
+    /**
+     * Extend the lease of a slot this owner is still running; false if it has been taken over
+     */
+    public boolean renewLease(String jobName, LocalDateTime slot, String owner, long leaseSeconds) {
+        return jdbcTemplate.update("""
+                UPDATE scheduled_job_runs
+                SET lease_until = TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP)
+                WHERE job_name = ? AND slot_time = ? AND owner = ? AND status = ?
+                """, leaseSeconds, jobName, slot, owner, RUNNING) > 0;
+    }
+
+    /**
+     * Record the outcome; ignored if another instance has taken the slot over meanwhile
+     */
+    public void finish(String jobName, LocalDateTime slot, String owner, String status, String error) {
+        jdbcTemplate.update("""
+                UPDATE scheduled_job_runs
+                SET status = ?, error = ?, finished_at = CURRENT_TIMESTAMP
+                WHERE job_name = ? AND slot_time = ? AND owner = ? AND status = ?
+                """, status, error, jobName, slot, owner, RUNNING);
+    }
+
+    public Optional<String> findStatus(String jobName, LocalDateTime slot) {
+        return jdbcTemplate.queryForList(
+                "SELECT status FROM scheduled_job_runs WHERE job_name = ? AND slot_time = ?",
+                String.class, jobName, slot).stream().findFirst();
+    }
+}
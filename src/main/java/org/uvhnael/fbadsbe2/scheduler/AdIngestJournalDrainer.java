@@ -0,0 +1,131 @@
+package org.uvhnael.fbadsbe2.scheduler;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.uvhnael.fbadsbe2.model.dto.AdDTO;
+import org.uvhnael.fbadsbe2.model.dto.BulkIngestResult;
+import org.uvhnael.fbadsbe2.service.AdIngestJournal;
+import org.uvhnael.fbadsbe2.service.AdsService;
+import org.uvhnael.fbadsbe2.utils.Util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Background drainer for the write-behind ingest journal.
+ * Pending records (including those left over from before a restart) are flushed to the ads
+ * table with the bulk upsert, which also coalesces repeated updates of the same archive ID.
+ * The drained offset only advances after a flush in which every record was written or
+ * dead-lettered, so a slow or failing-over database just delays the drain instead of losing data.
+ *
+ * A failed flush is retried with exponential backoff. Records are only dead-lettered when they
+ * fail on their own: ads without an archive ID at once, and records of a failed chunk once the
+ * batch has failed max-attempts times, after each was retried by itself and was rejected by the
+ * database. A retry that fails to reach the database (no connection, or a transient error such
+ * as a lock timeout) means it is down rather than the record being bad, so nothing is
+ * dead-lettered and the drainer keeps backing off.
+ */
+@Component
+@ConditionalOnProperty(name = "ads.write-behind.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class AdIngestJournalDrainer {
+
+    private final AdIngestJournal journal;
+    private final AdsService adsService;
+
+    @Value("${ads.write-behind.drain-batch-size:5000}")
+    private int drainBatchSize;
+
+    // Failed flushes of the same batch before its failing records are retried one by one
+    @Value("${ads.write-behind.max-attempts:20}")
+    private int maxAttempts;
+
+    @Value("${ads.write-behind.retry-backoff-ms:1000}")
+    private long retryBackoffMs;
+
+    @Value("${ads.write-behind.max-retry-backoff-ms:300000}")
+    private long maxRetryBackoffMs;
+
+    private int failedAttempts;
+    private long nextAttemptAt;
+
+    @Scheduled(fixedDelayString = "${ads.write-behind.drain-interval-ms:1000}")
+    public void drain() {
+        if (System.currentTimeMillis() < nextAttemptAt) {
+            return;
+        }
+
+        try {
+            AdIngestJournal.Batch batch;
+            while (!(batch = journal.readPending(drainBatchSize)).records().isEmpty()) {
+                List<AdDTO> records = batch.records();
+                BulkIngestResult result = adsService.bulkUpsertAds(records);
+
+                List<AdDTO> rejected = new ArrayList<>();
+                List<AdDTO> retry = new ArrayList<>();
+                for (BulkIngestResult.ItemResult item : result.getItems()) {
+                    if (item.getStatus() == BulkIngestResult.ItemStatus.FAILED) {
+                        (Util.isNullOrBlank(item.getAdArchiveId()) ? rejected : retry).add(records.get(item.getIndex()));
+                    }
+                }
+
+                if (!retry.isEmpty()) {
+                    List<AdDTO> failed = ++failedAttempts < maxAttempts ? null : isolateFailures(retry);
+                    if (failed == null) {
+                        backOff(result);
+                        return;
+                    }
+                    rejected.addAll(failed);
+                }
+
+                if (!rejected.isEmpty()) {
+                    log.error("Moving {} journaled ads that cannot be written to the dead-letter file", rejected.size());
+                    journal.deadLetter(rejected);
+                }
+
+                failedAttempts = 0;
+                nextAttemptAt = 0;
+                journal.markDrained(batch);
+                log.info("Drained {} journaled ads ({} created, {} updated, {} unchanged)",
+                        result.getTotal(), result.getCreated(), result.getUpdated(), result.getUnchanged());
+            }
+        } catch (Exception e) {
+            log.error("Error draining ingest journal: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Retry records one at a time; the ones the database rejects are returned, or null if it
+     * could not be reached
+     */
+    private List<AdDTO> isolateFailures(List<AdDTO> records) {
+        List<AdDTO> failed = new ArrayList<>();
+        for (AdDTO record : records) {
+            try {
+                adsService.upsertAd(record);
+            } catch (TransientDataAccessException | DataAccessResourceFailureException e) {
+                log.warn("Database unavailable while retrying journaled ad {}: {}", record.getAdArchiveId(), e.getMessage());
+                return null;
+            } catch (Exception e) {
+                log.warn("Journaled ad {} cannot be written: {}", record.getAdArchiveId(), e.getMessage());
+                failed.add(record);
+            }
+        }
+        log.warn("Retried {} journaled ads one by one, {} still failed", records.size(), failed.size());
+        return failed;
+    }
+
+    private void backOff(BulkIngestResult result) {
+        long delay = Math.min(maxRetryBackoffMs, retryBackoffMs << Math.min(failedAttempts - 1, 20));
+        nextAttemptAt = System.currentTimeMillis() + delay;
+        log.warn("Journal drain failed for {} of {} ads (attempt {}), retrying in {} ms",
+                result.getFailed(), result.getTotal(), failedAttempts, delay);
+    }
+}
@@ -0,0 +1,55 @@
+package org.uvhnael.fbadsbe2.scheduler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Component;
+import org.uvhnael.fbadsbe2.service.AdStatsService;
+import org.uvhnael.fbadsbe2.service.ScheduledSlotRunner;
+
+import java.time.Duration;
+
+/**
+ * Periodically reconciles the ad_daily_stats rollup with the ads table (days that had drifted
+ * are also marked for a keyword sketch rebuild). Run by one instance per cron slot, claimed
+ * through scheduled_job_runs like the weekly trend analysis.
+ */
+@Component
+@Slf4j
+public class AdStatsReconcileScheduler {
+
+    static final String JOB_NAME = "ad-stats-reconcile";
+
+    private final ScheduledSlotRunner scheduledSlotRunner;
+    private final AdStatsService adStatsService;
+    private final CronExpression cron;
+
+    @Value("${ads.stats.reconcile-catch-up-window-hours:24}")
+    private long catchUpWindowHours;
+
+    @Value("${ads.stats.reconcile-lease-seconds:900}")
+    private long leaseSeconds;
+
+    @Value("${ads.stats.reconcile-max-attempts:3}")
+    private int maxAttempts;
+
+    public AdStatsReconcileScheduler(ScheduledSlotRunner scheduledSlotRunner,
+                                     AdStatsService adStatsService,
+                                     // Default: every day at 3:30 AM
+                                     @Value("${ads.stats.reconcile-cron:0 30 3 * * *}") String cron) {
+        this.scheduledSlotRunner = scheduledSlotRunner;
+        this.adStatsService = adStatsService;
+        this.cron = CronExpression.parse(cron);
+    }
+
+    @Scheduled(fixedDelayString = "${ads.stats.reconcile-check-interval-ms:60000}")
+    public void reconcile() {
+        try {
+            scheduledSlotRunner.runLatestSlot(JOB_NAME, cron, Duration.ofHours(catchUpWindowHours),
+                    leaseSeconds, maxAttempts, adStatsService::reconcile);
+        } catch (Exception e) {
+            log.error("Error reconciling ad stats rollup: {}", e.getMessage());
+        }
+    }
+}
@@ -1,15 +1,63 @@
 package org.uvhnael.fbadsbe2.scheduler;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.support.CronExpression;
 import org.springframework.stereotype.Component;
+import org.uvhnael.fbadsbe2.service.ScheduledSlotRunner;
+import org.uvhnael.fbadsbe2.service.TrendAnalysisService;
 
+import java.time.Duration;
+
+/**
+ * Weekly trend analysis, run by exactly one instance per slot.
+ * Every instance checks on a short interval whether the latest cron slot has run; the slot is
+ * claimed through scheduled_job_runs, so a slot missed during downtime is run on the next check
+ * after startup (within the catch-up window).
+ */
 @Component
 @Slf4j
 public class TrendAnalysisScheduler {
 
-    @Scheduled(cron = "0 0 6 * * 0") // Chạy vào chủ nhật hàng tuần lúc 6:00
+    static final String JOB_NAME = "weekly-trend-analysis";
+
+    private final ScheduledSlotRunner scheduledSlotRunner;
+    private final TrendAnalysisService trendAnalysisService;
+    private final CronExpression cron;
+
+    @Value("${trends.scheduler.enabled:true}")
+    private boolean enabled;
+
+    @Value("${trends.scheduler.catch-up-window-hours:168}")
+    private long catchUpWindowHours;
+
+    // Longer than an analysis ever takes; after this another instance may take the slot over
+    @Value("${trends.scheduler.lease-seconds:1800}")
+    private long leaseSeconds;
+
+    @Value("${trends.scheduler.max-attempts:3}")
+    private int maxAttempts;
+
+    public TrendAnalysisScheduler(ScheduledSlotRunner scheduledSlotRunner,
+                                  TrendAnalysisService trendAnalysisService,
+                                  // Default: Sunday at 6:00 AM (chạy vào chủ nhật hàng tuần lúc 6:00)
+                                  @Value("${trends.scheduler.cron:0 0 6 * * SUN}") String cron) {
+        this.scheduledSlotRunner = scheduledSlotRunner;
+        this.trendAnalysisService = trendAnalysisService;
+        this.cron = CronExpression.parse(cron);
+    }
+
+    @Scheduled(fixedDelayString = "${trends.scheduler.check-interval-ms:60000}")
     public void weeklyTrendAnalysis() {
-        log.info("Running weekly trend analysis on Sunday");
+        if (!enabled) {
+            return;
+        }
+        try {
+            scheduledSlotRunner.runLatestSlot(JOB_NAME, cron, Duration.ofHours(catchUpWindowHours),
+                    leaseSeconds, maxAttempts, trendAnalysisService::analyzeWeeklyTrends);
+        } catch (Exception e) {
+            log.error("Error running weekly trend analysis: {}", e.getMessage());
+        }
     }
 }
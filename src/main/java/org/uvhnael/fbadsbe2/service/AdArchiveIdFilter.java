@@ -0,0 +1,210 @@
+package org.uvhnael.fbadsbe2.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.uvhnael.fbadsbe2.repository.AdsRepository;
+import org.uvhnael.fbadsbe2.utils.BloomFilter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node-local membership filter over all known ad archive IDs.
+ * It is filled from the ads table only: a full rebuild at startup and every few hours (dropping
+ * deleted IDs and resizing for growth), and a catch-up every few seconds that adds the IDs of ads
+ * scraped since the previous one, whichever instance wrote them. Every ingest path of this
+ * instance also records its IDs once they commit, so a negative answer means the archive ID is
+ * definitely not in the ads table and callers skip the database for it; only ads another instance
+ * wrote since the last catch-up can still be reported missing. The catch-up re-reads an overlap
+ * behind its start so rows committed late or stamped by a skewed clock are not missed.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AdArchiveIdFilter {
+
+    private final AdsRepository adsRepository;
+
+    @Value("${ads.archive-filter.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ads.archive-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    @Value("${ads.archive-filter.min-capacity:100000}")
+    private long minCapacity;
+
+    // Longest expected gap between an ad's scraped_at and its commit, plus clock skew between instances
+    @Value("${ads.archive-filter.catch-up-overlap-ms:300000}")
+    private long catchUpOverlapMs;
+
+    private volatile Snapshot snapshot;
+    private volatile BloomFilter building;
+    private final AtomicLong insertions = new AtomicLong();
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+
+    /**
+     * The filter and the scrape time up to which it holds every ad
+     */
+    private record Snapshot(BloomFilter filter, LocalDateTime coveredUntil) {
+    }
+
+    /**
+     * Build the filter once the application is ready
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    /**
+     * Periodic rebuild to drop deleted IDs and resize for growth
+     */
+    @Scheduled(initialDelayString = "${ads.archive-filter.rebuild-interval-ms:21600000}",
+            fixedDelayString = "${ads.archive-filter.rebuild-interval-ms:21600000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    /**
+     * Rebuild the filter from the ads table
+     */
+    public synchronized void rebuild() {
+        if (!enabled) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        LocalDateTime coveredUntil = LocalDateTime.now().minus(Duration.ofMillis(catchUpOverlapMs));
+        try {
+            long count = adsRepository.count();
+            BloomFilter next = BloomFilter.create(Math.max(minCapacity, count * 2), falsePositiveRate);
+
+            // IDs recorded while scanning go straight into the new filter
+            building = next;
+            AtomicLong loaded = new AtomicLong();
+            adsRepository.forEachArchiveId(id -> {
+                next.put(id);
+                loaded.incrementAndGet();
+            });
+
+            insertions.set(loaded.get());
+            snapshot = new Snapshot(next, coveredUntil);
+            log.info("Archive ID filter rebuilt with {} IDs (capacity {}) in {}ms",
+                    loaded.get(), next.getExpectedInsertions(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            // The previous filter (if any) is still complete, keep serving from it
+            log.error("Failed to rebuild archive ID filter: {}", e.getMessage());
+        } finally {
+            building = null;
+        }
+    }
+
+    /**
+     * Add the archive IDs of ads scraped since the filter was last brought up to date, including
+     * those written by other instances
+     */
+    @Scheduled(fixedDelayString = "${ads.archive-filter.catch-up-interval-ms:10000}")
+    public synchronized void catchUp() {
+        Snapshot current = snapshot;
+        if (!enabled || current == null) {
+            return;
+        }
+
+        LocalDateTime coveredUntil = LocalDateTime.now().minus(Duration.ofMillis(catchUpOverlapMs));
+        try {
+            AtomicLong added = new AtomicLong();
+            adsRepository.forEachArchiveIdScrapedSince(current.coveredUntil(), id -> {
+                if (current.filter().put(id)) {
+                    added.incrementAndGet();
+                }
+            });
+            if (coveredUntil.isAfter(current.coveredUntil())) {
+                snapshot = new Snapshot(current.filter(), coveredUntil);
+            }
+            if (added.get() > 0) {
+                log.debug("Archive ID filter caught up with {} new IDs", added.get());
+                countInsertions(current.filter(), added.get());
+            }
+        } catch (Exception e) {
+            // coveredUntil stays put, so the next catch-up re-reads the same range
+            log.error("Failed to catch up archive ID filter: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Check whether an archive ID may exist.
+     * Returns true when the filter is disabled or not built yet, so callers fall back to the database.
+     */
+    public boolean mightExist(String adArchiveId) {
+        Snapshot current = snapshot;
+        return !enabled || current == null || current.filter().mightContain(adArchiveId);
+    }
+
+    /**
+     * Record archive IDs ingested by this instance, after the surrounding transaction commits if
+     * there is one, so they are known before the next catch-up
+     */
+    public void recordAll(Collection<String> adArchiveIds) {
+        if (!enabled || adArchiveIds.isEmpty()) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            List<String> ids = List.copyOf(adArchiveIds);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    putAll(ids);
+                }
+            });
+        } else {
+            putAll(adArchiveIds);
+        }
+    }
+
+    public void record(String adArchiveId) {
+        recordAll(List.of(adArchiveId));
+    }
+
+    private void putAll(Collection<String> adArchiveIds) {
+        // Read building before the snapshot so an ID cannot miss both during the swap in rebuild()
+        BloomFilter next = building;
+        Snapshot current = snapshot;
+        long added = 0;
+        for (String id : adArchiveIds) {
+            if (current != null && current.filter().put(id)) added++;
+            if (next != null) next.put(id);
+        }
+        if (current != null) {
+            countInsertions(current.filter(), added);
+        }
+    }
+
+    private void countInsertions(BloomFilter current, long added) {
+        long total = insertions.addAndGet(added);
+        if (total > current.getExpectedInsertions() && rebuildPending.compareAndSet(false, true)) {
+            log.info("Archive ID filter exceeded its capacity ({} IDs), rebuilding", total);
+            Thread thread = new Thread(() -> {
+                try {
+                    rebuild();
+                } finally {
+                    rebuildPending.set(false);
+                }
+            }, "archive-filter-rebuild");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package org.uvhnael.fbadsbe2.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.uvhnael.fbadsbe2.model.dto.AdDTO;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Local, memory-mapped, append-only journal of incoming ads for write-behind ingestion.
+ *
+ * Layout: a 16 byte header (magic, version, drained offset) followed by records of
+ * [int length][int crc32][JSON payload]. A zero length marks the end of the journal.
+ * The length is written last, so a record only becomes visible once it is complete,
+ * and a torn or corrupt record stops recovery at that point.
+ * The journal rewinds to the start whenever the drained offset catches up with the write
+ * position. Under steady ingest it rarely does, so an append that finds no room first moves
+ * the pending records to the start, provided the drained space ahead of them is large enough
+ * that the copy never overwrites a pending record.
+ */
+@Component
+@ConditionalOnProperty(name = "ads.write-behind.enabled", havingValue = "true")
+@Slf4j
+public class AdIngestJournal {
+
+    private static final int MAGIC = 0x41444A4E; // "ADJN"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int CHECKPOINT_OFFSET = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${ads.write-behind.journal-dir:./data/ingest-journal}")
+    private String journalDir;
+
+    @Value("${ads.write-behind.journal-size-mb:64}")
+    private int journalSizeMb;
+
+    // Force every append to the storage device; off by default (survives process crashes, not power loss)
+    @Value("${ads.write-behind.fsync:false}")
+    private boolean fsync;
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int writePosition;
+
+    public AdIngestJournal(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        Path dir = Path.of(journalDir);
+        Files.createDirectories(dir);
+        Path file = dir.resolve("ads.journal");
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) journalSizeMb * 1024 * 1024);
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            buffer.putInt(HEADER_SIZE, 0);
+            buffer.putLong(CHECKPOINT_OFFSET, HEADER_SIZE);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(0, MAGIC);
+            buffer.force();
+            writePosition = HEADER_SIZE;
+            log.info("Initialized ingest journal at {} ({} MB)", file, journalSizeMb);
+            return;
+        }
+
+        // Recover the write position by scanning forward from the drained offset
+        int position = (int) buffer.getLong(CHECKPOINT_OFFSET);
+        int pending = 0;
+        while (readRecordAt(position) != null) {
+            position += RECORD_HEADER_SIZE + buffer.getInt(position);
+            pending++;
+        }
+        writePosition = position;
+        log.info("Recovered ingest journal at {}: {} records pending replay", file, pending);
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (buffer != null) {
+            buffer.force();
+        }
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Append an ad to the journal
+     * @return false if the journal has no room left; the caller should write synchronously
+     */
+    public synchronized boolean append(AdDTO adDTO) throws IOException {
+        byte[] payload = objectMapper.writeValueAsBytes(adDTO);
+        int recordSize = RECORD_HEADER_SIZE + payload.length;
+
+        rewindIfDrained();
+        // Keep room for the terminator behind the new record
+        if (writePosition + recordSize + 4 > buffer.capacity()) {
+            compact();
+            if (writePosition + recordSize + 4 > buffer.capacity()) {
+                return false;
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        buffer.put(writePosition + RECORD_HEADER_SIZE, payload);
+        buffer.putInt(writePosition + 4, (int) crc.getValue());
+        buffer.putInt(writePosition + recordSize, 0);
+        buffer.putInt(writePosition, payload.length);
+        writePosition += recordSize;
+
+        if (fsync) {
+            buffer.force();
+        }
+        return true;
+    }
+
+    /**
+     * Read up to maxRecords undrained records, starting at the drained offset
+     */
+    public synchronized Batch readPending(int maxRecords) throws IOException {
+        int position = (int) buffer.getLong(CHECKPOINT_OFFSET);
+        List<AdDTO> records = new ArrayList<>();
+
+        byte[] payload;
+        while (records.size() < maxRecords && position < writePosition && (payload = readRecordAt(position)) != null) {
+            records.add(objectMapper.readValue(payload, AdDTO.class));
+            position += RECORD_HEADER_SIZE + payload.length;
+        }
+        return new Batch(records, (int) buffer.getLong(CHECKPOINT_OFFSET), position);
+    }
+
+    /**
+     * Mark everything up to the batch end as written to the database.
+     * Rewinds the journal when nothing is pending any more.
+     */
+    public synchronized void markDrained(Batch batch) {
+        // A compaction since the read moved the batch by as much as it moved the drained offset
+        int shift = batch.startPosition() - (int) buffer.getLong(CHECKPOINT_OFFSET);
+        buffer.putLong(CHECKPOINT_OFFSET, batch.endPosition() - shift);
+        rewindIfDrained();
+        buffer.force();
+    }
+
+    /**
+     * Append ads that can never be written to the dead-letter file (NDJSON) next to the journal
+     */
+    public synchronized void deadLetter(List<AdDTO> records) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (AdDTO record : records) {
+            lines.append(objectMapper.writeValueAsString(record)).append('\n');
+        }
+        Files.writeString(Path.of(journalDir).resolve("ads.deadletter.ndjson"), lines,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Bytes appended but not yet drained
+     */
+    public synchronized long pendingBytes() {
+        return writePosition - buffer.getLong(CHECKPOINT_OFFSET);
+    }
+
+    private void rewindIfDrained() {
+        if (buffer.getLong(CHECKPOINT_OFFSET) >= writePosition && writePosition > HEADER_SIZE) {
+            // Terminator first, so a crash in between still reads as empty
+            buffer.putInt(HEADER_SIZE, 0);
+            buffer.putLong(CHECKPOINT_OFFSET, HEADER_SIZE);
+            writePosition = HEADER_SIZE;
+        }
+    }
+
+    /**
+     * Move the pending records to the start of the journal. Only done when the pending bytes and
+     * their terminator fit in front of the drained offset, so until the checkpoint is switched the
+     * old copy stays intact and a crash at any point recovers one complete copy.
+     */
+    private void compact() {
+        int checkpoint = (int) buffer.getLong(CHECKPOINT_OFFSET);
+        int pending = writePosition - checkpoint;
+        if (checkpoint <= HEADER_SIZE || HEADER_SIZE + pending + 4 > checkpoint) {
+            return;
+        }
+
+        byte[] records = new byte[pending];
+        buffer.get(checkpoint, records);
+        buffer.put(HEADER_SIZE, records);
+        buffer.putInt(HEADER_SIZE + pending, 0);
+        buffer.force();
+        buffer.putLong(CHECKPOINT_OFFSET, HEADER_SIZE);
+        buffer.force();
+        writePosition = HEADER_SIZE + pending;
+        log.info("Compacted ingest journal: moved {} pending bytes to the start", pending);
+    }
+
+    private byte[] readRecordAt(int position) {
+        if (position + RECORD_HEADER_SIZE > buffer.capacity()) {
+            return null;
+        }
+        int length = buffer.getInt(position);
+        if (length <= 0 || position + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+            return null;
+        }
+
+        byte[] payload = new byte[length];
+        buffer.get(position + RECORD_HEADER_SIZE, payload);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+            log.warn("Ingest journal record at offset {} failed its checksum, treating as end of journal", position);
+            return null;
+        }
+        return payload;
+    }
+
+    public record Batch(List<AdDTO> records, int startPosition, int endPosition) {
+    }
+}
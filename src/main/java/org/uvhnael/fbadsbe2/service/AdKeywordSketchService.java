@@ -0,0 +1,148 @@
+package org.uvhnael.fbadsbe2.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.uvhnael.fbadsbe2.repository.AdDailyStatsRepository;
+import org.uvhnael.fbadsbe2.repository.AdKeywordSketchRepository;
+import org.uvhnael.fbadsbe2.repository.AdKeywordSketchRepository.DaySketch;
+import org.uvhnael.fbadsbe2.repository.AdsRepository;
+import org.uvhnael.fbadsbe2.utils.KeywordMatcher;
+import org.uvhnael.fbadsbe2.utils.KeywordSketch;
+import org.uvhnael.fbadsbe2.utils.KeywordTokenizer;
+import org.uvhnael.fbadsbe2.utils.TermCounter;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Per-day caption summaries (CTA count, token total, top-keyword sketch) for insights.
+ * Writers mark the days they touch as dirty in the table, in their own transaction; dirty days
+ * are rebuilt from their captions in the background by whichever instance gets there, or on
+ * demand when an insight needs them. An insight for any range then only merges
+ * one stored row per day.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AdKeywordSketchService {
+
+    private final AdsRepository adsRepository;
+    private final AdKeywordSketchRepository adKeywordSketchRepository;
+    private final KeywordMatcherRegistry keywordMatcherRegistry;
+
+    // Terms kept per day; merged ranges keep the same number
+    @Value("${ads.keyword-sketch.capacity:200}")
+    private int capacity;
+
+    /**
+     * Caption metrics merged over a date range
+     */
+    public record RangeSummary(long captionCount, long ctaCount, long tokenTotal, KeywordSketch keywords) {
+    }
+
+    /**
+     * Mark the days for a sketch rebuild, in the caller's transaction: the mark commits or rolls
+     * back with the write that caused it, and any instance can pick it up
+     */
+    public void markDirty(Collection<LocalDate> days) {
+        List<LocalDate> marked = days.stream()
+                .filter(day -> day != null && !day.equals(AdDailyStatsRepository.NO_DATE))
+                .toList();
+        if (!marked.isEmpty()) {
+            adKeywordSketchRepository.markDirty(marked);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ads.keyword-sketch.refresh-interval-ms:60000}")
+    public void refreshDirty() {
+        refresh(adKeywordSketchRepository.findDirtyDays());
+    }
+
+    /**
+     * Merge the daily sketches of [startDate, endDate], rebuilding dirty days in the range first
+     */
+    public RangeSummary summarize(LocalDate startDate, LocalDate endDate) {
+        refresh(adKeywordSketchRepository.findDirtyDays(startDate, endDate));
+
+        long[] totals = new long[3];
+        KeywordSketch[] keywords = {KeywordSketch.empty(capacity)};
+        adKeywordSketchRepository.forEachBetween(startDate, endDate, day -> {
+            totals[0] += day.captionCount();
+            totals[1] += day.ctaCount();
+            totals[2] += day.tokenTotal();
+            keywords[0] = keywords[0].merge(KeywordSketch.decode(day.keywords(), day.keywordFloor(), capacity));
+        });
+        return new RangeSummary(totals[0], totals[1], totals[2], keywords[0]);
+    }
+
+    /**
+     * Recompute one day from its captions and store it. The day's dirty_version is read first,
+     * so a write committed while the captions are scanned leaves the day dirty.
+     */
+    public DaySketch rebuild(LocalDate day) {
+        long version = adKeywordSketchRepository.findDirtyVersion(day);
+        KeywordMatcher ctaMatcher = keywordMatcherRegistry.cta();
+        KeywordTokenizer tokenizer = new KeywordTokenizer();
+        TermCounter counter = new TermCounter();
+        long[] counts = new long[2];
+
+        adsRepository.forEachCaption(day, day, caption -> {
+            counts[0]++;
+            if (ctaMatcher.containsAny(caption)) {
+                counts[1]++;
+            }
+            tokenizer.countInto(caption, counter);
+        });
+
+        KeywordSketch sketch = KeywordSketch.of(counter, capacity);
+        DaySketch row = new DaySketch(day, counts[0], counts[1], counter.total(), sketch.floor(), sketch.encode());
+        adKeywordSketchRepository.save(row, version);
+        return row;
+    }
+
+    /**
+     * Build sketches for days that have none yet, on a background thread
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        Thread thread = new Thread(this::backfillMissing, "keyword-sketch-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void backfillMissing() {
+        long start = System.currentTimeMillis();
+        int built = 0;
+        try {
+            for (LocalDate day : adKeywordSketchRepository.findMissingDays()) {
+                rebuild(day);
+                built++;
+            }
+            if (built > 0) {
+                log.info("Built keyword sketches for {} days in {} ms", built, System.currentTimeMillis() - start);
+            }
+        } catch (Exception e) {
+            log.error("Keyword sketch backfill failed after {} days: {}", built, e.getMessage());
+        }
+    }
+
+    private void refresh(List<LocalDate> days) {
+        for (LocalDate day : days) {
+            try {
+                rebuild(day);
+            } catch (Exception e) {
+                // Still dirty in the table, retried on the next refresh
+                log.error("Failed to rebuild keyword sketch for {}: {}", day, e.getMessage());
+            }
+        }
+        if (!days.isEmpty()) {
+            log.debug("Rebuilt keyword sketches for {} dirty days", days.size());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.uvhnael.fbadsbe2.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.uvhnael.fbadsbe2.repository.AdsRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Batches "last seen" touches for ads that were re-ingested without any content change.
+ * Archive IDs are collected in memory and written as chunked UPDATE ... IN statements on a
+ * fixed delay, so a no-op re-scrape costs no row write of its own.
+ * last_seen_at is therefore only accurate to the flush interval.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AdLastSeenTracker {
+
+    private final AdsRepository adsRepository;
+
+    private final AtomicReference<Set<String>> pending = new AtomicReference<>(ConcurrentHashMap.newKeySet());
+
+    @Value("${ads.bulk.chunk-size:500}")
+    private int chunkSize;
+
+    public void touch(String adArchiveId) {
+        pending.get().add(adArchiveId);
+    }
+
+    public void touchAll(Collection<String> adArchiveIds) {
+        pending.get().addAll(adArchiveIds);
+    }
+
+    @Scheduled(fixedDelayString = "${ads.last-seen.flush-interval-ms:30000}")
+    public void flush() {
+        Set<String> batch = pending.getAndSet(ConcurrentHashMap.newKeySet());
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<String> ids = new ArrayList<>(batch);
+        LocalDateTime lastSeenAt = LocalDateTime.now();
+        int touched = 0;
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            List<String> chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+            try {
+                touched += adsRepository.touchLastSeen(chunk, lastSeenAt);
+            } catch (Exception e) {
+                // Keep the IDs for the next run
+                log.warn("Failed to touch last seen for {} ads, retrying on next run: {}", chunk.size(), e.getMessage());
+                touchAll(chunk);
+            }
+        }
+        log.debug("Touched last seen for {} unchanged ads", touched);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+}
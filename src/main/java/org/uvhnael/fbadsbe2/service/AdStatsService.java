@@ -0,0 +1,150 @@
+package org.uvhnael.fbadsbe2.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.uvhnael.fbadsbe2.model.entity.Ad;
+import org.uvhnael.fbadsbe2.repository.AdDailyStatsRepository;
+import org.uvhnael.fbadsbe2.repository.AdDailyStatsRepository.Key;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Ad statistics served from the ad_daily_stats rollup.
+ * Writers report each row change as a +1/-1 on its (day, type, status, page) key;
+ * {@link #reconcile()} corrects any drift against the ads table.
+ * The days touched are also marked for a keyword sketch rebuild, in the same transaction.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AdStatsService {
+
+    private final AdDailyStatsRepository adDailyStatsRepository;
+    private final AdKeywordSketchService adKeywordSketchService;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Rollup key of an ad as currently stored
+     */
+    public static Key keyOf(Ad ad) {
+        return Key.of(ad.getTimeCreated(), ad.getTypeAds(), ad.getStatus(), ad.getPageName());
+    }
+
+    public void recordInsert(Ad ad) {
+        adDailyStatsRepository.applyDeltas(Map.of(keyOf(ad), 1L));
+        adKeywordSketchService.markDirty(Collections.singletonList(ad.getTimeCreated()));
+    }
+
+    public void recordDelete(Ad ad) {
+        adDailyStatsRepository.applyDeltas(Map.of(keyOf(ad), -1L));
+        adKeywordSketchService.markDirty(Collections.singletonList(ad.getTimeCreated()));
+    }
+
+    /**
+     * Move an ad from its previous key to its current one (no-op when the key did not change)
+     */
+    public void recordChange(Key before, Ad after) {
+        Key afterKey = keyOf(after);
+        if (!before.equals(afterKey)) {
+            adDailyStatsRepository.applyDeltas(Map.of(before, -1L, afterKey, 1L));
+        }
+        // The caption may have changed even when the key did not
+        adKeywordSketchService.markDirty(Arrays.asList(before.day(), afterKey.day()));
+    }
+
+    /**
+     * Apply accumulated deltas, e.g. for a whole bulk chunk at once
+     */
+    public void applyDeltas(Map<Key, Long> deltas) {
+        if (!deltas.isEmpty()) {
+            adDailyStatsRepository.applyDeltas(deltas);
+        }
+        // Keys that netted out to 0 still had a row written
+        adKeywordSketchService.markDirty(deltas.keySet().stream().map(Key::day).toList());
+    }
+
+    /**
+     * Overall statistics: total, by type, active/inactive and ads created in the last 7 days
+     */
+    public Map<String, Object> getAdStatistics() {
+        LocalDate today = LocalDate.now();
+
+        long totalAds = 0;
+        long recentAds = 0;
+        long activeAds = 0;
+        long inactiveAds = 0;
+        Map<String, Long> typeCount = new HashMap<>();
+
+        for (Object[] row : adDailyStatsRepository.sumByTypeAndStatus(today.minusDays(7), today)) {
+            String type = (String) row[0];
+            String status = (String) row[1];
+            long count = (Long) row[2];
+
+            totalAds += count;
+            recentAds += (Long) row[3];
+            typeCount.merge(type, count, Long::sum);
+            if ("ACTIVE".equals(status)) {
+                activeAds += count;
+            } else if ("INACTIVE".equals(status)) {
+                inactiveAds += count;
+            }
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalAds", totalAds);
+        stats.put("byType", typeCount);
+        stats.put("activeAds", activeAds);
+        stats.put("inactiveAds", inactiveAds);
+        stats.put("recentAds", recentAds);
+        return stats;
+    }
+
+    /**
+     * Statistics for ads created within a date range
+     */
+    public Map<String, Object> getStatisticsByDateRange(LocalDate startDate, LocalDate endDate) {
+        Map<String, Long> typeCount = adDailyStatsRepository.sumByType(startDate, endDate);
+        long totalAds = typeCount.values().stream().mapToLong(Long::longValue).sum();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalAds", totalAds);
+        stats.put("byType", typeCount);
+        stats.put("startDate", startDate);
+        stats.put("endDate", endDate);
+        return stats;
+    }
+
+    /**
+     * Recompute the counts from the ads table and apply the difference as deltas.
+     * Both sides are compared by one statement in a REPEATABLE READ transaction on the primary,
+     * and every writer commits its ads rows together with their deltas, so a write is either in
+     * both sides or in neither. Corrections are additive, so increments committed after the
+     * comparison are not overwritten.
+     * @return number of keys that had drifted
+     */
+    public int reconcile() {
+        long start = System.currentTimeMillis();
+        TransactionTemplate snapshot = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        snapshot.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        Map<Key, Long> corrections = snapshot.execute(status -> adDailyStatsRepository.findDrift());
+
+        adDailyStatsRepository.applyDeltas(corrections);
+        // Ads written without going through the rollup bypassed the sketch marks as well
+        adKeywordSketchService.markDirty(corrections.keySet().stream().map(Key::day).toList());
+        int removed = adDailyStatsRepository.deleteEmpty();
+
+        if (!corrections.isEmpty()) {
+            log.warn("Ad stats rollup had drifted on {} keys, corrected", corrections.size());
+        }
+        log.info("Reconciled ad stats rollup ({} empty rows removed) in {} ms",
+                removed, System.currentTimeMillis() - start);
+        return corrections.size();
+    }
+}
@@ -0,0 +1,168 @@
+package org.uvhnael.fbadsbe2.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.uvhnael.fbadsbe2.exception.CustomExceptions.ValidationException;
+import org.uvhnael.fbadsbe2.model.dto.AdDTO;
+import org.uvhnael.fbadsbe2.repository.AdsRepository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streaming ads export (CSV or NDJSON, optionally gzipped).
+ * Rows go from a forward-only JDBC cursor straight to the response, one at a time, so heap use
+ * does not grow with the result. The query is unsorted, so MySQL returns rows as it reads them
+ * and the first bytes are sent before the query has finished; rows are in no particular order.
+ */
+@Service
+@Slf4j
+public class AdsExportService {
+
+    private static final String[] CSV_HEADER = {"id", "ad_archive_id", "page_name", "caption", "type_ads",
+            "url_ads_post", "ai_analyze", "img_url", "video_url", "status", "time_created", "scraped_at"};
+
+    // Push buffered rows to the client every this many rows
+    private static final int FLUSH_EVERY_ROWS = 1000;
+
+    private final AdsRepository adsRepository;
+    private final ObjectWriter adWriter;
+
+    public AdsExportService(AdsRepository adsRepository, ObjectMapper objectMapper) {
+        this.adsRepository = adsRepository;
+        this.adWriter = objectMapper.writerFor(AdDTO.class);
+    }
+
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public static Format parse(String value) {
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(value)) {
+                    return format;
+                }
+            }
+            throw new ValidationException("Unsupported export format: " + value + " (use csv or ndjson)");
+        }
+    }
+
+    /**
+     * Write all ads matching the filters to the output
+     */
+    @Transactional(readOnly = true)
+    public void export(Format format, boolean gzip, LocalDate startDate, LocalDate endDate,
+                       String typeAds, String status, String pageName, OutputStream output) throws IOException {
+        long start = System.currentTimeMillis();
+        OutputStream target = gzip ? new GZIPOutputStream(output, 64 * 1024, true) : output;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), 64 * 1024);
+
+        if (format == Format.CSV) {
+            writeCsvRow(writer, CSV_HEADER);
+        }
+        // Headers and first bytes go out right away
+        writer.flush();
+
+        long[] rows = {0};
+        try {
+            adsRepository.forEachAd(startDate, endDate, typeAds, status, pageName, ad -> {
+                try {
+                    if (format == Format.CSV) {
+                        writeCsvRow(writer, toCsvRow(ad));
+                    } else {
+                        writer.write(adWriter.writeValueAsString(ad));
+                        writer.write('\n');
+                    }
+                    if (++rows[0] % FLUSH_EVERY_ROWS == 0) {
+                        writer.flush();
+                    }
+                } catch (IOException e) {
+                    // Client went away: abort the query instead of reading the rest of the cursor
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        writer.flush();
+        if (target instanceof GZIPOutputStream gzipOutput) {
+            gzipOutput.finish();
+        }
+        output.flush();
+
+        log.info("Exported {} ads as {}{} in {} ms", rows[0], format, gzip ? " (gzip)" : "",
+                System.currentTimeMillis() - start);
+    }
+
+    private String[] toCsvRow(AdDTO ad) {
+        return new String[]{
+                String.valueOf(ad.getId()),
+                ad.getAdArchiveId(),
+                ad.getPageName(),
+                ad.getCaption(),
+                ad.getTypeAds(),
+                ad.getUrlAdsPost(),
+                ad.getAiAnalyze(),
+                ad.getImgUrl(),
+                ad.getVideoUrl(),
+                ad.getStatus(),
+                ad.getTimeCreated() != null ? ad.getTimeCreated().toString() : null,
+                ad.getScrapedAt() != null ? ad.getScrapedAt().toString() : null
+        };
+    }
+
+    /**
+     * Write one RFC 4180 row; fields with separators, quotes or line breaks are quoted
+     */
+    private void writeCsvRow(Writer writer, String[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            String field = fields[i];
+            if (field == null) {
+                continue;
+            }
+            boolean quote = false;
+            for (int c = 0; c < field.length() && !quote; c++) {
+                char ch = field.charAt(c);
+                quote = ch == ',' || ch == '"' || ch == '\n' || ch == '\r';
+            }
+            if (quote) {
+                writer.write('"');
+                writer.write(field.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(field);
+            }
+        }
+        writer.write("\r\n");
+    }
+}
@@ -1,20 +1,40 @@
 package org.uvhnael.fbadsbe2.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.uvhnael.fbadsbe2.exception.CustomExceptions.NotFoundException;
 import org.uvhnael.fbadsbe2.exception.CustomExceptions.ValidationException;
 import org.uvhnael.fbadsbe2.model.dto.AdDTO;
+import org.uvhnael.fbadsbe2.model.dto.AdPageDTO;
+import org.uvhnael.fbadsbe2.model.dto.AdSearchHitDTO;
+import org.uvhnael.fbadsbe2.model.dto.AdSearchPageDTO;
+import org.uvhnael.fbadsbe2.model.dto.AdSummaryDTO;
+import org.uvhnael.fbadsbe2.model.dto.BulkIngestResult;
 import org.uvhnael.fbadsbe2.model.entity.Ad;
+import org.uvhnael.fbadsbe2.repository.AdDailyStatsRepository;
 import org.uvhnael.fbadsbe2.repository.AdsRepository;
+import org.uvhnael.fbadsbe2.repository.AdsRepositoryCustom;
+import org.uvhnael.fbadsbe2.utils.Util;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Service
@@ -23,6 +43,18 @@ import java.util.stream.Collectors;
 public class AdsService {
 
     private final AdsRepository adsRepository;
+    private final AdArchiveIdFilter adArchiveIdFilter;
+    private final Optional<AdIngestJournal> adIngestJournal;
+    private final AdLastSeenTracker adLastSeenTracker;
+    private final AdStatsService adStatsService;
+    private final MeterRegistry meterRegistry;
+    private final TransactionTemplate transactionTemplate;
+
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int MAX_SEARCH_PAGE_SIZE = 100;
+
+    @Value("${ads.bulk.chunk-size:500}")
+    private int bulkChunkSize;
 
     /**
      * Create new ad from n8n workflow
@@ -36,33 +68,65 @@ public class AdsService {
             throw new ValidationException("Ad archive ID is required");
         }
 
+        String contentHash = contentHash(adDTO);
+
         // Check if ad already exists
-        if (adsRepository.findByAdArchiveId(adDTO.getAdArchiveId()).isPresent()) {
+        Optional<Ad> existingAd = adsRepository.findByAdArchiveId(adDTO.getAdArchiveId());
+        if (existingAd.isPresent()) {
+            Ad ad = existingAd.get();
+            if (contentHash.equals(ad.getContentHash())) {
+                log.debug("Ad with archive ID {} is unchanged, skipping update", adDTO.getAdArchiveId());
+                adLastSeenTracker.touch(ad.getAdArchiveId());
+                countIngest("unchanged", 1);
+                return ad;
+            }
+
             log.warn("Ad with archive ID {} already exists, updating instead", adDTO.getAdArchiveId());
-            return updateExistingAd(adDTO);
+            AdDailyStatsRepository.Key before = AdStatsService.keyOf(ad);
+            applyIngestUpdate(ad, adDTO, contentHash);
+            ad = adsRepository.save(ad);
+            adStatsService.recordChange(before, ad);
+            countIngest("changed", 1);
+            return ad;
         }
 
         // Create new ad
-        Ad ad = Ad.builder()
-                .adArchiveId(adDTO.getAdArchiveId())
-                .pageName(adDTO.getPageName())
-                .caption(adDTO.getCaption())
-                .typeAds(adDTO.getTypeAds() != null ? adDTO.getTypeAds() : "UNKNOWN")
-                .urlAdsPost(adDTO.getUrlAdsPost())
-                .aiAnalyze(adDTO.getAiAnalyze())
-                .imgUrl(adDTO.getImgUrl())
-                .videoUrl(adDTO.getVideoUrl())
-                .status(adDTO.getStatus() != null ? adDTO.getStatus() : "ACTIVE")
-                .timeCreated(adDTO.getTimeCreated() != null ? adDTO.getTimeCreated() : LocalDate.now())
-                .scrapedAt(LocalDateTime.now())
-                .build();
-
-        ad = adsRepository.save(ad);
+        Ad newAd = toNewAd(adDTO, LocalDateTime.now());
+        newAd.setContentHash(contentHash);
+        Ad ad = adsRepository.save(newAd);
+        adArchiveIdFilter.record(ad.getAdArchiveId());
+        adStatsService.recordInsert(ad);
+        countIngest("created", 1);
         log.info("Ad created successfully with ID: {}", ad.getId());
 
         return ad;
     }
 
+    /**
+     * Append ad to the write-behind journal instead of writing it synchronously.
+     * Returns false when write-behind is disabled or the journal is full or failing,
+     * in which case the caller should fall back to {@link #createAd(AdDTO)}.
+     */
+    public boolean enqueueWriteBehind(AdDTO adDTO) {
+        if (adIngestJournal.isEmpty()) {
+            return false;
+        }
+
+        if (adDTO.getAdArchiveId() == null || adDTO.getAdArchiveId().isEmpty()) {
+            throw new ValidationException("Ad archive ID is required");
+        }
+
+        try {
+            if (adIngestJournal.get().append(adDTO)) {
+                return true;
+            }
+            log.warn("Ingest journal is full, writing ad {} synchronously", adDTO.getAdArchiveId());
+        } catch (Exception e) {
+            log.error("Failed to journal ad {}, writing synchronously: {}", adDTO.getAdArchiveId(), e.getMessage());
+        }
+        return false;
+    }
+
     /**
      * Update existing ad
      */
@@ -71,7 +135,18 @@ public class AdsService {
         Ad existingAd = adsRepository.findByAdArchiveId(adDTO.getAdArchiveId())
                 .orElseThrow(() -> new NotFoundException("Ad not found"));
 
-        // Update fields
+        AdDailyStatsRepository.Key before = AdStatsService.keyOf(existingAd);
+        applyIngestUpdate(existingAd, adDTO, contentHash(adDTO));
+
+        Ad ad = adsRepository.save(existingAd);
+        adStatsService.recordChange(before, ad);
+        return ad;
+    }
+
+    /**
+     * Apply non-null DTO fields of an ingested ad to the stored entity
+     */
+    private void applyIngestUpdate(Ad existingAd, AdDTO adDTO, String contentHash) {
         if (adDTO.getPageName() != null) existingAd.setPageName(adDTO.getPageName());
         if (adDTO.getCaption() != null) existingAd.setCaption(adDTO.getCaption());
         if (adDTO.getTypeAds() != null) existingAd.setTypeAds(adDTO.getTypeAds());
@@ -82,28 +157,212 @@ public class AdsService {
         if (adDTO.getStatus() != null) existingAd.setStatus(adDTO.getStatus());
         if (adDTO.getTimeCreated() != null) existingAd.setTimeCreated(adDTO.getTimeCreated());
 
+        existingAd.setContentHash(contentHash);
         existingAd.setScrapedAt(LocalDateTime.now());
+    }
+
+    /**
+     * Bulk create/update ads from n8n workflow.
+     * Rows are written as chunked multi-row upserts keyed on ad_archive_id: each chunk costs
+     * one fingerprint SELECT and one INSERT ... ON DUPLICATE KEY UPDATE, whatever its size.
+     * Ads whose content fingerprint matches the stored one are not written, only touched
+     * as last seen. Each chunk's upsert and its rollup deltas commit in one transaction, so a
+     * failing chunk leaves neither behind and only fails its own items.
+     */
+    public BulkIngestResult bulkUpsertAds(List<AdDTO> adDTOs) {
+        log.info("Bulk upserting {} ads in chunks of {}", adDTOs.size(), bulkChunkSize);
+
+        BulkIngestResult.ItemResult[] results = new BulkIngestResult.ItemResult[adDTOs.size()];
+
+        // Validate and merge duplicates of the same archive ID (later non-null fields win)
+        Map<String, AdDTO> merged = new LinkedHashMap<>();
+        Map<String, List<Integer>> positions = new HashMap<>();
+        for (int i = 0; i < adDTOs.size(); i++) {
+            AdDTO dto = adDTOs.get(i);
+            String adArchiveId = dto != null ? dto.getAdArchiveId() : null;
+            if (adArchiveId == null || adArchiveId.isEmpty()) {
+                results[i] = new BulkIngestResult.ItemResult(i, adArchiveId,
+                        BulkIngestResult.ItemStatus.FAILED, "Ad archive ID is required");
+                continue;
+            }
+            merged.merge(adArchiveId, dto, this::mergeDTO);
+            positions.computeIfAbsent(adArchiveId, k -> new ArrayList<>()).add(i);
+        }
+
+        List<AdDTO> unique = new ArrayList<>(merged.values());
+        LocalDateTime scrapedAt = LocalDateTime.now();
+
+        for (int from = 0; from < unique.size(); from += bulkChunkSize) {
+            List<AdDTO> chunk = unique.subList(from, Math.min(from + bulkChunkSize, unique.size()));
+            List<String> chunkIds = chunk.stream().map(AdDTO::getAdArchiveId).toList();
+
+            try {
+                List<String> unchanged = new ArrayList<>();
+                Map<String, BulkIngestResult.ItemStatus> statuses = transactionTemplate.execute(tx ->
+                        upsertChunk(chunk, scrapedAt, unchanged));
+                adLastSeenTracker.touchAll(unchanged);
+
+                for (String adArchiveId : chunkIds) {
+                    BulkIngestResult.ItemStatus status = statuses.get(adArchiveId);
+                    for (int i : positions.get(adArchiveId)) {
+                        results[i] = new BulkIngestResult.ItemResult(i, adArchiveId, status, null);
+                    }
+                }
+            } catch (Exception e) {
+                log.error("Error upserting chunk of {} ads starting at {}: {}", chunk.size(), from, e.getMessage());
+                for (String adArchiveId : chunkIds) {
+                    for (int i : positions.get(adArchiveId)) {
+                        results[i] = new BulkIngestResult.ItemResult(i, adArchiveId,
+                                BulkIngestResult.ItemStatus.FAILED, e.getMessage());
+                    }
+                }
+            }
+        }
+
+        List<BulkIngestResult.ItemResult> items = Arrays.asList(results);
+        int created = 0, updated = 0, unchanged = 0, failed = 0;
+        for (BulkIngestResult.ItemResult item : items) {
+            switch (item.getStatus()) {
+                case CREATED -> created++;
+                case UPDATED -> updated++;
+                case UNCHANGED -> unchanged++;
+                case FAILED -> failed++;
+            }
+        }
+        countIngest("created", created);
+        countIngest("changed", updated);
+        countIngest("unchanged", unchanged);
+        log.info("Bulk upsert finished: {} created, {} updated, {} unchanged, {} failed",
+                created, updated, unchanged, failed);
+
+        return BulkIngestResult.builder()
+                .total(adDTOs.size())
+                .created(created)
+                .updated(updated)
+                .unchanged(unchanged)
+                .failed(failed)
+                .items(items)
+                .build();
+    }
+
+    /**
+     * Upsert a single ad the way {@link #bulkUpsertAds(List)} does, but let a failure propagate
+     * so the caller can tell a database outage from an ad that cannot be written
+     */
+    public BulkIngestResult.ItemStatus upsertAd(AdDTO adDTO) {
+        if (Util.isNullOrBlank(adDTO.getAdArchiveId())) {
+            throw new ValidationException("Ad archive ID is required");
+        }
+
+        List<String> unchanged = new ArrayList<>();
+        BulkIngestResult.ItemStatus status = transactionTemplate.execute(tx ->
+                upsertChunk(List.of(adDTO), LocalDateTime.now(), unchanged)).get(adDTO.getAdArchiveId());
+        adLastSeenTracker.touchAll(unchanged);
+        switch (status) {
+            case CREATED -> countIngest("created", 1);
+            case UPDATED -> countIngest("changed", 1);
+            case UNCHANGED -> countIngest("unchanged", 1);
+            default -> { }
+        }
+        return status;
+    }
 
-        return adsRepository.save(existingAd);
+    /**
+     * Fingerprint check, upsert and rollup deltas of one chunk, inside the caller's transaction;
+     * returns the status of every archive ID and collects the unchanged ones
+     */
+    private Map<String, BulkIngestResult.ItemStatus> upsertChunk(List<AdDTO> chunk, LocalDateTime scrapedAt,
+                                                                 List<String> unchanged) {
+        List<String> chunkIds = chunk.stream().map(AdDTO::getAdArchiveId).toList();
+        Map<String, AdsRepositoryCustom.IngestState> storedStates = adsRepository.findIngestStates(chunkIds);
+
+        List<Ad> rows = new ArrayList<>(chunk.size());
+        Map<String, BulkIngestResult.ItemStatus> statuses = new HashMap<>();
+        Map<AdDailyStatsRepository.Key, Long> statsDeltas = new HashMap<>();
+        for (AdDTO dto : chunk) {
+            String adArchiveId = dto.getAdArchiveId();
+            String contentHash = contentHash(dto);
+            AdsRepositoryCustom.IngestState stored = storedStates.get(adArchiveId);
+            Ad row;
+            if (stored == null) {
+                row = toNewAd(dto, scrapedAt);
+                statuses.put(adArchiveId, BulkIngestResult.ItemStatus.CREATED);
+                statsDeltas.merge(AdStatsService.keyOf(row), 1L, Long::sum);
+            } else if (contentHash.equals(stored.contentHash())) {
+                unchanged.add(adArchiveId);
+                statuses.put(adArchiveId, BulkIngestResult.ItemStatus.UNCHANGED);
+                continue;
+            } else {
+                row = toUpsertRow(dto, scrapedAt);
+                statuses.put(adArchiveId, BulkIngestResult.ItemStatus.UPDATED);
+                // Same COALESCE(incoming, stored) the upsert applies
+                statsDeltas.merge(AdDailyStatsRepository.Key.of(stored.timeCreated(), stored.typeAds(),
+                        stored.status(), stored.pageName()), -1L, Long::sum);
+                statsDeltas.merge(AdDailyStatsRepository.Key.of(
+                        Util.getOrDefault(row.getTimeCreated(), stored.timeCreated()),
+                        Util.getOrDefault(row.getTypeAds(), stored.typeAds()),
+                        Util.getOrDefault(row.getStatus(), stored.status()),
+                        Util.getOrDefault(row.getPageName(), stored.pageName())), 1L, Long::sum);
+            }
+            row.setContentHash(contentHash);
+            rows.add(row);
+        }
+        if (!rows.isEmpty()) {
+            adsRepository.upsertAll(rows);
+            adStatsService.applyDeltas(statsDeltas);
+        }
+        // Recorded in the filter only once the chunk commits
+        adArchiveIdFilter.recordAll(chunkIds);
+        return statuses;
     }
 
     /**
-     * Get all ads with optional filters
+     * List ads as keyset pages of summaries, newest scrape first.
+     * Filters combine (AND) into a single query; cursor is the nextCursor of the previous page.
      */
-    public List<Ad> getAllAds(String typeAds, String status, String pageName) {
-        if (typeAds != null) {
-            return adsRepository.findByTypeAds(typeAds);
-        } else if (status != null) {
-            return adsRepository.findByStatus(status);
-        } else if (pageName != null) {
-            return adsRepository.findByPageName(pageName);
+    @Transactional(readOnly = true)
+    public AdPageDTO getAdsPage(String typeAds, String status, String pageName, String cursor, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException("limit must be between 1 and " + MAX_PAGE_SIZE);
         }
-        return adsRepository.findAll();
+
+        LocalDateTime afterScrapedAt = null;
+        Long afterId = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 2);
+                afterScrapedAt = LocalDateTime.parse(parts[0]);
+                afterId = Long.parseLong(parts[1]);
+            } catch (RuntimeException e) {
+                throw new ValidationException("Invalid cursor");
+            }
+        }
+
+        // One extra row tells whether another page exists
+        List<AdSummaryDTO> items = adsRepository.findSummaries(typeAds, status, pageName, afterScrapedAt, afterId, limit + 1);
+        boolean hasMore = items.size() > limit;
+        if (hasMore) {
+            items = items.subList(0, limit);
+        }
+
+        String nextCursor = null;
+        if (hasMore) {
+            AdSummaryDTO last = items.get(items.size() - 1);
+            nextCursor = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                    (last.getScrapedAt() + "|" + last.getId()).getBytes(StandardCharsets.UTF_8));
+        }
+
+        return AdPageDTO.builder()
+                .items(items)
+                .nextCursor(nextCursor)
+                .hasMore(hasMore)
+                .build();
     }
 
     /**
      * Get ad by ID
      */
+    @Transactional(readOnly = true)
     public Ad getAdById(Long id) {
         return adsRepository.findById(id)
                 .orElseThrow(() -> new NotFoundException("Ad not found with ID: " + id));
@@ -112,6 +371,7 @@ public class AdsService {
     /**
      * Get ad by archive ID
      */
+    @Transactional(readOnly = true)
     public Ad getAdByArchiveId(String adArchiveId) {
         return adsRepository.findByAdArchiveId(adArchiveId)
                 .orElseThrow(() -> new NotFoundException("Ad not found with archive ID: " + adArchiveId));
@@ -125,6 +385,7 @@ public class AdsService {
         log.info("Updating ad with ID: {}", id);
 
         Ad ad = getAdById(id);
+        AdDailyStatsRepository.Key before = AdStatsService.keyOf(ad);
 
         // Update fields if provided
         if (adDTO.getPageName() != null) ad.setPageName(adDTO.getPageName());
@@ -136,7 +397,11 @@ public class AdsService {
         if (adDTO.getVideoUrl() != null) ad.setVideoUrl(adDTO.getVideoUrl());
         if (adDTO.getStatus() != null) ad.setStatus(adDTO.getStatus());
 
+        // Manual edits no longer match any ingested payload, so the next ingest must write again
+        ad.setContentHash(null);
+
         ad = adsRepository.save(ad);
+        adStatsService.recordChange(before, ad);
         log.info("Ad updated successfully");
 
         return ad;
@@ -149,95 +414,180 @@ public class AdsService {
     public void deleteAd(Long id) {
         log.info("Deleting ad with ID: {}", id);
 
-        if (!adsRepository.existsById(id)) {
-            throw new NotFoundException("Ad not found with ID: " + id);
-        }
+        Ad ad = getAdById(id);
 
-        adsRepository.deleteById(id);
+        adsRepository.delete(ad);
+        adStatsService.recordDelete(ad);
         log.info("Ad deleted successfully");
     }
 
     /**
      * Get recent ads (last 10)
      */
+    @Transactional(readOnly = true)
     public List<Ad> getRecentAds() {
         return adsRepository.findTop10ByOrderByScrapedAtDesc();
     }
 
     /**
-     * Search ads by keyword in caption
+     * Search ads by keyword in caption.
+     * Accent-insensitive (both sides are folded), every term is required and an exact phrase
+     * ranks higher. Results are ordered by relevance and paginated.
+     */
+    @Transactional(readOnly = true)
+    public AdSearchPageDTO searchAds(String keyword, int page, int size) {
+        if (page < 0 || size < 1 || size > MAX_SEARCH_PAGE_SIZE) {
+            throw new ValidationException("page must be >= 0 and size between 1 and " + MAX_SEARCH_PAGE_SIZE);
+        }
+
+        String booleanQuery = toBooleanQuery(keyword);
+        List<AdSearchHitDTO> items = booleanQuery.isEmpty()
+                ? new ArrayList<>()
+                : adsRepository.searchCaptions(booleanQuery, page * size, size + 1);
+
+        boolean hasMore = items.size() > size;
+        return AdSearchPageDTO.builder()
+                .items(hasMore ? items.subList(0, size) : items)
+                .page(page)
+                .size(size)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    /**
+     * Build a FULLTEXT boolean mode query from user input: +term for every term, plus the
+     * whole phrase as an optional relevance boost. Operators in the input are stripped.
      */
-    public List<Ad> searchAds(String keyword) {
-        if (keyword == null || keyword.isEmpty()) {
-            return adsRepository.findAll();
+    private String toBooleanQuery(String keyword) {
+        if (keyword == null) {
+            return "";
+        }
+        String folded = Util.foldVietnamese(keyword).replaceAll("[^a-z0-9]+", " ").trim();
+        if (folded.isEmpty()) {
+            return "";
+        }
+
+        StringBuilder query = new StringBuilder();
+        String[] terms = folded.split(" ");
+        for (String term : terms) {
+            // Shorter than ngram_token_size (2): cannot be matched by the ngram index
+            if (term.length() >= 2) {
+                query.append('+').append(term).append(' ');
+            }
+        }
+        if (terms.length > 1 && query.length() > 0) {
+            query.append('"').append(folded).append('"');
         }
-        return adsRepository.findByCaptionContainingIgnoreCase(keyword);
+        return query.toString().trim();
     }
 
     /**
      * Get ads by date range
      */
+    @Transactional(readOnly = true)
     public List<Ad> getAdsByDateRange(LocalDate startDate, LocalDate endDate) {
         return adsRepository.findByTimeCreatedBetween(startDate, endDate);
     }
 
     /**
-     * Get ad statistics
+     * Get ad statistics (from the daily rollup)
      */
+    @Transactional(readOnly = true)
     public Map<String, Object> getAdStatistics() {
-        Map<String, Object> stats = new HashMap<>();
-
-        // Total ads
-        long totalAds = adsRepository.count();
-        stats.put("totalAds", totalAds);
-
-        // Count by type
-        List<Object[]> typeStats = adsRepository.countByType();
-        Map<String, Long> typeCount = new HashMap<>();
-        for (Object[] row : typeStats) {
-            typeCount.put((String) row[0], (Long) row[1]);
-        }
-        stats.put("byType", typeCount);
-
-        // Count by status
-        long activeAds = adsRepository.countByStatus("ACTIVE");
-        long inactiveAds = adsRepository.countByStatus("INACTIVE");
-        stats.put("activeAds", activeAds);
-        stats.put("inactiveAds", inactiveAds);
-
-        // Recent ads count (last 7 days)
-        LocalDate sevenDaysAgo = LocalDate.now().minusDays(7);
-        List<Ad> recentAds = adsRepository.findByTimeCreatedBetween(sevenDaysAgo, LocalDate.now());
-        stats.put("recentAds", recentAds.size());
-
-        return stats;
+        return adStatsService.getAdStatistics();
     }
 
     /**
-     * Get statistics by date range
+     * Get statistics by date range (from the daily rollup)
      */
+    @Transactional(readOnly = true)
     public Map<String, Object> getStatisticsByDateRange(LocalDate startDate, LocalDate endDate) {
-        Map<String, Object> stats = new HashMap<>();
+        return adStatsService.getStatisticsByDateRange(startDate, endDate);
+    }
 
-        List<Object[]> typeStats = adsRepository.getAdStatisticsByDateRange(startDate, endDate);
+    /**
+     * Build a new Ad entity from DTO, applying insert-time defaults
+     */
+    private Ad toNewAd(AdDTO adDTO, LocalDateTime scrapedAt) {
+        return Ad.builder()
+                .adArchiveId(adDTO.getAdArchiveId())
+                .pageName(adDTO.getPageName())
+                .caption(adDTO.getCaption())
+                .typeAds(adDTO.getTypeAds() != null ? adDTO.getTypeAds() : "UNKNOWN")
+                .urlAdsPost(adDTO.getUrlAdsPost())
+                .aiAnalyze(adDTO.getAiAnalyze())
+                .imgUrl(adDTO.getImgUrl())
+                .videoUrl(adDTO.getVideoUrl())
+                .status(adDTO.getStatus() != null ? adDTO.getStatus() : "ACTIVE")
+                .timeCreated(adDTO.getTimeCreated() != null ? adDTO.getTimeCreated() : LocalDate.now())
+                .scrapedAt(scrapedAt)
+                .build();
+    }
 
-        long totalAds = 0;
-        Map<String, Long> typeCount = new HashMap<>();
+    /**
+     * Build an upsert row for an existing ad: null fields are kept as-is by the upsert
+     */
+    private Ad toUpsertRow(AdDTO adDTO, LocalDateTime scrapedAt) {
+        return Ad.builder()
+                .adArchiveId(adDTO.getAdArchiveId())
+                .pageName(adDTO.getPageName())
+                .caption(adDTO.getCaption())
+                .typeAds(adDTO.getTypeAds())
+                .urlAdsPost(adDTO.getUrlAdsPost())
+                .aiAnalyze(adDTO.getAiAnalyze())
+                .imgUrl(adDTO.getImgUrl())
+                .videoUrl(adDTO.getVideoUrl())
+                .status(adDTO.getStatus())
+                .timeCreated(adDTO.getTimeCreated())
+                .scrapedAt(scrapedAt)
+                .build();
+    }
 
-        for (Object[] row : typeStats) {
-            Long count = (Long) row[0];
-            String type = (String) row[1];
+    /**
+     * SHA-256 fingerprint of the ingested content fields (not IDs or scrape time).
+     * Missing fields hash differently from empty strings.
+     */
+    private String contentHash(AdDTO adDTO) {
+        StringBuilder content = new StringBuilder(256);
+        for (Object field : new Object[]{adDTO.getPageName(), adDTO.getCaption(), adDTO.getTypeAds(),
+                adDTO.getUrlAdsPost(), adDTO.getAiAnalyze(), adDTO.getImgUrl(), adDTO.getVideoUrl(),
+                adDTO.getStatus(), adDTO.getTimeCreated()}) {
+            content.append(field == null ? "\u0000" : field.toString()).append('\u001f');
+        }
 
-            totalAds += count;
-            typeCount.put(type, count);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
         }
+    }
 
-        stats.put("totalAds", totalAds);
-        stats.put("byType", typeCount);
-        stats.put("startDate", startDate);
-        stats.put("endDate", endDate);
+    /**
+     * Count ingest outcomes (created / changed / unchanged) for the ads.ingest metric
+     */
+    private void countIngest(String result, int count) {
+        if (count > 0) {
+            meterRegistry.counter("ads.ingest", "result", result).increment(count);
+        }
+    }
 
-        return stats;
+    /**
+     * Merge two DTOs for the same archive ID, non-null fields of the later one win
+     */
+    private AdDTO mergeDTO(AdDTO earlier, AdDTO later) {
+        return AdDTO.builder()
+                .adArchiveId(later.getAdArchiveId())
+                .pageName(Util.getOrDefault(later.getPageName(), earlier.getPageName()))
+                .caption(Util.getOrDefault(later.getCaption(), earlier.getCaption()))
+                .typeAds(Util.getOrDefault(later.getTypeAds(), earlier.getTypeAds()))
+                .urlAdsPost(Util.getOrDefault(later.getUrlAdsPost(), earlier.getUrlAdsPost()))
+                .aiAnalyze(Util.getOrDefault(later.getAiAnalyze(), earlier.getAiAnalyze()))
+                .imgUrl(Util.getOrDefault(later.getImgUrl(), earlier.getImgUrl()))
+                .videoUrl(Util.getOrDefault(later.getVideoUrl(), earlier.getVideoUrl()))
+                .status(Util.getOrDefault(later.getStatus(), earlier.getStatus()))
+                .timeCreated(Util.getOrDefault(later.getTimeCreated(), earlier.getTimeCreated()))
+                .build();
     }
 
     /**
@@ -270,21 +620,38 @@ public class AdsService {
     }
 
     /**
-     * Check existence of ads by archive IDs
+     * Check existence of ads by archive IDs.
+     * IDs rejected by the archive ID filter are definitely new and never reach the database;
+     * the rest are resolved with chunked key-only IN queries.
      */
+    @Transactional(readOnly = true)
     public Map<String, Boolean> checkAdsExistence(List<String> adArchiveIds) {
         log.info("Checking existence for {} ad archive IDs", adArchiveIds.size());
-        
-        Map<String, Boolean> existenceMap = new HashMap<>();
-        
+
+        Map<String, Boolean> existenceMap = new LinkedHashMap<>();
+        List<String> candidates = new ArrayList<>();
+
         for (String adArchiveId : adArchiveIds) {
-            boolean exists = adsRepository.findByAdArchiveId(adArchiveId).isPresent();
-            existenceMap.put(adArchiveId, exists);
+            if (existenceMap.containsKey(adArchiveId)) {
+                continue;
+            }
+            existenceMap.put(adArchiveId, false);
+            if (adArchiveId != null && adArchiveIdFilter.mightExist(adArchiveId)) {
+                candidates.add(adArchiveId);
+            }
         }
-        
+
+        for (int from = 0; from < candidates.size(); from += bulkChunkSize) {
+            List<String> chunk = candidates.subList(from, Math.min(from + bulkChunkSize, candidates.size()));
+            for (String adArchiveId : adsRepository.findExistingArchiveIds(chunk)) {
+                existenceMap.put(adArchiveId, true);
+            }
+        }
+
         long existingCount = existenceMap.values().stream().filter(Boolean::booleanValue).count();
-        log.info("Found {} existing ads out of {} checked", existingCount, adArchiveIds.size());
-        
+        log.info("Found {} existing ads out of {} checked ({} resolved by filter, {} queried)",
+                existingCount, adArchiveIds.size(), existenceMap.size() - candidates.size(), candidates.size());
+
         return existenceMap;
     }
 }
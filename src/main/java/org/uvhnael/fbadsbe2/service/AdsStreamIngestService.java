@@ -0,0 +1,226 @@
+package org.uvhnael.fbadsbe2.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.uvhnael.fbadsbe2.model.dto.AdDTO;
+import org.uvhnael.fbadsbe2.model.dto.BulkIngestResult;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming NDJSON ingestion for ads.
+ * Records are parsed one line at a time and written in fixed-size batches through
+ * {@link AdsService#bulkUpsertAds(List)}, so memory stays bounded by the batch size and a slow
+ * database throttles the upload.
+ * <p>
+ * By default results are spooled to a temporary file and sent once the whole body has been read:
+ * many HTTP/1.1 clients do not read the response before they finish sending, and writing to them
+ * mid-upload would block both sides once the socket buffers fill. Clients that read while they
+ * send (full-duplex) can ask for interleaved results, streamed back after every batch.
+ * Lines longer than the configured limit are rejected without being buffered.
+ */
+@Service
+@Slf4j
+public class AdsStreamIngestService {
+
+    private final AdsService adsService;
+    private final ObjectReader adReader;
+    private final ObjectWriter lineWriter;
+
+    @Value("${ads.stream.batch-size:500}")
+    private int batchSize;
+
+    @Value("${ads.stream.max-line-bytes:1048576}")
+    private int maxLineBytes;
+
+    public AdsStreamIngestService(AdsService adsService, ObjectMapper objectMapper) {
+        this.adsService = adsService;
+        this.adReader = objectMapper.readerFor(AdDTO.class);
+        this.lineWriter = objectMapper.writer();
+    }
+
+    /**
+     * Ingest newline-delimited AdDTO JSON from the input and write NDJSON results to the output.
+     * Emits one "item" line per record, one "progress" line per batch and a final "summary" line;
+     * all of them after the input is consumed unless interleave is set.
+     */
+    public void ingest(InputStream input, OutputStream output, boolean interleave) throws IOException {
+        if (interleave) {
+            ingestRecords(input, output);
+            return;
+        }
+
+        Path spool = Files.createTempFile("ads-stream-", ".ndjson");
+        try {
+            try (OutputStream results = new BufferedOutputStream(Files.newOutputStream(spool), 64 * 1024)) {
+                ingestRecords(input, results);
+            }
+            Files.copy(spool, output);
+            output.flush();
+        } finally {
+            Files.deleteIfExists(spool);
+        }
+    }
+
+    private void ingestRecords(InputStream input, OutputStream output) throws IOException {
+        LineReader reader = new LineReader(input, maxLineBytes);
+
+        List<AdDTO> batch = new ArrayList<>(batchSize);
+        List<Integer> batchIndexes = new ArrayList<>(batchSize);
+        Counters counters = new Counters();
+        int index = 0;
+        long start = System.currentTimeMillis();
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (reader.truncated()) {
+                counters.failed++;
+                writeLine(output, itemLine(index++, null, BulkIngestResult.ItemStatus.FAILED,
+                        "Line exceeds " + maxLineBytes + " bytes"));
+                continue;
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+
+            int recordIndex = index++;
+            try {
+                batch.add(adReader.readValue(line));
+                batchIndexes.add(recordIndex);
+            } catch (JsonProcessingException e) {
+                counters.failed++;
+                writeLine(output, itemLine(recordIndex, null, BulkIngestResult.ItemStatus.FAILED,
+                        "Invalid JSON: " + e.getOriginalMessage()));
+            }
+
+            if (batch.size() >= batchSize) {
+                flushBatch(batch, batchIndexes, counters, output);
+            }
+        }
+        flushBatch(batch, batchIndexes, counters, output);
+
+        Map<String, Object> summary = counters.toLine("summary");
+        summary.put("elapsedMs", System.currentTimeMillis() - start);
+        writeLine(output, summary);
+
+        log.info("Streaming ingest finished: {} records, {} created, {} updated, {} unchanged, {} failed",
+                index, counters.created, counters.updated, counters.unchanged, counters.failed);
+    }
+
+    private void flushBatch(List<AdDTO> batch, List<Integer> batchIndexes, Counters counters,
+                            OutputStream output) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        BulkIngestResult result = adsService.bulkUpsertAds(batch);
+        for (BulkIngestResult.ItemResult item : result.getItems()) {
+            writeLine(output, itemLine(batchIndexes.get(item.getIndex()), item.getAdArchiveId(),
+                    item.getStatus(), item.getError()));
+        }
+
+        counters.created += result.getCreated();
+        counters.updated += result.getUpdated();
+        counters.unchanged += result.getUnchanged();
+        counters.failed += result.getFailed();
+        writeLine(output, counters.toLine("progress"));
+        output.flush();
+
+        batch.clear();
+        batchIndexes.clear();
+    }
+
+    private Map<String, Object> itemLine(int index, String adArchiveId,
+                                         BulkIngestResult.ItemStatus status, String error) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("type", "item");
+        line.put("index", index);
+        line.put("adArchiveId", adArchiveId);
+        line.put("status", status);
+        if (error != null) {
+            line.put("error", error);
+        }
+        return line;
+    }
+
+    private void writeLine(OutputStream output, Map<String, Object> line) throws IOException {
+        output.write(lineWriter.writeValueAsBytes(line));
+        output.write('\n');
+    }
+
+    /**
+     * UTF-8 lines (LF or CRLF terminated) of at most maxBytes; the rest of a longer line is
+     * skipped, and the line is returned empty with {@link #truncated()} set
+     */
+    private static class LineReader {
+        private final InputStream input;
+        private final int maxBytes;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private boolean truncated;
+
+        LineReader(InputStream input, int maxBytes) {
+            this.input = new BufferedInputStream(input, 64 * 1024);
+            this.maxBytes = maxBytes;
+        }
+
+        String readLine() throws IOException {
+            buffer.reset();
+            truncated = false;
+            int b;
+            while ((b = input.read()) != -1 && b != '\n') {
+                if (buffer.size() < maxBytes) {
+                    buffer.write(b);
+                } else {
+                    truncated = true;
+                }
+            }
+            if (b == -1 && buffer.size() == 0 && !truncated) {
+                return null;
+            }
+            if (truncated) {
+                return "";
+            }
+            String line = buffer.toString(StandardCharsets.UTF_8);
+            return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+        }
+
+        boolean truncated() {
+            return truncated;
+        }
+    }
+
+    private static class Counters {
+        int created;
+        int updated;
+        int unchanged;
+        int failed;
+
+        Map<String, Object> toLine(String type) {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("type", type);
+            line.put("processed", created + updated + unchanged + failed);
+            line.put("created", created);
+            line.put("updated", updated);
+            line.put("unchanged", unchanged);
+            line.put("failed", failed);
+            return line;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package org.uvhnael.fbadsbe2.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.uvhnael.fbadsbe2.exception.CustomExceptions.NotFoundException;
+import org.uvhnael.fbadsbe2.exception.CustomExceptions.ServiceBusyException;
+import org.uvhnael.fbadsbe2.exception.CustomExceptions.ValidationException;
+import org.uvhnael.fbadsbe2.model.dto.AiJobDTO;
+import org.uvhnael.fbadsbe2.model.enums.AiJobStatus;
+import org.uvhnael.fbadsbe2.model.enums.AiJobType;
+import org.uvhnael.fbadsbe2.repository.AiJobRepository;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs Gemini-backed work (insight generation, trend analysis) as jobs.
+ * Submitting only inserts an ai_jobs row and queues the work on a dedicated executor, so the
+ * request thread returns at once; the job row tracks QUEUED -> RUNNING -> DONE/FAILED and is read
+ * by polling. SSE subscribers get every state change: pushed for jobs this instance runs, and
+ * picked up by polling the row for jobs another instance runs.
+ *
+ * The row records its owner, which heartbeats while the job sits in its queue or runs; a job
+ * whose owner stops heartbeating is failed, and only the owner can finish a RUNNING job, so a
+ * worker that outlives its job being failed cannot overwrite the failure.
+ */
+@Service
+@Slf4j
+public class AiJobService {
+
+    private final AiJobRepository aiJobRepository;
+    private final InsightsService insightsService;
+    private final TrendAnalysisService trendAnalysisService;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService executor;
+
+    // Identifies this instance in the owner column
+    private final String instanceId = ManagementFactory.getRuntimeMXBean().getName()
+            + "/" + UUID.randomUUID().toString().substring(0, 8);
+
+    private final Map<Long, List<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+    // Jobs in this instance's executor; their state changes are pushed, not polled
+    private final Set<Long> localJobs = ConcurrentHashMap.newKeySet();
+    // Last state sent for each subscribed job, so polling only sends changes
+    private final Map<Long, AiJobStatus> lastSent = new ConcurrentHashMap<>();
+
+    @Value("${app.ai-jobs.sse-timeout-ms:300000}")
+    private long sseTimeoutMs;
+
+    // Unfinished jobs whose owner has not heartbeated for this long lost their worker (e.g.
+    // restart) and are failed
+    @Value("${app.ai-jobs.orphan-after-ms:60000}")
+    private long orphanAfterMs;
+
+    // RUNNING jobs older than this are failed even if their owner is alive
+    @Value("${app.ai-jobs.stale-after-ms:3600000}")
+    private long staleAfterMs;
+
+    public AiJobService(AiJobRepository aiJobRepository,
+                        InsightsService insightsService,
+                        TrendAnalysisService trendAnalysisService,
+                        ObjectMapper objectMapper,
+                        @Value("${app.ai-jobs.workers:2}") int workers,
+                        @Value("${app.ai-jobs.queue-capacity:100}") int queueCapacity) {
+        this.aiJobRepository = aiJobRepository;
+        this.insightsService = insightsService;
+        this.trendAnalysisService = trendAnalysisService;
+        this.objectMapper = objectMapper;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        int threads = Math.max(1, workers);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+            Thread thread = new Thread(runnable, "ai-job-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queue insight generation for [startDate, endDate]
+     */
+    public AiJobDTO submitInsight(LocalDate startDate, LocalDate endDate) {
+        if (startDate == null || endDate == null || startDate.isAfter(endDate)) {
+            throw new ValidationException("startDate must not be after endDate");
+        }
+        String params = toJson(Map.of("startDate", startDate.toString(), "endDate", endDate.toString()));
+        return submit(AiJobType.INSIGHT, params,
+                () -> insightsService.generateInsight(startDate, endDate).getId());
+    }
+
+    /**
+     * Queue a trend analysis over the last 7 days
+     */
+    public AiJobDTO submitTrendAnalysis() {
+        return submit(AiJobType.TREND_ANALYSIS, null,
+                () -> trendAnalysisService.analyzeWeeklyTrends().getId());
+    }
+
+    public AiJobDTO getJob(long jobId) {
+        return aiJobRepository.findById(jobId)
+                .orElseThrow(() -> new NotFoundException("Job not found with ID: " + jobId));
+    }
+
+    /**
+     * SSE stream of the job's state; sends the current state first and completes once the job
+     * is DONE or FAILED
+     */
+    public SseEmitter subscribe(long jobId) {
+        getJob(jobId);
+
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        subscribers.compute(jobId, (id, emitters) -> {
+            List<SseEmitter> list = emitters != null ? emitters : new CopyOnWriteArrayList<>();
+            list.add(emitter);
+            return list;
+        });
+        Runnable unsubscribe = () -> subscribers.computeIfPresent(jobId, (id, emitters) -> {
+            emitters.remove(emitter);
+            if (emitters.isEmpty()) {
+                lastSent.remove(id);
+                return null;
+            }
+            return emitters;
+        });
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(e -> unsubscribe.run());
+
+        // Read after registering, so a job finishing in between is not missed
+        AiJobDTO job = getJob(jobId);
+        lastSent.putIfAbsent(jobId, job.getStatus());
+        send(emitter, job);
+        return emitter;
+    }
+
+    /**
+     * Send state changes of subscribed jobs that another instance runs
+     */
+    @Scheduled(fixedDelayString = "${app.ai-jobs.sse-poll-interval-ms:2000}")
+    public void pollRemoteJobs() {
+        for (Long jobId : subscribers.keySet()) {
+            if (localJobs.contains(jobId)) {
+                continue;
+            }
+            try {
+                aiJobRepository.findById(jobId).ifPresent(job -> {
+                    if (lastSent.get(jobId) != job.getStatus()) {
+                        sendToSubscribers(job);
+                    }
+                });
+            } catch (Exception e) {
+                log.warn("Could not poll state of job {}: {}", jobId, e.getMessage());
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.ai-jobs.heartbeat-interval-ms:15000}")
+    public void heartbeat() {
+        try {
+            aiJobRepository.heartbeat(instanceId);
+        } catch (Exception e) {
+            log.error("Failed to heartbeat AI jobs: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.ai-jobs.stale-check-interval-ms:30000}")
+    public void failStaleJobs() {
+        try {
+            int orphaned = aiJobRepository.failOrphaned(orphanAfterMs / 1000,
+                    "Job was interrupted before it finished");
+            int overdue = aiJobRepository.failOverdue(staleAfterMs / 1000,
+                    "Job did not finish in time");
+            if (orphaned + overdue > 0) {
+                log.warn("Marked {} orphaned and {} overdue AI jobs as failed", orphaned, overdue);
+            }
+        } catch (Exception e) {
+            log.error("Failed to check for stale AI jobs: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private AiJobDTO submit(AiJobType jobType, String params, Callable<Long> work) {
+        long jobId = aiJobRepository.create(jobType, params, instanceId);
+        localJobs.add(jobId);
+        try {
+            executor.execute(() -> execute(jobId, jobType, work));
+        } catch (RejectedExecutionException e) {
+            localJobs.remove(jobId);
+            aiJobRepository.markRejected(jobId, "Job queue is full");
+            throw new ServiceBusyException("Too many AI jobs queued, try again later");
+        }
+        log.info("Queued {} job {}", jobType, jobId);
+        return getJob(jobId);
+    }
+
+    private void execute(long jobId, AiJobType jobType, Callable<Long> work) {
+        long start = System.currentTimeMillis();
+        try {
+            if (!aiJobRepository.markRunning(jobId, instanceId)) {
+                log.warn("{} job {} is no longer queued, skipping", jobType, jobId);
+                return;
+            }
+            publish(jobId);
+
+            Long resultId = work.call();
+            if (aiJobRepository.markDone(jobId, instanceId, resultId)) {
+                log.info("{} job {} done in {} ms (result {})", jobType, jobId, System.currentTimeMillis() - start, resultId);
+            } else {
+                log.warn("{} job {} finished after it was failed, result {} dropped", jobType, jobId, resultId);
+            }
+        } catch (Exception e) {
+            log.error("{} job {} failed: {}", jobType, jobId, e.getMessage());
+            try {
+                aiJobRepository.markFailed(jobId, instanceId, truncate(e.getMessage()));
+            } catch (Exception updateError) {
+                log.error("Could not record failure of job {}: {}", jobId, updateError.getMessage());
+            }
+        } finally {
+            localJobs.remove(jobId);
+            publish(jobId);
+        }
+    }
+
+    private void publish(long jobId) {
+        List<SseEmitter> emitters = subscribers.get(jobId);
+        if (emitters == null || emitters.isEmpty()) {
+            return;
+        }
+        try {
+            sendToSubscribers(getJob(jobId));
+        } catch (Exception e) {
+            log.warn("Could not publish state of job {}: {}", jobId, e.getMessage());
+        }
+    }
+
+    private void sendToSubscribers(AiJobDTO job) {
+        List<SseEmitter> emitters = subscribers.get(job.getId());
+        if (emitters == null) {
+            return;
+        }
+        lastSent.put(job.getId(), job.getStatus());
+        for (SseEmitter emitter : emitters) {
+            send(emitter, job);
+        }
+    }
+
+    private void send(SseEmitter emitter, AiJobDTO job) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .name(job.getStatus().name().toLowerCase())
+                    .data(job));
+            if (job.getStatus() == AiJobStatus.DONE || job.getStatus() == AiJobStatus.FAILED) {
+                emitter.complete();
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Client went away or the emitter already completed
+            emitter.completeWithError(e);
+        }
+    }
+
+    private String toJson(Map<String, String> params) {
+        try {
+            return objectMapper.writeValueAsString(params);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+}
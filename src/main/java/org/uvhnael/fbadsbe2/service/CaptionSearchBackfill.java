@@ -0,0 +1,49 @@
+package org.uvhnael.fbadsbe2.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.uvhnael.fbadsbe2.repository.AdsRepository;
+
+/**
+ * Fills ads.caption_search for rows written before the column existed.
+ * Runs once per startup on a background thread, walking the table by primary key in batches;
+ * rows that are already filled are skipped, so after the first run it finishes immediately.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CaptionSearchBackfill {
+
+    private final AdsRepository adsRepository;
+
+    @Value("${ads.search.backfill-batch-size:1000}")
+    private int batchSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        Thread thread = new Thread(this::backfill, "caption-search-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void backfill() {
+        long start = System.currentTimeMillis();
+        long batches = 0;
+        try {
+            Long lastId = 0L;
+            while ((lastId = adsRepository.backfillCaptionSearch(lastId, batchSize)) != null) {
+                batches++;
+            }
+            if (batches > 0) {
+                log.info("Backfilled caption search for {} batches of ads in {} ms",
+                        batches, System.currentTimeMillis() - start);
+            }
+        } catch (Exception e) {
+            log.error("Caption search backfill failed after {} batches: {}", batches, e.getMessage());
+        }
+    }
+}
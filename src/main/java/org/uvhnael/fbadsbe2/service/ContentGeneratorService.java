@@ -1,6 +1,5 @@
 package org.uvhnael.fbadsbe2.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
@@ -8,13 +7,12 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.uvhnael.fbadsbe2.exception.CustomExceptions;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.uvhnael.fbadsbe2.model.dto.ContentGenerateRequest;
 import org.uvhnael.fbadsbe2.model.entity.GeneratedContent;
-import org.uvhnael.fbadsbe2.model.entity.TrendAnalysis;
 import org.uvhnael.fbadsbe2.model.enums.ContentStatus;
 import org.uvhnael.fbadsbe2.repository.GeneratedContentRepository;
-import org.uvhnael.fbadsbe2.repository.TrendAnalysisRepository;
+import org.uvhnael.fbadsbe2.service.TrendSnapshotCache.TrendSnapshot;
 import org.uvhnael.fbadsbe2.utils.Util;
 
 import java.math.BigDecimal;
@@ -22,6 +20,7 @@ import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
@@ -29,9 +28,11 @@ import java.util.List;
 public class ContentGeneratorService {
     
     private final GeminiService geminiService;
-    private final TrendAnalysisRepository trendAnalysisRepository;
+    private final TrendSnapshotCache trendSnapshotCache;
     private final GeneratedContentRepository contentRepository;
     private final ObjectMapper objectMapper;
+    private final KeywordMatcherRegistry keywordMatcherRegistry;
+    private final TransactionTemplate transactionTemplate;
 
 
 
@@ -39,36 +40,22 @@ public class ContentGeneratorService {
     private String model;
 
     /**
-     * Generate content based on trends and keywords
+     * Generate content based on trends and keywords.
+     * Keywords, trending topics and the prompt are read in one read-only transaction; the Gemini
+     * call runs with no transaction open and the result is saved afterwards.
      */
-    @Transactional
     public GeneratedContent generateContent(ContentGenerateRequest request) {
         log.info("Generating content: type={}, platform={}", 
             request.getContentType(), request.getPlatform());
         
-        // Step 1: Keyword Logic - Check if valid keywords provided, otherwise fetch from DB
-        List<String> keywords = request.getKeywords();
-        Long insightId = request.getBasedOnTrendAnalysisId();
-        
-        if (keywords == null || keywords.isEmpty()) {
-            // Fetch keywords from specific insight or latest trend
-            if (!Util.isNullOrZero(insightId)) {
-                keywords = getKeywordsFromInsight(insightId);
-                log.info("Fetched {} keywords from insight ID: {}", keywords.size(), insightId);
-            } else {
-                keywords = getLatestTrendingKeywords();
-                log.info("Fetched {} trending keywords from latest analysis", keywords.size());
-            }
-            request.setKeywords(keywords);
-        } else {
-            log.info("Using {} user-provided keywords", keywords.size());
-        }
-        
-        // Step 2: Build prompt for AI
-        String prompt = buildPrompt(request, keywords);
+        // Steps 1-2: keywords, trending topics and prompt (read phase)
+        PromptContext context = readOnlyTransaction().execute(status -> preparePrompt(request));
+        List<String> keywords = context.keywords();
+        String prompt = context.prompt();
         
         // Step 3: Call Gemini API
-        String generatedText = geminiService.generateText(prompt);
+        String generatedText = geminiService.generateText(prompt, !Boolean.TRUE.equals(request.getFresh()),
+                geminiService::isJsonObject);
         
         if (Util.isNullOrBlank(generatedText)) {
             throw new RuntimeException("Failed to generate content from Gemini API");
@@ -79,14 +66,13 @@ public class ContentGeneratorService {
         log.debug("Cleaned AI response: {}", cleanedText);
         
         // Step 5: Parse and format content
-        String trendingTopicsJson = extractTrendingTopics(request.getBasedOnTrendAnalysisId());
-        GeneratedContent content = parseAndFormat(cleanedText, request, prompt, trendingTopicsJson);
+        GeneratedContent content = parseAndFormat(cleanedText, request, prompt, context.trendingTopicsJson());
         
         // Step 6: Calculate trend score
         BigDecimal trendScore = calculateTrendScore(content, keywords);
         content.setTrendScore(trendScore);
         
-        // Step 7: Save to database
+        // Step 7: Save to database (write phase)
         content.setCreatedAt(LocalDateTime.now());
         content.setUpdatedAt(LocalDateTime.now());
         GeneratedContent saved = contentRepository.save(content);
@@ -96,6 +82,40 @@ public class ContentGeneratorService {
         return saved;
     }
 
+    /**
+     * Everything generateContent reads from the database before calling Gemini
+     */
+    private record PromptContext(List<String> keywords, String prompt, String trendingTopicsJson) {
+    }
+
+    private PromptContext preparePrompt(ContentGenerateRequest request) {
+        // Keyword Logic - Check if valid keywords provided, otherwise fetch from DB
+        List<String> keywords = request.getKeywords();
+        Long insightId = request.getBasedOnTrendAnalysisId();
+        
+        if (keywords == null || keywords.isEmpty()) {
+            // Fetch keywords from specific insight or latest trend
+            if (!Util.isNullOrZero(insightId)) {
+                keywords = getKeywordsFromInsight(insightId);
+                log.info("Fetched {} keywords from insight ID: {}", keywords.size(), insightId);
+            } else {
+                keywords = getLatestTrendingKeywords();
+                log.info("Fetched {} trending keywords from latest analysis", keywords.size());
+            }
+            request.setKeywords(keywords);
+        } else {
+            log.info("Using {} user-provided keywords", keywords.size());
+        }
+        
+        return new PromptContext(keywords, buildPrompt(request, keywords), extractTrendingTopics(insightId));
+    }
+
+    private TransactionTemplate readOnlyTransaction() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnly.setReadOnly(true);
+        return readOnly;
+    }
+
     /**
      * Build prompt for AI based on request and keywords
      * Prompt Engineering: Construct detailed prompt for Gemini AI
@@ -124,28 +144,18 @@ public class ContentGeneratorService {
 
         // Add trending topics if based on specific insight
         if(!Util.isNullOrZero(request.getBasedOnTrendAnalysisId())) {
-            try {
-                TrendAnalysis trend = trendAnalysisRepository.findById(request.getBasedOnTrendAnalysisId())
-                        .orElseThrow(() -> new CustomExceptions.NotFoundException(
-                            "Trend analysis not found with ID: " + request.getBasedOnTrendAnalysisId()));
+            List<String> topics = trendSnapshotCache.get(request.getBasedOnTrendAnalysisId())
+                    .map(TrendSnapshot::topicNames)
+                    .orElse(List.of());
+
+            if (!topics.isEmpty()) {
+                prompt.append("=== XU HƯỚNG NỔI BẬT TỪ PHÂN TÍCH THỊ TRƯỜNG ===\n");
+                prompt.append("Dưới đây là các chủ đề xu hướng nổi bật được phân tích từ dữ liệu thị trường:\n");
 
-                if (!Util.isNullOrBlank(trend.getTrendingTopics())) {
-                    prompt.append("=== XU HƯỚNG NỔI BẬT TỪ PHÂN TÍCH THỊ TRƯỜNG ===\n");
-                    prompt.append("Dưới đây là các chủ đề xu hướng nổi bật được phân tích từ dữ liệu thị trường:\n");
-                    
-                    List<JsonNode> topics = objectMapper.readValue(
-                            trend.getTrendingTopics(),
-                            new TypeReference<List<JsonNode>>() {}
-                    );
-                    
-                    for (int i = 0; i < topics.size(); i++) {
-                        String topicName = topics.get(i).get("name").asText();
-                        prompt.append(String.format("%d. %s\n", i + 1, topicName));
-                    }
-                    prompt.append("\n⚠️ Hãy tham khảo và kết hợp các xu hướng trên vào nội dung một cách sáng tạo.\n\n");
+                for (int i = 0; i < topics.size(); i++) {
+                    prompt.append(String.format("%d. %s\n", i + 1, topics.get(i)));
                 }
-            } catch (Exception e) {
-                log.error("Error adding trending topics to prompt: {}", e.getMessage());
+                prompt.append("\n⚠️ Hãy tham khảo và kết hợp các xu hướng trên vào nội dung một cách sáng tạo.\n\n");
             }
         }
         
@@ -268,16 +278,11 @@ public class ContentGeneratorService {
     private BigDecimal calculateTrendScore(GeneratedContent content, List<String> keywords) {
         double baseScore = 50.0;
         
-        String fullContent = (content.getContent() + " " + content.getTitle()).toLowerCase();
+        String fullContent = content.getContent() + " " + content.getTitle();
         
         // Add points for each keyword found in content (10 points per keyword)
         if (keywords != null && !keywords.isEmpty()) {
-            int keywordMatches = 0;
-            for (String keyword : keywords) {
-                if (fullContent.contains(keyword.toLowerCase())) {
-                    keywordMatches++;
-                }
-            }
+            int keywordMatches = keywordMatcherRegistry.forKeywords(keywords).countDistinct(fullContent);
             double keywordScore = Math.min(40.0, keywordMatches * 10.0);
             baseScore += keywordScore;
             log.debug("Keyword matches: {}/{}, Score: +{}", keywordMatches, keywords.size(), keywordScore);
@@ -314,59 +319,19 @@ public class ContentGeneratorService {
         if (Util.isNullOrZero(insightId)) {
             return null;
         }
-        
-        try {
-            TrendAnalysis trend = trendAnalysisRepository.findById(insightId)
+        return trendSnapshotCache.get(insightId)
+                .map(TrendSnapshot::topicNamesJson)
                 .orElse(null);
-            
-            if (trend != null && !Util.isNullOrBlank(trend.getTrendingTopics())) {
-                // Parse and extract only topic names
-                List<JsonNode> topics = objectMapper.readValue(
-                    trend.getTrendingTopics(),
-                    new TypeReference<List<JsonNode>>() {}
-                );
-                
-                List<String> topicNames = new ArrayList<>();
-                for (JsonNode topic : topics) {
-                    if (topic.has("name")) {
-                        topicNames.add(topic.get("name").asText());
-                    }
-                }
-                
-                String result = Util.convertListToJson(topicNames);
-                log.debug("Extracted {} trending topics from insight ID: {}", topicNames.size(), insightId);
-                return result;
-            }
-            
-        } catch (Exception e) {
-            log.error("Error extracting trending topics from insight ID {}: {}", insightId, e.getMessage());
-        }
-        
-        return null;
     }
 
     /**
      * Get keywords from specific insight ID
      */
     private List<String> getKeywordsFromInsight(Long insightId) {
-        try {
-            TrendAnalysis trend = trendAnalysisRepository.findById(insightId)
-                .orElseThrow(() -> new CustomExceptions.NotFoundException(
-                    "Trend analysis not found with ID: " + insightId));
-            
-            if (!Util.isNullOrBlank(trend.getTrendingKeywords())) {
-                // Parse JSON string to List
-                List<String> keywords = objectMapper.readValue(
-                    trend.getTrendingKeywords(), 
-                    new TypeReference<List<String>>() {}
-                );
-                
-                log.info("Loaded {} keywords from insight ID: {}", keywords.size(), insightId);
-                return keywords;
-            }
-            
-        } catch (Exception e) {
-            log.error("Error fetching keywords from insight ID {}: {}", insightId, e.getMessage());
+        Optional<TrendSnapshot> trend = trendSnapshotCache.get(insightId);
+        if (trend.isPresent() && !trend.get().keywords().isEmpty()) {
+            log.info("Loaded {} keywords from insight ID: {}", trend.get().keywords().size(), insightId);
+            return new ArrayList<>(trend.get().keywords());
         }
         
         // Fallback to default keywords
@@ -378,25 +343,11 @@ public class ContentGeneratorService {
      * Get latest trending keywords from database
      */
     private List<String> getLatestTrendingKeywords() {
-        try {
-            // Query the latest trend analysis
-            TrendAnalysis latestTrend = trendAnalysisRepository.findTopByOrderByAnalysisDateDesc()
-                .orElse(null);
-            
-            if (latestTrend != null && !Util.isNullOrBlank(latestTrend.getTrendingKeywords())) {
-                // Parse JSON string to List
-                List<String> keywords = objectMapper.readValue(
-                    latestTrend.getTrendingKeywords(), 
-                    new TypeReference<List<String>>() {}
-                );
-                
-                log.info("Loaded {} keywords from latest trend analysis (ID: {})", 
-                    keywords.size(), latestTrend.getId());
-                return keywords;
-            }
-            
-        } catch (Exception e) {
-            log.error("Error fetching trending keywords from database: {}", e.getMessage());
+        Optional<TrendSnapshot> latestTrend = trendSnapshotCache.latest();
+        if (latestTrend.isPresent() && !latestTrend.get().keywords().isEmpty()) {
+            log.info("Loaded {} keywords from latest trend analysis (ID: {})",
+                latestTrend.get().keywords().size(), latestTrend.get().id());
+            return new ArrayList<>(latestTrend.get().keywords());
         }
         
         // Fallback to default keywords
@@ -0,0 +1,266 @@
+package org.uvhnael.fbadsbe2.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.uvhnael.fbadsbe2.utils.Util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Gemini responses by content: the key is a SHA-256 of the request identity (model and
+ * generation config) and the prompt. A bounded LRU tier in memory sits in front of an optional
+ * directory on disk (gemini.cache.disk-dir, one file per key, which survives restarts); entries
+ * of both expire after the TTL. Concurrent calls for the same key share one upstream call.
+ * Failed calls (null), blank text and text the caller's check rejects are not cached.
+ * Metrics: gemini.cache{result=memory|disk|miss|coalesced}, gemini.cache.size.
+ */
+@Service
+@Slf4j
+public class GeminiResponseCache {
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long ttlMs;
+    private final Path diskDir;
+    private final MeterRegistry meterRegistry;
+
+    // Access-ordered, so the eldest entry is the least recently used
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    public GeminiResponseCache(MeterRegistry meterRegistry,
+                               @Value("${gemini.cache.enabled:true}") boolean enabled,
+                               @Value("${gemini.cache.max-entries:256}") int maxEntries,
+                               @Value("${gemini.cache.ttl-ms:86400000}") long ttlMs,
+                               @Value("${gemini.cache.disk-dir:}") String diskDir) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMs = ttlMs;
+        this.diskDir = enabled && !diskDir.isBlank() ? createDirectory(Path.of(diskDir)) : null;
+
+        meterRegistry.gauge("gemini.cache.size", memory, cache -> {
+            synchronized (cache) {
+                return cache.size();
+            }
+        });
+    }
+
+    private record Entry(String text, long expiresAt) {
+    }
+
+    /**
+     * Hex SHA-256 of the request identity and the prompt
+     */
+    public static String key(String requestIdentity, String prompt) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(requestIdentity.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(prompt.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The cached response for the key, or the loader's result (cached when not blank). While a
+     * load for the key is running, other callers wait for it instead of loading again.
+     */
+    public String get(String key, Supplier<String> loader) {
+        return get(key, loader, text -> true);
+    }
+
+    /**
+     * As {@link #get(String, Supplier)}, but the loader's result is only cached when it also
+     * passes cacheable, e.g. parses as the JSON the caller asked for
+     */
+    public String get(String key, Supplier<String> loader, Predicate<String> cacheable) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        String cached = fromMemory(key);
+        if (cached != null) {
+            count("memory");
+            return cached;
+        }
+        cached = fromDisk(key);
+        if (cached != null) {
+            count("disk");
+            return cached;
+        }
+
+        CompletableFuture<String> load = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(key, load);
+        if (running != null) {
+            count("coalesced");
+            return running.join();
+        }
+
+        try {
+            // The previous load for the key may have finished between the lookup and the claim
+            cached = fromMemory(key);
+            if (cached != null) {
+                count("memory");
+                load.complete(cached);
+                return cached;
+            }
+
+            count("miss");
+            String text = loader.get();
+            if (!Util.isNullOrBlank(text) && cacheable.test(text)) {
+                put(key, text);
+            }
+            load.complete(text);
+            return text;
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, load);
+        }
+    }
+
+    /**
+     * Delete expired files from the disk tier
+     */
+    @Scheduled(fixedDelayString = "${gemini.cache.disk-sweep-interval-ms:3600000}")
+    public void sweepDisk() {
+        if (diskDir == null) {
+            return;
+        }
+        int deleted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(diskDir, "*.txt")) {
+            for (Path file : files) {
+                if (readFile(file) == null) {
+                    deleted++;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not sweep Gemini cache directory {}: {}", diskDir, e.getMessage());
+        }
+        if (deleted > 0) {
+            log.info("Removed {} expired Gemini cache files", deleted);
+        }
+    }
+
+    private String fromMemory(String key) {
+        synchronized (memory) {
+            Entry entry = memory.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt() <= System.currentTimeMillis()) {
+                memory.remove(key);
+                return null;
+            }
+            return entry.text();
+        }
+    }
+
+    private String fromDisk(String key) {
+        if (diskDir == null) {
+            return null;
+        }
+        Entry entry = readFile(diskDir.resolve(key + ".txt"));
+        if (entry == null) {
+            return null;
+        }
+        putInMemory(key, entry);
+        return entry.text();
+    }
+
+    private void put(String key, String text) {
+        Entry entry = new Entry(text, System.currentTimeMillis() + ttlMs);
+        putInMemory(key, entry);
+        if (diskDir != null) {
+            writeFile(key, entry);
+        }
+    }
+
+    private void putInMemory(String key, Entry entry) {
+        synchronized (memory) {
+            memory.put(key, entry);
+            if (memory.size() > maxEntries) {
+                memory.remove(memory.keySet().iterator().next());
+            }
+        }
+    }
+
+    /**
+     * File layout: expiry (epoch millis) on the first line, the response text after it.
+     * Returns null, deleting the file, once it has expired or cannot be read.
+     */
+    private Entry readFile(Path file) {
+        try {
+            String content = Files.readString(file, StandardCharsets.UTF_8);
+            int newline = content.indexOf('\n');
+            long expiresAt = Long.parseLong(content.substring(0, newline));
+            if (expiresAt > System.currentTimeMillis()) {
+                return new Entry(content.substring(newline + 1), expiresAt);
+            }
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unreadable Gemini cache file {}: {}", file, e.getMessage());
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete Gemini cache file {}: {}", file, e.getMessage());
+        }
+        return null;
+    }
+
+    private void writeFile(String key, Entry entry) {
+        Path temp = null;
+        try {
+            // Written aside and moved into place, so readers never see a partial file
+            temp = Files.createTempFile(diskDir, key, ".tmp");
+            Files.writeString(temp, entry.expiresAt() + "\n" + entry.text(), StandardCharsets.UTF_8);
+            Files.move(temp, diskDir.resolve(key + ".txt"),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not write Gemini cache file for {}: {}", key, e.getMessage());
+            try {
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException ignored) {
+                // Left for the operator; sweepDisk only looks at *.txt
+            }
+        }
+    }
+
+    private void count(String result) {
+        meterRegistry.counter("gemini.cache", "result", result).increment();
+    }
+
+    private static Path createDirectory(Path dir) {
+        try {
+            return Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create Gemini cache directory " + dir, e);
+        }
+    }
+}
@@ -1,115 +1,250 @@
 package org.uvhnael.fbadsbe2.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.uvhnael.fbadsbe2.utils.Util;
 
-import java.util.HashMap;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
+/**
+ * Client for the Gemini generateContent API.
+ * One HttpClient is shared by all calls: connections are kept alive and reused (multiplexed
+ * over HTTP/2 where the server supports it) instead of a new TLS handshake per call. At most
+ * max-concurrent-requests calls are on the wire at once; a call that waits longer than
+ * acquire-timeout for a slot, or for its response longer than read-timeout, fails like any
+ * other error (null). The request body is the pre-serialized template with only the prompt
+ * encoded per call. Responses go through {@link GeminiResponseCache} unless the caller opts out.
+ * Metrics: gemini.request{outcome=success|error|timeout|rejected}, gemini.requests.in-flight,
+ * gemini.requests.waiting.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class GeminiService {
-    
-    private final RestTemplate restTemplate = new RestTemplate();
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    
-    @Value("${gemini.api.key:}")
-    private String apiKey;
-    
-    @Value("${gemini.api.base-url:https://generativelanguage.googleapis.com}")
-    private String baseUrl;
-    
-    @Value("${gemini.api.model:gemini-2.0-flash-exp}")
-    private String model;
+
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final GeminiResponseCache responseCache;
+    private final String apiKey;
+    private final HttpClient httpClient;
+    private final URI generateContentUri;
+    private final Duration readTimeout;
+    private final long acquireTimeoutMs;
+    private final int maxConcurrentRequests;
+    private final Semaphore requestPermits;
+
+    // Request body around the JSON-encoded prompt
+    private final byte[] bodyPrefix;
+    private final byte[] bodySuffix;
+    // Model and generation config: identical prompts only share a cached response under the same ones
+    private final String requestIdentity;
+
+    public GeminiService(ObjectMapper objectMapper,
+                         MeterRegistry meterRegistry,
+                         GeminiResponseCache responseCache,
+                         @Value("${gemini.api.key:}") String apiKey,
+                         @Value("${gemini.api.base-url:https://generativelanguage.googleapis.com}") String baseUrl,
+                         @Value("${gemini.api.model:gemini-2.0-flash-exp}") String model,
+                         @Value("${gemini.http.connect-timeout-ms:5000}") long connectTimeoutMs,
+                         @Value("${gemini.http.read-timeout-ms:120000}") long readTimeoutMs,
+                         @Value("${gemini.http.max-concurrent-requests:16}") int maxConcurrentRequests,
+                         @Value("${gemini.http.acquire-timeout-ms:30000}") long acquireTimeoutMs) {
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.responseCache = responseCache;
+        this.apiKey = apiKey;
+        this.generateContentUri = URI.create(String.format("%s/v1beta/models/%s:generateContent", baseUrl, model));
+        this.readTimeout = Duration.ofMillis(readTimeoutMs);
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.maxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+        this.requestPermits = new Semaphore(this.maxConcurrentRequests, true);
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+
+        String[] template = bodyTemplate();
+        this.bodyPrefix = template[0].getBytes(StandardCharsets.UTF_8);
+        this.bodySuffix = template[1].getBytes(StandardCharsets.UTF_8);
+        this.requestIdentity = model + "\n" + template[0] + template[1];
+
+        Gauge.builder("gemini.requests.in-flight", requestPermits,
+                        permits -> this.maxConcurrentRequests - permits.availablePermits())
+                .description("Gemini calls currently on the wire")
+                .register(meterRegistry);
+        Gauge.builder("gemini.requests.waiting", requestPermits, Semaphore::getQueueLength)
+                .description("Gemini calls waiting for a free slot")
+                .register(meterRegistry);
+    }
 
     /**
-     * Generate text content using Gemini API
+     * Generate text content using Gemini API, answered from the cache when the same prompt was
+     * sent before
      */
     public String generateText(String prompt) {
-        log.info("Generating text with Gemini API");
-        
+        return generateText(prompt, true);
+    }
+
+    /**
+     * Generate text content using Gemini API; useCache false always asks Gemini for a new response
+     * (which is then not cached either)
+     */
+    public String generateText(String prompt, boolean useCache) {
+        return generateText(prompt, useCache, text -> true);
+    }
+
+    /**
+     * As {@link #generateText(String, boolean)}, caching the response only when it passes
+     * cacheIf, so a reply the caller cannot use is asked for again next time
+     */
+    public String generateText(String prompt, boolean useCache, Predicate<String> cacheIf) {
         // Check if API key is configured
         if (apiKey == null || apiKey.isEmpty()) {
             log.warn("Gemini API key not configured. Returning mock response.");
             return null;
         }
-        
+
+        if (!useCache) {
+            return call(prompt);
+        }
+        return responseCache.get(GeminiResponseCache.key(requestIdentity, prompt), () -> call(prompt), cacheIf);
+    }
+
+    /**
+     * Whether a response is a JSON object once its markdown code fence is removed
+     */
+    public boolean isJsonObject(String text) {
+        try {
+            return objectMapper.readTree(Util.cleanJsonResponse(text)).isObject();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private String call(String prompt) {
+        log.info("Generating text with Gemini API");
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        boolean acquired = false;
         try {
-            // Build request URL
-            String url = String.format("%s/v1beta/models/%s:generateContent?key=%s", 
-                baseUrl, model, apiKey);
-            
-            // Build request body
-            Map<String, Object> requestBody = new HashMap<>();
-            
-            Map<String, Object> content = new HashMap<>();
-            content.put("parts", List.of(Map.of("text", prompt)));
-            requestBody.put("contents", List.of(content));
-            
-            // Set generation config
-            Map<String, Object> generationConfig = new HashMap<>();
-            generationConfig.put("temperature", 0.7);
-            generationConfig.put("topK", 40);
-            generationConfig.put("topP", 0.95);
-            generationConfig.put("maxOutputTokens", 8192);
-            requestBody.put("generationConfig", generationConfig);
-            
-            // Set headers
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-            
-            // Make API call
-            ResponseEntity<String> response = restTemplate.exchange(
-                url, 
-                HttpMethod.POST, 
-                entity, 
-                String.class
-            );
-            
-            if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                return extractTextFromResponse(response.getBody());
+            acquired = requestPermits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+            if (!acquired) {
+                outcome = "rejected";
+                log.warn("No free Gemini request slot after {} ms ({} in flight)", acquireTimeoutMs, maxConcurrentRequests);
+                return null;
+            }
+
+            HttpRequest request = HttpRequest.newBuilder(generateContentUri)
+                    .timeout(readTimeout)
+                    .header("Content-Type", "application/json")
+                    .header("x-goog-api-key", apiKey)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(requestBody(prompt)))
+                    .build();
+            HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+
+            if (response.statusCode() == 200 && response.body() != null) {
+                String text = extractTextFromResponse(response.body());
+                if (text != null) {
+                    outcome = "success";
+                }
+                return text;
             } else {
-                log.error("Unexpected response from Gemini API: {}", response.getStatusCode());
+                log.error("Unexpected response from Gemini API: {}", response.statusCode());
                 return null;
             }
-            
+
+        } catch (HttpTimeoutException e) {
+            outcome = "timeout";
+            log.error("Gemini API call timed out: {}", e.getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while calling Gemini API");
+            return null;
         } catch (Exception e) {
             log.error("Error calling Gemini API: {}", e.getMessage(), e);
             return null;
+        } finally {
+            if (acquired) {
+                requestPermits.release();
+            }
+            sample.stop(meterRegistry.timer("gemini.request", "outcome", outcome));
         }
     }
 
+    /**
+     * Prefix and suffix of the request body, split where the prompt string goes
+     */
+    private String[] bodyTemplate() {
+        String marker = "\u0000prompt\u0000";
+        Map<String, Object> generationConfig = new LinkedHashMap<>();
+        generationConfig.put("temperature", 0.7);
+        generationConfig.put("topK", 40);
+        generationConfig.put("topP", 0.95);
+        generationConfig.put("maxOutputTokens", 8192);
+
+        Map<String, Object> requestBody = new LinkedHashMap<>();
+        requestBody.put("contents", List.of(Map.of("parts", List.of(Map.of("text", marker)))));
+        requestBody.put("generationConfig", generationConfig);
+        try {
+            String json = objectMapper.writeValueAsString(requestBody);
+            String encodedMarker = objectMapper.writeValueAsString(marker);
+            int at = json.indexOf(encodedMarker);
+            return new String[]{json.substring(0, at), json.substring(at + encodedMarker.length())};
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] requestBody(String prompt) throws JsonProcessingException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(bodyPrefix.length + bodySuffix.length + prompt.length() * 2);
+        body.writeBytes(bodyPrefix);
+        body.writeBytes(objectMapper.writeValueAsBytes(prompt));
+        body.writeBytes(bodySuffix);
+        return body.toByteArray();
+    }
+
     /**
      * Extract generated text from Gemini API response
      */
-    private String extractTextFromResponse(String responseBody) {
+    private String extractTextFromResponse(byte[] responseBody) {
         try {
             JsonNode root = objectMapper.readTree(responseBody);
             JsonNode candidates = root.path("candidates");
-            
+
             if (candidates.isArray() && candidates.size() > 0) {
                 JsonNode firstCandidate = candidates.get(0);
                 JsonNode content = firstCandidate.path("content");
                 JsonNode parts = content.path("parts");
-                
+
                 if (parts.isArray() && parts.size() > 0) {
                     return parts.get(0).path("text").asText();
                 }
             }
-            
+
             log.error("Could not extract text from Gemini response");
             return null;
-            
+
         } catch (Exception e) {
             log.error("Error parsing Gemini response: {}", e.getMessage());
             return null;
@@ -0,0 +1,333 @@
+package org.uvhnael.fbadsbe2.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.uvhnael.fbadsbe2.exception.CustomExceptions.NotFoundException;
+import org.uvhnael.fbadsbe2.exception.CustomExceptions.ValidationException;
+import org.uvhnael.fbadsbe2.model.dto.InsightBackfillProgressDTO;
+import org.uvhnael.fbadsbe2.model.dto.InsightBackfillProgressDTO.WeekProgress;
+import org.uvhnael.fbadsbe2.model.entity.Insight;
+import org.uvhnael.fbadsbe2.repository.InsightBackfillRepository;
+import org.uvhnael.fbadsbe2.repository.InsightBackfillRepository.Job;
+import org.uvhnael.fbadsbe2.repository.InsightBackfillRepository.Week;
+import org.uvhnael.fbadsbe2.service.InsightsService.InsightStats;
+
+import java.lang.management.ManagementFactory;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Regenerates insights for many past weeks at once.
+ * A job splits its date span into ISO weeks (Monday to Sunday) and computes each week's statistics
+ * on a bounded pool; the Gemini strategy calls are additionally limited to a few at a time. Every
+ * finished week is checkpointed in insight_backfill_weeks, together with its insight in one
+ * transaction, so a job interrupted by a restart picks up where it left off (automatically, or via
+ * {@link #resume}). A job runs on the one instance holding its lease, which is renewed while it
+ * runs; a RUNNING job whose lease ran out is claimed and resumed by another instance.
+ */
+@Service
+@Slf4j
+public class InsightBackfillService {
+
+    public static final String JOB_RUNNING = "RUNNING";
+    public static final String JOB_COMPLETED = "COMPLETED";
+    public static final String JOB_COMPLETED_WITH_ERRORS = "COMPLETED_WITH_ERRORS";
+
+    public static final String WEEK_PENDING = "PENDING";
+    public static final String WEEK_DONE = "DONE";
+    public static final String WEEK_SKIPPED = "SKIPPED";
+    public static final String WEEK_FAILED = "FAILED";
+
+    private final InsightsService insightsService;
+    private final InsightBackfillRepository insightBackfillRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService executor;
+    private final Semaphore aiPermits;
+    private final int maxWeeks;
+
+    // Identifies this instance in the owner column
+    private final String instanceId = ManagementFactory.getRuntimeMXBean().getName()
+            + "/" + UUID.randomUUID().toString().substring(0, 8);
+
+    // Jobs with weeks queued or running in this process
+    private final Set<Long> activeJobs = ConcurrentHashMap.newKeySet();
+    // Active jobs whose lease another instance has taken over; their remaining weeks are skipped
+    private final Set<Long> lostJobs = ConcurrentHashMap.newKeySet();
+
+    @Value("${insights.backfill.lease-seconds:300}")
+    private long leaseSeconds;
+
+    public InsightBackfillService(InsightsService insightsService,
+                                  InsightBackfillRepository insightBackfillRepository,
+                                  TransactionTemplate transactionTemplate,
+                                  @Value("${insights.backfill.parallelism:4}") int parallelism,
+                                  @Value("${insights.backfill.max-concurrent-ai:2}") int maxConcurrentAi,
+                                  @Value("${insights.backfill.max-weeks:520}") int maxWeeks) {
+        this.insightsService = insightsService;
+        this.insightBackfillRepository = insightBackfillRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.aiPermits = new Semaphore(Math.max(1, maxConcurrentAi), true);
+        this.maxWeeks = maxWeeks;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        int threads = Math.max(1, parallelism);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "insight-backfill-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Create a job for every ISO week touching [startDate, endDate] and start it
+     */
+    public InsightBackfillProgressDTO start(LocalDate startDate, LocalDate endDate) {
+        if (startDate == null || endDate == null || startDate.isAfter(endDate)) {
+            throw new ValidationException("startDate must not be after endDate");
+        }
+        List<LocalDate[]> weeks = isoWeeks(startDate, endDate);
+        if (weeks.size() > maxWeeks) {
+            throw new ValidationException("Backfill span covers " + weeks.size()
+                    + " weeks, more than the limit of " + maxWeeks);
+        }
+
+        long jobId = insightBackfillRepository.createJob(startDate, endDate, JOB_RUNNING, weeks, WEEK_PENDING,
+                instanceId, leaseSeconds);
+        log.info("Insight backfill job {} created: {} to {} ({} weeks)", jobId, startDate, endDate, weeks.size());
+        run(jobId);
+        return getProgress(jobId);
+    }
+
+    /**
+     * Run the weeks of a job that are still pending or failed
+     */
+    public InsightBackfillProgressDTO resume(long jobId) {
+        Job job = insightBackfillRepository.findJob(jobId)
+                .orElseThrow(() -> new NotFoundException("Backfill job not found with ID: " + jobId));
+        if (!JOB_RUNNING.equals(job.status())) {
+            insightBackfillRepository.updateJobStatus(jobId, JOB_RUNNING);
+        }
+        if (insightBackfillRepository.tryClaim(jobId, JOB_RUNNING, instanceId, leaseSeconds)) {
+            run(jobId);
+        } else {
+            log.info("Insight backfill job {} is running on another instance", jobId);
+        }
+        return getProgress(jobId);
+    }
+
+    public InsightBackfillProgressDTO getProgress(long jobId) {
+        Job job = insightBackfillRepository.findJob(jobId)
+                .orElseThrow(() -> new NotFoundException("Backfill job not found with ID: " + jobId));
+        List<Week> weeks = insightBackfillRepository.findWeeks(jobId);
+
+        int done = 0;
+        int skipped = 0;
+        int failed = 0;
+        List<WeekProgress> weekProgress = new ArrayList<>(weeks.size());
+        for (Week week : weeks) {
+            switch (week.status()) {
+                case WEEK_DONE -> done++;
+                case WEEK_SKIPPED -> skipped++;
+                case WEEK_FAILED -> failed++;
+                default -> {
+                }
+            }
+            weekProgress.add(new WeekProgress(week.weekStart(), week.weekEnd(), week.status(),
+                    week.insightId(), week.error()));
+        }
+
+        return InsightBackfillProgressDTO.builder()
+                .jobId(job.id())
+                .startDate(job.startDate())
+                .endDate(job.endDate())
+                .status(job.status())
+                .totalWeeks(weeks.size())
+                .done(done)
+                .skipped(skipped)
+                .failed(failed)
+                .pending(weeks.size() - done - skipped - failed)
+                .createdAt(job.createdAt())
+                .updatedAt(job.updatedAt())
+                .weeks(weekProgress)
+                .build();
+    }
+
+    /**
+     * Claim and continue RUNNING jobs that no instance holds any more (e.g. their instance
+     * stopped); at startup and then periodically
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedJobs() {
+        try {
+            for (Long jobId : insightBackfillRepository.findJobIdsByStatus(JOB_RUNNING)) {
+                if (!activeJobs.contains(jobId)
+                        && insightBackfillRepository.tryClaim(jobId, JOB_RUNNING, instanceId, leaseSeconds)) {
+                    log.info("Resuming insight backfill job {}", jobId);
+                    run(jobId);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Failed to resume insight backfill jobs: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Renew the leases of the jobs running here, then pick up abandoned ones
+     */
+    @Scheduled(fixedDelayString = "${insights.backfill.lease-check-interval-ms:60000}")
+    public void maintainLeases() {
+        for (Long jobId : activeJobs) {
+            try {
+                if (!insightBackfillRepository.renewLease(jobId, instanceId, leaseSeconds) && lostJobs.add(jobId)) {
+                    log.warn("Insight backfill job {} was taken over by another instance", jobId);
+                }
+            } catch (Exception e) {
+                log.error("Failed to renew lease of insight backfill job {}: {}", jobId, e.getMessage());
+            }
+        }
+        resumeInterruptedJobs();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Unfinished weeks stay PENDING and the job RUNNING; releasing the lease lets another
+        // instance (or the next startup) resume it right away
+        executor.shutdownNow();
+        for (Long jobId : activeJobs) {
+            try {
+                insightBackfillRepository.releaseLease(jobId, instanceId);
+            } catch (Exception e) {
+                log.warn("Could not release insight backfill job {}: {}", jobId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Monday-to-Sunday weeks covering [startDate, endDate], as {weekStart, weekEnd} pairs
+     */
+    static List<LocalDate[]> isoWeeks(LocalDate startDate, LocalDate endDate) {
+        List<LocalDate[]> weeks = new ArrayList<>();
+        for (LocalDate monday = startDate.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+             !monday.isAfter(endDate); monday = monday.plusWeeks(1)) {
+            weeks.add(new LocalDate[]{monday, monday.plusDays(6)});
+        }
+        return weeks;
+    }
+
+    private void run(long jobId) {
+        if (!activeJobs.add(jobId)) {
+            log.info("Insight backfill job {} is already running", jobId);
+            return;
+        }
+        lostJobs.remove(jobId);
+        try {
+            List<CompletableFuture<Void>> tasks = new ArrayList<>();
+            for (Week week : insightBackfillRepository.findWeeks(jobId)) {
+                if (WEEK_PENDING.equals(week.status()) || WEEK_FAILED.equals(week.status())) {
+                    tasks.add(CompletableFuture.runAsync(() -> processWeek(jobId, week), executor));
+                }
+            }
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0]))
+                    .whenComplete((ignored, error) -> finish(jobId));
+        } catch (RuntimeException e) {
+            activeJobs.remove(jobId);
+            throw e;
+        }
+    }
+
+    private void processWeek(long jobId, Week week) {
+        if (lostJobs.contains(jobId)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            InsightStats stats;
+            try {
+                stats = insightsService.computeStats(week.weekStart(), week.weekEnd());
+            } catch (IllegalStateException e) {
+                // No ads that week
+                insightBackfillRepository.updateWeek(jobId, instanceId, week.weekStart(), WEEK_SKIPPED, null, e.getMessage());
+                return;
+            }
+
+            String aiStrategyReport;
+            aiPermits.acquire();
+            try {
+                aiStrategyReport = insightsService.generateStrategyReport(stats);
+            } finally {
+                aiPermits.release();
+            }
+
+            // The insight only stays if the week is checkpointed with it, so a week is never
+            // redone (or saved twice by an instance that lost the job) after its insight commits
+            Insight insight = transactionTemplate.execute(status -> {
+                Insight saved = insightsService.saveInsight(stats, aiStrategyReport);
+                if (!insightBackfillRepository.updateWeek(jobId, instanceId, week.weekStart(), WEEK_DONE, saved.getId(), null)) {
+                    throw new IllegalStateException("Backfill job " + jobId + " is no longer held by this instance");
+                }
+                return saved;
+            });
+            log.info("Insight backfill job {}: week {} done in {} ms (insight {})",
+                    jobId, week.weekStart(), System.currentTimeMillis() - start, insight.getId());
+        } catch (InterruptedException e) {
+            // Shutting down; the week stays PENDING
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Insight backfill job {}: week {} failed: {}", jobId, week.weekStart(), e.getMessage());
+            try {
+                insightBackfillRepository.updateWeek(jobId, instanceId, week.weekStart(), WEEK_FAILED, null,
+                        truncate(e.getMessage()));
+            } catch (Exception updateError) {
+                log.error("Could not record failure of backfill week {}: {}", week.weekStart(), updateError.getMessage());
+            }
+        }
+    }
+
+    private void finish(long jobId) {
+        try {
+            if (executor.isShutdown()) {
+                return;
+            }
+            List<Week> weeks = insightBackfillRepository.findWeeks(jobId);
+            if (weeks.stream().anyMatch(week -> WEEK_PENDING.equals(week.status()))) {
+                return;
+            }
+            boolean failed = weeks.stream().anyMatch(week -> WEEK_FAILED.equals(week.status()));
+            if (insightBackfillRepository.finishJob(jobId, instanceId, failed ? JOB_COMPLETED_WITH_ERRORS : JOB_COMPLETED)) {
+                log.info("Insight backfill job {} finished{}", jobId, failed ? " with failed weeks" : "");
+            }
+        } catch (Exception e) {
+            log.error("Failed to finish insight backfill job {}: {}", jobId, e.getMessage());
+        } finally {
+            activeJobs.remove(jobId);
+            lostJobs.remove(jobId);
+        }
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+}
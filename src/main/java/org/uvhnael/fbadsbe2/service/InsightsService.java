@@ -4,13 +4,16 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.uvhnael.fbadsbe2.exception.CustomExceptions.NotFoundException;
-import org.uvhnael.fbadsbe2.model.entity.Ad;
 import org.uvhnael.fbadsbe2.model.entity.Insight;
 import org.uvhnael.fbadsbe2.model.entity.Keyword;
-import org.uvhnael.fbadsbe2.repository.AdsRepository;
+import org.uvhnael.fbadsbe2.repository.AdDailyStatsRepository;
+import org.uvhnael.fbadsbe2.repository.AdDailyStatsRepository.TypeDayCount;
 import org.uvhnael.fbadsbe2.repository.InsightsRepository;
 import org.uvhnael.fbadsbe2.repository.KeywordsRepository;
+import org.uvhnael.fbadsbe2.service.AdKeywordSketchService.RangeSummary;
+import org.uvhnael.fbadsbe2.utils.KeywordSketch;
 import org.uvhnael.fbadsbe2.utils.Util;
 
 import java.math.BigDecimal;
@@ -20,7 +23,6 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.temporal.WeekFields;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -28,85 +30,128 @@ import java.util.stream.Collectors;
 public class InsightsService {
     
     private final InsightsRepository insightsRepository;
-    private final AdsRepository adsRepository;
+    private final AdDailyStatsRepository adDailyStatsRepository;
     private final KeywordsRepository keywordsRepository;
     private final GeminiService geminiService;
+    private final AdKeywordSketchService adKeywordSketchService;
+    private final TransactionTemplate transactionTemplate;
 
     /**
-     * Generate insight từ ads data trong khoảng thời gian
+     * Generate insight từ ads data trong khoảng thời gian.
+     * Format and weekday counts come from the ad_daily_stats rollup, caption metrics (CTA rate,
+     * keywords) from merging the per-day keyword sketches, so no caption is read for days whose
+     * sketch is current. The Gemini call runs between two short transactions, never inside one,
+     * so no pooled connection waits on it.
      */
-    @Transactional
     public Insight generateInsight(LocalDate startDate, LocalDate endDate) {
         log.info("Generating insight for period: {} to {}", startDate, endDate);
+        long start = System.currentTimeMillis();
+        
+        InsightStats stats = transactionTemplate.execute(status -> computeStats(startDate, endDate));
+        long computed = System.currentTimeMillis();
         
-        // Get ads in date range
-        List<Ad> ads = adsRepository.findByTimeCreatedBetween(startDate, endDate);
+        // Generate AI strategy report (no transaction open)
+        String aiStrategyReport = generateStrategyReport(stats);
         
-        if (ads.isEmpty()) {
+        Insight insight = transactionTemplate.execute(status -> saveInsight(stats, aiStrategyReport));
+        
+        log.info("Insight generated successfully with ID: {} ({} ads; statistics {} ms, total {} ms)",
+                insight.getId(), stats.totalAds(), computed - start, System.currentTimeMillis() - start);
+        return insight;
+    }
+
+    /**
+     * Everything an insight is built from except the AI report
+     */
+    public record InsightStats(LocalDate startDate, LocalDate endDate, int totalAds, long imageCount,
+                               long videoCount, long carouselCount, String dominantFormat, BigDecimal ctaRate,
+                               String mostActiveDay, RangeSummary captionStats) {
+    }
+
+    /**
+     * Statistics phase of {@link #generateInsight}. Not read-only: merging the keyword sketches
+     * may rebuild dirty days first.
+     */
+    @Transactional
+    public InsightStats computeStats(LocalDate startDate, LocalDate endDate) {
+        // Format counts and weekday histogram from the daily rollup
+        Map<String, Long> typeCount = new HashMap<>();
+        Map<DayOfWeek, Long> dayCount = new EnumMap<>(DayOfWeek.class);
+        int totalAds = 0;
+        for (TypeDayCount row : adDailyStatsRepository.sumByTypeAndDayOfWeek(startDate, endDate)) {
+            String type = row.typeAds() != null ? row.typeAds().toUpperCase() : "";
+            typeCount.merge(type, row.count(), Long::sum);
+            dayCount.merge(row.dayOfWeek(), row.count(), Long::sum);
+            totalAds += (int) row.count();
+        }
+        
+        if (totalAds == 0) {
             throw new IllegalStateException("No ads found in the specified date range");
         }
         
         // Calculate statistics
-        int totalAds = ads.size();
-        long imageCount = ads.stream().filter(ad -> "IMAGE".equalsIgnoreCase(ad.getTypeAds())).count();
-        long videoCount = ads.stream().filter(ad -> "VIDEO".equalsIgnoreCase(ad.getTypeAds())).count();
-        long carouselCount = ads.stream().filter(ad -> "CAROUSEL".equalsIgnoreCase(ad.getTypeAds())).count();
+        long imageCount = typeCount.getOrDefault("IMAGE", 0L);
+        long videoCount = typeCount.getOrDefault("VIDEO", 0L);
+        long carouselCount = typeCount.getOrDefault("CAROUSEL", 0L);
         
         // Determine dominant format
         String dominantFormat = determineDominantFormat(imageCount, videoCount, carouselCount);
         
-        // Calculate CTA rate (ads with CTA keywords)
-        BigDecimal ctaRate = calculateCTARate(ads);
+        // CTA and keyword counts merged from the daily sketches
+        RangeSummary captionStats = adKeywordSketchService.summarize(startDate, endDate);
+        BigDecimal ctaRate = BigDecimal.valueOf(captionStats.ctaCount())
+                .multiply(BigDecimal.valueOf(100))
+                .divide(BigDecimal.valueOf(totalAds), 2, RoundingMode.HALF_UP);
         
         // Find most active day
-        String mostActiveDay = findMostActiveDay(ads);
+        String mostActiveDay = findMostActiveDay(dayCount);
         
+        return new InsightStats(startDate, endDate, totalAds, imageCount, videoCount, carouselCount,
+                dominantFormat, ctaRate, mostActiveDay, captionStats);
+    }
+
+    /**
+     * AI phase of {@link #generateInsight}; falls back to the default report on errors
+     */
+    public String generateStrategyReport(InsightStats stats) {
+        return generateAIStrategyReport(stats.totalAds(), stats.dominantFormat(), stats.ctaRate(), stats.mostActiveDay());
+    }
+
+    /**
+     * Save phase of {@link #generateInsight}: the insight and its top keywords
+     */
+    @Transactional
+    public Insight saveInsight(InsightStats stats, String aiStrategyReport) {
         // Get week number
         WeekFields weekFields = WeekFields.of(Locale.getDefault());
-        int weekNumber = startDate.get(weekFields.weekOfWeekBasedYear());
-        
-        // Generate AI strategy report
-        String aiStrategyReport = generateAIStrategyReport(ads, dominantFormat, ctaRate, mostActiveDay);
+        int weekNumber = stats.startDate().get(weekFields.weekOfWeekBasedYear());
         
         // Create insight
         Insight insight = Insight.builder()
-            .reportDate(endDate)
+            .reportDate(stats.endDate())
             .weekNumber(weekNumber)
-            .totalAds(totalAds)
-            .imageCount((int) imageCount)
-            .videoCount((int) videoCount)
-            .carouselCount((int) carouselCount)
-            .dominantFormat(dominantFormat)
-            .ctaRate(ctaRate)
-            .mostActiveDay(mostActiveDay)
+            .totalAds(stats.totalAds())
+            .imageCount((int) stats.imageCount())
+            .videoCount((int) stats.videoCount())
+            .carouselCount((int) stats.carouselCount())
+            .dominantFormat(stats.dominantFormat())
+            .ctaRate(stats.ctaRate())
+            .mostActiveDay(stats.mostActiveDay())
             .aiStrategyReport(aiStrategyReport)
             .createdAt(LocalDateTime.now())
             .build();
         
         insight = insightsRepository.save(insight);
         
-        // Extract and save keywords
-        extractAndSaveKeywords(insight, ads);
-        
-        log.info("Insight generated successfully with ID: {}", insight.getId());
+        // Save top keywords
+        saveKeywords(insight, stats.captionStats());
         return insight;
     }
 
-    /**
-     * Generate insight cho tuần hiện tại
-     */
-    @Transactional
-    public Insight generateCurrentWeekInsight() {
-        LocalDate today = LocalDate.now();
-        LocalDate startOfWeek = today.with(DayOfWeek.MONDAY);
-        LocalDate endOfWeek = today.with(DayOfWeek.SUNDAY);
-        
-        return generateInsight(startOfWeek, endOfWeek);
-    }
-
     /**
      * Get latest insight
      */
+    @Transactional(readOnly = true)
     public Insight getLatestInsight() {
         return insightsRepository.findTopByOrderByCreatedAtDesc()
             .orElseThrow(() -> new NotFoundException("No insights found"));
@@ -115,6 +160,7 @@ public class InsightsService {
     /**
      * Get all insights
      */
+    @Transactional(readOnly = true)
     public List<Insight> getAllInsights() {
         return insightsRepository.findAll();
     }
@@ -122,6 +168,7 @@ public class InsightsService {
     /**
      * Get insight by ID
      */
+    @Transactional(readOnly = true)
     public Insight getInsightById(Long id) {
         return insightsRepository.findById(id)
             .orElseThrow(() -> new NotFoundException("Insight not found with ID: " + id));
@@ -130,6 +177,7 @@ public class InsightsService {
     /**
      * Get keywords for specific insight
      */
+    @Transactional(readOnly = true)
     public List<Keyword> getKeywordsByInsightId(Long insightId) {
         // Verify insight exists
         getInsightById(insightId);
@@ -140,6 +188,7 @@ public class InsightsService {
     /**
      * Get insights by date range
      */
+    @Transactional(readOnly = true)
     public List<Insight> getInsightsByDateRange(LocalDate startDate, LocalDate endDate) {
         return insightsRepository.findByReportDateBetween(startDate, endDate);
     }
@@ -159,42 +208,10 @@ public class InsightsService {
         }
     }
 
-    /**
-     * Calculate CTA rate
-     */
-    private BigDecimal calculateCTARate(List<Ad> ads) {
-        // 1. Kiểm tra đầu vào an toàn
-        if (ads == null || ads.isEmpty()) {
-            return BigDecimal.ZERO;
-        }
-
-        // Use CTA keywords from Util
-        List<String> beautyCTAKeywords = Util.getBeautyCTAKeywords();
-
-        // 3. Lọc và đếm số lượng Ads có chứa CTA
-        long adsWithCTA = ads.stream()
-                .filter(Objects::nonNull) // Bỏ qua các object Ad bị null
-                .map(Ad::getCaption)      // Lấy nội dung caption
-                .filter(caption -> Util.containsAnyKeyword(caption, beautyCTAKeywords)) // Kiểm tra CTA
-                .count();
-
-        // 4. Tính phần trăm: (Số Ads có CTA / Tổng số Ads) * 100
-        return BigDecimal.valueOf(adsWithCTA)
-                .multiply(BigDecimal.valueOf(100))
-                .divide(BigDecimal.valueOf(ads.size()), 2, RoundingMode.HALF_UP);
-    }
-
     /**
      * Find most active day
      */
-    private String findMostActiveDay(List<Ad> ads) {
-        Map<DayOfWeek, Long> dayCount = ads.stream()
-            .filter(ad -> ad.getTimeCreated() != null)
-            .collect(Collectors.groupingBy(
-                ad -> ad.getTimeCreated().getDayOfWeek(),
-                Collectors.counting()
-            ));
-        
+    private String findMostActiveDay(Map<DayOfWeek, Long> dayCount) {
         if (dayCount.isEmpty()) {
             return "UNKNOWN";
         }
@@ -211,7 +228,7 @@ public class InsightsService {
     /**
      * Generate AI strategy report using Gemini
      */
-    private String generateAIStrategyReport(List<Ad> ads, String dominantFormat, 
+    private String generateAIStrategyReport(int totalAds, String dominantFormat, 
                                            BigDecimal ctaRate, String mostActiveDay) {
         try {
             String prompt = String.format("""
@@ -232,7 +249,7 @@ public class InsightsService {
                 
                 Trả lời ngắn gọn, súc tích, dưới 500 từ.
                 """,
-                ads.size(), dominantFormat, ctaRate, mostActiveDay
+                totalAds, dominantFormat, ctaRate, mostActiveDay
             );
             
             String aiResponse = geminiService.generateText(prompt);
@@ -277,52 +294,38 @@ public class InsightsService {
     }
 
     /**
-     * Extract keywords from ads captions and save
+     * Save the top keywords of the merged sketch, ranked and counted by their guaranteed count
+     * (the sketch's estimate minus its error), so a stored count is never above the true one
      */
-    private void extractAndSaveKeywords(Insight insight, List<Ad> ads) {
-        Map<String, Integer> keywordCount = new HashMap<>();
-        
-        // Get stop words from Util
-        Set<String> stopWords = Util.getVietnameseStopWords();
-        
-        // Extract keywords from captions
-        for (Ad ad : ads) {
-            if (ad.getCaption() != null && !ad.getCaption().isEmpty()) {
-                String[] words = Util.extractKeywords(ad.getCaption());
-                
-                for (String word : words) {
-                    keywordCount.merge(word, 1, Integer::sum);
-                }
-            }
-        }
-        
+    private void saveKeywords(Insight insight, RangeSummary captionStats) {
         // Get top 20 keywords
-        List<Map.Entry<String, Integer>> topKeywords = keywordCount.entrySet().stream()
-            .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
-            .limit(20)
-            .toList();
+        List<KeywordSketch.Entry> topKeywords = captionStats.keywords().topGuaranteed(20);
         
         // Save keywords
-        int totalWords = keywordCount.values().stream().mapToInt(Integer::intValue).sum();
+        long totalWords = captionStats.tokenTotal();
         
-        for (Map.Entry<String, Integer> entry : topKeywords) {
+        List<Keyword> keywords = new ArrayList<>(topKeywords.size());
+        for (KeywordSketch.Entry entry : topKeywords) {
             BigDecimal percentage = totalWords > 0 
-                ? BigDecimal.valueOf(entry.getValue())
+                ? BigDecimal.valueOf(entry.guaranteedCount())
                     .multiply(BigDecimal.valueOf(100))
                     .divide(BigDecimal.valueOf(totalWords), 2, RoundingMode.HALF_UP)
                 : BigDecimal.ZERO;
             
             Keyword keyword = Keyword.builder()
                 .insightId(insight.getId())
-                .keyword(entry.getKey())
-                .count(entry.getValue())
+                .keyword(entry.term())
+                .count((int) Math.min(entry.guaranteedCount(), Integer.MAX_VALUE))
                 .percentage(percentage)
                 .week("W" + insight.getWeekNumber())
                 .build();
             
-            keywordsRepository.save(keyword);
+            keywords.add(keyword);
         }
         
+        // Single saveAll so the inserts go out as one JDBC batch
+        keywordsRepository.saveAll(keywords);
+        
         log.info("Saved {} keywords for insight ID: {}", topKeywords.size(), insight.getId());
     }
 }
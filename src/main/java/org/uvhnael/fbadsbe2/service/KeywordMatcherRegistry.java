@@ -0,0 +1,74 @@
+package org.uvhnael.fbadsbe2.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.uvhnael.fbadsbe2.utils.KeywordMatcher;
+import org.uvhnael.fbadsbe2.utils.Util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Compiled keyword matchers shared by the services.
+ * The CTA matcher is compiled once at startup: the daily keyword sketches store CTA counts, so
+ * changing the list only takes effect through a restart and a sketch rebuild. Matchers for other
+ * keyword lists are compiled on demand and kept in a small LRU cache.
+ */
+@Service
+@Slf4j
+public class KeywordMatcherRegistry {
+
+    private final KeywordMatcher ctaMatcher;
+    private final int cacheSize;
+
+    // Access-ordered, so the eldest entry is the least recently used
+    private final LinkedHashMap<List<String>, KeywordMatcher> compiled = new LinkedHashMap<>(16, 0.75f, true);
+
+    public KeywordMatcherRegistry(@Value("${app.insights.cta-keywords:}") String ctaKeywords,
+                                  @Value("${app.keyword-matcher.cache-size:16}") int cacheSize) {
+        this.ctaMatcher = KeywordMatcher.compile(ctaKeywords.isBlank()
+                ? Util.getBeautyCTAKeywords()
+                : Arrays.stream(ctaKeywords.split(",")).map(String::trim).toList());
+        this.cacheSize = Math.max(1, cacheSize);
+        log.info("Compiled CTA matcher with {} keywords", ctaMatcher.size());
+    }
+
+    /**
+     * Matcher for the CTA keywords
+     */
+    public KeywordMatcher cta() {
+        return ctaMatcher;
+    }
+
+    /**
+     * Matcher for a keyword list (e.g. the trending keywords of an analysis). The most recently
+     * used lists stay compiled, so callers alternating between a few lists do not recompile.
+     */
+    public KeywordMatcher forKeywords(List<String> keywords) {
+        if (keywords == null || keywords.isEmpty()) {
+            return KeywordMatcher.empty();
+        }
+        // Copied, since the caller may change its list; may hold nulls, which compile() skips
+        List<String> key = Collections.unmodifiableList(new ArrayList<>(keywords));
+        synchronized (compiled) {
+            KeywordMatcher matcher = compiled.get(key);
+            if (matcher != null) {
+                return matcher;
+            }
+        }
+
+        // Compiled outside the lock; two threads may both compile a new list, which is harmless
+        KeywordMatcher matcher = KeywordMatcher.compile(key);
+        synchronized (compiled) {
+            compiled.put(key, matcher);
+            if (compiled.size() > cacheSize) {
+                compiled.remove(compiled.keySet().iterator().next());
+            }
+        }
+        return matcher;
+    }
+}
@@ -0,0 +1,128 @@
+package org.uvhnael.fbadsbe2.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Service;
+import org.uvhnael.fbadsbe2.repository.ScheduledJobRunRepository;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a cluster-wide scheduled job at most once per slot.
+ * Every instance may call {@link #runLatestSlot} on its own timer; the instance that claims the
+ * slot's row in scheduled_job_runs runs it, the others skip. A slot whose owner died is taken
+ * over once its lease expires, and a failed slot is retried up to maxAttempts times. While a job
+ * runs its lease is renewed every third of the lease, so only a dead owner loses the slot.
+ * Metrics: scheduler.job.duration{job, outcome=success|failure}, scheduler.job.claims{job, result}.
+ */
+@Service
+@Slf4j
+public class ScheduledSlotRunner {
+
+    private final ScheduledJobRunRepository scheduledJobRunRepository;
+    private final MeterRegistry meterRegistry;
+
+    // Identifies this instance in the owner column
+    private final String instanceId = ManagementFactory.getRuntimeMXBean().getName()
+            + "/" + UUID.randomUUID().toString().substring(0, 8);
+
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "scheduled-job-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ScheduledSlotRunner(ScheduledJobRunRepository scheduledJobRunRepository, MeterRegistry meterRegistry) {
+        this.scheduledJobRunRepository = scheduledJobRunRepository;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * The latest time the cron fired within (now - catchUpWindow, now], or null if none
+     */
+    public static LocalDateTime latestSlot(CronExpression cron, LocalDateTime now, Duration catchUpWindow) {
+        LocalDateTime latest = null;
+        LocalDateTime next = cron.next(now.minus(catchUpWindow));
+        while (next != null && !next.isAfter(now)) {
+            latest = next;
+            next = cron.next(next);
+        }
+        return latest;
+    }
+
+    /**
+     * Run the job for the latest due slot unless it already ran (or is running) elsewhere.
+     * Older missed slots are not replayed: the caller's job is expected to cover everything up
+     * to the time it runs. Returns whether this instance ran it.
+     */
+    public boolean runLatestSlot(String jobName, CronExpression cron, Duration catchUpWindow,
+                                 long leaseSeconds, int maxAttempts, Runnable job) {
+        LocalDateTime slot = latestSlot(cron, LocalDateTime.now(), catchUpWindow);
+        return slot != null && runSlot(jobName, slot, leaseSeconds, maxAttempts, job);
+    }
+
+    /**
+     * Run the job for the given slot if this instance can claim it
+     */
+    public boolean runSlot(String jobName, LocalDateTime slot, long leaseSeconds, int maxAttempts, Runnable job) {
+        if (scheduledJobRunRepository.findStatus(jobName, slot)
+                .filter(ScheduledJobRunRepository.SUCCEEDED::equals).isPresent()) {
+            return false;
+        }
+
+        boolean claimed = scheduledJobRunRepository.tryInsert(jobName, slot, instanceId, leaseSeconds)
+                || scheduledJobRunRepository.tryTakeOver(jobName, slot, instanceId, leaseSeconds, maxAttempts);
+        meterRegistry.counter("scheduler.job.claims", "job", jobName, "result", claimed ? "acquired" : "held")
+                .increment();
+        if (!claimed) {
+            return false;
+        }
+
+        log.info("Running {} for slot {} on {}", jobName, slot, instanceId);
+        long renewEveryMs = Math.max(1, leaseSeconds * 1000 / 3);
+        ScheduledFuture<?> renewal = heartbeat.scheduleWithFixedDelay(
+                () -> renewLease(jobName, slot, leaseSeconds), renewEveryMs, renewEveryMs, TimeUnit.MILLISECONDS);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "failure";
+        try {
+            job.run();
+            outcome = "success";
+            scheduledJobRunRepository.finish(jobName, slot, instanceId, ScheduledJobRunRepository.SUCCEEDED, null);
+        } catch (Exception e) {
+            log.error("{} for slot {} failed: {}", jobName, slot, e.getMessage());
+            String error = e.getMessage() != null && e.getMessage().length() > 1000
+                    ? e.getMessage().substring(0, 1000) : e.getMessage();
+            scheduledJobRunRepository.finish(jobName, slot, instanceId, ScheduledJobRunRepository.FAILED, error);
+        } finally {
+            renewal.cancel(false);
+            long nanos = sample.stop(meterRegistry.timer("scheduler.job.duration", "job", jobName, "outcome", outcome));
+            log.info("{} for slot {} finished ({}) in {} ms", jobName, slot, outcome, nanos / 1_000_000);
+        }
+        return true;
+    }
+
+    private void renewLease(String jobName, LocalDateTime slot, long leaseSeconds) {
+        try {
+            if (!scheduledJobRunRepository.renewLease(jobName, slot, instanceId, leaseSeconds)) {
+                log.warn("Lease of {} for slot {} was lost to another instance", jobName, slot);
+            }
+        } catch (Exception e) {
+            log.warn("Could not renew lease of {} for slot {}: {}", jobName, slot, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeat.shutdownNow();
+    }
+}
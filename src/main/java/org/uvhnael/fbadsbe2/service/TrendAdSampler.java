@@ -0,0 +1,244 @@
+package org.uvhnael.fbadsbe2.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.uvhnael.fbadsbe2.repository.AdsRepository;
+import org.uvhnael.fbadsbe2.repository.AdsRepositoryCustom.CaptionRow;
+import org.uvhnael.fbadsbe2.utils.NearDuplicateIndex;
+import org.uvhnael.fbadsbe2.utils.SimHash;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Picks the ads a trend-analysis prompt shows Gemini.
+ * Captions are streamed newest first; near-duplicates of a caption already kept (SimHash within
+ * a few bits) are dropped, the rest grouped by (typeAds, pageName). Strata are then drained
+ * round-robin, largest first, until the estimated token budget is spent, so every format and page
+ * is represented before any one of them gets a second slot.
+ */
+@Service
+@Slf4j
+public class TrendAdSampler {
+
+    // "Ad N:\nType: \nPage: \nCaption: \n\n" without the number and values
+    private static final int ENTRY_OVERHEAD = "Ad :\nType: \nPage: \nCaption: \n\n".length();
+
+    private final AdsRepository adsRepository;
+    private final int tokenBudget;
+    private final double charsPerToken;
+    private final int maxCaptionChars;
+    private final int maxHammingDistance;
+
+    public TrendAdSampler(AdsRepository adsRepository,
+                          @Value("${trends.prompt.token-budget:6000}") int tokenBudget,
+                          // Vietnamese with diacritics tokenizes to roughly 3 chars per token
+                          @Value("${trends.prompt.chars-per-token:3.0}") double charsPerToken,
+                          @Value("${trends.prompt.max-caption-chars:500}") int maxCaptionChars,
+                          @Value("${trends.prompt.near-duplicate-bits:3}") int maxHammingDistance) {
+        this.adsRepository = adsRepository;
+        this.tokenBudget = tokenBudget;
+        this.charsPerToken = charsPerToken;
+        this.maxCaptionChars = maxCaptionChars;
+        this.maxHammingDistance = maxHammingDistance;
+    }
+
+    /**
+     * Chosen ads (captions compacted) and what it took to choose them
+     */
+    public record Sample(List<CaptionRow> ads, int contentChars, int candidates, int duplicates, int strata) {
+    }
+
+    public Sample sample(LocalDate startDate, LocalDate endDate) {
+        return sample(startDate, endDate, 1);
+    }
+
+    /**
+     * Sample for a prompt split into up to the given number of chunks, each within the token budget
+     */
+    public Sample sample(LocalDate startDate, LocalDate endDate, int chunks) {
+        Selector selector = new Selector(sampleCharBudget(chunks));
+        adsRepository.forEachCaptionRow(startDate, endDate, selector::offer);
+        Sample sample = selector.select();
+        log.info("Trend prompt sample: {} of {} ads ({} near-duplicates, {} strata, ~{} tokens)",
+                sample.ads().size(), sample.candidates(), sample.duplicates(), sample.strata(),
+                Math.round(sample.contentChars() / charsPerToken));
+        return sample;
+    }
+
+    /**
+     * Same selection over rows given newest first
+     */
+    public Sample sample(Iterable<CaptionRow> rows) {
+        return sample(rows, 1);
+    }
+
+    public Sample sample(Iterable<CaptionRow> rows, int chunks) {
+        Selector selector = new Selector(sampleCharBudget(chunks));
+        rows.forEach(selector::offer);
+        return selector.select();
+    }
+
+    /**
+     * Split sampled ads, in order, into at most maxChunks consecutive chunks that each fit the
+     * token budget (entries numbered from 1 within every chunk). Ads left over once maxChunks are
+     * full, the last in round-robin order, are dropped. An empty sample gives a single empty chunk.
+     */
+    public List<List<CaptionRow>> partition(List<CaptionRow> ads, int maxChunks) {
+        long charBudget = chunkCharBudget();
+        List<List<CaptionRow>> chunks = new ArrayList<>();
+        List<CaptionRow> chunk = new ArrayList<>();
+        long used = 0;
+        for (CaptionRow ad : ads) {
+            int length = entryLength(chunk.size() + 1, ad);
+            if (!chunk.isEmpty() && used + length > charBudget) {
+                if (chunks.size() + 1 >= maxChunks) {
+                    break;
+                }
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                length = entryLength(1, ad);
+                used = 0;
+            }
+            chunk.add(ad);
+            used += length;
+        }
+        chunks.add(chunk);
+        return chunks;
+    }
+
+    /**
+     * Prompt chars of one entry, as appended by {@link #appendEntry}
+     */
+    public static int entryLength(int number, CaptionRow ad) {
+        return ENTRY_OVERHEAD + Integer.toString(number).length()
+                + valueOrNa(ad.typeAds()).length() + valueOrNa(ad.pageName()).length() + ad.caption().length();
+    }
+
+    public static void appendEntry(StringBuilder prompt, int number, CaptionRow ad) {
+        prompt.append("Ad ").append(number).append(":\n")
+                .append("Type: ").append(valueOrNa(ad.typeAds())).append('\n')
+                .append("Page: ").append(valueOrNa(ad.pageName())).append('\n')
+                .append("Caption: ").append(ad.caption()).append("\n\n");
+    }
+
+    private long chunkCharBudget() {
+        return (long) (tokenBudget * charsPerToken);
+    }
+
+    /**
+     * Budget for a sample of the given number of chunks. Packing in order leaves up to one entry
+     * unused at the end of each chunk, so every chunk after the first is counted one typical
+     * full-length entry short.
+     */
+    private long sampleCharBudget(int chunks) {
+        long chunkBudget = chunkCharBudget();
+        if (chunks <= 1) {
+            return chunkBudget;
+        }
+        long usable = Math.max(chunkBudget / 2, chunkBudget - ENTRY_OVERHEAD - maxCaptionChars - 40);
+        return chunkBudget + usable * (chunks - 1);
+    }
+
+    private static String valueOrNa(String value) {
+        return value != null && !value.isBlank() ? value : "N/A";
+    }
+
+    private final class Selector {
+
+        private final SimHash simHash = new SimHash();
+        private final NearDuplicateIndex seen = new NearDuplicateIndex(maxHammingDistance);
+        private final Map<String, ArrayDeque<CaptionRow>> strata = new LinkedHashMap<>();
+        private final long charBudget;
+        // No stratum can contribute more entries than the budget holds at the smallest entry size
+        private final int maxPerStratum;
+        private int candidates;
+        private int duplicates;
+
+        Selector(long charBudget) {
+            this.charBudget = charBudget;
+            this.maxPerStratum = (int) Math.max(1, Math.min(Integer.MAX_VALUE, charBudget / (ENTRY_OVERHEAD + 20)));
+        }
+
+        void offer(CaptionRow row) {
+            candidates++;
+            String caption = compact(row.caption());
+            if (caption.isEmpty()) {
+                return;
+            }
+            if (!seen.addIfDistinct(simHash.hash(caption))) {
+                duplicates++;
+                return;
+            }
+            ArrayDeque<CaptionRow> stratum = strata.computeIfAbsent(
+                    valueOrNa(row.typeAds()) + '\u0000' + valueOrNa(row.pageName()), key -> new ArrayDeque<>());
+            if (stratum.size() < maxPerStratum) {
+                stratum.add(new CaptionRow(row.typeAds(), row.pageName(), caption));
+            }
+        }
+
+        Sample select() {
+            List<ArrayDeque<CaptionRow>> queues = new ArrayList<>(strata.values());
+            queues.sort(Comparator.comparingInt(ArrayDeque<CaptionRow>::size).reversed());
+
+            long used = 0;
+            List<CaptionRow> chosen = new ArrayList<>();
+            boolean progress = true;
+            while (progress) {
+                progress = false;
+                for (ArrayDeque<CaptionRow> queue : queues) {
+                    CaptionRow next = queue.poll();
+                    if (next == null) {
+                        continue;
+                    }
+                    progress = true;
+                    int length = entryLength(chosen.size() + 1, next);
+                    // Entries that do not fit are dropped; a shorter one later may still fit
+                    if (used + length <= charBudget) {
+                        chosen.add(next);
+                        used += length;
+                    }
+                }
+            }
+            return new Sample(chosen, (int) used, candidates, duplicates, strata.size());
+        }
+
+        /**
+         * Collapse whitespace runs and cut at maxCaptionChars on a word boundary
+         */
+        private String compact(String caption) {
+            StringBuilder compacted = new StringBuilder(Math.min(caption.length(), maxCaptionChars + 1));
+            boolean space = false;
+            int i = 0;
+            for (; i < caption.length() && compacted.length() < maxCaptionChars; i++) {
+                char c = caption.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    space = compacted.length() > 0;
+                } else {
+                    if (space) {
+                        compacted.append(' ');
+                        space = false;
+                    }
+                    compacted.append(c);
+                }
+            }
+            if (i < caption.length() && !caption.substring(i).isBlank()) {
+                int cut = compacted.lastIndexOf(" ");
+                if (cut <= maxCaptionChars / 2) {
+                    // No word boundary nearby; do not split a surrogate pair
+                    cut = Character.isHighSurrogate(compacted.charAt(compacted.length() - 1))
+                            ? compacted.length() - 1 : compacted.length();
+                }
+                compacted.setLength(cut);
+                compacted.append('…');
+            }
+            return compacted.toString();
+        }
+    }
+}
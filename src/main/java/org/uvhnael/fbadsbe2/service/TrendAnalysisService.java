@@ -5,34 +5,73 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.uvhnael.fbadsbe2.exception.CustomExceptions.NotFoundException;
 import org.uvhnael.fbadsbe2.model.dto.TrendAnalysisResponse;
-import org.uvhnael.fbadsbe2.model.entity.Ad;
 import org.uvhnael.fbadsbe2.model.entity.TrendAnalysis;
-import org.uvhnael.fbadsbe2.repository.AdsRepository;
+import org.uvhnael.fbadsbe2.repository.AdsRepositoryCustom.CaptionRow;
 import org.uvhnael.fbadsbe2.repository.TrendAnalysisRepository;
+import org.uvhnael.fbadsbe2.service.TrendAdSampler.Sample;
 import org.uvhnael.fbadsbe2.utils.Util;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class TrendAnalysisService {
     
-    private final AdsRepository adsRepository;
+    private static final String PROMPT_HEAD = """
+            Phân tích dữ liệu quảng cáo Facebook từ 7 ngày qua và cung cấp insights bằng **định dạng JSON thuần túy**.
+            
+            """;
+
+    private static final String PROMPT_TAIL = """
+            
+            Vui lòng phân tích dữ liệu và trả về CHỈ một JSON object (không có markdown, không có giải thích) với cấu trúc sau:
+            {
+              "keywords": ["từ khóa 1", "từ khóa 2", "từ khóa 3"],
+              "topics": [
+                {
+                  "name": "tên chủ đề",
+                  "sentiment": "positive|negative|neutral",
+                  "volume": 10
+                }
+              ],
+              "competitorSummary": "Tóm tắt hoạt động đối thủ và xu hướng thị trường",
+              "suggestions": "Gợi ý nội dung và khuyến nghị để cải thiện hiệu suất quảng cáo",
+              "aiSummary": "Tóm tắt tổng quan và insights chính từ phân tích",
+              "confidenceScore": 0.85
+            }
+            
+            Hướng dẫn:
+            - keywords: Trích xuất 5-10 từ khóa xu hướng nhất từ các quảng cáo (bằng tiếng Việt)
+            - topics: Xác định 3-5 chủ đề chính với sentiment (positive/negative/neutral) và volume (số lần xuất hiện)
+            - competitorSummary: Phân tích các mẫu, chiến lược đối thủ và định vị thị trường (bằng tiếng Việt)
+            - suggestions: Cung cấp các khuyến nghị nội dung có thể thực hiện (bằng tiếng Việt)
+            - aiSummary: Cung cấp tóm tắt toàn diện về xu hướng và insights (bằng tiếng Việt)
+            - confidenceScore: Đánh giá độ tin cậy của phân tích này từ 0.0 đến 1.0
+            
+            Chỉ trả về JSON object, không có text hoặc formatting bổ sung. Tất cả nội dung văn bản phải bằng tiếng Việt.
+            """;
+
+    private final TrendAdSampler trendAdSampler;
+    private final TrendMapReduceAnalyzer trendMapReduceAnalyzer;
     private final TrendAnalysisRepository trendAnalysisRepository;
+    private final TrendSnapshotCache trendSnapshotCache;
     private final GeminiService geminiService;
     private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
 
     /**
-     * Analyze weekly trends based on ads from the last 7 days
+     * Analyze weekly trends based on ads from the last 7 days.
+     * The ads are sampled in a read-only transaction and the result saved on its own; the Gemini
+     * calls in between run with no transaction (and so no connection) open. A sample larger than
+     * one prompt's token budget is analyzed map-reduce by {@link TrendMapReduceAnalyzer}.
      */
-    @Transactional
     public TrendAnalysis analyzeWeeklyTrends() {
         log.info("Starting weekly trend analysis");
 
@@ -40,29 +79,34 @@ public class TrendAnalysisService {
         LocalDate endDate = LocalDate.now();
         LocalDate startDate = endDate.minusDays(7);
 
-        // Fetch ads from the last 7 days
-        List<Ad> recentAds = adsRepository.findByTimeCreatedBetween(startDate, endDate);
-        log.info("Found {} ads in the last 7 days", recentAds.size());
-
-        // Limit to 50 ads to save tokens
-        List<Ad> adsToAnalyze = recentAds.stream()
-                .limit(50)
-                .collect(Collectors.toList());
-
-        // Concatenate typeAds and caption into a single prompt string
-        StringBuilder adsContent = new StringBuilder();
-        for (int i = 0; i < adsToAnalyze.size(); i++) {
-            Ad ad = adsToAnalyze.get(i);
-            adsContent.append(String.format("Ad %d:\n", i + 1));
-            adsContent.append(String.format("Type: %s\n", ad.getTypeAds() != null ? ad.getTypeAds() : "N/A"));
-            adsContent.append(String.format("Caption: %s\n\n", ad.getCaption() != null ? ad.getCaption() : "N/A"));
-        }
+        // Read phase: a de-duplicated sample of the week's ads stratified by format and page
+        TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnly.setReadOnly(true);
+        int maxChunks = trendMapReduceAnalyzer.maxChunks();
+        Sample sample = readOnly.execute(status -> trendAdSampler.sample(startDate, endDate, maxChunks));
+
+        // Call Gemini API to generate analysis (no transaction open)
+        List<List<CaptionRow>> chunks = trendAdSampler.partition(sample.ads(), maxChunks);
+        TrendAnalysisResponse analysisResponse = chunks.size() > 1
+                ? trendMapReduceAnalyzer.analyze(chunks, sample)
+                : analyzeInOnePrompt(sample);
+
+        // Convert DTO fields to JSON strings and create entity
+        TrendAnalysis trendAnalysis = convertToEntity(analysisResponse);
+
+        // Save to database (write phase, own short transaction)
+        TrendAnalysis savedAnalysis = trendAnalysisRepository.save(trendAnalysis);
+        trendSnapshotCache.invalidate();
+        log.info("Trend analysis saved with ID: {}", savedAnalysis.getId());
 
-        // Construct prompt asking for pure JSON response
-        String prompt = buildAnalysisPrompt(adsContent.toString());
+        return savedAnalysis;
+    }
 
-        // Call Gemini API to generate analysis
-        String aiResponse = geminiService.generateText(prompt);
+    /**
+     * Analyze a sample that fits the token budget with a single Gemini call
+     */
+    private TrendAnalysisResponse analyzeInOnePrompt(Sample sample) {
+        String aiResponse = geminiService.generateText(buildAnalysisPrompt(sample), true, geminiService::isJsonObject);
 
         if (aiResponse == null || aiResponse.isEmpty()) {
             log.error("Failed to get response from Gemini API");
@@ -75,63 +119,31 @@ public class TrendAnalysisService {
         String cleanedResponse = Util.cleanJsonResponse(aiResponse);
 
         // Parse JSON into DTO
-        TrendAnalysisResponse analysisResponse;
         try {
-            analysisResponse = objectMapper.readValue(cleanedResponse, TrendAnalysisResponse.class);
+            TrendAnalysisResponse analysisResponse = objectMapper.readValue(cleanedResponse, TrendAnalysisResponse.class);
             log.info("Successfully parsed trend analysis response");
+            return analysisResponse;
         } catch (Exception e) {
             log.error("Failed to parse AI response as JSON: {}", e.getMessage());
             log.debug("Cleaned response was: {}", cleanedResponse);
             throw new RuntimeException("Failed to parse AI response", e);
         }
-
-        // Convert DTO fields to JSON strings and create entity
-        TrendAnalysis trendAnalysis = convertToEntity(analysisResponse);
-
-
-        // Save to database
-        TrendAnalysis savedAnalysis = trendAnalysisRepository.save(trendAnalysis);
-        log.info("Trend analysis saved with ID: {}", savedAnalysis.getId());
-
-        return savedAnalysis;
     }
 
     /**
-     * Build the prompt for AI analysis
+     * Build the prompt for AI analysis in one buffer sized for the sampled ads
      */
-    private String buildAnalysisPrompt(String adsContent) {
-        return String.format("""
-                Phân tích dữ liệu quảng cáo Facebook từ 7 ngày qua và cung cấp insights bằng **định dạng JSON thuần túy**.
-                
-                Dữ liệu quảng cáo:
-                %s
-                
-                Vui lòng phân tích dữ liệu và trả về CHỈ một JSON object (không có markdown, không có giải thích) với cấu trúc sau:
-                {
-                  "keywords": ["từ khóa 1", "từ khóa 2", "từ khóa 3"],
-                  "topics": [
-                    {
-                      "name": "tên chủ đề",
-                      "sentiment": "positive|negative|neutral",
-                      "volume": 10
-                    }
-                  ],
-                  "competitorSummary": "Tóm tắt hoạt động đối thủ và xu hướng thị trường",
-                  "suggestions": "Gợi ý nội dung và khuyến nghị để cải thiện hiệu suất quảng cáo",
-                  "aiSummary": "Tóm tắt tổng quan và insights chính từ phân tích",
-                  "confidenceScore": 0.85
-                }
-                
-                Hướng dẫn:
-                - keywords: Trích xuất 5-10 từ khóa xu hướng nhất từ các quảng cáo (bằng tiếng Việt)
-                - topics: Xác định 3-5 chủ đề chính với sentiment (positive/negative/neutral) và volume (số lần xuất hiện)
-                - competitorSummary: Phân tích các mẫu, chiến lược đối thủ và định vị thị trường (bằng tiếng Việt)
-                - suggestions: Cung cấp các khuyến nghị nội dung có thể thực hiện (bằng tiếng Việt)
-                - aiSummary: Cung cấp tóm tắt toàn diện về xu hướng và insights (bằng tiếng Việt)
-                - confidenceScore: Đánh giá độ tin cậy của phân tích này từ 0.0 đến 1.0
-                
-                Chỉ trả về JSON object, không có text hoặc formatting bổ sung. Tất cả nội dung văn bản phải bằng tiếng Việt.
-                """, adsContent);
+    private String buildAnalysisPrompt(Sample sample) {
+        String sampleLine = String.format("Dữ liệu quảng cáo (%d quảng cáo đại diện theo định dạng và trang, "
+                + "đã loại nội dung trùng lặp, từ %d quảng cáo):\n", sample.ads().size(), sample.candidates());
+        StringBuilder prompt = new StringBuilder(PROMPT_HEAD.length() + sampleLine.length()
+                + sample.contentChars() + PROMPT_TAIL.length());
+        prompt.append(PROMPT_HEAD).append(sampleLine);
+        List<CaptionRow> ads = sample.ads();
+        for (int i = 0; i < ads.size(); i++) {
+            TrendAdSampler.appendEntry(prompt, i + 1, ads.get(i));
+        }
+        return prompt.append(PROMPT_TAIL).toString();
     }
 
     /**
@@ -162,6 +174,7 @@ public class TrendAnalysisService {
     /**
      * Get the most recent trend analysis
      */
+    @Transactional(readOnly = true)
     public TrendAnalysis getLatestTrend() {
         return trendAnalysisRepository.findTopByOrderByCreatedAtDesc()
             .orElseThrow(() -> new NotFoundException("No trend analysis found"));
@@ -170,6 +183,7 @@ public class TrendAnalysisService {
     /**
      * Get all trend analyses
      */
+    @Transactional(readOnly = true)
     public List<TrendAnalysis> getAllTrends() {
         return trendAnalysisRepository.findAll();
     }
@@ -177,6 +191,7 @@ public class TrendAnalysisService {
     /**
      * Get trend by ID
      */
+    @Transactional(readOnly = true)
     public TrendAnalysis getTrendById(Long id) {
         return trendAnalysisRepository.findById(id)
             .orElseThrow(() -> new NotFoundException("Trend analysis not found with ID: " + id));
@@ -185,6 +200,7 @@ public class TrendAnalysisService {
     /**
      * Get trend analysis for a specific date
      */
+    @Transactional(readOnly = true)
     public Optional<TrendAnalysis> getTrendsByDate(LocalDate date) {
         return trendAnalysisRepository.findByAnalysisDate(date);
     }
@@ -192,6 +208,7 @@ public class TrendAnalysisService {
     /**
      * Get the most recent trend analysis (backward compatibility)
      */
+    @Transactional(readOnly = true)
     public TrendAnalysis getCurrentTrends() {
         try {
             return getLatestTrend();
@@ -0,0 +1,325 @@
+package org.uvhnael.fbadsbe2.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.uvhnael.fbadsbe2.model.dto.TrendAnalysisResponse;
+import org.uvhnael.fbadsbe2.model.dto.TrendAnalysisResponse.Topic;
+import org.uvhnael.fbadsbe2.repository.AdsRepositoryCustom.CaptionRow;
+import org.uvhnael.fbadsbe2.service.TrendAdSampler.Sample;
+import org.uvhnael.fbadsbe2.utils.Util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Trend analysis over more ads than one prompt holds.
+ * Map: every chunk of sampled ads is summarised by its own Gemini call (keywords and topics with
+ * counts, plus a short summary); the calls run on a pool of max-concurrent-calls threads shared by
+ * all analyses. Reduce: keyword counts and topic volumes are merged deterministically, in code,
+ * and a final call writes the summary texts from the merged figures and the chunk summaries.
+ */
+@Service
+@Slf4j
+public class TrendMapReduceAnalyzer {
+
+    static final int MAX_KEYWORDS = 10;
+    static final int MAX_TOPICS = 5;
+
+    private static final String MAP_PROMPT = """
+            Phân tích phần %d/%d của dữ liệu quảng cáo Facebook 7 ngày qua (%d quảng cáo) và trả về CHỈ một JSON object (không có markdown, không có giải thích) với cấu trúc sau:
+            {
+              "keywords": [{"keyword": "từ khóa", "count": 3}],
+              "topics": [{"name": "tên chủ đề", "sentiment": "positive|negative|neutral", "volume": 3}],
+              "summary": "Tóm tắt ngắn các mẫu nội dung và chiến lược đối thủ trong phần này"
+            }
+
+            Hướng dẫn:
+            - keywords: 5-10 từ khóa xu hướng nhất (bằng tiếng Việt), count là số quảng cáo trong phần này có nhắc đến
+            - topics: 3-5 chủ đề chính, volume là số quảng cáo trong phần này thuộc chủ đề
+            - summary: 2-3 câu (bằng tiếng Việt)
+
+            Dữ liệu quảng cáo:
+            """;
+
+    private static final String REDUCE_PROMPT_HEAD = """
+            Dưới đây là kết quả phân tích %d phần của %d quảng cáo Facebook đại diện (từ %d quảng cáo trong 7 ngày qua).
+
+            """;
+
+    private static final String REDUCE_PROMPT_TAIL = """
+
+            Vui lòng tổng hợp các kết quả trên và trả về CHỈ một JSON object (không có markdown, không có giải thích) với cấu trúc sau:
+            {
+              "competitorSummary": "Tóm tắt hoạt động đối thủ và xu hướng thị trường",
+              "suggestions": "Gợi ý nội dung và khuyến nghị để cải thiện hiệu suất quảng cáo",
+              "aiSummary": "Tóm tắt tổng quan và insights chính từ phân tích",
+              "confidenceScore": 0.85
+            }
+
+            Hướng dẫn:
+            - competitorSummary: Phân tích các mẫu, chiến lược đối thủ và định vị thị trường (bằng tiếng Việt)
+            - suggestions: Cung cấp các khuyến nghị nội dung có thể thực hiện (bằng tiếng Việt)
+            - aiSummary: Cung cấp tóm tắt toàn diện về xu hướng và insights (bằng tiếng Việt)
+            - confidenceScore: Đánh giá độ tin cậy của phân tích này từ 0.0 đến 1.0
+
+            Chỉ trả về JSON object, không có text hoặc formatting bổ sung. Tất cả nội dung văn bản phải bằng tiếng Việt.
+            """;
+
+    private final GeminiService geminiService;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int maxChunks;
+    private final ExecutorService executor;
+
+    public TrendMapReduceAnalyzer(GeminiService geminiService,
+                                  ObjectMapper objectMapper,
+                                  @Value("${trends.map-reduce.enabled:true}") boolean enabled,
+                                  @Value("${trends.map-reduce.max-chunks:8}") int maxChunks,
+                                  @Value("${trends.map-reduce.max-concurrent-calls:3}") int maxConcurrentCalls) {
+        this.geminiService = geminiService;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.maxChunks = Math.max(1, maxChunks);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        int threads = Math.max(1, maxConcurrentCalls);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "trend-map-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Keyword (as first spelled) and the number of ads mentioning it
+     */
+    public record KeywordCount(String keyword, int count) {
+    }
+
+    /**
+     * What the map call returned for one chunk
+     */
+    public record ChunkResult(List<KeywordCount> keywords, List<Topic> topics, String summary) {
+    }
+
+    /**
+     * Merged chunk results, most frequent first
+     */
+    public record Reduced(List<KeywordCount> keywords, List<Topic> topics, List<String> summaries) {
+    }
+
+    /**
+     * How many chunks a trend sample may be split into; 1 when map-reduce is off
+     */
+    public int maxChunks() {
+        return enabled ? maxChunks : 1;
+    }
+
+    /**
+     * Analyze the chunks of a sample: one concurrent map call per chunk, then the reduce.
+     * Chunks whose call fails are left out; it fails only if every chunk did.
+     */
+    public TrendAnalysisResponse analyze(List<List<CaptionRow>> chunks, Sample sample) {
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<ChunkResult>> calls = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            int part = i + 1;
+            List<CaptionRow> chunk = chunks.get(i);
+            calls.add(CompletableFuture.supplyAsync(() -> analyzeChunk(part, chunks.size(), chunk), executor));
+        }
+
+        // Joined in chunk order, so the merge does not depend on which call finished first
+        List<ChunkResult> results = new ArrayList<>(chunks.size());
+        for (CompletableFuture<ChunkResult> call : calls) {
+            ChunkResult result = call.join();
+            if (result != null) {
+                results.add(result);
+            }
+        }
+        log.info("Trend map step: {} of {} chunks analyzed in {} ms",
+                results.size(), chunks.size(), System.currentTimeMillis() - start);
+        if (results.isEmpty()) {
+            throw new RuntimeException("AI service returned no usable response for any chunk");
+        }
+
+        Reduced reduced = reduce(results);
+        TrendAnalysisResponse response = summarize(reduced, results.size(), sample);
+        response.setKeywords(reduced.keywords().stream().map(KeywordCount::keyword).toList());
+        response.setTopics(reduced.topics());
+        log.info("Trend map-reduce analysis done in {} ms", System.currentTimeMillis() - start);
+        return response;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Merge chunk results: keyword counts and topic volumes are summed under their case- and
+     * whitespace-insensitive name (shown as first spelled). A topic's sentiment is the one with the
+     * most volume behind it, neutral on a tie. Ties in count are ordered by name.
+     */
+    static Reduced reduce(List<ChunkResult> results) {
+        Map<String, String> keywordNames = new LinkedHashMap<>();
+        Map<String, Integer> keywordCounts = new HashMap<>();
+        Map<String, String> topicNames = new LinkedHashMap<>();
+        Map<String, Integer> topicVolumes = new HashMap<>();
+        Map<String, Map<String, Integer>> topicSentiments = new HashMap<>();
+        List<String> summaries = new ArrayList<>();
+
+        for (ChunkResult result : results) {
+            for (KeywordCount keyword : result.keywords()) {
+                String key = normalize(keyword.keyword());
+                keywordNames.putIfAbsent(key, keyword.keyword().trim());
+                keywordCounts.merge(key, keyword.count(), Integer::sum);
+            }
+            for (Topic topic : result.topics()) {
+                String key = normalize(topic.getName());
+                int volume = topic.getVolume() != null ? topic.getVolume() : 1;
+                topicNames.putIfAbsent(key, topic.getName().trim());
+                topicVolumes.merge(key, volume, Integer::sum);
+                topicSentiments.computeIfAbsent(key, k -> new HashMap<>())
+                        .merge(sentiment(topic.getSentiment()), volume, Integer::sum);
+            }
+            if (!Util.isNullOrBlank(result.summary())) {
+                summaries.add(result.summary().trim());
+            }
+        }
+
+        List<KeywordCount> keywords = keywordNames.keySet().stream()
+                .sorted(Comparator.comparing((String key) -> -keywordCounts.get(key)).thenComparing(key -> key))
+                .limit(MAX_KEYWORDS)
+                .map(key -> new KeywordCount(keywordNames.get(key), keywordCounts.get(key)))
+                .toList();
+        List<Topic> topics = topicNames.keySet().stream()
+                .sorted(Comparator.comparing((String key) -> -topicVolumes.get(key)).thenComparing(key -> key))
+                .limit(MAX_TOPICS)
+                .map(key -> new Topic(topicNames.get(key), dominantSentiment(topicSentiments.get(key)),
+                        topicVolumes.get(key)))
+                .toList();
+        return new Reduced(keywords, topics, summaries);
+    }
+
+    private ChunkResult analyzeChunk(int part, int parts, List<CaptionRow> chunk) {
+        try {
+            StringBuilder prompt = new StringBuilder(MAP_PROMPT.length() + chunk.size() * 200);
+            prompt.append(MAP_PROMPT.formatted(part, parts, chunk.size()));
+            for (int i = 0; i < chunk.size(); i++) {
+                TrendAdSampler.appendEntry(prompt, i + 1, chunk.get(i));
+            }
+
+            String response = geminiService.generateText(prompt.toString(), true, geminiService::isJsonObject);
+            if (response == null || response.isEmpty()) {
+                log.warn("Trend chunk {}/{}: empty response from Gemini", part, parts);
+                return null;
+            }
+            return parseChunk(objectMapper.readTree(Util.cleanJsonResponse(response)));
+        } catch (Exception e) {
+            log.warn("Trend chunk {}/{} failed: {}", part, parts, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Read a map response leniently: keywords may come as plain strings, counts may be missing
+     */
+    private static ChunkResult parseChunk(JsonNode root) {
+        List<KeywordCount> keywords = new ArrayList<>();
+        for (JsonNode node : root.path("keywords")) {
+            String keyword = node.isTextual() ? node.asText() : node.path("keyword").asText("");
+            if (!keyword.isBlank()) {
+                keywords.add(new KeywordCount(keyword, Math.max(1, node.path("count").asInt(1))));
+            }
+        }
+        List<Topic> topics = new ArrayList<>();
+        for (JsonNode node : root.path("topics")) {
+            String name = node.isTextual() ? node.asText() : node.path("name").asText("");
+            if (!name.isBlank()) {
+                topics.add(new Topic(name, node.path("sentiment").asText(null),
+                        Math.max(1, node.path("volume").asInt(1))));
+            }
+        }
+        return new ChunkResult(keywords, topics, root.path("summary").asText(null));
+    }
+
+    private TrendAnalysisResponse summarize(Reduced reduced, int parts, Sample sample) {
+        StringBuilder prompt = new StringBuilder(REDUCE_PROMPT_HEAD.length() + REDUCE_PROMPT_TAIL.length() + 4096);
+        prompt.append(REDUCE_PROMPT_HEAD.formatted(parts, sample.ads().size(), sample.candidates()));
+        prompt.append("Từ khóa (số quảng cáo nhắc đến):\n");
+        for (KeywordCount keyword : reduced.keywords()) {
+            prompt.append("- ").append(keyword.keyword()).append(": ").append(keyword.count()).append('\n');
+        }
+        prompt.append("\nChủ đề (cảm xúc, số quảng cáo):\n");
+        for (Topic topic : reduced.topics()) {
+            prompt.append("- ").append(topic.getName()).append(" (").append(topic.getSentiment()).append("): ")
+                    .append(topic.getVolume()).append('\n');
+        }
+        prompt.append("\nTóm tắt từng phần:\n");
+        for (int i = 0; i < reduced.summaries().size(); i++) {
+            prompt.append("Phần ").append(i + 1).append(": ").append(reduced.summaries().get(i)).append('\n');
+        }
+        prompt.append(REDUCE_PROMPT_TAIL);
+
+        String response = geminiService.generateText(prompt.toString(), true, geminiService::isJsonObject);
+        if (response == null || response.isEmpty()) {
+            log.error("Failed to get reduce response from Gemini API");
+            throw new RuntimeException("AI service returned empty response");
+        }
+        try {
+            JsonNode root = objectMapper.readTree(Util.cleanJsonResponse(response));
+            TrendAnalysisResponse analysis = new TrendAnalysisResponse();
+            analysis.setCompetitorSummary(root.path("competitorSummary").asText(null));
+            analysis.setSuggestions(root.path("suggestions").asText(null));
+            analysis.setAiSummary(root.path("aiSummary").asText(null));
+            if (root.path("confidenceScore").isNumber()) {
+                analysis.setConfidenceScore(root.path("confidenceScore").decimalValue());
+            }
+            return analysis;
+        } catch (Exception e) {
+            log.error("Failed to parse reduce response as JSON: {}", e.getMessage());
+            throw new RuntimeException("Failed to parse AI response", e);
+        }
+    }
+
+    private static String normalize(String name) {
+        return name.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static String sentiment(String sentiment) {
+        if (sentiment == null) {
+            return "neutral";
+        }
+        String value = sentiment.trim().toLowerCase(Locale.ROOT);
+        return value.equals("positive") || value.equals("negative") ? value : "neutral";
+    }
+
+    private static String dominantSentiment(Map<String, Integer> volumes) {
+        int positive = volumes.getOrDefault("positive", 0);
+        int negative = volumes.getOrDefault("negative", 0);
+        int neutral = volumes.getOrDefault("neutral", 0);
+        if (positive > negative && positive > neutral) {
+            return "positive";
+        }
+        if (negative > positive && negative > neutral) {
+            return "negative";
+        }
+        return "neutral";
+    }
+}
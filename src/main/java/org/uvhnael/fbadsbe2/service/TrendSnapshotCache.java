@@ -0,0 +1,168 @@
+package org.uvhnael.fbadsbe2.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.uvhnael.fbadsbe2.model.entity.TrendAnalysis;
+import org.uvhnael.fbadsbe2.repository.TrendAnalysisRepository;
+import org.uvhnael.fbadsbe2.utils.Util;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Trend analyses with their keyword and topic JSON already parsed, by ID plus a "latest" pointer.
+ * Every save of a new analysis calls {@link #invalidate()}, which bumps the version and drops all
+ * entries; a load that started under an older version is returned but not stored, so it cannot
+ * put a pre-save view back. Other instances only see a new analysis as "latest" once latest-ttl
+ * has passed.
+ * Metrics: trends.snapshot.cache{lookup=id|latest, result=hit|miss}, trends.snapshot.cache.size.
+ */
+@Service
+@Slf4j
+public class TrendSnapshotCache {
+
+    private final TrendAnalysisRepository trendAnalysisRepository;
+    private final ObjectMapper objectMapper;
+    private final int maxEntries;
+    private final long latestTtlNanos;
+
+    private final AtomicLong version = new AtomicLong();
+    private final Map<Long, TrendSnapshot> byId = new ConcurrentHashMap<>();
+    private final AtomicReference<Latest> latest = new AtomicReference<>();
+
+    private final Counter idHits;
+    private final Counter idMisses;
+    private final Counter latestHits;
+    private final Counter latestMisses;
+
+    public TrendSnapshotCache(TrendAnalysisRepository trendAnalysisRepository,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry,
+                              @Value("${trends.snapshot-cache.max-entries:64}") int maxEntries,
+                              @Value("${trends.snapshot-cache.latest-ttl-ms:300000}") long latestTtlMs) {
+        this.trendAnalysisRepository = trendAnalysisRepository;
+        this.objectMapper = objectMapper;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.latestTtlNanos = Duration.ofMillis(latestTtlMs).toNanos();
+
+        this.idHits = meterRegistry.counter("trends.snapshot.cache", "lookup", "id", "result", "hit");
+        this.idMisses = meterRegistry.counter("trends.snapshot.cache", "lookup", "id", "result", "miss");
+        this.latestHits = meterRegistry.counter("trends.snapshot.cache", "lookup", "latest", "result", "hit");
+        this.latestMisses = meterRegistry.counter("trends.snapshot.cache", "lookup", "latest", "result", "miss");
+        meterRegistry.gaugeMapSize("trends.snapshot.cache.size", List.of(), byId);
+    }
+
+    /**
+     * Parsed, immutable view of one trend analysis. Keywords and topic names are empty when the
+     * column is blank or not valid JSON; topicNamesJson is then null.
+     */
+    public record TrendSnapshot(long id, long version, List<String> keywords, List<String> topicNames,
+                                String topicNamesJson) {
+    }
+
+    private record Latest(TrendSnapshot snapshot, long loadedAt) {
+    }
+
+    public Optional<TrendSnapshot> get(long id) {
+        TrendSnapshot cached = byId.get(id);
+        if (cached != null) {
+            idHits.increment();
+            return Optional.of(cached);
+        }
+        idMisses.increment();
+
+        long loadVersion = version.get();
+        Optional<TrendSnapshot> loaded = trendAnalysisRepository.findById(id)
+                .map(analysis -> parse(id, analysis, loadVersion));
+        loaded.ifPresent(snapshot -> store(snapshot, loadVersion));
+        return loaded;
+    }
+
+    /**
+     * The analysis with the latest analysis date
+     */
+    public Optional<TrendSnapshot> latest() {
+        Latest cached = latest.get();
+        if (cached != null && System.nanoTime() - cached.loadedAt() < latestTtlNanos) {
+            latestHits.increment();
+            return Optional.ofNullable(cached.snapshot());
+        }
+        latestMisses.increment();
+
+        long loadVersion = version.get();
+        TrendSnapshot snapshot = trendAnalysisRepository.findTopByOrderByAnalysisDateDesc()
+                .map(analysis -> parse(analysis.getId(), analysis, loadVersion))
+                .orElse(null);
+        if (snapshot != null) {
+            store(snapshot, loadVersion);
+        }
+        // Only replaces what was read, so an invalidate() in between wins
+        latest.compareAndSet(cached, version.get() == loadVersion ? new Latest(snapshot, System.nanoTime()) : null);
+        return Optional.ofNullable(snapshot);
+    }
+
+    /**
+     * Drop every snapshot; called after a trend analysis is saved
+     */
+    public void invalidate() {
+        version.incrementAndGet();
+        latest.set(null);
+        byId.clear();
+        log.debug("Trend snapshot cache invalidated (version {})", version.get());
+    }
+
+    private void store(TrendSnapshot snapshot, long loadVersion) {
+        if (byId.size() >= maxEntries) {
+            // Weekly analyses: only the most recent ones are asked for, so drop the oldest ID
+            byId.keySet().stream().min(Long::compare).ifPresent(byId::remove);
+        }
+        byId.put(snapshot.id(), snapshot);
+        if (version.get() != loadVersion) {
+            // Invalidated while loading; the entry may predate the new analysis
+            byId.remove(snapshot.id(), snapshot);
+        }
+    }
+
+    private TrendSnapshot parse(long id, TrendAnalysis analysis, long loadVersion) {
+        List<String> keywords = List.of();
+        if (!Util.isNullOrBlank(analysis.getTrendingKeywords())) {
+            try {
+                keywords = List.copyOf(objectMapper.readValue(analysis.getTrendingKeywords(),
+                        new TypeReference<List<String>>() {}));
+            } catch (Exception e) {
+                log.error("Invalid trending keywords in trend analysis {}: {}", id, e.getMessage());
+            }
+        }
+
+        List<String> topicNames = List.of();
+        String topicNamesJson = null;
+        if (!Util.isNullOrBlank(analysis.getTrendingTopics())) {
+            try {
+                List<String> names = new ArrayList<>();
+                for (JsonNode topic : objectMapper.readTree(analysis.getTrendingTopics())) {
+                    if (topic.has("name")) {
+                        names.add(topic.get("name").asText());
+                    }
+                }
+                topicNames = List.copyOf(names);
+                topicNamesJson = Util.convertListToJson(topicNames);
+            } catch (Exception e) {
+                log.error("Invalid trending topics in trend analysis {}: {}", id, e.getMessage());
+            }
+        }
+
+        return new TrendSnapshot(id, loadVersion, keywords, topicNames, topicNamesJson);
+    }
+}
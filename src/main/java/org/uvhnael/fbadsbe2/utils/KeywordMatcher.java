@@ -0,0 +1,235 @@
+package org.uvhnael.fbadsbe2.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Case-insensitive multi-keyword matcher (Aho-Corasick automaton compiled to a dense DFA).
+ * Finds every keyword occurrence in one left-to-right pass over the text, with the same
+ * substring semantics as {@code text.toLowerCase().contains(keyword)} per keyword, but without
+ * lower-casing the text or allocating per call. Immutable and safe to share between threads.
+ */
+public final class KeywordMatcher {
+
+    private static final KeywordMatcher EMPTY = compile(List.of());
+
+    private final String[] keywords;
+    // Alphabet column of every char up to the highest keyword char, lower-casing folded in; -1 = not in any keyword
+    private final int[] symbols;
+    private final int alphabetSize;
+    // delta[state * alphabetSize + symbol] = next state (failure transitions already folded in)
+    private final int[] delta;
+    // Keyword ids ending at each state, including those reached through failure links
+    private final int[][] outputs;
+
+    private KeywordMatcher(String[] keywords, int[] symbols, int alphabetSize, int[] delta, int[][] outputs) {
+        this.keywords = keywords;
+        this.symbols = symbols;
+        this.alphabetSize = alphabetSize;
+        this.delta = delta;
+        this.outputs = outputs;
+    }
+
+    public static KeywordMatcher empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Build the automaton; keywords are lower-cased, blanks and duplicates are dropped
+     */
+    public static KeywordMatcher compile(Collection<String> keywords) {
+        Set<String> unique = new LinkedHashSet<>();
+        for (String keyword : keywords) {
+            if (keyword != null && !keyword.isEmpty()) {
+                unique.add(lowerCase(keyword));
+            }
+        }
+        String[] patterns = unique.toArray(new String[0]);
+
+        // Alphabet: only chars that occur in some keyword get a column
+        Set<Character> chars = new TreeSet<>();
+        for (String pattern : patterns) {
+            for (int i = 0; i < pattern.length(); i++) {
+                chars.add(pattern.charAt(i));
+            }
+        }
+        int[] columns = new int[chars.isEmpty() ? 0 : chars.stream().mapToInt(c -> c).max().getAsInt() + 1];
+        Arrays.fill(columns, -1);
+        int alphabetSize = 0;
+        for (char c : chars) {
+            columns[c] = alphabetSize++;
+        }
+        // Upper-case (and any other) forms map to the column of their lower-case char
+        int[] symbols = new int[columns.length];
+        for (int c = 0; c < symbols.length; c++) {
+            int lower = Character.toLowerCase((char) c);
+            symbols[c] = lower < columns.length ? columns[lower] : -1;
+        }
+
+        // Trie
+        List<int[]> gotoTable = new ArrayList<>();
+        List<List<Integer>> stateOutputs = new ArrayList<>();
+        gotoTable.add(newRow(alphabetSize));
+        stateOutputs.add(new ArrayList<>());
+        for (int id = 0; id < patterns.length; id++) {
+            int state = 0;
+            for (int i = 0; i < patterns[id].length(); i++) {
+                int symbol = symbols[patterns[id].charAt(i)];
+                int next = gotoTable.get(state)[symbol];
+                if (next < 0) {
+                    next = gotoTable.size();
+                    gotoTable.add(newRow(alphabetSize));
+                    stateOutputs.add(new ArrayList<>());
+                    gotoTable.get(state)[symbol] = next;
+                }
+                state = next;
+            }
+            stateOutputs.get(state).add(id);
+        }
+
+        // Breadth-first: failure links, folded into a complete transition table
+        int stateCount = gotoTable.size();
+        int[] delta = new int[stateCount * Math.max(alphabetSize, 1)];
+        int[] fail = new int[stateCount];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int symbol = 0; symbol < alphabetSize; symbol++) {
+            int next = gotoTable.get(0)[symbol];
+            if (next > 0) {
+                delta[symbol] = next;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            stateOutputs.get(state).addAll(stateOutputs.get(fail[state]));
+            for (int symbol = 0; symbol < alphabetSize; symbol++) {
+                int next = gotoTable.get(state)[symbol];
+                int fallback = delta[fail[state] * alphabetSize + symbol];
+                if (next > 0) {
+                    fail[next] = fallback;
+                    delta[state * alphabetSize + symbol] = next;
+                    queue.add(next);
+                } else {
+                    delta[state * alphabetSize + symbol] = fallback;
+                }
+            }
+        }
+
+        int[][] outputs = new int[stateCount][];
+        for (int state = 0; state < stateCount; state++) {
+            outputs[state] = stateOutputs.get(state).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return new KeywordMatcher(patterns, symbols, alphabetSize, delta, outputs);
+    }
+
+    /**
+     * Number of distinct keywords after normalization
+     */
+    public int size() {
+        return keywords.length;
+    }
+
+    public String keyword(int id) {
+        return keywords[id];
+    }
+
+    /**
+     * Whether the text contains any keyword; stops at the first hit
+     */
+    public boolean containsAny(CharSequence text) {
+        if (text == null || keywords.length == 0) {
+            return false;
+        }
+        int state = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            state = step(state, text.charAt(i));
+            if (outputs[state].length > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Number of distinct keywords that occur in the text
+     */
+    public int countDistinct(CharSequence text) {
+        if (text == null || keywords.length == 0) {
+            return 0;
+        }
+        // Allocation-free for up to 64 keywords
+        long seenSmall = 0;
+        long[] seen = keywords.length > 64 ? new long[(keywords.length + 63) >>> 6] : null;
+        int distinct = 0;
+        int state = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            state = step(state, text.charAt(i));
+            for (int id : outputs[state]) {
+                if (seen == null) {
+                    if ((seenSmall & (1L << id)) == 0) {
+                        seenSmall |= 1L << id;
+                        distinct++;
+                    }
+                } else if ((seen[id >>> 6] & (1L << id)) == 0) {
+                    seen[id >>> 6] |= 1L << id;
+                    distinct++;
+                }
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Report every occurrence as (keyword id, end offset exclusive), in text order
+     */
+    public void forEachMatch(CharSequence text, MatchConsumer consumer) {
+        if (text == null || keywords.length == 0) {
+            return;
+        }
+        int state = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            state = step(state, text.charAt(i));
+            for (int id : outputs[state]) {
+                consumer.accept(id, i + 1);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface MatchConsumer {
+        void accept(int keywordId, int end);
+    }
+
+    private int step(int state, char c) {
+        int symbol;
+        if (c < symbols.length) {
+            symbol = symbols[c];
+        } else {
+            // Rare: a char above the table whose lower-case form is a keyword char
+            int lower = Character.toLowerCase(c);
+            symbol = lower < symbols.length ? symbols[lower] : -1;
+        }
+        return symbol < 0 ? 0 : delta[state * alphabetSize + symbol];
+    }
+
+    private static int[] newRow(int alphabetSize) {
+        int[] row = new int[alphabetSize];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    // Char-wise so pattern lengths line up with the per-char lower-casing done while matching
+    private static String lowerCase(String keyword) {
+        char[] chars = keyword.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+}
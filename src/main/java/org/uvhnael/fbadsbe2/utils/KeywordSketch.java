@@ -0,0 +1,138 @@
+package org.uvhnael.fbadsbe2.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Mergeable heavy-hitter summary (Space-Saving style): at most capacity terms, each with an
+ * estimated count and the error that estimate may include, plus a floor that bounds the count
+ * of every term not listed. Merging adds estimates term by term, charging a side's floor for
+ * terms it does not list, so a month merged from daily sketches keeps the same guarantees:
+ * true count <= count and count - error <= true count.
+ */
+public final class KeywordSketch {
+
+    private static final Comparator<Entry> BY_COUNT =
+            Comparator.comparingLong(Entry::count).reversed().thenComparing(Entry::term);
+
+    private static final Comparator<Entry> BY_GUARANTEED_COUNT =
+            Comparator.comparingLong(Entry::guaranteedCount).reversed().thenComparing(BY_COUNT);
+
+    private final int capacity;
+    private final Map<String, Entry> entries;
+    private final long floor;
+
+    private KeywordSketch(int capacity, Map<String, Entry> entries, long floor) {
+        this.capacity = capacity;
+        this.entries = entries;
+        this.floor = floor;
+    }
+
+    public record Entry(String term, long count, long error) {
+
+        /**
+         * Lower bound of the true count
+         */
+        public long guaranteedCount() {
+            return count - error;
+        }
+    }
+
+    public static KeywordSketch empty(int capacity) {
+        return new KeywordSketch(capacity, new HashMap<>(), 0);
+    }
+
+    /**
+     * Exact top terms of a counter; the floor is the count of the best term left out
+     */
+    public static KeywordSketch of(TermCounter counter, int capacity) {
+        List<TermCounter.Term> top = counter.topK(capacity + 1);
+        Map<String, Entry> entries = new HashMap<>();
+        for (int i = 0; i < Math.min(capacity, top.size()); i++) {
+            entries.put(top.get(i).term(), new Entry(top.get(i).term(), top.get(i).count(), 0));
+        }
+        long floor = top.size() > capacity ? top.get(capacity).count() : 0;
+        return new KeywordSketch(capacity, entries, floor);
+    }
+
+    public KeywordSketch merge(KeywordSketch other) {
+        Set<String> terms = new HashSet<>(entries.keySet());
+        terms.addAll(other.entries.keySet());
+
+        List<Entry> merged = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            Entry a = entries.get(term);
+            Entry b = other.entries.get(term);
+            merged.add(new Entry(term,
+                    (a != null ? a.count() : floor) + (b != null ? b.count() : other.floor),
+                    (a != null ? a.error() : floor) + (b != null ? b.error() : other.floor)));
+        }
+        merged.sort(BY_COUNT);
+
+        int keep = Math.max(capacity, other.capacity);
+        long mergedFloor = floor + other.floor;
+        Map<String, Entry> kept = new HashMap<>();
+        for (int i = 0; i < merged.size(); i++) {
+            if (i < keep) {
+                kept.put(merged.get(i).term(), merged.get(i));
+            } else {
+                // Everything dropped is bounded by the largest dropped estimate
+                mergedFloor = Math.max(mergedFloor, merged.get(i).count());
+                break;
+            }
+        }
+        return new KeywordSketch(keep, kept, mergedFloor);
+    }
+
+    /**
+     * The k terms with the highest estimated count
+     */
+    public List<Entry> top(int k) {
+        return entries.values().stream().sorted(BY_COUNT).limit(k).toList();
+    }
+
+    /**
+     * The k terms with the highest guaranteed count, for reporting counts that are never
+     * overstated
+     */
+    public List<Entry> topGuaranteed(int k) {
+        return entries.values().stream().sorted(BY_GUARANTEED_COUNT).limit(k).toList();
+    }
+
+    public long floor() {
+        return floor;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * One "term TAB count TAB error" line per entry (terms never contain tabs or line breaks)
+     */
+    public String encode() {
+        StringBuilder sb = new StringBuilder(entries.size() * 16);
+        for (Entry entry : top(entries.size())) {
+            sb.append(entry.term()).append('\t').append(entry.count()).append('\t').append(entry.error()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public static KeywordSketch decode(String encoded, long floor, int capacity) {
+        Map<String, Entry> entries = new HashMap<>();
+        if (encoded != null) {
+            for (String line : encoded.split("\n")) {
+                String[] fields = line.split("\t");
+                if (fields.length == 3) {
+                    entries.put(fields[0], new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+                }
+            }
+        }
+        return new KeywordSketch(Math.max(capacity, entries.size()), entries, floor);
+    }
+}
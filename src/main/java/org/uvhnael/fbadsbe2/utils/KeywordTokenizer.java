@@ -0,0 +1,80 @@
+package org.uvhnael.fbadsbe2.utils;
+
+/**
+ * Single-pass keyword tokenizer for (Vietnamese) captions, same tokens as
+ * {@link Util#extractKeywords(String, int)}: lower-cased runs of a-z, 0-9 and À-ỹ, at least
+ * minLength chars, stop words dropped. Tokens are handed out as slices of an internal buffer,
+ * so tokenizing allocates nothing once the buffer has grown to the longest caption.
+ * Holds that buffer, so use one instance per thread.
+ */
+public final class KeywordTokenizer {
+
+    private static final TermCounter STOP_WORDS = new TermCounter(Util.getVietnameseStopWords().size());
+
+    static {
+        Util.getVietnameseStopWords().forEach(STOP_WORDS::add);
+    }
+
+    private final int minLength;
+    private char[] buffer = new char[256];
+
+    public KeywordTokenizer() {
+        this(3);
+    }
+
+    public KeywordTokenizer(int minLength) {
+        this.minLength = minLength;
+    }
+
+    @FunctionalInterface
+    public interface TokenConsumer {
+        // The slice is only valid during the call
+        void accept(char[] buf, int offset, int length);
+    }
+
+    public void tokenize(CharSequence text, TokenConsumer consumer) {
+        if (text == null) {
+            return;
+        }
+        int n = text.length();
+        if (buffer.length < n) {
+            buffer = new char[Math.max(n, buffer.length * 2)];
+        }
+        char[] buf = buffer;
+        int start = 0;
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if (isTokenChar(c)) {
+                if (length == 0) {
+                    start = i;
+                }
+                buf[start + length++] = c;
+            } else if (length > 0) {
+                emit(buf, start, length, consumer);
+                length = 0;
+            }
+        }
+        if (length > 0) {
+            emit(buf, start, length, consumer);
+        }
+    }
+
+    /**
+     * Tokenize straight into a counter
+     */
+    public void countInto(CharSequence text, TermCounter counter) {
+        tokenize(text, (buf, offset, length) -> counter.add(buf, offset, length, 1));
+    }
+
+    private void emit(char[] buf, int offset, int length, TokenConsumer consumer) {
+        if (length >= minLength && STOP_WORDS.get(buf, offset, length) == 0) {
+            consumer.accept(buf, offset, length);
+        }
+    }
+
+    // Same class as [a-zA-ZÀ-ỹ0-9] applied after lower-casing
+    private static boolean isTokenChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || (c >= 'À' && c <= 'ỹ');
+    }
+}
@@ -0,0 +1,56 @@
+package org.uvhnael.fbadsbe2.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Set of SimHash fingerprints that answers "is there one within maxDistance bits?".
+ * Fingerprints are indexed under each of their four 16-bit bands; two fingerprints at most 3 bits
+ * apart share at least one band exactly, so only the fingerprints in those buckets are compared.
+ */
+public final class NearDuplicateIndex {
+
+    private static final int BANDS = 4;
+
+    private final int maxDistance;
+    private final Map<Long, List<Long>> buckets = new HashMap<>();
+    private int size;
+
+    public NearDuplicateIndex(int maxDistance) {
+        if (maxDistance < 0 || maxDistance >= BANDS) {
+            throw new IllegalArgumentException("maxDistance must be between 0 and " + (BANDS - 1));
+        }
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * Add the fingerprint unless a near-duplicate is already present; returns whether it was added
+     */
+    public boolean addIfDistinct(long fingerprint) {
+        for (int band = 0; band < BANDS; band++) {
+            List<Long> bucket = buckets.get(bucketKey(fingerprint, band));
+            if (bucket != null) {
+                for (long other : bucket) {
+                    if (SimHash.distance(fingerprint, other) <= maxDistance) {
+                        return false;
+                    }
+                }
+            }
+        }
+        for (int band = 0; band < BANDS; band++) {
+            buckets.computeIfAbsent(bucketKey(fingerprint, band), key -> new ArrayList<>(2)).add(fingerprint);
+        }
+        size++;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static long bucketKey(long fingerprint, int band) {
+        return ((long) band << 16) | ((fingerprint >>> (band * 16)) & 0xFFFFL);
+    }
+}
@@ -0,0 +1,71 @@
+package org.uvhnael.fbadsbe2.utils;
+
+import java.util.Arrays;
+
+/**
+ * 64-bit SimHash of a caption over its tokens and adjacent token pairs (Vietnamese words are
+ * mostly two syllables). Captions that differ only in a few words, emoji, punctuation or casing
+ * get fingerprints a few bits apart; unrelated captions differ in about half of the bits.
+ * Reuses its buffers, so use one instance per thread.
+ */
+public final class SimHash {
+
+    private final KeywordTokenizer tokenizer = new KeywordTokenizer(2);
+    private final int[] weights = new int[64];
+    private long previous;
+    private boolean hasPrevious;
+
+    public long hash(CharSequence text) {
+        Arrays.fill(weights, 0);
+        hasPrevious = false;
+        tokenizer.tokenize(text, (buf, offset, length) -> {
+            long token = hash64(buf, offset, length);
+            add(token);
+            if (hasPrevious) {
+                add(mix(previous * 0x9E3779B97F4A7C15L + token));
+            }
+            previous = token;
+            hasPrevious = true;
+        });
+
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Number of differing bits
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    private void add(long feature) {
+        for (int bit = 0; bit < 64; bit++) {
+            weights[bit] += ((feature >>> bit) & 1L) != 0 ? 1 : -1;
+        }
+    }
+
+    // FNV-1a over the chars, then a full-avalanche finalizer
+    private static long hash64(char[] buf, int offset, int length) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            h ^= buf[i];
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,200 @@
+package org.uvhnael.fbadsbe2.utils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Term -> int counts in an open-addressing table (linear probing, power-of-two capacity).
+ * Terms are passed as char slices and only copied the first time they are seen, so counting a
+ * known term allocates nothing and no count is ever boxed. Not thread-safe while being written.
+ */
+public final class TermCounter {
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private char[][] keys;
+    private int[] hashes;
+    private int[] counts;
+    private int mask;
+    private int size;
+    private long total;
+
+    public TermCounter() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TermCounter(int expectedTerms) {
+        int capacity = Integer.highestOneBit(Math.max(expectedTerms * 2 - 1, 15)) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Add delta to the count of the term buf[offset, offset + length)
+     */
+    public void add(char[] buf, int offset, int length, int delta) {
+        int hash = hash(buf, offset, length);
+        int slot = hash & mask;
+        while (keys[slot] != null) {
+            if (hashes[slot] == hash && Arrays.equals(keys[slot], 0, keys[slot].length, buf, offset, offset + length)) {
+                counts[slot] += delta;
+                total += delta;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = Arrays.copyOfRange(buf, offset, offset + length);
+        hashes[slot] = hash;
+        counts[slot] = delta;
+        total += delta;
+        if (++size * 2 > keys.length) {
+            resize();
+        }
+    }
+
+    public void add(String term) {
+        char[] chars = term.toCharArray();
+        add(chars, 0, chars.length, 1);
+    }
+
+    /**
+     * Count of the term, 0 when absent
+     */
+    public int get(char[] buf, int offset, int length) {
+        int hash = hash(buf, offset, length);
+        int slot = hash & mask;
+        while (keys[slot] != null) {
+            if (hashes[slot] == hash && Arrays.equals(keys[slot], 0, keys[slot].length, buf, offset, offset + length)) {
+                return counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    public int get(String term) {
+        char[] chars = term.toCharArray();
+        return get(chars, 0, chars.length);
+    }
+
+    /**
+     * Number of distinct terms
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sum of all counts
+     */
+    public long total() {
+        return total;
+    }
+
+    /**
+     * The k most frequent terms, highest count first (ties by term), via a bounded min-heap of slots
+     */
+    public List<Term> topK(int k) {
+        int[] heap = new int[Math.min(k, size)];
+        int heapSize = 0;
+        for (int slot = 0; slot < keys.length && heap.length > 0; slot++) {
+            if (keys[slot] == null) {
+                continue;
+            }
+            if (heapSize < heap.length) {
+                heap[heapSize] = slot;
+                siftUp(heap, heapSize++);
+            } else if (ranksAbove(slot, heap[0])) {
+                heap[0] = slot;
+                siftDown(heap, heapSize);
+            }
+        }
+
+        // Popping the min-heap yields ascending order; fill from the back
+        Term[] ordered = new Term[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            int slot = heap[0];
+            ordered[i] = new Term(new String(keys[slot]), counts[slot]);
+            heap[0] = heap[i];
+            siftDown(heap, i);
+        }
+        return List.of(ordered);
+    }
+
+    public record Term(String term, int count) {
+    }
+
+    // Whether slot a belongs before slot b in the result (higher count, then smaller term)
+    private boolean ranksAbove(int a, int b) {
+        if (counts[a] != counts[b]) {
+            return counts[a] > counts[b];
+        }
+        return Arrays.compare(keys[a], keys[b]) < 0;
+    }
+
+    private void siftUp(int[] heap, int index) {
+        int slot = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!ranksAbove(heap[parent], slot)) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = slot;
+    }
+
+    private void siftDown(int[] heap, int heapSize) {
+        int index = 0;
+        int slot = heap[0];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && ranksAbove(heap[child], heap[child + 1])) {
+                child++;
+            }
+            if (!ranksAbove(slot, heap[child])) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = slot;
+    }
+
+    private void resize() {
+        char[][] oldKeys = keys;
+        int[] oldHashes = hashes;
+        int[] oldCounts = counts;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = oldHashes[i] & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new char[capacity][];
+        hashes = new int[capacity];
+        counts = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int hash(char[] buf, int offset, int length) {
+        int h = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            h = 31 * h + buf[i];
+        }
+        // Spread the high bits, since the slot only uses the low ones
+        return h ^ (h >>> 16);
+    }
+}
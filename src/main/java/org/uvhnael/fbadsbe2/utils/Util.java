@@ -4,11 +4,15 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 
+import java.text.Normalizer;
 import java.time.DayOfWeek;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 /**
  * Utility class containing reusable helper methods
@@ -17,6 +21,16 @@ import java.util.Set;
 public class Util {
     
     private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private static final Set<String> VIETNAMESE_STOP_WORDS = Set.of(
+        "và", "của", "có", "được", "này", "đó", "cho", "với", "từ", "trong",
+        "là", "một", "các", "những", "đã", "sẽ", "để", "khi", "về", "hay",
+        "hoặc", "nhưng", "không", "thì", "bởi", "nếu", "như", "rất", "đều",
+        "the", "a", "an", "and", "or", "but", "in", "on", "at", "to", "for",
+        "is", "are", "was", "were", "be", "been", "being", "have", "has", "had"
+    );
     
     /**
      * Clean JSON response by removing markdown code blocks
@@ -119,13 +133,7 @@ public class Util {
      * @return Set of stop words to exclude from keyword extraction
      */
     public static Set<String> getVietnameseStopWords() {
-        return Set.of(
-            "và", "của", "có", "được", "này", "đó", "cho", "với", "từ", "trong",
-            "là", "một", "các", "những", "đã", "sẽ", "để", "khi", "về", "hay",
-            "hoặc", "nhưng", "không", "thì", "bởi", "nếu", "như", "rất", "đều",
-            "the", "a", "an", "and", "or", "but", "in", "on", "at", "to", "for",
-            "is", "are", "was", "were", "be", "been", "being", "have", "has", "had"
-        );
+        return VIETNAMESE_STOP_WORDS;
     }
     
     /**
@@ -167,14 +175,9 @@ public class Util {
             return new String[0];
         }
         
-        Set<String> stopWords = getVietnameseStopWords();
-        
-        return Arrays.stream(text
-                .toLowerCase()
-                .replaceAll("[^a-zA-ZÀ-ỹ0-9\\s]", " ")
-                .split("\\s+"))
-                .filter(word -> word.length() >= minLength && !stopWords.contains(word))
-                .toArray(String[]::new);
+        List<String> words = new ArrayList<>();
+        new KeywordTokenizer(minLength).tokenize(text, (buf, offset, length) -> words.add(new String(buf, offset, length)));
+        return words.toArray(new String[0]);
     }
     
     /**
@@ -214,6 +217,19 @@ public class Util {
         return str == null || str.isBlank();
     }
 
+    /**
+     * Fold Vietnamese text for accent-insensitive matching: lowercase, diacritics removed, đ -> d
+     * @param text The text to fold
+     * @return Folded text, or null if text is null
+     */
+    public static String foldVietnamese(String text) {
+        if (text == null) {
+            return null;
+        }
+        String decomposed = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("").replace('đ', 'd');
+    }
+
     // check if number is null
     public static boolean isNullOrZero(Number number) {
         return number == null || number.doubleValue() == 0.0;
@@ -0,0 +1,17 @@
+-- V10__create_ai_jobs.sql
+-- Asynchronous Gemini-backed jobs (insight generation, trend analysis). The request returns the
+-- job id right away; clients poll the row (or subscribe over SSE) until it is DONE or FAILED.
+-- result_id points at the produced insights / trend_analysis row.
+
+CREATE TABLE IF NOT EXISTS ai_jobs (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    job_type VARCHAR(30) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    params VARCHAR(1000),
+    result_id BIGINT,
+    error VARCHAR(1000),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    started_at TIMESTAMP NULL,
+    finished_at TIMESTAMP NULL,
+    INDEX idx_ai_jobs_status (status)
+);
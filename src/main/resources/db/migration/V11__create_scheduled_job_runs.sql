@@ -0,0 +1,17 @@
+-- V11__create_scheduled_job_runs.sql
+-- One row per scheduled slot of a cluster-wide job. Inserting the row claims the slot, so only one
+-- instance runs it; lease_until lets another instance take over a slot whose owner died, and
+-- FAILED slots are retried until attempts reaches the job's limit.
+
+CREATE TABLE IF NOT EXISTS scheduled_job_runs (
+    job_name VARCHAR(100) NOT NULL,
+    slot_time DATETIME NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    owner VARCHAR(255) NOT NULL,
+    attempts INT NOT NULL DEFAULT 1,
+    lease_until TIMESTAMP NOT NULL,
+    started_at TIMESTAMP NULL,
+    finished_at TIMESTAMP NULL,
+    error VARCHAR(1000),
+    PRIMARY KEY (job_name, slot_time)
+);
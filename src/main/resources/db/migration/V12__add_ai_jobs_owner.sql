@@ -0,0 +1,7 @@
+-- V12__add_ai_jobs_owner.sql
+-- The instance whose executor holds a job, and when it last reported that it still does. Jobs
+-- whose owner stopped heartbeating (e.g. it restarted with the job still queued) are failed
+-- instead of waiting out the run-time limit.
+
+ALTER TABLE ai_jobs ADD COLUMN owner VARCHAR(255) NULL;
+ALTER TABLE ai_jobs ADD COLUMN heartbeat_at TIMESTAMP NULL;
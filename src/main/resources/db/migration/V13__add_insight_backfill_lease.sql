@@ -0,0 +1,6 @@
+-- V13__add_insight_backfill_lease.sql
+-- The instance running a backfill job and until when its claim holds. A RUNNING job is resumed
+-- by the one instance that claims it, and taken over by another once the lease runs out.
+
+ALTER TABLE insight_backfill_jobs ADD COLUMN owner VARCHAR(255) NULL;
+ALTER TABLE insight_backfill_jobs ADD COLUMN lease_until TIMESTAMP NULL;
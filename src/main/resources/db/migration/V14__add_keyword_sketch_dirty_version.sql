@@ -0,0 +1,8 @@
+-- V14__add_keyword_sketch_dirty_version.sql
+-- Persistent rebuild marks for the daily keyword sketches. Writers bump dirty_version in the same
+-- transaction as their ads rows (inserting an empty row for a day that has none yet); a rebuild
+-- stores the dirty_version it read before scanning the day's captions as built_version. A day
+-- needs a rebuild while dirty_version > built_version, on any instance and across restarts.
+
+ALTER TABLE ad_daily_keyword_sketch ADD COLUMN dirty_version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE ad_daily_keyword_sketch ADD COLUMN built_version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,6 @@
+-- V3__add_ad_change_detection.sql
+-- Content fingerprint of the last ingested payload and last time n8n re-sent the ad
+
+ALTER TABLE ads
+    ADD COLUMN content_hash CHAR(64) NULL,
+    ADD COLUMN last_seen_at TIMESTAMP NULL;
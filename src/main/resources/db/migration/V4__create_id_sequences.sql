@@ -0,0 +1,18 @@
+-- V4__create_id_sequences.sql
+-- Table-backed ID allocation (Hibernate pooled optimizer) so inserts can be JDBC-batched.
+-- next_val is the highest ID of the next block to hand out: a reader that finds N uses
+-- (N - 50, N] and moves the row to N + 50. Seed each table past its current MAX(id).
+
+CREATE TABLE IF NOT EXISTS id_sequences (
+    sequence_name VARCHAR(64) PRIMARY KEY,
+    next_val BIGINT NOT NULL
+);
+
+INSERT INTO id_sequences (sequence_name, next_val) SELECT 'ads', COALESCE(MAX(id), 0) + 50 FROM ads;
+INSERT INTO id_sequences (sequence_name, next_val) SELECT 'insights', COALESCE(MAX(id), 0) + 50 FROM insights;
+INSERT INTO id_sequences (sequence_name, next_val) SELECT 'keywords', COALESCE(MAX(id), 0) + 50 FROM keywords;
+INSERT INTO id_sequences (sequence_name, next_val) SELECT 'users', COALESCE(MAX(id), 0) + 50 FROM users;
+INSERT INTO id_sequences (sequence_name, next_val) SELECT 'generated_content', COALESCE(MAX(id), 0) + 50 FROM generated_content;
+INSERT INTO id_sequences (sequence_name, next_val) SELECT 'scheduled_posts', COALESCE(MAX(id), 0) + 50 FROM scheduled_posts;
+INSERT INTO id_sequences (sequence_name, next_val) SELECT 'publish_history', COALESCE(MAX(id), 0) + 50 FROM publish_history;
+INSERT INTO id_sequences (sequence_name, next_val) SELECT 'trend_analysis', COALESCE(MAX(id), 0) + 50 FROM trend_analysis;
@@ -0,0 +1,8 @@
+-- V5__add_ads_listing_indexes.sql
+-- Composite indexes for keyset pagination of GET /api/ads, ordered by (scraped_at, id) DESC
+-- with optional type / status / page filters.
+
+CREATE INDEX idx_ads_scraped_id ON ads(scraped_at, id);
+CREATE INDEX idx_ads_type_scraped_id ON ads(type_ads, scraped_at, id);
+CREATE INDEX idx_ads_status_scraped_id ON ads(status, scraped_at, id);
+CREATE INDEX idx_ads_page_scraped_id ON ads(page_name, scraped_at, id);
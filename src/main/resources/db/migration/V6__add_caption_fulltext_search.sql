@@ -0,0 +1,8 @@
+-- V6__add_caption_fulltext_search.sql
+-- Accent-folded copy of the caption (lowercase, no diacritics, đ -> d) with an ngram FULLTEXT
+-- index, so "cham soc da" matches "chăm sóc da". Filled by the application on write;
+-- existing rows are backfilled at startup (CaptionSearchBackfill).
+
+ALTER TABLE ads ADD COLUMN caption_search TEXT NULL;
+
+CREATE FULLTEXT INDEX ft_ads_caption_search ON ads(caption_search) WITH PARSER ngram;
@@ -0,0 +1,18 @@
+-- V7__create_ad_daily_stats.sql
+-- Ad counts per day (time_created) x type x status x page, maintained incrementally on write
+-- and reconciled against the ads table by a scheduled job. Missing values are stored as ''
+-- (and a missing time_created as 1000-01-01) so every dimension can be part of the key.
+
+CREATE TABLE IF NOT EXISTS ad_daily_stats (
+    stat_date DATE NOT NULL,
+    type_ads VARCHAR(50) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    page_name VARCHAR(255) NOT NULL,
+    ad_count BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (stat_date, type_ads, status, page_name)
+);
+
+INSERT INTO ad_daily_stats (stat_date, type_ads, status, page_name, ad_count)
+SELECT COALESCE(time_created, '1000-01-01'), COALESCE(type_ads, ''), COALESCE(status, ''), COALESCE(page_name, ''), COUNT(*)
+FROM ads
+GROUP BY COALESCE(time_created, '1000-01-01'), COALESCE(type_ads, ''), COALESCE(status, ''), COALESCE(page_name, '');
@@ -0,0 +1,15 @@
+-- V8__create_ad_daily_keyword_sketch.sql
+-- Per-day caption summaries (by ads.time_created) so insights for any range merge a few rows
+-- instead of re-tokenizing every caption. keywords holds the day's top terms as
+-- "term<TAB>count<TAB>error" lines; keyword_floor bounds the count of any term not listed.
+-- Rows are rebuilt from the ads table whenever ingest touches their day.
+
+CREATE TABLE IF NOT EXISTS ad_daily_keyword_sketch (
+    stat_date DATE NOT NULL PRIMARY KEY,
+    caption_count BIGINT NOT NULL DEFAULT 0,
+    cta_count BIGINT NOT NULL DEFAULT 0,
+    token_total BIGINT NOT NULL DEFAULT 0,
+    keyword_floor BIGINT NOT NULL DEFAULT 0,
+    keywords MEDIUMTEXT NOT NULL,
+    built_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
@@ -0,0 +1,25 @@
+-- V9__create_insight_backfill.sql
+-- Historical insight backfill jobs. A job covers a date span split into ISO weeks; each week row
+-- is the job's checkpoint, so a restarted job only redoes weeks that are not DONE or SKIPPED.
+
+CREATE TABLE IF NOT EXISTS insight_backfill_jobs (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    start_date DATE NOT NULL,
+    end_date DATE NOT NULL,
+    status VARCHAR(30) NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    INDEX idx_insight_backfill_jobs_status (status)
+);
+
+CREATE TABLE IF NOT EXISTS insight_backfill_weeks (
+    job_id BIGINT NOT NULL,
+    week_start DATE NOT NULL,
+    week_end DATE NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    insight_id BIGINT,
+    error VARCHAR(1000),
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    PRIMARY KEY (job_id, week_start),
+    FOREIGN KEY (job_id) REFERENCES insight_backfill_jobs(id) ON DELETE CASCADE
+);
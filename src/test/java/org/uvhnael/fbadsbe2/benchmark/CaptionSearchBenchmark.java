@@ -0,0 +1,117 @@
+package org.uvhnael.fbadsbe2.benchmark;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.uvhnael.fbadsbe2.utils.Util;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Caption search benchmark: the old LIKE '%kw%' query vs the ngram FULLTEXT index (V6).
+ * Needs a MySQL 8 database; creates and drops its own table.
+ *
+ * mvn test -Dtest=CaptionSearchBenchmark -Dbenchmark.jdbc-url=jdbc:mysql://localhost:3306/n8n_db
+ *     -Dbenchmark.jdbc-user=root -Dbenchmark.jdbc-password=... [-Dbenchmark.rows=200000]
+ */
+@EnabledIfSystemProperty(named = "benchmark.jdbc-url", matches = ".+")
+class CaptionSearchBenchmark {
+
+    private static final String TABLE = "caption_search_benchmark";
+    private static final int RUNS = 20;
+
+    private static final String[] WORDS = {"chăm", "sóc", "da", "mặt", "dưỡng", "ẩm", "trắng", "sáng", "mụn",
+            "serum", "kem", "chống", "nắng", "giảm", "giá", "khuyến", "mãi", "đặt", "hàng", "ngay", "miễn", "phí",
+            "vận", "chuyển", "son", "môi", "tóc", "mềm", "mượt", "thiên", "nhiên", "an", "toàn", "hiệu", "quả"};
+
+    private static Connection connection;
+
+    @BeforeAll
+    static void seed() throws SQLException {
+        connection = DriverManager.getConnection(System.getProperty("benchmark.jdbc-url"),
+                System.getProperty("benchmark.jdbc-user", "root"), System.getProperty("benchmark.jdbc-password", ""));
+        int rows = Integer.getInteger("benchmark.rows", 200_000);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + TABLE);
+            statement.execute("CREATE TABLE " + TABLE + " (id BIGINT PRIMARY KEY AUTO_INCREMENT, "
+                    + "caption TEXT, caption_search TEXT, FULLTEXT INDEX ft_caption_search (caption_search) WITH PARSER ngram)");
+        }
+
+        Random random = new Random(42);
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO " + TABLE + " (caption, caption_search) VALUES (?, ?)")) {
+            for (int i = 0; i < rows; i++) {
+                StringBuilder caption = new StringBuilder();
+                for (int w = 20 + random.nextInt(60); w > 0; w--) {
+                    caption.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+                }
+                insert.setString(1, caption.toString());
+                insert.setString(2, Util.foldVietnamese(caption.toString()));
+                insert.addBatch();
+                if (i % 1000 == 999) {
+                    insert.executeBatch();
+                    connection.commit();
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+        }
+        connection.setAutoCommit(true);
+        System.out.printf("Seeded %d captions%n", rows);
+    }
+
+    @AfterAll
+    static void dropTable() throws SQLException {
+        if (connection != null) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS " + TABLE);
+            }
+            connection.close();
+        }
+    }
+
+    @Test
+    void likeScanVersusFulltext() throws SQLException {
+        // Same shape as findByCaptionContainingIgnoreCase (no LIMIT, full result)
+        double like = medianMillis("SELECT id, caption FROM " + TABLE
+                + " WHERE UPPER(caption) LIKE UPPER(?)", "%chăm sóc da%");
+
+        // Same shape as AdsRepositoryImpl.searchCaptions, first page of 20
+        double fulltext = medianMillis("SELECT id, caption, MATCH(caption_search) AGAINST (? IN BOOLEAN MODE) AS score FROM "
+                + TABLE + " WHERE MATCH(caption_search) AGAINST (? IN BOOLEAN MODE) ORDER BY score DESC, id DESC LIMIT 20",
+                "+cham +soc +da \"cham soc da\"", "+cham +soc +da \"cham soc da\"");
+
+        System.out.printf("LIKE '%%kw%%' scan: %.1f ms median, FULLTEXT ngram: %.1f ms median (%d runs)%n",
+                like, fulltext, RUNS);
+    }
+
+    private static double medianMillis(String sql, String... params) throws SQLException {
+        long[] timings = new long[RUNS];
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                statement.setString(i + 1, params[i]);
+            }
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        rs.getString(2);
+                    }
+                }
+                timings[run] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(timings);
+        return timings[RUNS / 2] / 1_000_000.0;
+    }
+}
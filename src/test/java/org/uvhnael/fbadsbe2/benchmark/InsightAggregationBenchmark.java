@@ -0,0 +1,216 @@
+package org.uvhnael.fbadsbe2.benchmark;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.uvhnael.fbadsbe2.utils.Util;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Insight generation benchmark: loading every ad and streaming over the list several times
+ * vs GROUP BY counts plus one pass over a streamed caption-only cursor (InsightsService).
+ * Needs a MySQL 8 database; creates and drops its own table.
+ *
+ * mvn test -Dtest=InsightAggregationBenchmark -Dbenchmark.jdbc-url=jdbc:mysql://localhost:3306/n8n_db
+ *     -Dbenchmark.jdbc-user=root -Dbenchmark.jdbc-password=... [-Dbenchmark.rows=50000]
+ */
+@EnabledIfSystemProperty(named = "benchmark.jdbc-url", matches = ".+")
+class InsightAggregationBenchmark {
+
+    private static final String TABLE = "insight_aggregation_benchmark";
+    private static final int RUNS = 10;
+    private static final LocalDate START = LocalDate.of(2025, 1, 6);
+    private static final LocalDate END = START.plusDays(6);
+
+    private static final String[] TYPES = {"IMAGE", "VIDEO", "CAROUSEL"};
+    private static final String[] WORDS = {"chăm", "sóc", "da", "mặt", "dưỡng", "ẩm", "trắng", "sáng", "mụn",
+            "serum", "kem", "chống", "nắng", "giảm", "giá", "khuyến", "mãi", "đặt", "hàng", "ngay", "miễn", "phí",
+            "vận", "chuyển", "son", "môi", "tóc", "mềm", "mượt", "mua ngay", "đặt lịch", "inbox", "hiệu", "quả"};
+
+    private static Connection connection;
+
+    @BeforeAll
+    static void seed() throws SQLException {
+        connection = DriverManager.getConnection(System.getProperty("benchmark.jdbc-url"),
+                System.getProperty("benchmark.jdbc-user", "root"), System.getProperty("benchmark.jdbc-password", ""));
+        int rows = Integer.getInteger("benchmark.rows", 50_000);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + TABLE);
+            // Same columns the Ad entity loads, so the "before" side pays for the full rows
+            statement.execute("CREATE TABLE " + TABLE + " (id BIGINT PRIMARY KEY AUTO_INCREMENT, "
+                    + "ad_archive_id VARCHAR(255), page_name VARCHAR(255), caption TEXT, type_ads VARCHAR(50), "
+                    + "url_ads_post TEXT, ai_analyze TEXT, img_url TEXT, video_url TEXT, status VARCHAR(50), "
+                    + "time_created DATE, scraped_at TIMESTAMP, INDEX idx_time_created (time_created))");
+        }
+
+        Random random = new Random(42);
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " + TABLE
+                + " (ad_archive_id, page_name, caption, type_ads, url_ads_post, ai_analyze, img_url, status, time_created)"
+                + " VALUES (?, ?, ?, ?, ?, ?, ?, 'ACTIVE', ?)")) {
+            for (int i = 0; i < rows; i++) {
+                StringBuilder caption = new StringBuilder();
+                for (int w = 20 + random.nextInt(60); w > 0; w--) {
+                    caption.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+                }
+                insert.setString(1, "archive-" + i);
+                insert.setString(2, "page-" + random.nextInt(200));
+                insert.setString(3, caption.toString());
+                insert.setString(4, TYPES[random.nextInt(TYPES.length)]);
+                insert.setString(5, "https://www.facebook.com/ads/library/?id=" + i);
+                insert.setString(6, caption.toString());
+                insert.setString(7, "https://scontent.example.com/" + i + ".jpg");
+                insert.setDate(8, Date.valueOf(START.plusDays(random.nextInt(7))));
+                insert.addBatch();
+                if (i % 1000 == 999) {
+                    insert.executeBatch();
+                    connection.commit();
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+        }
+        connection.setAutoCommit(true);
+        System.out.printf("Seeded %d ads%n", rows);
+    }
+
+    @AfterAll
+    static void dropTable() throws SQLException {
+        if (connection != null) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS " + TABLE);
+            }
+            connection.close();
+        }
+    }
+
+    @Test
+    void loadAllVersusGroupByAndCaptionPass() throws SQLException {
+        long[] before = new long[RUNS];
+        long[] after = new long[RUNS];
+        long checksumBefore = 0;
+        long checksumAfter = 0;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            checksumBefore = loadAll();
+            before[run] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            checksumAfter = groupByAndCaptionPass();
+            after[run] = System.nanoTime() - start;
+        }
+        Arrays.sort(before);
+        Arrays.sort(after);
+
+        System.out.printf("Load all + 6 passes: %.1f ms median, GROUP BY + caption pass: %.1f ms median (%d runs)%n",
+                before[RUNS / 2] / 1_000_000.0, after[RUNS / 2] / 1_000_000.0, RUNS);
+        if (checksumBefore != checksumAfter) {
+            throw new AssertionError("Results differ: " + checksumBefore + " vs " + checksumAfter);
+        }
+    }
+
+    /**
+     * Previous InsightsService shape: materialize every row, then one stream per metric
+     */
+    private static long loadAll() throws SQLException {
+        List<String[]> ads = new ArrayList<>();
+        List<LocalDate> days = new ArrayList<>();
+        try (PreparedStatement select = connection.prepareStatement("SELECT id, ad_archive_id, page_name, caption, "
+                + "type_ads, url_ads_post, ai_analyze, img_url, video_url, status, time_created, scraped_at FROM "
+                + TABLE + " WHERE time_created BETWEEN ? AND ?")) {
+            select.setDate(1, Date.valueOf(START));
+            select.setDate(2, Date.valueOf(END));
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    String[] row = new String[10];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = rs.getString(i + 2);
+                    }
+                    ads.add(row);
+                    days.add(rs.getObject("time_created", LocalDate.class));
+                }
+            }
+        }
+
+        long image = ads.stream().filter(ad -> "IMAGE".equalsIgnoreCase(ad[3])).count();
+        long video = ads.stream().filter(ad -> "VIDEO".equalsIgnoreCase(ad[3])).count();
+        long carousel = ads.stream().filter(ad -> "CAROUSEL".equalsIgnoreCase(ad[3])).count();
+        List<String> ctaKeywords = Util.getBeautyCTAKeywords();
+        long cta = ads.stream().filter(ad -> Util.containsAnyKeyword(ad[2], ctaKeywords)).count();
+        Map<DayOfWeek, Long> dayCount = new EnumMap<>(DayOfWeek.class);
+        days.forEach(day -> dayCount.merge(day.getDayOfWeek(), 1L, Long::sum));
+        Map<String, Integer> keywordCount = new HashMap<>();
+        for (String[] ad : ads) {
+            for (String word : Util.extractKeywords(ad[2])) {
+                keywordCount.merge(word, 1, Integer::sum);
+            }
+        }
+        return checksum(image, video, carousel, cta, dayCount, keywordCount);
+    }
+
+    /**
+     * Current InsightsService shape: counts in SQL, caption metrics in one streamed pass
+     */
+    private static long groupByAndCaptionPass() throws SQLException {
+        Map<String, Long> typeCount = new HashMap<>();
+        Map<DayOfWeek, Long> dayCount = new EnumMap<>(DayOfWeek.class);
+        try (PreparedStatement select = connection.prepareStatement("SELECT type_ads, DAYOFWEEK(time_created), COUNT(*) FROM "
+                + TABLE + " WHERE time_created BETWEEN ? AND ? GROUP BY type_ads, DAYOFWEEK(time_created)")) {
+            select.setDate(1, Date.valueOf(START));
+            select.setDate(2, Date.valueOf(END));
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    typeCount.merge(rs.getString(1).toUpperCase(), rs.getLong(3), Long::sum);
+                    dayCount.merge(DayOfWeek.of((rs.getInt(2) + 5) % 7 + 1), rs.getLong(3), Long::sum);
+                }
+            }
+        }
+
+        long cta = 0;
+        List<String> ctaKeywords = Util.getBeautyCTAKeywords();
+        Map<String, Integer> keywordCount = new HashMap<>();
+        try (PreparedStatement select = connection.prepareStatement("SELECT caption FROM " + TABLE
+                + " WHERE time_created BETWEEN ? AND ? AND caption IS NOT NULL AND caption <> ''",
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            select.setFetchSize(Integer.MIN_VALUE);
+            select.setDate(1, Date.valueOf(START));
+            select.setDate(2, Date.valueOf(END));
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    String caption = rs.getString(1);
+                    if (Util.containsAnyKeyword(caption, ctaKeywords)) {
+                        cta++;
+                    }
+                    for (String word : Util.extractKeywords(caption)) {
+                        keywordCount.merge(word, 1, Integer::sum);
+                    }
+                }
+            }
+        }
+        return checksum(typeCount.getOrDefault("IMAGE", 0L), typeCount.getOrDefault("VIDEO", 0L),
+                typeCount.getOrDefault("CAROUSEL", 0L), cta, dayCount, keywordCount);
+    }
+
+    private static long checksum(long image, long video, long carousel, long cta,
+                                 Map<DayOfWeek, Long> dayCount, Map<String, Integer> keywordCount) {
+        return image * 31 + video * 37 + carousel * 41 + cta * 43 + dayCount.hashCode() + keywordCount.hashCode();
+    }
+}
@@ -0,0 +1,118 @@
+package org.uvhnael.fbadsbe2.benchmark;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.uvhnael.fbadsbe2.utils.KeywordTokenizer;
+import org.uvhnael.fbadsbe2.utils.TermCounter;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keyword extraction for one week of captions: regex split + HashMap + full sort vs
+ * KeywordTokenizer + TermCounter + bounded-heap top 20. Run with the GC profiler for allocation rates.
+ *
+ * mvn test -Dtest=KeywordExtractionBenchmark -Dbenchmark.jmh=true
+ */
+@EnabledIfSystemProperty(named = "benchmark.jmh", matches = "true")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeywordExtractionBenchmark {
+
+    private static final String[] WORDS = {"chăm", "sóc", "da", "mặt", "dưỡng", "ẩm", "trắng", "sáng", "mụn",
+            "serum", "kem", "chống", "nắng", "giảm", "giá", "khuyến", "mãi", "đặt", "hàng", "ngay", "miễn", "phí",
+            "vận", "chuyển", "son", "môi", "tóc", "mềm", "mượt", "thiên", "nhiên", "an", "toàn", "hiệu", "quả",
+            "và", "của", "có", "được", "cho", "với", "liệu", "trình", "thẩm", "mỹ", "viện", "tái", "tạo", "collagen",
+            "trị", "nám", "tàn", "nhang", "triệt", "lông", "công", "nghệ", "hàn", "quốc", "chuyên", "gia", "bác", "sĩ"};
+    private static final String[] DECORATIONS = {"🔥", "✨", "👉", "💯", "!!!", "...", ",", ".", "\n", " - ", "#",
+            "(", ")", ":", "0909.123.456", "50%", "1.990K", "Spa", "SALE", "FREESHIP"};
+
+    private String[] captions;
+
+    @Setup
+    public void setUp() {
+        // One busy week: 5000 captions of 30-150 words with emoji, hashtags, prices and line breaks
+        Random random = new Random(42);
+        captions = new String[5000];
+        for (int i = 0; i < captions.length; i++) {
+            StringBuilder caption = new StringBuilder();
+            for (int w = 30 + random.nextInt(120); w > 0; w--) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                caption.append(random.nextInt(10) == 0 ? word.toUpperCase() : word);
+                caption.append(random.nextInt(6) == 0 ? DECORATIONS[random.nextInt(DECORATIONS.length)] : " ");
+            }
+            captions[i] = caption.toString();
+        }
+    }
+
+    @Benchmark
+    public List<Map.Entry<String, Integer>> regexHashMapSort() {
+        Map<String, Integer> keywordCount = new HashMap<>();
+        for (String caption : captions) {
+            for (String word : regexKeywords(caption)) {
+                keywordCount.merge(word, 1, Integer::sum);
+            }
+        }
+        return keywordCount.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .limit(20)
+                .toList();
+    }
+
+    @Benchmark
+    public List<TermCounter.Term> tokenizerTermCounterTopK() {
+        KeywordTokenizer tokenizer = new KeywordTokenizer();
+        TermCounter keywordCount = new TermCounter();
+        for (String caption : captions) {
+            tokenizer.countInto(caption, keywordCount);
+        }
+        return keywordCount.topK(20);
+    }
+
+    // The previous Util.extractKeywords implementation, stop words rebuilt per call as before
+    private static String[] regexKeywords(String text) {
+        Set<String> stopWords = Set.of(
+                "và", "của", "có", "được", "này", "đó", "cho", "với", "từ", "trong",
+                "là", "một", "các", "những", "đã", "sẽ", "để", "khi", "về", "hay",
+                "hoặc", "nhưng", "không", "thì", "bởi", "nếu", "như", "rất", "đều",
+                "the", "a", "an", "and", "or", "but", "in", "on", "at", "to", "for",
+                "is", "are", "was", "were", "be", "been", "being", "have", "has", "had");
+        return Arrays.stream(text
+                        .toLowerCase()
+                        .replaceAll("[^a-zA-ZÀ-ỹ0-9\\s]", " ")
+                        .split("\\s+"))
+                .filter(word -> word.length() >= 3 && !stopWords.contains(word))
+                .toArray(String[]::new);
+    }
+
+    @Test
+    void run() throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(KeywordExtractionBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
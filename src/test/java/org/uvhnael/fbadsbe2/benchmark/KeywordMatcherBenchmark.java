@@ -0,0 +1,115 @@
+package org.uvhnael.fbadsbe2.benchmark;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.uvhnael.fbadsbe2.utils.KeywordMatcher;
+import org.uvhnael.fbadsbe2.utils.Util;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CTA detection and keyword coverage over a batch of captions:
+ * lower-case + String.contains per keyword vs the compiled KeywordMatcher.
+ *
+ * mvn test -Dtest=KeywordMatcherBenchmark -Dbenchmark.jmh=true
+ */
+@EnabledIfSystemProperty(named = "benchmark.jmh", matches = "true")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeywordMatcherBenchmark {
+
+    private static final String[] WORDS = {"chăm", "sóc", "da", "mặt", "dưỡng", "ẩm", "trắng", "sáng", "mụn",
+            "serum", "kem", "chống", "nắng", "giảm", "giá", "khuyến", "mãi", "hàng", "miễn", "phí", "vận",
+            "chuyển", "son", "môi", "tóc", "mềm", "mượt", "thiên", "nhiên", "an", "toàn", "hiệu", "quả", "Spa"};
+
+    private static final List<String> TREND_KEYWORDS = List.of("khuyến mãi", "giảm giá", "ưu đãi", "làm đẹp",
+            "spa", "chăm sóc da", "voucher", "flash sale");
+
+    private List<String> ctaKeywords;
+    private KeywordMatcher ctaMatcher;
+    private KeywordMatcher trendMatcher;
+    private String[] captions;
+
+    @Setup
+    public void setUp() {
+        ctaKeywords = Util.getBeautyCTAKeywords();
+        ctaMatcher = KeywordMatcher.compile(ctaKeywords);
+        trendMatcher = KeywordMatcher.compile(TREND_KEYWORDS);
+
+        // Mostly captions without a CTA, so the baseline has to try every keyword
+        Random random = new Random(42);
+        captions = new String[1000];
+        for (int i = 0; i < captions.length; i++) {
+            StringBuilder caption = new StringBuilder();
+            for (int w = 20 + random.nextInt(60); w > 0; w--) {
+                caption.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            if (i % 5 == 0) {
+                caption.append(ctaKeywords.get(random.nextInt(ctaKeywords.size())).toUpperCase());
+            }
+            captions[i] = caption.toString();
+        }
+    }
+
+    @Benchmark
+    public void ctaContainsPerKeyword(Blackhole blackhole) {
+        for (String caption : captions) {
+            blackhole.consume(Util.containsAnyKeyword(caption, ctaKeywords));
+        }
+    }
+
+    @Benchmark
+    public void ctaMatcher(Blackhole blackhole) {
+        for (String caption : captions) {
+            blackhole.consume(ctaMatcher.containsAny(caption));
+        }
+    }
+
+    @Benchmark
+    public void trendCoverageContainsPerKeyword(Blackhole blackhole) {
+        for (String caption : captions) {
+            String lower = caption.toLowerCase();
+            int matches = 0;
+            for (String keyword : TREND_KEYWORDS) {
+                if (lower.contains(keyword.toLowerCase())) {
+                    matches++;
+                }
+            }
+            blackhole.consume(matches);
+        }
+    }
+
+    @Benchmark
+    public void trendCoverageMatcher(Blackhole blackhole) {
+        for (String caption : captions) {
+            blackhole.consume(trendMatcher.countDistinct(caption));
+        }
+    }
+
+    @Test
+    void run() throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(KeywordMatcherBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
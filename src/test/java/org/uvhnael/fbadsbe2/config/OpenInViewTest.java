@@ -0,0 +1,108 @@
+package org.uvhnael.fbadsbe2.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * A request that reads in a transaction and then waits on an AI call must not hold a pooled
+ * connection while it waits. Checked through MockMvc against the shipped defaults, and against
+ * open-in-view switched back on to show the check would catch it.
+ */
+class OpenInViewTest {
+
+    @Nested
+    @SpringBootTest(classes = TestApp.class, properties = {
+            "spring.flyway.enabled=false",
+            "spring.datasource.url=jdbc:h2:mem:osiv-default;DB_CLOSE_DELAY=-1"})
+    class ShippedDefaults {
+
+        @Autowired
+        WebApplicationContext context;
+
+        @Test
+        void noConnectionIsCheckedOutDuringTheAiCall() throws Exception {
+            assertThat(connectionsDuringAiCall(context)).isZero();
+        }
+    }
+
+    @Nested
+    @SpringBootTest(classes = TestApp.class, properties = {
+            "spring.flyway.enabled=false",
+            "spring.datasource.url=jdbc:h2:mem:osiv-enabled;DB_CLOSE_DELAY=-1",
+            "spring.jpa.open-in-view=true"})
+    class OpenInViewEnabled {
+
+        @Autowired
+        WebApplicationContext context;
+
+        @Test
+        void requestKeepsItsConnectionThroughTheAiCall() throws Exception {
+            assertThat(connectionsDuringAiCall(context)).isEqualTo(1);
+        }
+    }
+
+    private static int connectionsDuringAiCall(WebApplicationContext context) throws Exception {
+        MockMvcBuilders.webAppContextSetup(context).build()
+                .perform(post("/generate"))
+                .andExpect(status().isOk());
+        return context.getBean(GenerateController.class).connectionsDuringAiCall;
+    }
+
+    @SpringBootConfiguration
+    @ImportAutoConfiguration({DataSourceAutoConfiguration.class, HibernateJpaAutoConfiguration.class,
+            TransactionAutoConfiguration.class, DispatcherServletAutoConfiguration.class, WebMvcAutoConfiguration.class})
+    @Import({JpaConfig.class, GenerateController.class})
+    static class TestApp {
+    }
+
+    /**
+     * Read transaction followed by the (stand-in) Gemini call, like content generation
+     */
+    @RestController
+    static class GenerateController {
+
+        @PersistenceContext
+        private EntityManager entityManager;
+        private final TransactionTemplate transactionTemplate;
+        private final HikariDataSource dataSource;
+        private volatile int connectionsDuringAiCall = -1;
+
+        GenerateController(TransactionTemplate transactionTemplate, DataSource dataSource) {
+            this.transactionTemplate = transactionTemplate;
+            this.dataSource = (HikariDataSource) dataSource;
+        }
+
+        @PostMapping("/generate")
+        String generate() {
+            TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+            readOnly.setReadOnly(true);
+            readOnly.execute(status -> entityManager.createNativeQuery("SELECT 1").getSingleResult());
+            connectionsDuringAiCall = dataSource.getHikariPoolMXBean().getActiveConnections();
+            return "ok";
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.uvhnael.fbadsbe2.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Routing between two embedded databases standing in for the primary and the replica
+ */
+class ReadWriteRoutingDataSourceTest {
+
+    private EmbeddedDatabase primary;
+    private EmbeddedDatabase replica;
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void createDatabases() {
+        primary = database("primary");
+        replica = database("replica");
+    }
+
+    @AfterEach
+    void shutdownDatabases() {
+        ReadWriteRoutingDataSource.clearPin();
+        primary.shutdown();
+        replica.shutdown();
+    }
+
+    @Test
+    void readOnlyTransactionsGoToReplicaAndWritesToPrimary() {
+        DataSource routing = routing(0, () -> true);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(routing);
+
+        assertThat(inTransaction(routing, true, () -> serverName(jdbcTemplate))).isEqualTo("replica");
+        assertThat(inTransaction(routing, false, () -> serverName(jdbcTemplate))).isEqualTo("primary");
+
+        // Outside a transaction everything goes to the primary
+        assertThat(serverName(jdbcTemplate)).isEqualTo("primary");
+    }
+
+    @Test
+    void readsAfterWriteArePinnedToPrimaryUntilTheWindowEnds() throws InterruptedException {
+        DataSource routing = routing(300, () -> true);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(routing);
+
+        assertThat(inTransaction(routing, true, () -> serverName(jdbcTemplate))).isEqualTo("replica");
+
+        inTransaction(routing, false, () -> jdbcTemplate.update("UPDATE server SET writes = writes + 1"));
+        assertThat(inTransaction(routing, true, () -> serverName(jdbcTemplate))).isEqualTo("primary");
+        assertThat(new JdbcTemplate(primary).queryForObject("SELECT writes FROM server", Integer.class)).isEqualTo(1);
+
+        Thread.sleep(400);
+        assertThat(inTransaction(routing, true, () -> serverName(jdbcTemplate))).isEqualTo("replica");
+    }
+
+    @Test
+    void rolledBackWritesDoNotPin() {
+        DataSource routing = routing(60_000, () -> true);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(routing);
+
+        TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(routing));
+        transaction.executeWithoutResult(status -> {
+            jdbcTemplate.update("UPDATE server SET writes = writes + 1");
+            status.setRollbackOnly();
+        });
+
+        assertThat(inTransaction(routing, true, () -> serverName(jdbcTemplate))).isEqualTo("replica");
+    }
+
+    @Test
+    void readsFallBackToPrimaryWhileReplicaIsUnusable() {
+        AtomicBoolean replicaUsable = new AtomicBoolean(false);
+        DataSource routing = routing(0, replicaUsable::get);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(routing);
+
+        assertThat(inTransaction(routing, true, () -> serverName(jdbcTemplate))).isEqualTo("primary");
+
+        replicaUsable.set(true);
+        assertThat(inTransaction(routing, true, () -> serverName(jdbcTemplate))).isEqualTo("replica");
+
+        assertThat(meterRegistry.get("datasource.routing").tags("route", "primary", "reason", "replica-unusable")
+                .counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("datasource.routing").tags("route", "replica", "reason", "read-only")
+                .counter().count()).isEqualTo(1);
+    }
+
+    private DataSource routing(long readYourWritesMs, BooleanSupplier replicaUsable) {
+        return RoutingDataSourceConfig.routingDataSource(primary, replica, readYourWritesMs, replicaUsable, meterRegistry);
+    }
+
+    private static <T> T inTransaction(DataSource dataSource, boolean readOnly, Supplier<T> work) {
+        TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        transaction.setReadOnly(readOnly);
+        return transaction.execute(status -> work.get());
+    }
+
+    private static String serverName(JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForObject("SELECT name FROM server", String.class);
+    }
+
+    private static EmbeddedDatabase database(String name) {
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("CREATE TABLE server (name VARCHAR(20), writes INT)");
+        jdbcTemplate.update("INSERT INTO server (name, writes) VALUES (?, 0)", name);
+        return database;
+    }
+}
@@ -0,0 +1,154 @@
+package org.uvhnael.fbadsbe2.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.uvhnael.fbadsbe2.config.JpaConfig;
+import org.uvhnael.fbadsbe2.model.entity.Keyword;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that multi-row saves go out as JDBC batches (table-generated IDs + hibernate.jdbc.batch_size)
+ */
+@DataJpaTest(properties = "spring.flyway.enabled=false")
+@Import({JpaConfig.class, KeywordsBatchInsertTest.StatementCounterConfig.class})
+class KeywordsBatchInsertTest {
+
+    @Autowired
+    private KeywordsRepository keywordsRepository;
+
+    @Autowired
+    private StatementCounter counter;
+
+    @BeforeEach
+    void resetCounter() {
+        counter.reset();
+    }
+
+    @Test
+    void saveAllSendsKeywordInsertsInBatches() {
+        List<Keyword> keywords = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            keywords.add(Keyword.builder()
+                    .insightId(1L)
+                    .keyword("keyword" + i)
+                    .count(i)
+                    .percentage(BigDecimal.ONE)
+                    .week("W1")
+                    .build());
+        }
+
+        keywordsRepository.saveAll(keywords);
+        keywordsRepository.flush();
+
+        // 120 rows with batch_size 50 -> 50 + 50 + 20
+        assertThat(counter.insertBatches.get()).isEqualTo(3);
+        assertThat(counter.batchedInserts.get()).isEqualTo(120);
+        assertThat(counter.singleInserts.get()).isZero();
+
+        // IDs are allocated in blocks of 50, not one round-trip per row
+        assertThat(counter.idBlockFetches.get()).isLessThanOrEqualTo(4);
+        assertThat(keywordsRepository.count()).isEqualTo(120);
+    }
+
+    /**
+     * Counts executed statements by wrapping the DataSource in JDK proxies
+     */
+    static class StatementCounter {
+        final AtomicInteger insertBatches = new AtomicInteger();
+        final AtomicInteger batchedInserts = new AtomicInteger();
+        final AtomicInteger singleInserts = new AtomicInteger();
+        final AtomicInteger idBlockFetches = new AtomicInteger();
+
+        void reset() {
+            insertBatches.set(0);
+            batchedInserts.set(0);
+            singleInserts.set(0);
+            idBlockFetches.set(0);
+        }
+
+        DataSource wrap(DataSource dataSource) {
+            return proxy(DataSource.class, dataSource, (target, name, args, result) ->
+                    result instanceof Connection connection ? wrap(connection) : result);
+        }
+
+        private Connection wrap(Connection connection) {
+            return proxy(Connection.class, connection, (target, name, args, result) -> {
+                if (name.equals("prepareStatement") && result instanceof PreparedStatement statement) {
+                    return wrap(statement, ((String) args[0]).toLowerCase());
+                }
+                return result;
+            });
+        }
+
+        private PreparedStatement wrap(PreparedStatement statement, String sql) {
+            boolean keywordInsert = sql.startsWith("insert into keywords");
+            boolean idBlockFetch = sql.startsWith("update id_sequences");
+            return proxy(PreparedStatement.class, statement, (target, name, args, result) -> {
+                if (keywordInsert) {
+                    switch (name) {
+                        case "addBatch" -> batchedInserts.incrementAndGet();
+                        case "executeBatch" -> insertBatches.incrementAndGet();
+                        case "executeUpdate", "execute" -> singleInserts.incrementAndGet();
+                        default -> { }
+                    }
+                }
+                if (idBlockFetch && name.equals("executeUpdate")) {
+                    idBlockFetches.incrementAndGet();
+                }
+                return result;
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, T target, AfterCall after) {
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (p, method, args) -> {
+                try {
+                    return after.apply(target, method.getName(), args, method.invoke(target, args));
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        }
+
+        private interface AfterCall {
+            Object apply(Object target, String name, Object[] args, Object result);
+        }
+    }
+
+    @TestConfiguration
+    static class StatementCounterConfig {
+
+        @Bean
+        StatementCounter statementCounter() {
+            return new StatementCounter();
+        }
+
+        @Bean
+        static BeanPostProcessor countingDataSourcePostProcessor(ObjectProvider<StatementCounter> counter) {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource dataSource ? counter.getObject().wrap(dataSource) : bean;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.uvhnael.fbadsbe2.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.uvhnael.fbadsbe2.repository.AdsRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Archive ID filter fed from a mocked ads table that another instance keeps writing to
+ */
+class AdArchiveIdFilterTest {
+
+    private final AdsRepository adsRepository = mock(AdsRepository.class);
+    private final List<String> stored = new ArrayList<>(List.of("ad-1", "ad-2"));
+    private final List<String> scrapedSinceCatchUp = new ArrayList<>();
+    private AdArchiveIdFilter filter;
+
+    @BeforeEach
+    void createFilter() {
+        when(adsRepository.count()).thenAnswer(invocation -> (long) stored.size());
+        doAnswer(invocation -> {
+            stored.forEach(invocation.<Consumer<String>>getArgument(0));
+            return null;
+        }).when(adsRepository).forEachArchiveId(any());
+        doAnswer(invocation -> {
+            scrapedSinceCatchUp.forEach(invocation.<Consumer<String>>getArgument(1));
+            return null;
+        }).when(adsRepository).forEachArchiveIdScrapedSince(any(), any());
+
+        filter = new AdArchiveIdFilter(adsRepository);
+        ReflectionTestUtils.setField(filter, "enabled", true);
+        ReflectionTestUtils.setField(filter, "falsePositiveRate", 0.01);
+        ReflectionTestUtils.setField(filter, "minCapacity", 1000L);
+        ReflectionTestUtils.setField(filter, "catchUpOverlapMs", 300000L);
+        filter.rebuild();
+    }
+
+    @Test
+    void adsWrittenByAnotherInstanceAreKnownAfterTheNextCatchUp() {
+        assertThat(filter.mightExist("ad-1")).isTrue();
+
+        stored.add("ad-3");
+        scrapedSinceCatchUp.add("ad-3");
+        assertThat(filter.mightExist("ad-3")).isFalse();
+
+        filter.catchUp();
+        assertThat(filter.mightExist("ad-3")).isTrue();
+    }
+
+    @Test
+    void failedCatchUpRereadsTheSameRangeNextTime() {
+        List<LocalDateTime> since = new ArrayList<>();
+        doAnswer(invocation -> {
+            since.add(invocation.getArgument(0));
+            throw new IllegalStateException("connection lost");
+        }).doAnswer(invocation -> {
+            since.add(invocation.getArgument(0));
+            return null;
+        }).when(adsRepository).forEachArchiveIdScrapedSince(any(), any());
+
+        filter.catchUp();
+        filter.catchUp();
+
+        assertThat(since).hasSize(2);
+        assertThat(since.get(1)).isEqualTo(since.get(0));
+        assertThat(since.get(0)).isBefore(LocalDateTime.now().minusMinutes(4));
+    }
+
+    @Test
+    void localWritesAreVisibleBeforeTheNextCatchUp() {
+        filter.record("ad-9");
+
+        assertThat(filter.mightExist("ad-9")).isTrue();
+    }
+}
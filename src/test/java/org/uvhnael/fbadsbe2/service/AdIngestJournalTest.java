@@ -0,0 +1,231 @@
+package org.uvhnael.fbadsbe2.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.uvhnael.fbadsbe2.model.dto.AdDTO;
+import org.uvhnael.fbadsbe2.model.dto.BulkIngestResult;
+import org.uvhnael.fbadsbe2.scheduler.AdIngestJournalDrainer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Write-behind journal on a 1 MB file, drained by the drainer against a mocked AdsService
+ */
+class AdIngestJournalTest {
+
+    private static final int HEADER_SIZE = 16;
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AdsService adsService = mock(AdsService.class);
+    private AdIngestJournal journal;
+
+    @BeforeEach
+    void openJournal() throws IOException {
+        journal = journal();
+    }
+
+    @AfterEach
+    void closeJournal() throws IOException {
+        journal.close();
+    }
+
+    @Test
+    void drainsInOrderAndRewindsOnceEverythingIsDrained() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            assertThat(journal.append(ad(i))).isTrue();
+        }
+
+        AdIngestJournal.Batch first = journal.readPending(2);
+        assertThat(first.records()).extracting(AdDTO::getAdArchiveId).containsExactly("ad-0", "ad-1");
+        journal.markDrained(first);
+        assertThat(journal.pendingBytes()).isPositive();
+
+        AdIngestJournal.Batch second = journal.readPending(10);
+        assertThat(second.records()).extracting(AdDTO::getAdArchiveId).containsExactly("ad-2");
+        journal.markDrained(second);
+        assertThat(journal.pendingBytes()).isZero();
+
+        // Rewound: the next record is written at the start again
+        journal.append(ad(3));
+        AdIngestJournal.Batch third = journal.readPending(10);
+        assertThat(third.startPosition()).isEqualTo(HEADER_SIZE);
+        assertThat(third.records()).extracting(AdDTO::getAdArchiveId).containsExactly("ad-3");
+    }
+
+    @Test
+    void compactsUnderSteadyIngestWithoutLosingTheBatchInFlight() throws IOException {
+        for (int i = 0; i < 800; i++) {
+            assertThat(journal.append(ad(i))).isTrue();
+        }
+        journal.markDrained(journal.readPending(600));
+        AdIngestJournal.Batch inFlight = journal.readPending(100);
+
+        // More than the space left behind the write position: only fits after a compaction
+        for (int i = 800; i < 1100; i++) {
+            assertThat(journal.append(ad(i))).isTrue();
+        }
+        journal.markDrained(inFlight);
+
+        AdIngestJournal.Batch remaining = journal.readPending(1000);
+        List<String> pending = remaining.records().stream().map(AdDTO::getAdArchiveId).toList();
+        // Drained offset moved back along with the in-flight batch
+        assertThat(remaining.startPosition()).isLessThan(inFlight.startPosition());
+        assertThat(pending).hasSize(400).startsWith("ad-700").endsWith("ad-1099");
+
+        // The compacted layout is what a restart recovers
+        journal.close();
+        journal = journal();
+        AdIngestJournal.Batch recovered = journal.readPending(1000);
+        assertThat(recovered.startPosition()).isEqualTo(remaining.startPosition());
+        assertThat(recovered.records()).extracting(AdDTO::getAdArchiveId).isEqualTo(pending);
+    }
+
+    @Test
+    void outageBacksOffAndNeverDeadLetters() throws IOException {
+        journal.append(ad(0));
+        journal.append(ad(1));
+        AdIngestJournalDrainer drainer = drainer(3, 60000);
+        when(adsService.bulkUpsertAds(anyList())).thenAnswer(invocation -> result(invocation.getArgument(0), ad -> true));
+        when(adsService.upsertAd(any())).thenThrow(new CannotGetJdbcConnectionException("connection refused"));
+
+        drainer.drain();
+        // Still backing off: the database is not asked again
+        drainer.drain();
+        verify(adsService, times(1)).bulkUpsertAds(anyList());
+
+        ReflectionTestUtils.setField(drainer, "retryBackoffMs", 0L);
+        ReflectionTestUtils.setField(drainer, "nextAttemptAt", 0L);
+        for (int i = 0; i < 10; i++) {
+            drainer.drain();
+        }
+        // Far past max-attempts, but the one-by-one retries cannot reach the database either
+        assertThat(journal.readPending(10).records()).hasSize(2);
+        assertThat(deadLetters()).isEmpty();
+
+        when(adsService.bulkUpsertAds(anyList())).thenAnswer(invocation -> result(invocation.getArgument(0), ad -> false));
+        drainer.drain();
+        assertThat(journal.pendingBytes()).isZero();
+        assertThat(deadLetters()).isEmpty();
+    }
+
+    @Test
+    void deadLettersOnlyRecordsThatFailOnTheirOwn() throws IOException {
+        for (int i = 0; i < 4; i++) {
+            journal.append(ad(i));
+        }
+        journal.append(AdDTO.builder().caption("no archive id").build());
+        AdIngestJournalDrainer drainer = drainer(3, 0);
+        // ad-2 fails the chunk it is in, taking ad-3 with it; the other chunk goes in
+        when(adsService.bulkUpsertAds(anyList())).thenAnswer(invocation -> {
+            List<AdDTO> ads = invocation.getArgument(0);
+            boolean poisoned = ads.stream().anyMatch(ad -> "ad-2".equals(ad.getAdArchiveId()));
+            return result(ads, ad -> ad.getAdArchiveId() == null
+                    || poisoned && List.of("ad-2", "ad-3").contains(ad.getAdArchiveId()));
+        });
+        when(adsService.upsertAd(ad(2))).thenThrow(new DataIntegrityViolationException("Data too long for column"));
+
+        drainer.drain();
+        drainer.drain();
+        assertThat(journal.readPending(10).records()).hasSize(5);
+        verify(adsService, never()).upsertAd(any());
+
+        drainer.drain();
+        assertThat(journal.pendingBytes()).isZero();
+        verify(adsService).upsertAd(ad(3));
+        assertThat(deadLetters()).hasSize(2).anySatisfy(line -> assertThat(line).contains("\"ad-2\""))
+                .anySatisfy(line -> assertThat(line).contains("no archive id"));
+    }
+
+    @Test
+    void batchOfOnlyAPoisonRecordIsDeadLettered() throws IOException {
+        journal.append(ad(0));
+        AdIngestJournalDrainer drainer = drainer(3, 0);
+        when(adsService.bulkUpsertAds(anyList())).thenAnswer(invocation -> result(invocation.getArgument(0), ad -> true));
+        when(adsService.upsertAd(ad(0))).thenThrow(new DataIntegrityViolationException("Data too long for column 'page_name'"));
+
+        drainer.drain();
+        drainer.drain();
+        assertThat(journal.readPending(10).records()).hasSize(1);
+
+        drainer.drain();
+        assertThat(journal.pendingBytes()).isZero();
+        assertThat(deadLetters()).hasSize(1).first().asString().contains("\"ad-0\"");
+
+        // The journal is not wedged behind it
+        journal.append(ad(1));
+        when(adsService.bulkUpsertAds(anyList())).thenAnswer(invocation -> result(invocation.getArgument(0), ad -> false));
+        drainer.drain();
+        assertThat(journal.pendingBytes()).isZero();
+    }
+
+    private AdIngestJournal journal() throws IOException {
+        AdIngestJournal journal = new AdIngestJournal(objectMapper);
+        ReflectionTestUtils.setField(journal, "journalDir", dir.toString());
+        ReflectionTestUtils.setField(journal, "journalSizeMb", 1);
+        journal.open();
+        return journal;
+    }
+
+    private AdIngestJournalDrainer drainer(int maxAttempts, long retryBackoffMs) {
+        AdIngestJournalDrainer drainer = new AdIngestJournalDrainer(journal, adsService);
+        ReflectionTestUtils.setField(drainer, "drainBatchSize", 100);
+        ReflectionTestUtils.setField(drainer, "maxAttempts", maxAttempts);
+        ReflectionTestUtils.setField(drainer, "retryBackoffMs", retryBackoffMs);
+        ReflectionTestUtils.setField(drainer, "maxRetryBackoffMs", 60000L);
+        return drainer;
+    }
+
+    private List<String> deadLetters() throws IOException {
+        Path file = dir.resolve("ads.deadletter.ndjson");
+        return Files.exists(file) ? Files.readAllLines(file) : List.of();
+    }
+
+    private static BulkIngestResult result(List<AdDTO> ads, Predicate<AdDTO> fails) {
+        List<BulkIngestResult.ItemResult> items = new ArrayList<>();
+        int failed = 0;
+        for (int i = 0; i < ads.size(); i++) {
+            boolean itemFailed = fails.test(ads.get(i));
+            failed += itemFailed ? 1 : 0;
+            items.add(new BulkIngestResult.ItemResult(i, ads.get(i).getAdArchiveId(),
+                    itemFailed ? BulkIngestResult.ItemStatus.FAILED : BulkIngestResult.ItemStatus.CREATED,
+                    itemFailed ? "chunk failed" : null));
+        }
+        return BulkIngestResult.builder()
+                .total(ads.size())
+                .created(ads.size() - failed)
+                .failed(failed)
+                .items(items)
+                .build();
+    }
+
+    private static AdDTO ad(int i) {
+        return AdDTO.builder()
+                .adArchiveId("ad-" + i)
+                .pageName("Spa " + (i % 7))
+                .caption("Ưu đãi " + i + " ".repeat(1000))
+                .build();
+    }
+}
@@ -0,0 +1,124 @@
+package org.uvhnael.fbadsbe2.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.uvhnael.fbadsbe2.repository.AdKeywordSketchRepository;
+import org.uvhnael.fbadsbe2.repository.AdsRepository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Keyword sketch rebuild marks on the ad_daily_keyword_sketch table on H2, with captions served
+ * by a mocked ads repository
+ */
+class AdKeywordSketchServiceTest {
+
+    // Months before anything a recent-days sweep would reach
+    private static final LocalDate OLD_DAY = LocalDate.of(2024, 3, 4);
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private AdKeywordSketchRepository repository;
+    private final AdsRepository adsRepository = mock(AdsRepository.class);
+    private final List<String> captions = new ArrayList<>();
+
+    @BeforeEach
+    void createDatabase() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName("sketch-" + UUID.randomUUID() + ";MODE=MySQL")
+                .build();
+        new ResourceDatabasePopulator(
+                new ClassPathResource("db/migration/V8__create_ad_daily_keyword_sketch.sql"),
+                new ClassPathResource("db/migration/V14__add_keyword_sketch_dirty_version.sql")).execute(database);
+        jdbcTemplate = new JdbcTemplate(database);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(database));
+        repository = new AdKeywordSketchRepository(jdbcTemplate);
+        doAnswer(invocation -> {
+            List.copyOf(captions).forEach(invocation.<Consumer<String>>getArgument(2));
+            return null;
+        }).when(adsRepository).forEachCaption(eq(OLD_DAY), eq(OLD_DAY), any());
+    }
+
+    @AfterEach
+    void shutdownDatabase() {
+        database.shutdown();
+    }
+
+    @Test
+    void markCommittedByAnInstanceThatStoppedIsRebuiltByAnother() {
+        AdKeywordSketchService stopped = service();
+        captions.add("Ưu đãi spa hôm nay");
+        transactionTemplate.executeWithoutResult(status -> stopped.markDirty(List.of(OLD_DAY)));
+
+        service().refreshDirty();
+
+        assertThat(repository.findDirtyDays()).isEmpty();
+        assertThat(jdbcTemplate.queryForObject("SELECT caption_count FROM ad_daily_keyword_sketch WHERE stat_date = ?",
+                Long.class, OLD_DAY)).isEqualTo(1);
+    }
+
+    @Test
+    void markRollsBackWithItsWrite() {
+        AdKeywordSketchService service = service();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            service.markDirty(List.of(OLD_DAY));
+            status.setRollbackOnly();
+        });
+
+        assertThat(repository.findDirtyDays()).isEmpty();
+    }
+
+    @Test
+    void writeCommittedDuringARebuildKeepsTheDayDirty() {
+        AdKeywordSketchService service = service();
+        captions.add("Ưu đãi spa hôm nay");
+        service.markDirty(List.of(OLD_DAY));
+        // Another writer commits a caption and its mark while the rebuild scans the day
+        doAnswer(invocation -> {
+            List.copyOf(captions).forEach(invocation.<Consumer<String>>getArgument(2));
+            captions.add("Giảm giá liệu trình");
+            service.markDirty(List.of(OLD_DAY));
+            return null;
+        }).doAnswer(invocation -> {
+            List.copyOf(captions).forEach(invocation.<Consumer<String>>getArgument(2));
+            return null;
+        }).when(adsRepository).forEachCaption(eq(OLD_DAY), eq(OLD_DAY), any());
+
+        service.refreshDirty();
+        assertThat(repository.findDirtyDays()).containsExactly(OLD_DAY);
+
+        service.refreshDirty();
+        assertThat(repository.findDirtyDays()).isEmpty();
+        assertThat(service.summarize(OLD_DAY, OLD_DAY).captionCount()).isEqualTo(2);
+    }
+
+    private AdKeywordSketchService service() {
+        AdKeywordSketchService service = new AdKeywordSketchService(adsRepository, repository,
+                new KeywordMatcherRegistry("", 16));
+        ReflectionTestUtils.setField(service, "capacity", 50);
+        return service;
+    }
+}
@@ -0,0 +1,130 @@
+package org.uvhnael.fbadsbe2.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.uvhnael.fbadsbe2.repository.AdDailyStatsRepository;
+import org.uvhnael.fbadsbe2.repository.AdDailyStatsRepository.Key;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Rollup reconciliation while other transactions keep inserting ads with their deltas
+ */
+class AdStatsReconcileTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 1, 6);
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void createDatabase() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName("reconcile-" + UUID.randomUUID() + ";MODE=MySQL")
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("""
+                CREATE TABLE ads (id BIGINT AUTO_INCREMENT PRIMARY KEY, time_created DATE,
+                                  type_ads VARCHAR(50), status VARCHAR(20), page_name VARCHAR(255))
+                """);
+        new ResourceDatabasePopulator(new ClassPathResource("db/migration/V7__create_ad_daily_stats.sql")).execute(database);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(database));
+    }
+
+    @AfterEach
+    void shutdownDatabase() {
+        database.shutdown();
+    }
+
+    @Test
+    void correctsDriftWithoutUndoingWritesCommittedDuringTheRun() {
+        for (int i = 0; i < 3; i++) {
+            insertAd("IMAGE");
+        }
+        // Drift: one IMAGE ad missing from the rollup, a VIDEO row with no ads behind it
+        jdbcTemplate.update("UPDATE ad_daily_stats SET ad_count = 2");
+        jdbcTemplate.update("INSERT INTO ad_daily_stats VALUES (?, 'VIDEO', 'ACTIVE', 'Spa', 5)", DAY);
+
+        AdDailyStatsRepository repository = new AdDailyStatsRepository(jdbcTemplate) {
+            @Override
+            public Map<Key, Long> findDrift() {
+                Map<Key, Long> drift = super.findDrift();
+                // Commit after the comparison, before the corrections are applied
+                runConcurrently(() -> insertAd("IMAGE"));
+                runConcurrently(() -> insertAd("VIDEO"));
+                return drift;
+            }
+        };
+        AdKeywordSketchService adKeywordSketchService = mock(AdKeywordSketchService.class);
+        AdStatsService service = new AdStatsService(repository, adKeywordSketchService, transactionTemplate);
+
+        assertThat(service.reconcile()).isEqualTo(2);
+        // The drifted day's keyword sketch is rebuilt too
+        verify(adKeywordSketchService).markDirty(argThat(days -> Set.copyOf(days).equals(Set.of(DAY))));
+
+        assertThat(rollup()).isEqualTo(Map.of(
+                Key.of(DAY, "IMAGE", "ACTIVE", "Spa"), 4L,
+                Key.of(DAY, "VIDEO", "ACTIVE", "Spa"), 1L));
+        assertThat(new AdDailyStatsRepository(jdbcTemplate).findDrift()).isEmpty();
+    }
+
+    @Test
+    void driftComparesNormalizedKeysOfBothTables() {
+        jdbcTemplate.update("INSERT INTO ads (time_created, type_ads, status, page_name) VALUES (NULL, NULL, 'ACTIVE', NULL)");
+        insertAd("IMAGE");
+        jdbcTemplate.update("INSERT INTO ad_daily_stats VALUES (?, '', 'ACTIVE', '', 3)", AdDailyStatsRepository.NO_DATE);
+
+        assertThat(new AdDailyStatsRepository(jdbcTemplate).findDrift())
+                .isEqualTo(Map.of(Key.of(null, null, "ACTIVE", null), -2L));
+    }
+
+    private Map<Key, Long> rollup() {
+        Map<Key, Long> counts = new HashMap<>();
+        jdbcTemplate.query("SELECT stat_date, type_ads, status, page_name, ad_count FROM ad_daily_stats", rs -> {
+            counts.put(new Key(rs.getObject(1, LocalDate.class), rs.getString(2), rs.getString(3), rs.getString(4)),
+                    rs.getLong(5));
+        });
+        return counts;
+    }
+
+    /**
+     * Insert an ad and its rollup delta in one transaction, like the writers do
+     */
+    private void insertAd(String typeAds) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("INSERT INTO ads (time_created, type_ads, status, page_name) VALUES (?, ?, 'ACTIVE', 'Spa')",
+                    DAY, typeAds);
+            new AdDailyStatsRepository(jdbcTemplate).applyDeltas(Map.of(Key.of(DAY, typeAds, "ACTIVE", "Spa"), 1L));
+        });
+    }
+
+    private static void runConcurrently(Runnable write) {
+        Thread thread = new Thread(write);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
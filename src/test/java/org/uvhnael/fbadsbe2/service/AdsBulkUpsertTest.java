@@ -0,0 +1,173 @@
+package org.uvhnael.fbadsbe2.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.uvhnael.fbadsbe2.model.dto.AdDTO;
+import org.uvhnael.fbadsbe2.model.dto.BulkIngestResult;
+import org.uvhnael.fbadsbe2.model.dto.BulkIngestResult.ItemStatus;
+import org.uvhnael.fbadsbe2.repository.AdDailyStatsRepository;
+import org.uvhnael.fbadsbe2.repository.AdDailyStatsRepository.Key;
+import org.uvhnael.fbadsbe2.repository.AdsRepository;
+import org.uvhnael.fbadsbe2.repository.AdsRepositoryImpl;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Bulk upserts against the ads and ad_daily_stats tables on H2, through the JDBC repository
+ */
+class AdsBulkUpsertTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 1, 6);
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private AdsService adsService;
+    private AdLastSeenTracker adLastSeenTracker;
+
+    @BeforeEach
+    void createDatabase() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName("bulk-" + UUID.randomUUID() + ";MODE=MySQL")
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("""
+                CREATE TABLE ads (id BIGINT PRIMARY KEY, ad_archive_id VARCHAR(100) UNIQUE NOT NULL,
+                                  page_name VARCHAR(255), caption TEXT, type_ads VARCHAR(50), url_ads_post TEXT,
+                                  ai_analyze TEXT, img_url TEXT, video_url TEXT, status VARCHAR(20),
+                                  time_created DATE, scraped_at TIMESTAMP, content_hash CHAR(64),
+                                  last_seen_at TIMESTAMP, caption_search TEXT)
+                """);
+        jdbcTemplate.execute("CREATE TABLE id_sequences (sequence_name VARCHAR(64) PRIMARY KEY, next_val BIGINT NOT NULL)");
+        jdbcTemplate.update("INSERT INTO id_sequences VALUES ('ads', 50)");
+        new ResourceDatabasePopulator(new ClassPathResource("db/migration/V7__create_ad_daily_stats.sql")).execute(database);
+
+        // Fails any chunk that carries the "Broken Spa" page, after its ads were written
+        AdDailyStatsRepository statsRepository = new AdDailyStatsRepository(jdbcTemplate) {
+            @Override
+            public void applyDeltas(Map<Key, Long> deltas) {
+                super.applyDeltas(deltas);
+                if (deltas.keySet().stream().anyMatch(key -> "Broken Spa".equals(key.pageName()))) {
+                    throw new IllegalStateException("rollup write failed");
+                }
+            }
+        };
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(database));
+        AdsRepository adsRepository = mock(AdsRepository.class, delegatesTo(new AdsRepositoryImpl(jdbcTemplate)));
+        adLastSeenTracker = mock(AdLastSeenTracker.class);
+        adsService = new AdsService(adsRepository, mock(AdArchiveIdFilter.class), Optional.empty(), adLastSeenTracker,
+                new AdStatsService(statsRepository, mock(AdKeywordSketchService.class), transactionTemplate),
+                new SimpleMeterRegistry(), transactionTemplate);
+        ReflectionTestUtils.setField(adsService, "bulkChunkSize", 2);
+    }
+
+    @AfterEach
+    void shutdownDatabase() {
+        database.shutdown();
+    }
+
+    @Test
+    void newAdsAreCreatedAndCounted() {
+        BulkIngestResult result = adsService.bulkUpsertAds(List.of(ad("ad-1", "Spa", "IMAGE"), ad("ad-2", "Spa", "VIDEO"),
+                ad("ad-3", "Spa", "IMAGE")));
+
+        assertThat(result.getItems()).extracting(BulkIngestResult.ItemResult::getStatus).containsOnly(ItemStatus.CREATED);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ads", Integer.class)).isEqualTo(3);
+        assertThat(rollup()).isEqualTo(Map.of(
+                Key.of(DAY, "IMAGE", "ACTIVE", "Spa"), 2L,
+                Key.of(DAY, "VIDEO", "ACTIVE", "Spa"), 1L));
+    }
+
+    @Test
+    void changedAdIsUpdatedAndMovedBetweenRollupBuckets() {
+        adsService.bulkUpsertAds(List.of(ad("ad-1", "Spa", "VIDEO")));
+
+        BulkIngestResult result = adsService.bulkUpsertAds(List.of(ad("ad-1", "Spa", "IMAGE")));
+
+        assertThat(result.getUpdated()).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT type_ads FROM ads WHERE ad_archive_id = 'ad-1'", String.class))
+                .isEqualTo("IMAGE");
+        assertThat(rollup()).isEqualTo(Map.of(Key.of(DAY, "IMAGE", "ACTIVE", "Spa"), 1L));
+    }
+
+    @Test
+    void unchangedAdIsOnlyMarkedSeen() {
+        adsService.bulkUpsertAds(List.of(ad("ad-1", "Spa", "IMAGE")));
+
+        BulkIngestResult result = adsService.bulkUpsertAds(List.of(ad("ad-1", "Spa", "IMAGE")));
+
+        assertThat(result.getUnchanged()).isEqualTo(1);
+        verify(adLastSeenTracker).touchAll(List.of("ad-1"));
+        assertThat(rollup()).isEqualTo(Map.of(Key.of(DAY, "IMAGE", "ACTIVE", "Spa"), 1L));
+    }
+
+    @Test
+    void failedChunkLeavesNeitherItsAdsNorItsRollupDeltas() {
+        BulkIngestResult result = adsService.bulkUpsertAds(List.of(ad("ad-1", "Spa", "IMAGE"), ad("ad-2", "Spa", "IMAGE"),
+                ad("ad-3", "Broken Spa", "IMAGE"), ad("ad-4", "Spa", "VIDEO")));
+
+        assertThat(result.getItems()).extracting(BulkIngestResult.ItemResult::getStatus)
+                .containsExactly(ItemStatus.CREATED, ItemStatus.CREATED, ItemStatus.FAILED, ItemStatus.FAILED);
+        assertThat(jdbcTemplate.queryForList("SELECT ad_archive_id FROM ads ORDER BY ad_archive_id", String.class))
+                .containsExactly("ad-1", "ad-2");
+        assertThat(rollup()).isEqualTo(Map.of(Key.of(DAY, "IMAGE", "ACTIVE", "Spa"), 2L));
+
+        // Retrying the failed ads once the rollup works again creates them
+        BulkIngestResult retry = adsService.bulkUpsertAds(List.of(ad("ad-4", "Spa", "VIDEO")));
+        assertThat(retry.getCreated()).isEqualTo(1);
+        assertThat(rollup()).containsEntry(Key.of(DAY, "VIDEO", "ACTIVE", "Spa"), 1L);
+    }
+
+    @Test
+    void singleUpsertRollsBackAndRethrowsItsFailure() {
+        assertThat(adsService.upsertAd(ad("ad-1", "Spa", "IMAGE"))).isEqualTo(ItemStatus.CREATED);
+
+        assertThatThrownBy(() -> adsService.upsertAd(ad("ad-2", "Broken Spa", "IMAGE")))
+                .hasMessage("rollup write failed");
+        assertThat(jdbcTemplate.queryForList("SELECT ad_archive_id FROM ads", String.class)).containsExactly("ad-1");
+        assertThat(rollup()).isEqualTo(Map.of(Key.of(DAY, "IMAGE", "ACTIVE", "Spa"), 1L));
+    }
+
+    private Map<Key, Long> rollup() {
+        Map<Key, Long> counts = new HashMap<>();
+        jdbcTemplate.query("SELECT stat_date, type_ads, status, page_name, ad_count FROM ad_daily_stats WHERE ad_count <> 0",
+                rs -> {
+                    counts.put(new Key(rs.getObject(1, LocalDate.class), rs.getString(2), rs.getString(3), rs.getString(4)),
+                            rs.getLong(5));
+                });
+        return counts;
+    }
+
+    private static AdDTO ad(String adArchiveId, String pageName, String typeAds) {
+        return AdDTO.builder()
+                .adArchiveId(adArchiveId)
+                .pageName(pageName)
+                .typeAds(typeAds)
+                .status("ACTIVE")
+                .timeCreated(DAY)
+                .caption("Ưu đãi " + adArchiveId)
+                .build();
+    }
+}
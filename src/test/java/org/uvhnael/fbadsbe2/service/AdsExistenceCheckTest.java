@@ -0,0 +1,56 @@
+package org.uvhnael.fbadsbe2.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.uvhnael.fbadsbe2.repository.AdsRepository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Existence checks against a mocked ads repository, with the archive ID filter deciding which
+ * IDs are queried
+ */
+class AdsExistenceCheckTest {
+
+    private final AdsRepository adsRepository = mock(AdsRepository.class);
+    private final AdArchiveIdFilter adArchiveIdFilter = mock(AdArchiveIdFilter.class);
+    private final AdsService adsService = new AdsService(adsRepository, adArchiveIdFilter, Optional.empty(),
+            mock(AdLastSeenTracker.class), mock(AdStatsService.class), new SimpleMeterRegistry(),
+            mock(TransactionTemplate.class));
+
+    @Test
+    void idsRejectedByTheFilterAreNeverQueried() {
+        ReflectionTestUtils.setField(adsService, "bulkChunkSize", 500);
+        when(adArchiveIdFilter.mightExist("ad-1")).thenReturn(true);
+        when(adArchiveIdFilter.mightExist("ad-2")).thenReturn(true);
+        when(adsRepository.findExistingArchiveIds(List.of("ad-1", "ad-2"))).thenReturn(Set.of("ad-1"));
+
+        Map<String, Boolean> existence = adsService.checkAdsExistence(List.of("ad-1", "new-1", "ad-2", "new-2"));
+
+        assertThat(existence).containsExactly(Map.entry("ad-1", true), Map.entry("new-1", false),
+                Map.entry("ad-2", false), Map.entry("new-2", false));
+        verify(adsRepository).findExistingArchiveIds(List.of("ad-1", "ad-2"));
+        verifyNoMoreInteractions(adsRepository);
+    }
+
+    @Test
+    void batchRejectedEntirelyByTheFilterCausesNoQuery() {
+        ReflectionTestUtils.setField(adsService, "bulkChunkSize", 500);
+
+        Map<String, Boolean> existence = adsService.checkAdsExistence(List.of("new-1", "new-2"));
+
+        assertThat(existence).containsOnlyKeys("new-1", "new-2").doesNotContainValue(true);
+        verifyNoMoreInteractions(adsRepository);
+    }
+}
@@ -0,0 +1,109 @@
+package org.uvhnael.fbadsbe2.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.uvhnael.fbadsbe2.model.dto.AdDTO;
+import org.uvhnael.fbadsbe2.model.dto.BulkIngestResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * NDJSON ingest against a mocked AdsService that creates every record
+ */
+class AdsStreamIngestServiceTest {
+
+    private final AdsService adsService = mock(AdsService.class);
+    private AdsStreamIngestService service;
+
+    @BeforeEach
+    void createService() {
+        service = new AdsStreamIngestService(adsService, new ObjectMapper());
+        ReflectionTestUtils.setField(service, "batchSize", 2);
+        ReflectionTestUtils.setField(service, "maxLineBytes", 200);
+        when(adsService.bulkUpsertAds(anyList())).thenAnswer(invocation -> {
+            List<AdDTO> ads = invocation.getArgument(0);
+            List<BulkIngestResult.ItemResult> items = new ArrayList<>();
+            for (int i = 0; i < ads.size(); i++) {
+                items.add(new BulkIngestResult.ItemResult(i, ads.get(i).getAdArchiveId(),
+                        BulkIngestResult.ItemStatus.CREATED, null));
+            }
+            return BulkIngestResult.builder().total(ads.size()).created(ads.size()).items(items).build();
+        });
+    }
+
+    @Test
+    void nothingIsWrittenBeforeTheBodyIsConsumed() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        List<Integer> writtenAtEndOfBody = new ArrayList<>();
+
+        service.ingest(body(5, output, writtenAtEndOfBody), output, false);
+
+        assertThat(writtenAtEndOfBody).containsOnly(0);
+        assertThat(lines(output)).hasSize(5 + 3 + 1).last().asString().contains("\"summary\"", "\"created\":5");
+    }
+
+    @Test
+    void interleavedResultsFollowEveryBatch() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        List<Integer> writtenAtEndOfBody = new ArrayList<>();
+
+        service.ingest(body(5, output, writtenAtEndOfBody), output, true);
+
+        assertThat(writtenAtEndOfBody.get(0)).isPositive();
+        assertThat(lines(output)).filteredOn(line -> line.contains("\"progress\"")).hasSize(3);
+    }
+
+    @Test
+    void overlongLinesAreRejectedAndTheRestIsIngested() throws IOException {
+        String input = "{\"adArchiveId\":\"ad-1\"}\r\n"
+                + "{\"adArchiveId\":\"ad-2\",\"caption\":\"" + "x".repeat(1000) + "\"}\n"
+                + "{\"adArchiveId\":\"ad-3\"}";
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        service.ingest(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), output, false);
+
+        List<String> lines = lines(output);
+        assertThat(lines).anySatisfy(line -> assertThat(line).contains("\"index\":1", "FAILED", "exceeds 200 bytes"));
+        assertThat(lines).anySatisfy(line -> assertThat(line).contains("\"index\":0", "\"ad-1\"", "CREATED"));
+        assertThat(lines).anySatisfy(line -> assertThat(line).contains("\"index\":2", "\"ad-3\"", "CREATED"));
+        assertThat(lines.get(lines.size() - 1)).contains("\"created\":2", "\"failed\":1");
+    }
+
+    /**
+     * The records as NDJSON; records how much output had been written when the body ran out
+     */
+    private static InputStream body(int records, ByteArrayOutputStream output, List<Integer> writtenAtEnd) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < records; i++) {
+            sb.append("{\"adArchiveId\":\"ad-").append(i).append("\"}\n");
+        }
+        return new FilterInputStream(new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8))) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n == -1) {
+                    writtenAtEnd.add(output.size());
+                }
+                return n;
+            }
+        };
+    }
+
+    private static List<String> lines(ByteArrayOutputStream output) {
+        return output.toString(StandardCharsets.UTF_8).lines().toList();
+    }
+}
@@ -0,0 +1,162 @@
+package org.uvhnael.fbadsbe2.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.uvhnael.fbadsbe2.controller.AiJobController;
+import org.uvhnael.fbadsbe2.exception.CustomExceptions.ServiceBusyException;
+import org.uvhnael.fbadsbe2.model.entity.Insight;
+import org.uvhnael.fbadsbe2.model.enums.AiJobStatus;
+import org.uvhnael.fbadsbe2.model.enums.AiJobType;
+import org.uvhnael.fbadsbe2.repository.AiJobRepository;
+
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+/**
+ * AI jobs against the ai_jobs table on H2, with a second instance simulated by rows owned by
+ * another owner
+ */
+class AiJobServiceTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 1, 6);
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private AiJobRepository repository;
+    private final InsightsService insightsService = mock(InsightsService.class);
+    private AiJobService service;
+
+    @BeforeEach
+    void createDatabase() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName("ai-jobs-" + UUID.randomUUID() + ";MODE=MySQL")
+                .build();
+        new ResourceDatabasePopulator(
+                new ClassPathResource("db/migration/V10__create_ai_jobs.sql"),
+                new ClassPathResource("db/migration/V12__add_ai_jobs_owner.sql")).execute(database);
+        jdbcTemplate = new JdbcTemplate(database);
+        repository = new AiJobRepository(jdbcTemplate);
+        service = service(1, 1);
+    }
+
+    @AfterEach
+    void shutdown() {
+        service.shutdown();
+        database.shutdown();
+    }
+
+    @Test
+    void workerFinishingAfterItsJobFailedDoesNotOverwriteTheFailure() {
+        long jobId = repository.create(AiJobType.INSIGHT, null, "node-a");
+        assertThat(repository.markRunning(jobId, "node-a")).isTrue();
+        // Stuck past the run-time limit
+        jdbcTemplate.update("UPDATE ai_jobs SET started_at = TIMESTAMPADD(HOUR, -2, CURRENT_TIMESTAMP)");
+        assertThat(repository.failOverdue(3600, "Job did not finish in time")).isEqualTo(1);
+
+        assertThat(repository.markDone(jobId, "node-a", 42L)).isFalse();
+        assertThat(repository.markFailed(jobId, "node-a", "late error")).isFalse();
+        assertThat(repository.findById(jobId)).hasValueSatisfying(job -> {
+            assertThat(job.getStatus()).isEqualTo(AiJobStatus.FAILED);
+            assertThat(job.getResultId()).isNull();
+            assertThat(job.getError()).isEqualTo("Job did not finish in time");
+        });
+    }
+
+    @Test
+    void queuedJobsOfAnInstanceThatStoppedHeartbeatingAreFailed() {
+        long orphaned = repository.create(AiJobType.INSIGHT, null, "node-gone");
+        long alive = repository.create(AiJobType.INSIGHT, null, "node-b");
+        jdbcTemplate.update("UPDATE ai_jobs SET heartbeat_at = TIMESTAMPADD(MINUTE, -5, CURRENT_TIMESTAMP)");
+        repository.heartbeat("node-b");
+
+        service.failStaleJobs();
+
+        assertThat(repository.findById(orphaned).orElseThrow().getStatus()).isEqualTo(AiJobStatus.FAILED);
+        assertThat(repository.findById(alive).orElseThrow().getStatus()).isEqualTo(AiJobStatus.QUEUED);
+        // The failed job's owner cannot start it any more
+        assertThat(repository.markRunning(orphaned, "node-gone")).isFalse();
+    }
+
+    @Test
+    void fullQueueIsReportedAsBusy() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(insightsService.generateInsight(any(), any())).thenAnswer(invocation -> {
+            running.countDown();
+            release.await();
+            return Insight.builder().id(7L).build();
+        });
+
+        long first = service.submitInsight(DAY, DAY).getId();
+        assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+        service.submitInsight(DAY, DAY);
+        assertThatThrownBy(() -> service.submitInsight(DAY, DAY)).isInstanceOf(ServiceBusyException.class);
+
+        assertThat(jdbcTemplate.queryForList("SELECT status FROM ai_jobs ORDER BY id", String.class))
+                .containsExactly("RUNNING", "QUEUED", "FAILED");
+        release.countDown();
+        waitForStatus(first, AiJobStatus.DONE);
+    }
+
+    @Test
+    void subscriberFollowsAJobRunByAnotherInstance() throws Exception {
+        long jobId = repository.create(AiJobType.TREND_ANALYSIS, null, "node-b");
+        MvcResult result = MockMvcBuilders.standaloneSetup(new AiJobController(service)).build()
+                .perform(get("/api/jobs/{id}/events", jobId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertThat(result.getResponse().getContentAsString()).contains("event:queued");
+
+        service.pollRemoteJobs();
+        repository.markRunning(jobId, "node-b");
+        service.pollRemoteJobs();
+        service.pollRemoteJobs();
+        repository.markDone(jobId, "node-b", 9L);
+        service.pollRemoteJobs();
+
+        String events = result.getResponse().getContentAsString();
+        assertThat(events.split("event:")).hasSize(4);
+        assertThat(events).containsSubsequence("event:queued", "event:running", "event:done");
+    }
+
+    private AiJobService service(int workers, int queueCapacity) {
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        AiJobService service = new AiJobService(repository, insightsService, mock(TrendAnalysisService.class),
+                objectMapper, workers, queueCapacity);
+        ReflectionTestUtils.setField(service, "sseTimeoutMs", 60000L);
+        ReflectionTestUtils.setField(service, "orphanAfterMs", 60000L);
+        ReflectionTestUtils.setField(service, "staleAfterMs", 3600000L);
+        return service;
+    }
+
+    private void waitForStatus(long jobId, AiJobStatus status) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (repository.findById(jobId).orElseThrow().getStatus() != status) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
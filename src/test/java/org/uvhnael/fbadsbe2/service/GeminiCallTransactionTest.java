@@ -0,0 +1,218 @@
+package org.uvhnael.fbadsbe2.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.uvhnael.fbadsbe2.model.dto.ContentGenerateRequest;
+import org.uvhnael.fbadsbe2.model.entity.GeneratedContent;
+import org.uvhnael.fbadsbe2.model.entity.Insight;
+import org.uvhnael.fbadsbe2.model.entity.TrendAnalysis;
+import org.uvhnael.fbadsbe2.repository.AdDailyStatsRepository;
+import org.uvhnael.fbadsbe2.repository.AdDailyStatsRepository.TypeDayCount;
+import org.uvhnael.fbadsbe2.repository.AdsRepository;
+import org.uvhnael.fbadsbe2.repository.AdsRepositoryCustom.CaptionRow;
+import org.uvhnael.fbadsbe2.repository.GeneratedContentRepository;
+import org.uvhnael.fbadsbe2.repository.InsightsRepository;
+import org.uvhnael.fbadsbe2.repository.KeywordsRepository;
+import org.uvhnael.fbadsbe2.repository.TrendAnalysisRepository;
+import org.uvhnael.fbadsbe2.service.AdKeywordSketchService.RangeSummary;
+import org.uvhnael.fbadsbe2.utils.KeywordSketch;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The Gemini call of every AI flow must run with no JDBC connection checked out: the read and
+ * write phases each take one (inside their transaction) and give it back before/after the call.
+ */
+class GeminiCallTransactionTest {
+
+    private EmbeddedDatabase database;
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicInteger connectionsDuringAiCall = new AtomicInteger(-1);
+    private final AtomicInteger connectionsDuringRead = new AtomicInteger(-1);
+    private final AtomicInteger connectionsDuringWrite = new AtomicInteger(-1);
+
+    private TransactionTemplate transactionTemplate;
+    private GeminiService geminiService;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(tracking(database)));
+        geminiService = mock(GeminiService.class);
+    }
+
+    @AfterEach
+    void shutdownDatabase() {
+        database.shutdown();
+    }
+
+    @Test
+    void insightGenerationHoldsNoConnectionDuringAiCall() {
+        InsightsRepository insightsRepository = mock(InsightsRepository.class);
+        AdDailyStatsRepository adDailyStatsRepository = mock(AdDailyStatsRepository.class);
+        AdKeywordSketchService adKeywordSketchService = mock(AdKeywordSketchService.class);
+        InsightsService service = new InsightsService(insightsRepository, adDailyStatsRepository,
+                mock(KeywordsRepository.class), geminiService, adKeywordSketchService, transactionTemplate);
+
+        when(adDailyStatsRepository.sumByTypeAndDayOfWeek(any(), any())).thenAnswer(invocation -> {
+            connectionsDuringRead.set(openConnections.get());
+            return List.of(new TypeDayCount("IMAGE", DayOfWeek.MONDAY, 10));
+        });
+        when(adKeywordSketchService.summarize(any(), any()))
+                .thenReturn(new RangeSummary(10, 3, 100, KeywordSketch.empty(20)));
+        answerAiCall("Strategy report");
+        when(insightsRepository.save(any(Insight.class))).thenAnswer(invocation -> {
+            connectionsDuringWrite.set(openConnections.get());
+            Insight insight = invocation.getArgument(0);
+            insight.setId(1L);
+            return insight;
+        });
+
+        Insight insight = service.generateInsight(LocalDate.of(2025, 1, 6), LocalDate.of(2025, 1, 12));
+
+        assertThat(insight.getAiStrategyReport()).isEqualTo("Strategy report");
+        assertPhases(true);
+    }
+
+    @Test
+    void trendAnalysisHoldsNoConnectionDuringAiCall() {
+        AdsRepository adsRepository = mock(AdsRepository.class);
+        TrendAnalysisRepository trendAnalysisRepository = mock(TrendAnalysisRepository.class);
+        TrendAdSampler trendAdSampler = new TrendAdSampler(adsRepository, 6000, 3.0, 500, 3);
+        TrendMapReduceAnalyzer trendMapReduceAnalyzer = new TrendMapReduceAnalyzer(geminiService,
+                new ObjectMapper(), true, 8, 2);
+        TrendAnalysisService service = new TrendAnalysisService(trendAdSampler, trendMapReduceAnalyzer,
+                trendAnalysisRepository, snapshotCache(trendAnalysisRepository), geminiService, new ObjectMapper(),
+                transactionTemplate);
+
+        doAnswer(invocation -> {
+            connectionsDuringRead.set(openConnections.get());
+            Consumer<CaptionRow> consumer = invocation.getArgument(2);
+            consumer.accept(new CaptionRow("IMAGE", "Spa A", "Ưu đãi spa tháng này"));
+            return null;
+        }).when(adsRepository).forEachCaptionRow(any(), any(), any());
+        answerAiCall("""
+                {"keywords": ["spa"], "topics": [{"name": "spa", "sentiment": "positive", "volume": 1}],
+                 "competitorSummary": "c", "suggestions": "s", "aiSummary": "a", "confidenceScore": 0.8}
+                """);
+        when(trendAnalysisRepository.save(any(TrendAnalysis.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        TrendAnalysis analysis = service.analyzeWeeklyTrends();
+
+        assertThat(analysis.getAiSummary()).isEqualTo("a");
+        // The save is a single repository call with its own transaction
+        assertPhases(false);
+    }
+
+    @Test
+    void contentGenerationHoldsNoConnectionDuringAiCall() {
+        TrendAnalysisRepository trendAnalysisRepository = mock(TrendAnalysisRepository.class);
+        GeneratedContentRepository contentRepository = mock(GeneratedContentRepository.class);
+        ContentGeneratorService service = new ContentGeneratorService(geminiService,
+                snapshotCache(trendAnalysisRepository), contentRepository, new ObjectMapper(),
+                new KeywordMatcherRegistry("", 16), transactionTemplate);
+
+        when(trendAnalysisRepository.findById(any())).thenAnswer(invocation -> {
+            connectionsDuringRead.set(openConnections.get());
+            return Optional.of(TrendAnalysis.builder().trendingTopics("[{\"name\": \"spa\"}]").build());
+        });
+        answerAiCall("{\"title\": \"Ưu đãi spa\", \"content\": \"Nội dung spa\"}");
+        when(contentRepository.save(any(GeneratedContent.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        ContentGenerateRequest request = new ContentGenerateRequest();
+        request.setContentType("POST");
+        request.setPlatform("FACEBOOK");
+        request.setBasedOnTrendAnalysisId(1L);
+        request.setKeywords(List.of("spa"));
+        GeneratedContent content = service.generateContent(request);
+
+        assertThat(content.getTitle()).isEqualTo("Ưu đãi spa");
+        assertPhases(false);
+    }
+
+    private static TrendSnapshotCache snapshotCache(TrendAnalysisRepository trendAnalysisRepository) {
+        return new TrendSnapshotCache(trendAnalysisRepository, new ObjectMapper(), new SimpleMeterRegistry(), 64, 300000);
+    }
+
+    private void answerAiCall(String response) {
+        when(geminiService.generateText(anyString())).thenAnswer(invocation -> {
+            connectionsDuringAiCall.set(openConnections.get());
+            return response;
+        });
+        when(geminiService.generateText(anyString(), anyBoolean())).thenAnswer(invocation -> {
+            connectionsDuringAiCall.set(openConnections.get());
+            return response;
+        });
+        when(geminiService.generateText(anyString(), anyBoolean(), any())).thenAnswer(invocation -> {
+            connectionsDuringAiCall.set(openConnections.get());
+            return response;
+        });
+    }
+
+    private void assertPhases(boolean writePhaseInTemplate) {
+        assertThat(connectionsDuringRead.get()).as("connections during read phase").isEqualTo(1);
+        assertThat(connectionsDuringAiCall.get()).as("connections during AI call").isZero();
+        if (writePhaseInTemplate) {
+            assertThat(connectionsDuringWrite.get()).as("connections during write phase").isEqualTo(1);
+        }
+        assertThat(openConnections.get()).as("connections after the flow").isZero();
+    }
+
+    /**
+     * DataSource whose connections update openConnections when they are taken and closed
+     */
+    private DataSource tracking(DataSource target) {
+        return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(target, method, args);
+                    if (!(result instanceof Connection connection)) {
+                        return result;
+                    }
+                    openConnections.incrementAndGet();
+                    return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                            (connectionProxy, connectionMethod, connectionArgs) -> {
+                                if (connectionMethod.getName().equals("close") && !connection.isClosed()) {
+                                    openConnections.decrementAndGet();
+                                }
+                                return invoke(connection, connectionMethod, connectionArgs);
+                            });
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.uvhnael.fbadsbe2.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GeminiResponseCacheTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void concurrentIdenticalPromptsShareOneUpstreamCall() throws Exception {
+        GeminiResponseCache cache = new GeminiResponseCache(meterRegistry, true, 16, 60000, "");
+        String key = GeminiResponseCache.key("model", "prompt");
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(CompletableFuture.supplyAsync(() -> cache.get(key, () -> {
+                    upstreamCalls.incrementAndGet();
+                    await(release);
+                    return "response";
+                }), callers));
+            }
+            // Let every caller reach the cache before the one upstream call returns
+            Thread.sleep(200);
+            release.countDown();
+
+            for (CompletableFuture<String> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("response");
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        assertThat(upstreamCalls.get()).isEqualTo(1);
+        assertThat(meterRegistry.get("gemini.cache").tags("result", "coalesced").counter().count()).isEqualTo(7);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedAndExpiredEntriesAndDoesNotCacheFailures() throws Exception {
+        GeminiResponseCache cache = new GeminiResponseCache(meterRegistry, true, 2, 150, "");
+        AtomicInteger upstreamCalls = new AtomicInteger();
+
+        assertThat(cache.get("a", () -> null)).isNull();
+        cache.get("a", () -> "A" + upstreamCalls.incrementAndGet());
+        cache.get("b", () -> "B" + upstreamCalls.incrementAndGet());
+        cache.get("a", () -> "A" + upstreamCalls.incrementAndGet());
+        // "b" is now the least recently used and makes room for "c"
+        cache.get("c", () -> "C" + upstreamCalls.incrementAndGet());
+
+        assertThat(cache.get("a", () -> "A" + upstreamCalls.incrementAndGet())).isEqualTo("A1");
+        assertThat(cache.get("b", () -> "B" + upstreamCalls.incrementAndGet())).isEqualTo("B4");
+
+        Thread.sleep(200);
+        assertThat(cache.get("b", () -> "B" + upstreamCalls.incrementAndGet())).isEqualTo("B5");
+    }
+
+    @Test
+    void blankAndRejectedResponsesAreNotCached() {
+        GeminiResponseCache cache = new GeminiResponseCache(meterRegistry, true, 16, 60000, "");
+        AtomicInteger upstreamCalls = new AtomicInteger();
+
+        for (String blank : List.of("", " \n ", "")) {
+            cache.get("blank", () -> {
+                upstreamCalls.incrementAndGet();
+                return blank;
+            });
+        }
+        assertThat(upstreamCalls.get()).isEqualTo(3);
+
+        // Not the JSON the caller asked for: returned, but asked for again next time
+        assertThat(cache.get("json", () -> "Xin lỗi, tôi không thể", text -> text.startsWith("{"))).isNotNull();
+        assertThat(cache.get("json", () -> "{\"ok\":true}", text -> text.startsWith("{"))).isEqualTo("{\"ok\":true}");
+        assertThat(cache.get("json", () -> "not called", text -> text.startsWith("{"))).isEqualTo("{\"ok\":true}");
+        assertThat(meterRegistry.get("gemini.cache").tags("result", "miss").counter().count()).isEqualTo(5);
+    }
+
+    @Test
+    void diskTierOutlivesTheInMemoryTier(@TempDir Path dir) throws Exception {
+        String key = GeminiResponseCache.key("model", "Phân tích xu hướng");
+        new GeminiResponseCache(meterRegistry, true, 16, 60000, dir.toString())
+                .get(key, () -> "Kết quả\nnhiều dòng");
+
+        // A new instance (e.g. after a restart) starts with an empty memory tier
+        GeminiResponseCache restarted = new GeminiResponseCache(meterRegistry, true, 16, 60000, dir.toString());
+        assertThat(restarted.get(key, () -> "new call")).isEqualTo("Kết quả\nnhiều dòng");
+        assertThat(meterRegistry.get("gemini.cache").tags("result", "disk").counter().count()).isEqualTo(1);
+
+        // Expired files are swept
+        Files.writeString(dir.resolve(key + ".txt"), (System.currentTimeMillis() - 1) + "\nold");
+        restarted.sweepDisk();
+        assertThat(Files.exists(dir.resolve(key + ".txt"))).isFalse();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
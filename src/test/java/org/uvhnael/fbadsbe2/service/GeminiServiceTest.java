@@ -0,0 +1,137 @@
+package org.uvhnael.fbadsbe2.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * GeminiService against a local stub of the generateContent endpoint
+ */
+class GeminiServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicReference<JsonNode> lastBody = new AtomicReference<>();
+    private final AtomicReference<String> lastApiKey = new AtomicReference<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+    private volatile long delayMs;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1beta/models/stub:generateContent", this::generateContent);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void sendsThePromptInTheRequestTemplateAndReadsTheCandidateText() {
+        String prompt = "Phân tích \"quảng cáo\"\n\tvới ký tự đặc biệt \\ và emoji 🔥";
+
+        String text = service(5000, 4, 5000).generateText(prompt);
+
+        assertThat(text).isEqualTo("echo: " + prompt);
+        assertThat(lastApiKey.get()).isEqualTo("test-key");
+        JsonNode body = lastBody.get();
+        assertThat(body.path("contents").path(0).path("parts").path(0).path("text").asText()).isEqualTo(prompt);
+        assertThat(body.path("generationConfig").path("maxOutputTokens").asInt()).isEqualTo(8192);
+        assertThat(meterRegistry.get("gemini.request").tags("outcome", "success").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void boundsConcurrentCallsAndGivesUpOnSlowResponses() {
+        delayMs = 200;
+        GeminiService service = service(5000, 2, 5000);
+        List<CompletableFuture<String>> calls = List.of(
+                CompletableFuture.supplyAsync(() -> service.generateText("a")),
+                CompletableFuture.supplyAsync(() -> service.generateText("b")),
+                CompletableFuture.supplyAsync(() -> service.generateText("c")),
+                CompletableFuture.supplyAsync(() -> service.generateText("d")));
+        calls.forEach(CompletableFuture::join);
+        assertThat(peakInFlight.get()).isEqualTo(2);
+
+        // Read timeout shorter than the stub's latency
+        assertThat(service(100, 2, 5000).generateText("slow")).isNull();
+        assertThat(meterRegistry.get("gemini.request").tags("outcome", "timeout").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void repeatedPromptsAreServedFromTheCacheUnlessTheCallerOptsOut() {
+        GeminiService service = new GeminiService(objectMapper, meterRegistry,
+                new GeminiResponseCache(meterRegistry, true, 256, 60000, ""), "test-key",
+                "http://127.0.0.1:" + server.getAddress().getPort(), "stub", 1000, 5000, 4, 5000);
+
+        assertThat(service.generateText("same prompt")).isEqualTo("echo: same prompt");
+        assertThat(service.generateText("same prompt")).isEqualTo("echo: same prompt");
+        assertThat(upstreamCalls.get()).isEqualTo(1);
+
+        assertThat(service.generateText("same prompt", false)).isEqualTo("echo: same prompt");
+        assertThat(upstreamCalls.get()).isEqualTo(2);
+    }
+
+    private GeminiService service(long readTimeoutMs, int maxConcurrentRequests, long acquireTimeoutMs) {
+        return new GeminiService(objectMapper, meterRegistry,
+                new GeminiResponseCache(meterRegistry, false, 256, 60000, ""), "test-key",
+                "http://127.0.0.1:" + server.getAddress().getPort(), "stub",
+                1000, readTimeoutMs, maxConcurrentRequests, acquireTimeoutMs);
+    }
+
+    private void generateContent(HttpExchange exchange) throws IOException {
+        upstreamCalls.incrementAndGet();
+        int current = inFlight.incrementAndGet();
+        peakInFlight.accumulateAndGet(current, Math::max);
+        try {
+            JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+            lastBody.set(body);
+            lastApiKey.set(exchange.getRequestHeaders().getFirst("x-goog-api-key"));
+            if (delayMs > 0) {
+                Thread.sleep(delayMs);
+            }
+
+            String prompt = body.path("contents").path(0).path("parts").path(0).path("text").asText();
+            byte[] response = objectMapper.writeValueAsBytes(Map.of("candidates",
+                    List.of(Map.of("content", Map.of("parts", List.of(Map.of("text", "echo: " + prompt)))))));
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+}
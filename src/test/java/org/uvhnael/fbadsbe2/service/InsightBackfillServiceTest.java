@@ -0,0 +1,135 @@
+package org.uvhnael.fbadsbe2.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.uvhnael.fbadsbe2.model.entity.Insight;
+import org.uvhnael.fbadsbe2.repository.InsightBackfillRepository;
+import org.uvhnael.fbadsbe2.service.InsightsService.InsightStats;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Backfill jobs shared by two instances through the job tables on H2. The mocked insight save
+ * writes a row to an insights stand-in table on the same connection, like the JPA save does.
+ */
+class InsightBackfillServiceTest {
+
+    private static final LocalDate MONDAY = LocalDate.of(2025, 1, 6);
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private InsightBackfillRepository repository;
+    private TransactionTemplate transactionTemplate;
+    private InsightBackfillService first;
+    private InsightBackfillService second;
+
+    @BeforeEach
+    void createDatabase() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName("backfill-" + UUID.randomUUID() + ";MODE=MySQL")
+                .build();
+        new ResourceDatabasePopulator(
+                new ClassPathResource("db/migration/V9__create_insight_backfill.sql"),
+                new ClassPathResource("db/migration/V13__add_insight_backfill_lease.sql")).execute(database);
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("CREATE TABLE insights (id BIGINT AUTO_INCREMENT PRIMARY KEY, report_date DATE)");
+        repository = new InsightBackfillRepository(jdbcTemplate);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(database));
+        first = service(insightsService());
+        second = service(insightsService());
+    }
+
+    @AfterEach
+    void shutdown() {
+        first.shutdown();
+        second.shutdown();
+        database.shutdown();
+    }
+
+    @Test
+    void anAbandonedJobIsResumedByOneInstanceOnly() throws InterruptedException {
+        long jobId = repository.createJob(MONDAY, MONDAY.plusWeeks(3).plusDays(6), InsightBackfillService.JOB_RUNNING,
+                InsightBackfillService.isoWeeks(MONDAY, MONDAY.plusWeeks(3)), InsightBackfillService.WEEK_PENDING,
+                "instance-gone", 300);
+        // Still leased by its (stopped) owner: nobody resumes it yet
+        first.resumeInterruptedJobs();
+        second.resumeInterruptedJobs();
+        assertThat(jdbcTemplate.queryForObject("SELECT owner FROM insight_backfill_jobs", String.class))
+                .isEqualTo("instance-gone");
+
+        jdbcTemplate.update("UPDATE insight_backfill_jobs SET lease_until = TIMESTAMPADD(SECOND, -1, CURRENT_TIMESTAMP)");
+        first.resumeInterruptedJobs();
+        second.resumeInterruptedJobs();
+
+        waitForStatus(jobId, InsightBackfillService.JOB_COMPLETED);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM insights", Integer.class)).isEqualTo(4);
+        assertThat(repository.findWeeks(jobId)).extracting(InsightBackfillRepository.Week::status)
+                .containsOnly(InsightBackfillService.WEEK_DONE);
+    }
+
+    @Test
+    void insightIsRolledBackWhenItsWeekCannotBeCheckpointed() throws InterruptedException {
+        InsightsService insightsService = insightsService();
+        // Another instance takes the job over while the strategy report is generated
+        when(insightsService.generateStrategyReport(any())).thenAnswer(invocation -> {
+            jdbcTemplate.update("UPDATE insight_backfill_jobs SET owner = 'instance-b'");
+            return "report";
+        });
+        InsightBackfillService service = service(insightsService);
+
+        long jobId = service.start(MONDAY, MONDAY).getJobId();
+        Thread.sleep(200);
+        service.shutdown();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM insights", Integer.class)).isZero();
+        assertThat(repository.findWeeks(jobId)).extracting(InsightBackfillRepository.Week::status)
+                .containsExactly(InsightBackfillService.WEEK_PENDING);
+    }
+
+    private InsightsService insightsService() {
+        InsightsService insightsService = mock(InsightsService.class);
+        when(insightsService.computeStats(any(), any())).thenAnswer(invocation -> new InsightStats(
+                invocation.getArgument(0), invocation.getArgument(1), 1, 1, 0, 0, "IMAGE", null, "MONDAY", null));
+        when(insightsService.generateStrategyReport(any())).thenReturn("report");
+        when(insightsService.saveInsight(any(), any())).thenAnswer(invocation -> {
+            InsightStats stats = invocation.getArgument(0);
+            jdbcTemplate.update("INSERT INTO insights (report_date) VALUES (?)", stats.endDate());
+            long id = jdbcTemplate.queryForObject("SELECT MAX(id) FROM insights", Long.class);
+            return Insight.builder().id(id).build();
+        });
+        return insightsService;
+    }
+
+    private InsightBackfillService service(InsightsService insightsService) {
+        InsightBackfillService service = new InsightBackfillService(insightsService, repository, transactionTemplate,
+                2, 2, 520);
+        ReflectionTestUtils.setField(service, "leaseSeconds", 300L);
+        return service;
+    }
+
+    private void waitForStatus(long jobId, String status) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!status.equals(repository.findJob(jobId).orElseThrow().status())) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.uvhnael.fbadsbe2.service;
+
+import org.junit.jupiter.api.Test;
+import org.uvhnael.fbadsbe2.utils.KeywordMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeywordMatcherRegistryTest {
+
+    @Test
+    void keepsTheMostRecentlyUsedListsCompiled() {
+        KeywordMatcherRegistry registry = new KeywordMatcherRegistry("", 2);
+        List<String> serum = List.of("serum", "vitamin c");
+        List<String> spa = List.of("spa", "massage");
+
+        KeywordMatcher serumMatcher = registry.forKeywords(serum);
+        KeywordMatcher spaMatcher = registry.forKeywords(spa);
+        // Alternating between two lists reuses both
+        assertThat(registry.forKeywords(new ArrayList<>(serum))).isSameAs(serumMatcher);
+        assertThat(registry.forKeywords(spa)).isSameAs(spaMatcher);
+
+        // A third list evicts the least recently used one (serum)
+        registry.forKeywords(List.of("voucher"));
+        assertThat(registry.forKeywords(spa)).isSameAs(spaMatcher);
+        assertThat(registry.forKeywords(serum)).isNotSameAs(serumMatcher);
+        assertThat(registry.forKeywords(serum).countDistinct("Serum vitamin C cho spa")).isEqualTo(2);
+    }
+
+    @Test
+    void ctaMatcherUsesTheConfiguredList() {
+        KeywordMatcherRegistry registry = new KeywordMatcherRegistry("inbox ngay, đặt lịch", 2);
+
+        assertThat(registry.cta().containsAny("Inbox ngay để nhận ưu đãi")).isTrue();
+        assertThat(registry.cta().containsAny("Shop now")).isFalse();
+    }
+}
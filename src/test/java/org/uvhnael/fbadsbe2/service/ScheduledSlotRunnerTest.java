@@ -0,0 +1,133 @@
+package org.uvhnael.fbadsbe2.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.scheduling.support.CronExpression;
+import org.uvhnael.fbadsbe2.repository.ScheduledJobRunRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Slot claiming between several "instances" (runners) sharing one embedded database
+ */
+class ScheduledSlotRunnerTest {
+
+    private static final LocalDateTime SLOT = LocalDateTime.of(2025, 1, 12, 6, 0);
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void createDatabase() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("classpath:db/migration/V11__create_scheduled_job_runs.sql")
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+    }
+
+    @AfterEach
+    void shutdownDatabase() {
+        database.shutdown();
+    }
+
+    @Test
+    void onlyOneInstanceRunsASlot() {
+        AtomicInteger runs = new AtomicInteger();
+        ScheduledSlotRunner first = runner();
+        ScheduledSlotRunner second = runner();
+
+        assertThat(first.runSlot("job", SLOT, 600, 3, runs::incrementAndGet)).isTrue();
+        assertThat(second.runSlot("job", SLOT, 600, 3, runs::incrementAndGet)).isFalse();
+        assertThat(first.runSlot("job", SLOT, 600, 3, runs::incrementAndGet)).isFalse();
+
+        assertThat(runs.get()).isEqualTo(1);
+        assertThat(meterRegistry.get("scheduler.job.duration").tags("job", "job", "outcome", "success")
+                .timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void expiredLeaseIsTakenOverAndFailedSlotsAreRetriedUpToTheLimit() {
+        ScheduledSlotRunner crashed = runner();
+        ScheduledSlotRunner survivor = runner();
+        AtomicInteger runs = new AtomicInteger();
+
+        // A slot claimed by an instance that died mid-run: its lease is already over
+        crashed.runSlot("job", SLOT, 600, 3, () -> {
+            throw new IllegalStateException("boom");
+        });
+        jdbcTemplate.update("UPDATE scheduled_job_runs SET status = 'RUNNING', lease_until = TIMESTAMPADD(SECOND, -1, CURRENT_TIMESTAMP)");
+
+        assertThat(survivor.runSlot("job", SLOT, 600, 3, () -> {
+            runs.incrementAndGet();
+            throw new IllegalStateException("still failing");
+        })).isTrue();
+        assertThat(survivor.runSlot("job", SLOT, 600, 3, runs::incrementAndGet)).isTrue();
+
+        // Succeeded: no instance runs it again
+        assertThat(survivor.runSlot("job", SLOT, 600, 3, runs::incrementAndGet)).isFalse();
+        assertThat(runs.get()).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject("SELECT status FROM scheduled_job_runs", String.class))
+                .isEqualTo(ScheduledJobRunRepository.SUCCEEDED);
+    }
+
+    @Test
+    void leaseIsRenewedWhileTheJobRuns() {
+        ScheduledSlotRunner owner = runner();
+        ScheduledSlotRunner other = runner();
+        AtomicInteger takeOvers = new AtomicInteger();
+
+        try {
+            assertThat(owner.runSlot("job", SLOT, 1, 3, () -> {
+                sleep(2500);
+                // Well past the original 1 s lease, but the owner is alive and renewing it
+                if (other.runSlot("job", SLOT, 1, 3, () -> { })) {
+                    takeOvers.incrementAndGet();
+                }
+            })).isTrue();
+        } finally {
+            owner.shutdown();
+            other.shutdown();
+        }
+
+        assertThat(takeOvers.get()).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT status FROM scheduled_job_runs", String.class))
+                .isEqualTo(ScheduledJobRunRepository.SUCCEEDED);
+    }
+
+    @Test
+    void latestSlotCatchesUpOnlyTheMostRecentMissedSlotInTheWindow() {
+        CronExpression sundays = CronExpression.parse("0 0 6 * * SUN");
+        // Wednesday 2025-01-15, after two missed Sundays
+        LocalDateTime now = LocalDateTime.of(2025, 1, 15, 12, 0);
+
+        assertThat(ScheduledSlotRunner.latestSlot(sundays, now, Duration.ofDays(14)))
+                .isEqualTo(LocalDateTime.of(2025, 1, 12, 6, 0));
+        assertThat(ScheduledSlotRunner.latestSlot(sundays, now, Duration.ofDays(2))).isNull();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ScheduledSlotRunner runner() {
+        return new ScheduledSlotRunner(new ScheduledJobRunRepository(jdbcTemplate), meterRegistry);
+    }
+}
@@ -0,0 +1,79 @@
+package org.uvhnael.fbadsbe2.service;
+
+import org.junit.jupiter.api.Test;
+import org.uvhnael.fbadsbe2.repository.AdsRepository;
+import org.uvhnael.fbadsbe2.repository.AdsRepositoryCustom.CaptionRow;
+import org.uvhnael.fbadsbe2.service.TrendAdSampler.Sample;
+import org.uvhnael.fbadsbe2.utils.SimHash;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class TrendAdSamplerTest {
+
+    private static final String[] TOPICS = {"trị mụn", "trẻ hóa da", "triệt lông", "giảm béo", "phun xăm môi",
+            "nâng mũi", "cấy tóc", "tắm trắng", "chăm sóc da mặt", "massage body"};
+
+    @Test
+    void nearDuplicateCaptionsAreCloseAndDistinctOnesAreNot() {
+        SimHash simHash = new SimHash();
+        long original = simHash.hash("Ưu đãi tháng 10: giảm 50% liệu trình trị mụn chuẩn y khoa tại Spa An Nhiên, đặt lịch ngay hôm nay");
+        long variant = simHash.hash("🔥 ƯU ĐÃI THÁNG 10: giảm 50% liệu trình trị mụn chuẩn y khoa tại Spa An Nhiên!! Đặt lịch ngay hôm nay");
+        long other = simHash.hash("Khai trương chi nhánh mới quận 7, miễn phí soi da và tư vấn phác đồ cấy tóc cho khách hàng");
+
+        assertThat(SimHash.distance(original, variant)).isLessThanOrEqualTo(3);
+        assertThat(SimHash.distance(original, other)).isGreaterThan(10);
+    }
+
+    @Test
+    void dropsNearDuplicatesAndCoversEveryStratumBeforeRepeatingOne() {
+        List<CaptionRow> rows = new ArrayList<>();
+        // One big page re-running the same caption with small edits, plus ten distinct ones
+        for (int i = 0; i < 200; i++) {
+            rows.add(new CaptionRow("IMAGE", "Big Spa", "Flash sale cuối tuần giảm 50% liệu trình trị mụn tại Big Spa" + "!".repeat(i % 3)));
+        }
+        for (int i = 0; i < TOPICS.length; i++) {
+            rows.add(new CaptionRow("IMAGE", "Big Spa", "Big Spa giới thiệu dịch vụ " + TOPICS[i] + " công nghệ mới số " + i));
+        }
+        // Small pages and formats with a single ad each
+        rows.add(new CaptionRow("VIDEO", "Spa B", "Video hướng dẫn quy trình chăm sóc da tại nhà sau khi lăn kim"));
+        rows.add(new CaptionRow("CAROUSEL", "Spa C", "Bộ sưu tập hình ảnh khách hàng trước và sau khi triệt lông vĩnh viễn"));
+        rows.add(new CaptionRow("IMAGE", "Spa D", "Khai trương chi nhánh mới quận 7 tặng voucher soi da miễn phí"));
+
+        // Budget for only a few entries
+        Sample sample = sampler(150).sample(rows);
+
+        assertThat(sample.candidates()).isEqualTo(213);
+        assertThat(sample.duplicates()).isGreaterThanOrEqualTo(199);
+        assertThat(sample.strata()).isEqualTo(4);
+        assertThat(sample.ads()).extracting(CaptionRow::pageName).contains("Spa B", "Spa C", "Spa D");
+        assertThat(sample.ads().size()).isLessThan(8);
+
+        int chars = 0;
+        for (int i = 0; i < sample.ads().size(); i++) {
+            chars += TrendAdSampler.entryLength(i + 1, sample.ads().get(i));
+        }
+        assertThat(chars).isEqualTo(sample.contentChars()).isLessThanOrEqualTo(450);
+    }
+
+    @Test
+    void compactsWhitespaceAndTruncatesLongCaptions() {
+        String caption = "Ưu   đãi\n\nđặc biệt " + "chăm sóc da ".repeat(40);
+
+        CaptionRow ad = sampler(6000).sample(List.of(new CaptionRow("IMAGE", null, caption))).ads().get(0);
+
+        assertThat(ad.caption()).startsWith("Ưu đãi đặc biệt chăm").endsWith("…").doesNotContain("  ", "\n");
+        assertThat(ad.caption().length()).isLessThanOrEqualTo(101);
+
+        StringBuilder prompt = new StringBuilder();
+        TrendAdSampler.appendEntry(prompt, 1, ad);
+        assertThat(prompt).hasSize(TrendAdSampler.entryLength(1, ad)).contains("Page: N/A");
+    }
+
+    private static TrendAdSampler sampler(int tokenBudget) {
+        return new TrendAdSampler(mock(AdsRepository.class), tokenBudget, 3.0, 100, 3);
+    }
+}
@@ -0,0 +1,181 @@
+package org.uvhnael.fbadsbe2.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.uvhnael.fbadsbe2.model.dto.TrendAnalysisResponse.Topic;
+import org.uvhnael.fbadsbe2.model.entity.TrendAnalysis;
+import org.uvhnael.fbadsbe2.repository.AdsRepository;
+import org.uvhnael.fbadsbe2.repository.AdsRepositoryCustom.CaptionRow;
+import org.uvhnael.fbadsbe2.repository.TrendAnalysisRepository;
+import org.uvhnael.fbadsbe2.service.TrendMapReduceAnalyzer.ChunkResult;
+import org.uvhnael.fbadsbe2.service.TrendMapReduceAnalyzer.KeywordCount;
+import org.uvhnael.fbadsbe2.service.TrendMapReduceAnalyzer.Reduced;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Map-reduce trend analysis against a local stub of the Gemini generateContent endpoint that
+ * answers after a random delay
+ */
+class TrendMapReduceTest {
+
+    private static final String[] SERVICES = {"trị mụn", "trẻ hóa da", "triệt lông", "giảm béo", "phun xăm môi",
+            "nâng mũi", "cấy tóc", "tắm trắng", "chăm sóc da mặt", "massage body"};
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final AtomicInteger mapCalls = new AtomicInteger();
+    private final AtomicInteger reduceCalls = new AtomicInteger();
+    private final AtomicReference<String> reducePrompt = new AtomicReference<>();
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private GeminiService geminiService;
+
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1beta/models/", this::generateContent);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        geminiService = new GeminiService(objectMapper, new SimpleMeterRegistry(),
+                new GeminiResponseCache(new SimpleMeterRegistry(), true, 256, 60000, ""), "test-key",
+                "http://127.0.0.1:" + server.getAddress().getPort(), "stub", 1000, 5000, 16, 5000);
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void largeSampleIsSummarisedPerChunkConcurrentlyAndMerged() {
+        AdsRepository adsRepository = mock(AdsRepository.class);
+        doAnswer(invocation -> {
+            Consumer<CaptionRow> consumer = invocation.getArgument(2);
+            for (int i = 0; i < 60; i++) {
+                consumer.accept(new CaptionRow(i % 2 == 0 ? "IMAGE" : "VIDEO", "Spa " + (i % 6),
+                        "Spa số " + i + " ưu đãi " + SERVICES[i % SERVICES.length] + " mã " + Integer.toHexString(i * 7919)));
+            }
+            return null;
+        }).when(adsRepository).forEachCaptionRow(any(), any(), any());
+        TrendAnalysisRepository trendAnalysisRepository = mock(TrendAnalysisRepository.class);
+        when(trendAnalysisRepository.save(any(TrendAnalysis.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // ~10 ads per chunk, at most 4 chunks, 2 calls at a time
+        TrendAdSampler sampler = new TrendAdSampler(adsRepository, 300, 3.0, 60, 0);
+        TrendMapReduceAnalyzer analyzer = new TrendMapReduceAnalyzer(geminiService, objectMapper, true, 4, 2);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        TrendSnapshotCache snapshotCache = new TrendSnapshotCache(trendAnalysisRepository, objectMapper,
+                new SimpleMeterRegistry(), 64, 300000);
+        TrendAnalysisService service = new TrendAnalysisService(sampler, analyzer, trendAnalysisRepository,
+                snapshotCache, geminiService, objectMapper, transactionTemplate);
+
+        try {
+            TrendAnalysis analysis = service.analyzeWeeklyTrends();
+
+            assertThat(mapCalls.get()).isEqualTo(4);
+            assertThat(reduceCalls.get()).isEqualTo(1);
+            assertThat(peakInFlight.get()).isEqualTo(2);
+            // Every chunk reports "ưu đãi" 5 times and its own service once
+            assertThat(analysis.getTrendingKeywords()).startsWith("[\"Ưu đãi\",");
+            assertThat(analysis.getTrendingTopics()).contains("{\"name\":\"Ưu đãi spa\",\"sentiment\":\"positive\",\"volume\":20}");
+            assertThat(reducePrompt.get()).contains("kết quả phân tích 4 phần", "- Ưu đãi: 20\n",
+                    "- Ưu đãi spa (positive): 20\n", "Phần 4: Các spa tập trung vào ưu đãi");
+            assertThat(analysis.getAiSummary()).isEqualTo("Tổng hợp");
+        } finally {
+            analyzer.shutdown();
+        }
+    }
+
+    @Test
+    void reduceMergesCountsByNameAndBreaksTiesDeterministically() {
+        ChunkResult first = new ChunkResult(
+                List.of(new KeywordCount("Giảm giá", 3), new KeywordCount("spa", 2)),
+                List.of(new Topic("Ưu đãi", "positive", 4), new Topic("Khiếu nại", "negative", 1)),
+                "Phần một");
+        ChunkResult second = new ChunkResult(
+                List.of(new KeywordCount("giảm  giá ", 1), new KeywordCount("da", 2), new KeywordCount("Spa", 2)),
+                List.of(new Topic("ưu đãi", "negative", 4), new Topic("Khiếu nại", "negative", 2)),
+                " ");
+
+        Reduced reduced = TrendMapReduceAnalyzer.reduce(List.of(first, second));
+        Reduced reversed = TrendMapReduceAnalyzer.reduce(List.of(second, first));
+
+        assertThat(reduced.keywords()).containsExactly(
+                new KeywordCount("Giảm giá", 4), new KeywordCount("spa", 4), new KeywordCount("da", 2));
+        assertThat(reduced.topics()).containsExactly(
+                new Topic("Ưu đãi", "neutral", 8), new Topic("Khiếu nại", "negative", 3));
+        assertThat(reduced.summaries()).containsExactly("Phần một");
+        // Same figures and order whichever chunk came first; only the display spelling may differ
+        assertThat(reversed.keywords()).extracting(KeywordCount::count).containsExactly(4, 4, 2);
+        assertThat(reversed.topics()).extracting(Topic::getVolume).containsExactly(8, 3);
+    }
+
+    private void generateContent(HttpExchange exchange) throws IOException {
+        int current = inFlight.incrementAndGet();
+        peakInFlight.accumulateAndGet(current, Math::max);
+        try {
+            String prompt = objectMapper.readTree(exchange.getRequestBody())
+                    .path("contents").path(0).path("parts").path(0).path("text").asText();
+            Thread.sleep(ThreadLocalRandom.current().nextLong(50, 150));
+
+            String text;
+            if (prompt.startsWith("Phân tích phần")) {
+                mapCalls.incrementAndGet();
+                String service = SERVICES[mapCalls.get() % SERVICES.length];
+                text = objectMapper.writeValueAsString(Map.of(
+                        "keywords", List.of(Map.of("keyword", "Ưu đãi", "count", 5), Map.of("keyword", service, "count", 1)),
+                        "topics", List.of(Map.of("name", "Ưu đãi spa", "sentiment", "positive", "volume", 5)),
+                        "summary", "Các spa tập trung vào ưu đãi"));
+            } else {
+                reduceCalls.incrementAndGet();
+                reducePrompt.set(prompt);
+                text = "```json\n" + objectMapper.writeValueAsString(Map.of(
+                        "competitorSummary", "Đối thủ giảm giá", "suggestions", "Nhấn mạnh ưu đãi",
+                        "aiSummary", "Tổng hợp", "confidenceScore", 0.7)) + "\n```";
+            }
+
+            byte[] body = objectMapper.writeValueAsBytes(Map.of("candidates",
+                    List.of(Map.of("content", Map.of("parts", List.of(Map.of("text", text)))))));
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.uvhnael.fbadsbe2.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.uvhnael.fbadsbe2.model.entity.TrendAnalysis;
+import org.uvhnael.fbadsbe2.repository.TrendAnalysisRepository;
+import org.uvhnael.fbadsbe2.service.TrendSnapshotCache.TrendSnapshot;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TrendSnapshotCacheTest {
+
+    private final TrendAnalysisRepository trendAnalysisRepository = mock(TrendAnalysisRepository.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TrendSnapshotCache cache = new TrendSnapshotCache(trendAnalysisRepository, new ObjectMapper(),
+            meterRegistry, 64, 300000);
+
+    @Test
+    void parsesOnceAndServesRepeatLookupsFromMemory() {
+        when(trendAnalysisRepository.findById(7L)).thenReturn(Optional.of(analysis(7L)));
+        when(trendAnalysisRepository.findTopByOrderByAnalysisDateDesc()).thenReturn(Optional.of(analysis(7L)));
+
+        TrendSnapshot first = cache.get(7L).orElseThrow();
+        cache.get(7L);
+        cache.latest();
+        TrendSnapshot latest = cache.latest().orElseThrow();
+
+        assertThat(first.keywords()).containsExactly("spa", "ưu đãi");
+        assertThat(first.topicNames()).containsExactly("Chăm sóc da", "Giảm giá");
+        assertThat(first.topicNamesJson()).isEqualTo("[\"Chăm sóc da\",\"Giảm giá\"]");
+        assertThat(latest.id()).isEqualTo(7L);
+        verify(trendAnalysisRepository, times(1)).findById(7L);
+        verify(trendAnalysisRepository, times(1)).findTopByOrderByAnalysisDateDesc();
+        assertThat(count("id", "hit")).isEqualTo(1);
+        assertThat(count("id", "miss")).isEqualTo(1);
+        assertThat(count("latest", "hit")).isEqualTo(1);
+        assertThat(count("latest", "miss")).isEqualTo(1);
+    }
+
+    @Test
+    void invalidationDropsEntriesAndDiscardsLoadsStartedBeforeIt() {
+        when(trendAnalysisRepository.findTopByOrderByAnalysisDateDesc()).thenReturn(Optional.of(analysis(7L)));
+        assertThat(cache.latest().orElseThrow().id()).isEqualTo(7L);
+
+        // A new analysis is saved
+        when(trendAnalysisRepository.findTopByOrderByAnalysisDateDesc()).thenReturn(Optional.of(analysis(8L)));
+        cache.invalidate();
+        assertThat(cache.latest().orElseThrow().id()).isEqualTo(8L);
+
+        // Another save lands while ID 9 is being read: the read is returned but not kept
+        when(trendAnalysisRepository.findById(9L)).thenAnswer(invocation -> {
+            cache.invalidate();
+            return Optional.of(analysis(9L));
+        });
+        assertThat(cache.get(9L)).isPresent();
+        doReturn(Optional.of(analysis(9L))).when(trendAnalysisRepository).findById(9L);
+        assertThat(cache.get(9L).orElseThrow().version()).isEqualTo(2);
+        verify(trendAnalysisRepository, times(2)).findById(9L);
+    }
+
+    private double count(String lookup, String result) {
+        return meterRegistry.get("trends.snapshot.cache").tags("lookup", lookup, "result", result).counter().count();
+    }
+
+    private static TrendAnalysis analysis(long id) {
+        return TrendAnalysis.builder()
+                .id(id)
+                .trendingKeywords("[\"spa\", \"ưu đãi\"]")
+                .trendingTopics("[{\"name\": \"Chăm sóc da\", \"volume\": 4}, {\"name\": \"Giảm giá\"}]")
+                .build();
+    }
+}
@@ -0,0 +1,36 @@
+package org.uvhnael.fbadsbe2.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BloomFilterTest {
+
+    @Test
+    void neverRejectsAnAddedValueAndStaysNearTheTargetRate() {
+        BloomFilter filter = BloomFilter.create(50_000, 0.01);
+        for (int i = 0; i < 50_000; i++) {
+            filter.put("ad-" + i);
+        }
+
+        for (int i = 0; i < 50_000; i++) {
+            assertThat(filter.mightContain("ad-" + i)).isTrue();
+        }
+        int falsePositives = 0;
+        for (int i = 50_000; i < 150_000; i++) {
+            if (filter.mightContain("ad-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives / 100_000.0).isLessThan(0.02);
+    }
+
+    @Test
+    void putReportsWhetherTheValueWasNew() {
+        BloomFilter filter = BloomFilter.create(1000, 0.01);
+
+        assertThat(filter.put("1234567890")).isTrue();
+        assertThat(filter.put("1234567890")).isFalse();
+        assertThat(filter.put("1234567891")).isTrue();
+    }
+}
@@ -0,0 +1,63 @@
+package org.uvhnael.fbadsbe2.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeywordMatcherTest {
+
+    @Test
+    void findsOverlappingAndNestedKeywords() {
+        KeywordMatcher matcher = KeywordMatcher.compile(List.of("he", "she", "his", "hers"));
+
+        List<String> hits = new ArrayList<>();
+        matcher.forEachMatch("ushers", (id, end) -> hits.add(matcher.keyword(id) + "@" + end));
+
+        assertThat(hits).containsExactlyInAnyOrder("she@4", "he@4", "hers@6");
+        assertThat(matcher.countDistinct("ushers")).isEqualTo(3);
+    }
+
+    @Test
+    void matchesCaseInsensitivelyIncludingVietnamese() {
+        KeywordMatcher matcher = KeywordMatcher.compile(Util.getBeautyCTAKeywords());
+
+        assertThat(matcher.containsAny("Liệu trình mới - ĐẶT LỊCH hôm nay")).isTrue();
+        assertThat(matcher.containsAny("Shop Now!")).isTrue();
+        assertThat(matcher.containsAny("Làn da mịn màng")).isFalse();
+        assertThat(matcher.containsAny(null)).isFalse();
+    }
+
+    @Test
+    void agreesWithContainsPerKeyword() {
+        List<String> keywords = Util.getBeautyCTAKeywords();
+        KeywordMatcher matcher = KeywordMatcher.compile(keywords);
+        String alphabet = "abcdeghilmnorstuvyđặịớồ ";
+        Random random = new Random(7);
+
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int c = random.nextInt(80); c > 0; c--) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            if (random.nextInt(4) == 0) {
+                text.insert(random.nextInt(text.length() + 1), keywords.get(random.nextInt(keywords.size())));
+            }
+
+            String lower = text.toString().toLowerCase();
+            long expected = keywords.stream().distinct().filter(lower::contains).count();
+            assertThat(matcher.countDistinct(text)).as(text.toString()).isEqualTo(expected);
+            assertThat(matcher.containsAny(text)).isEqualTo(expected > 0);
+        }
+    }
+
+    @Test
+    void dropsBlankAndDuplicateKeywords() {
+        assertThat(KeywordMatcher.compile(List.of("", "Spa", "spa")).size()).isEqualTo(1);
+        assertThat(KeywordMatcher.empty().containsAny("anything")).isFalse();
+        assertThat(KeywordMatcher.empty().countDistinct("anything")).isZero();
+    }
+}
@@ -0,0 +1,84 @@
+package org.uvhnael.fbadsbe2.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class KeywordSketchTest {
+
+    @Test
+    void mergedDailySketchesBoundTheTrueCounts() {
+        Random random = new Random(5);
+        Map<String, Long> exact = new HashMap<>();
+        KeywordSketch merged = KeywordSketch.empty(20);
+
+        for (int day = 0; day < 90; day++) {
+            TermCounter counter = new TermCounter();
+            for (int i = 0; i < 2000; i++) {
+                // Skewed vocabulary: a few heavy hitters and a long tail
+                String term = "term" + (int) Math.floor(Math.pow(random.nextDouble(), 3) * 500);
+                counter.add(term);
+                exact.merge(term, 1L, Long::sum);
+            }
+            // Round-trip through the stored form like the daily rows
+            KeywordSketch daily = KeywordSketch.of(counter, 20);
+            merged = merged.merge(KeywordSketch.decode(daily.encode(), daily.floor(), 20));
+        }
+
+        List<KeywordSketch.Entry> top = merged.top(10);
+        assertThat(top).hasSize(10);
+        for (KeywordSketch.Entry entry : top) {
+            long trueCount = exact.get(entry.term());
+            assertThat(entry.count()).isGreaterThanOrEqualTo(trueCount);
+            assertThat(entry.count() - entry.error()).isLessThanOrEqualTo(trueCount);
+        }
+        // Any term the sketch dropped is bounded by the floor
+        List<String> kept = merged.top(merged.size()).stream().map(KeywordSketch.Entry::term).toList();
+        for (Map.Entry<String, Long> term : exact.entrySet()) {
+            if (!kept.contains(term.getKey())) {
+                assertThat(term.getValue()).isLessThanOrEqualTo(merged.floor());
+            }
+        }
+
+        // The heaviest hitters are found
+        List<String> exactTop = exact.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(3)
+                .map(Map.Entry::getKey)
+                .toList();
+        assertThat(top.stream().limit(5).map(KeywordSketch.Entry::term)).containsAll(exactTop);
+    }
+
+    @Test
+    void isExactWhileEveryDayFitsTheCapacity() {
+        TermCounter monday = new TermCounter();
+        TermCounter tuesday = new TermCounter();
+        List.of("serum", "serum", "kem", "spa").forEach(monday::add);
+        List.of("serum", "spa", "spa", "voucher").forEach(tuesday::add);
+
+        KeywordSketch merged = KeywordSketch.of(monday, 10).merge(KeywordSketch.of(tuesday, 10));
+
+        assertThat(merged.floor()).isZero();
+        assertThat(merged.top(10)).containsExactly(
+                new KeywordSketch.Entry("serum", 3, 0),
+                new KeywordSketch.Entry("spa", 3, 0),
+                new KeywordSketch.Entry("kem", 1, 0),
+                new KeywordSketch.Entry("voucher", 1, 0));
+    }
+
+    @Test
+    void guaranteedRankingPrefersCountsWithLessError() {
+        // "voucher" only looks heavy because of the floor charged while it was not listed
+        KeywordSketch sketch = KeywordSketch.decode("voucher\t10\t8\nserum\t9\t0\nspa\t4\t1", 3, 3);
+
+        assertThat(sketch.top(2)).extracting(KeywordSketch.Entry::term).containsExactly("voucher", "serum");
+        assertThat(sketch.topGuaranteed(3)).extracting(KeywordSketch.Entry::term, KeywordSketch.Entry::guaranteedCount)
+                .containsExactly(tuple("serum", 9L), tuple("spa", 3L), tuple("voucher", 2L));
+    }
+}
@@ -0,0 +1,76 @@
+package org.uvhnael.fbadsbe2.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeywordTokenizerTest {
+
+    @Test
+    void tokenizesLikeTheRegexImplementation() {
+        String alphabet = "aBcĐđÀàẶặỹỸ019 \t\n.,!?#@-_😀🔥/";
+        Random random = new Random(11);
+
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int c = random.nextInt(120); c > 0; c--) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            if (random.nextBoolean()) {
+                text.append(" và Của THE chăm sóc da");
+            }
+            assertThat(Util.extractKeywords(text.toString())).as(text.toString())
+                    .containsExactly(regexKeywords(text.toString(), 3));
+        }
+    }
+
+    @Test
+    void countsTermsAndSelectsTopK() {
+        KeywordTokenizer tokenizer = new KeywordTokenizer();
+        TermCounter counter = new TermCounter(4);
+        Map<String, Integer> expected = new HashMap<>();
+        Random random = new Random(3);
+
+        // Enough distinct terms to force several resizes
+        for (int i = 0; i < 5000; i++) {
+            String caption = "serum" + random.nextInt(700) + " KEM" + random.nextInt(50) + " và chống nắng";
+            tokenizer.countInto(caption, counter);
+            for (String word : regexKeywords(caption, 3)) {
+                expected.merge(word, 1, Integer::sum);
+            }
+        }
+
+        assertThat(counter.size()).isEqualTo(expected.size());
+        assertThat(counter.total()).isEqualTo(expected.values().stream().mapToLong(Integer::longValue).sum());
+        expected.forEach((term, count) -> assertThat(counter.get(term)).as(term).isEqualTo(count));
+
+        List<String> expectedTop = expected.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(20)
+                .map(entry -> entry.getKey() + "=" + entry.getValue())
+                .toList();
+        List<String> top = new ArrayList<>();
+        counter.topK(20).forEach(term -> top.add(term.term() + "=" + term.count()));
+        assertThat(top).isEqualTo(expectedTop);
+        assertThat(counter.get("missing")).isZero();
+    }
+
+    // The previous Util.extractKeywords implementation
+    private static String[] regexKeywords(String text, int minLength) {
+        Set<String> stopWords = Util.getVietnameseStopWords();
+        return Arrays.stream(text
+                        .toLowerCase()
+                        .replaceAll("[^a-zA-ZÀ-ỹ0-9\\s]", " ")
+                        .split("\\s+"))
+                .filter(word -> word.length() >= minLength && !stopWords.contains(word))
+                .toArray(String[]::new);
+    }
+}